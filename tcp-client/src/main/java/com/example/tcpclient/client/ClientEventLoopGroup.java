@@ -0,0 +1,54 @@
+package com.example.tcpclient.client;
+
+import com.example.tcpclient.service.ClientConfigService;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端共享事件循环组
+ * 应用级单例，所有连接（连接池、并行下载、流式传输）共用，断开重连时不再重复创建和销毁线程；
+ * 随Spring容器关闭而优雅关闭
+ */
+@Slf4j
+@Component
+public class ClientEventLoopGroup {
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    private EventLoopGroup group;
+
+    @PostConstruct
+    public void init() {
+        int threads = clientConfigService.getEventLoopThreads();
+        group = new NioEventLoopGroup(threads, new DefaultThreadFactory("tcp-client-io", true));
+        log.info("Client event loop group started with {} threads", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (group != null) {
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+            log.info("Client event loop group stopped");
+        }
+    }
+
+    public EventLoopGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * 是否可以创建新连接
+     */
+    public boolean isAvailable() {
+        return group != null && !group.isShuttingDown();
+    }
+}
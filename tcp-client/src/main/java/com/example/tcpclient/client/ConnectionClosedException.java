@@ -0,0 +1,14 @@
+package com.example.tcpclient.client;
+
+/**
+ * 连接已断开或不可用，请求未收到响应
+ * 幂等请求遇到该异常时可以在重连后重放
+ */
+public class ConnectionClosedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConnectionClosedException(String message) {
+        super(message);
+    }
+}
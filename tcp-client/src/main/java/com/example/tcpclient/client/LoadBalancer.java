@@ -0,0 +1,155 @@
+package com.example.tcpclient.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多服务端负载均衡
+ * 默认按节点负载评分（延迟EWMA × 在途请求数）选择最优节点；
+ * 一致性哈希模式下按请求中的分片键选择节点（每个节点在哈希环上有多个虚拟节点），
+ * 同一分片键固定落到同一节点以保持服务端缓存命中，目标节点不可用时顺延到环上的下一个节点；
+ * 所有有连接的节点都被摘除时忽略摘除状态（避免全部摘除导致完全不可用）
+ */
+public class LoadBalancer {
+
+    public static final String STRATEGY_EWMA = "ewma";
+    public static final String STRATEGY_CONSISTENT_HASH = "consistent-hash";
+
+    private final List<ServerEndpoint> endpoints;
+    private final TreeMap<Long, ServerEndpoint> ring = new TreeMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    public LoadBalancer(List<ServerEndpoint> endpoints, int virtualNodes) {
+        this.endpoints = List.copyOf(endpoints);
+        for (ServerEndpoint endpoint : endpoints) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(endpoint.getAddress() + "#" + i), endpoint);
+            }
+        }
+    }
+
+    public List<ServerEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 选择节点，shardKey为null时按负载评分选择；没有可用节点时返回null
+     */
+    public ServerEndpoint select(String shardKey) {
+        if (shardKey != null) {
+            ServerEndpoint endpoint = selectByHash(shardKey);
+            if (endpoint != null) {
+                return endpoint;
+            }
+        }
+        return selectByScore();
+    }
+
+    /**
+     * 按负载评分选择，从轮转起点开始扫描，评分相同时分散到不同节点
+     */
+    public ServerEndpoint selectByScore() {
+        ServerEndpoint best = selectByScore(false);
+        return best != null ? best : selectByScore(true);
+    }
+
+    private ServerEndpoint selectByScore(boolean ignoreEjection) {
+        int size = endpoints.size();
+        int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+        ServerEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ServerEndpoint endpoint = endpoints.get((start + i) % size);
+            if (ignoreEjection ? !endpoint.hasActiveConnection() : !endpoint.isAvailable()) {
+                continue;
+            }
+            double score = endpoint.score();
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 为对冲请求选择节点：优先选择主请求所在节点以外评分最优的可用节点，没有时返回主请求所在节点
+     */
+    public ServerEndpoint selectForHedge(ServerEndpoint primary) {
+        ServerEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (ServerEndpoint endpoint : endpoints) {
+            if (endpoint == primary || !endpoint.isAvailable()) {
+                continue;
+            }
+            double score = endpoint.score();
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best != null ? best : primary;
+    }
+
+    private ServerEndpoint selectByHash(String shardKey) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        long hash = hash(shardKey);
+        // 从键的位置顺时针查找第一个可用节点，最多绕环一圈
+        Map.Entry<Long, ServerEndpoint> entry = ring.ceilingEntry(hash);
+        for (int i = 0; i < ring.size(); i++) {
+            if (entry == null) {
+                entry = ring.firstEntry();
+            }
+            if (entry.getValue().isAvailable()) {
+                return entry.getValue();
+            }
+            entry = ring.higherEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    public boolean hasActiveConnection() {
+        return endpoints.stream().anyMatch(ServerEndpoint::hasActiveConnection);
+    }
+
+    /**
+     * 所有节点都没有可用连接
+     */
+    public boolean isReconnecting() {
+        return !hasActiveConnection();
+    }
+
+    /**
+     * 各节点的统计信息
+     */
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (ServerEndpoint endpoint : endpoints) {
+            stats.add(endpoint.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 64位FNV-1a哈希，再经过murmur3的fmix64打散
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
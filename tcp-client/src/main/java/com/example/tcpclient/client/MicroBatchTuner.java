@@ -0,0 +1,171 @@
+package com.example.tcpclient.client;
+
+import com.example.tcpclient.service.ClientConfigService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写出微批处理参数及自适应调节
+ * 各连接的ClientHandler把一个时间窗口内（或达到消息数上限前）的请求合并为一次flush；
+ * 窗口为0时只合并同一轮事件循环中已提交的请求，不额外等待。
+ * 自适应模式下每个调节周期根据请求延迟p50调整窗口：p50超过目标时减半，
+ * 低于目标且确实发生了合并时扩大，合并效果不明显时缩小，以在延迟目标内尽量提高每次flush的消息数。
+ * NIO事件循环的定时精度约为1毫秒，空闲时小于1毫秒的窗口实际会等待约1毫秒
+ */
+@Slf4j
+@Component
+public class MicroBatchTuner {
+
+    /**
+     * 自适应调节时参与判断的最少样本数
+     */
+    private static final long MIN_SAMPLES = 50;
+
+    /**
+     * 窗口从0开始扩大时的初始值（微秒）
+     */
+    private static final long INITIAL_WINDOW_MICROS = 50;
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    @Autowired
+    private ClientEventLoopGroup clientEventLoopGroup;
+
+    private final LatencyHistogram intervalLatency = new LatencyHistogram();
+    private final AtomicLong intervalMessages = new AtomicLong(0);
+    private final AtomicLong intervalFlushes = new AtomicLong(0);
+    private final AtomicLong totalMessages = new AtomicLong(0);
+    private final AtomicLong totalFlushes = new AtomicLong(0);
+    private final AtomicLong adjustments = new AtomicLong(0);
+
+    private volatile boolean enabled;
+    private volatile long windowNanos;
+    private volatile int maxMessages;
+    private volatile long lastP50Micros = -1;
+    private volatile double lastMessagesPerFlush;
+
+    @PostConstruct
+    public void init() {
+        enabled = clientConfigService.isMicroBatchEnabled();
+        windowNanos = TimeUnit.MICROSECONDS.toNanos(clientConfigService.getMicroBatchWindowMicros());
+        maxMessages = clientConfigService.getMicroBatchMaxMessages();
+
+        long interval = clientConfigService.getMicroBatchTuneInterval();
+        clientEventLoopGroup.getGroup().scheduleWithFixedDelay(this::tune, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 是否启用微批处理，未启用时每个请求单独flush
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * 记录一次flush写出的消息数
+     */
+    public void recordFlush(int messages) {
+        intervalMessages.addAndGet(messages);
+        intervalFlushes.incrementAndGet();
+        totalMessages.addAndGet(messages);
+        totalFlushes.incrementAndGet();
+    }
+
+    /**
+     * 记录请求从提交到收到响应的延迟
+     */
+    public void recordLatency(long nanos) {
+        intervalLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private void tune() {
+        try {
+            long flushes = intervalFlushes.get();
+            lastP50Micros = intervalLatency.percentile(50);
+            lastMessagesPerFlush = flushes > 0 ? (double) intervalMessages.get() / flushes : 0;
+
+            enabled = clientConfigService.isMicroBatchEnabled();
+            maxMessages = clientConfigService.getMicroBatchMaxMessages();
+            if (enabled && clientConfigService.isMicroBatchAdaptive()) {
+                adjust(intervalLatency.count());
+            } else {
+                windowNanos = TimeUnit.MICROSECONDS.toNanos(clientConfigService.getMicroBatchWindowMicros());
+            }
+        } catch (Exception e) {
+            log.warn("Micro-batch tuning failed: {}", e.getMessage());
+        } finally {
+            intervalLatency.reset();
+            intervalMessages.set(0);
+            intervalFlushes.set(0);
+        }
+    }
+
+    private void adjust(long samples) {
+        if (samples < MIN_SAMPLES) {
+            return;
+        }
+
+        long p50 = lastP50Micros;
+        double messagesPerFlush = lastMessagesPerFlush;
+        long targetMicros = clientConfigService.getMicroBatchTargetP50Micros();
+        long maxWindowMicros = clientConfigService.getMicroBatchMaxWindowMicros();
+        long windowMicros = TimeUnit.NANOSECONDS.toMicros(windowNanos);
+        long newWindowMicros = windowMicros;
+
+        if (p50 > targetMicros) {
+            newWindowMicros = windowMicros / 2;
+        } else if (windowMicros > 0 && messagesPerFlush < 1.5) {
+            // 负载低，等待窗口只增加延迟
+            newWindowMicros = windowMicros / 2;
+        } else if (p50 < targetMicros * 7 / 10 && (windowMicros > 0 || messagesPerFlush > 1.05)) {
+            // 窗口为0时只有已经出现自然合并（说明有并发）才开始扩大
+            newWindowMicros = Math.min(maxWindowMicros, Math.max(INITIAL_WINDOW_MICROS, windowMicros * 3 / 2));
+        }
+        if (newWindowMicros < INITIAL_WINDOW_MICROS / 2) {
+            newWindowMicros = 0;
+        }
+
+        if (newWindowMicros != windowMicros) {
+            windowNanos = TimeUnit.MICROSECONDS.toNanos(newWindowMicros);
+            adjustments.incrementAndGet();
+            log.debug("Micro-batch window {}us -> {}us (p50={}us, target={}us, messages/flush={})",
+                    windowMicros, newWindowMicros, p50, targetMicros, String.format("%.2f", messagesPerFlush));
+        }
+    }
+
+    /**
+     * 微批处理统计信息
+     */
+    public Map<String, Object> getStats() {
+        long flushes = totalFlushes.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("adaptive", clientConfigService.isMicroBatchAdaptive());
+        stats.put("windowMicros", TimeUnit.NANOSECONDS.toMicros(windowNanos));
+        stats.put("maxMessages", maxMessages);
+        stats.put("targetP50Micros", clientConfigService.getMicroBatchTargetP50Micros());
+        stats.put("lastP50Micros", lastP50Micros);
+        stats.put("lastMessagesPerFlush", lastMessagesPerFlush);
+        stats.put("totalMessages", totalMessages.get());
+        stats.put("totalFlushes", flushes);
+        stats.put("messagesPerFlush", flushes > 0 ? (double) totalMessages.get() / flushes : 0);
+        stats.put("adjustments", adjustments.get());
+        return stats;
+    }
+}
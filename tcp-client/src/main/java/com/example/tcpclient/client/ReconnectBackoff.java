@@ -0,0 +1,45 @@
+package com.example.tcpclient.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带抖动的指数退避
+ * 第n次重试的延迟上限为 min(maxDelay, baseDelay * 2^n)，实际延迟在上限的一半到上限之间随机取值，
+ * 避免大量客户端在服务端重启后同时重连
+ */
+public class ReconnectBackoff {
+
+    private volatile long baseDelay;
+    private volatile long maxDelay;
+    private int attempt;
+
+    public ReconnectBackoff(long baseDelay, long maxDelay) {
+        configure(baseDelay, maxDelay);
+    }
+
+    public void configure(long baseDelay, long maxDelay) {
+        this.baseDelay = Math.max(1, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    }
+
+    /**
+     * 下一次重试的延迟（毫秒），并递增重试次数
+     */
+    public synchronized long nextDelay() {
+        long ceiling = baseDelay << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxDelay) {
+            ceiling = maxDelay;
+        }
+        attempt++;
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    public synchronized void reset() {
+        attempt = 0;
+    }
+
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.tcpclient.client;
+
+import com.example.tcpclient.service.ClientConfigService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲请求（hedged requests）策略
+ * 对配置的幂等交易码，请求在对冲延迟内没有响应时在另一个连接（优先另一个节点）上发送副本，取先到的响应；
+ * 对冲延迟按交易码取上一统计周期响应延迟的指定百分位（如p95），样本不足时不对冲；
+ * 对冲次数受预算限制：每个请求积累budgetPercent%个令牌，每次对冲消耗一个，令牌不足时不对冲，
+ * 因此额外负载不超过预算比例；令牌最多积累上一统计周期请求数的budgetPercent%（至少10个），
+ * 使服务端短暂卡顿导致一批请求同时变慢时仍可全部对冲
+ */
+@Slf4j
+@Component
+public class RequestHedger {
+
+    /**
+     * 计算对冲延迟所需的最少样本数
+     */
+    private static final long MIN_SAMPLES = 100;
+
+    /**
+     * 令牌以千分之一为单位计数，最少可积累的令牌数（允许的突发对冲次数）
+     */
+    private static final long TOKEN_UNIT = 1000;
+    private static final long MIN_MAX_TOKENS = 10 * TOKEN_UNIT;
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    @Autowired
+    private ClientEventLoopGroup clientEventLoopGroup;
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final AtomicLong tokens = new AtomicLong(0);
+    private volatile long maxTokens = MIN_MAX_TOKENS;
+    private long lastRequests;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong hedged = new AtomicLong(0);
+    private final AtomicLong hedgeWins = new AtomicLong(0);
+    private final AtomicLong budgetExhausted = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        long interval = clientConfigService.getHedgeRefreshInterval();
+        clientEventLoopGroup.getGroup().scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 请求发出时调用：积累对冲预算，返回对冲延迟（纳秒），不对冲时返回-1
+     */
+    public long onRequest(String transactionCode) {
+        if (!clientConfigService.isHedgeEnabled() || !clientConfigService.getHedgeCodes().contains(transactionCode)) {
+            return -1;
+        }
+
+        requests.incrementAndGet();
+        long earned = (long) (clientConfigService.getHedgeBudgetPercent() * TOKEN_UNIT / 100);
+        long max = maxTokens;
+        tokens.accumulateAndGet(earned, (current, delta) -> Math.min(max, current + delta));
+
+        Long delayMicros = delays.get(transactionCode);
+        if (delayMicros == null) {
+            return -1;
+        }
+        return TimeUnit.MICROSECONDS.toNanos(Math.max(delayMicros, clientConfigService.getHedgeMinDelayMicros()));
+    }
+
+    /**
+     * 对冲延迟到期时调用：预算足够时扣除一个令牌并返回true
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN_UNIT) {
+                budgetExhausted.incrementAndGet();
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN_UNIT));
+        hedged.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 对冲请求先于原请求返回
+     */
+    public void onHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    /**
+     * 记录原请求的响应延迟（无论是否被对冲，用于统计服务端真实的延迟分布）
+     */
+    public void recordLatency(String transactionCode, long nanos) {
+        if (!clientConfigService.getHedgeCodes().contains(transactionCode)) {
+            return;
+        }
+        latencies.computeIfAbsent(transactionCode, code -> new LatencyHistogram())
+                .record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * 每个统计周期按百分位更新对冲延迟（样本不足的交易码继续累积），并按本周期请求数调整令牌上限
+     */
+    private void refresh() {
+        try {
+            long total = requests.get();
+            long periodRequests = total - lastRequests;
+            lastRequests = total;
+            maxTokens = Math.max(MIN_MAX_TOKENS, (long) (periodRequests * clientConfigService.getHedgeBudgetPercent() * TOKEN_UNIT / 100));
+            
+            double percentile = clientConfigService.getHedgePercentile();
+            latencies.forEach((code, histogram) -> {
+                if (histogram.count() >= MIN_SAMPLES) {
+                    delays.put(code, histogram.percentile(percentile));
+                    histogram.reset();
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Hedge delay refresh failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 对冲统计信息
+     */
+    public Map<String, Object> getStats() {
+        long requestCount = requests.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", clientConfigService.isHedgeEnabled());
+        stats.put("codes", clientConfigService.getHedgeCodes());
+        stats.put("percentile", clientConfigService.getHedgePercentile());
+        stats.put("budgetPercent", clientConfigService.getHedgeBudgetPercent());
+        stats.put("delayMicros", new HashMap<>(delays));
+        stats.put("requests", requestCount);
+        stats.put("hedged", hedged.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("budgetExhausted", budgetExhausted.get());
+        stats.put("maxTokens", maxTokens / TOKEN_UNIT);
+        stats.put("hedgeRatio", requestCount > 0 ? (double) hedged.get() / requestCount : 0);
+        return stats;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.tcpclient.client;
+
+import com.example.tcpclient.service.ClientConfigService;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求超时管理
+ * 使用时间轮（HashedWheelTimer）为每个请求设置按交易码配置的超时，大量在途请求时添加和取消都是O(1)；
+ * 请求完成时取消超时任务，超时时以TimeoutException完成请求并回调清理逻辑，按交易码统计超时次数
+ */
+@Slf4j
+@Component
+public class RequestTimer {
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    private HashedWheelTimer timer;
+
+    private final Map<String, AtomicLong> timeoutsByCode = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int tickMillis = clientConfigService.getTimeoutTickMillis();
+        timer = new HashedWheelTimer(new DefaultThreadFactory("tcp-client-timer", true), tickMillis, TimeUnit.MILLISECONDS, 512);
+        timer.start();
+        log.info("Request timer started with {}ms tick", tickMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * 为请求设置交易码对应的超时；超时时先完成请求，再执行onTimeout清理关联状态
+     */
+    public void schedule(String transactionCode, CompletableFuture<?> result, Runnable onTimeout) {
+        long timeoutMs = clientConfigService.getRequestTimeout(transactionCode);
+        Timeout timeout = timer.newTimeout(task -> {
+            if (result.completeExceptionally(new TimeoutException(
+                    "Request " + transactionCode + " timed out after " + timeoutMs + "ms"))) {
+                timeoutsByCode.computeIfAbsent(transactionCode, code -> new AtomicLong()).incrementAndGet();
+                try {
+                    onTimeout.run();
+                } catch (Exception e) {
+                    log.warn("Request timeout cleanup failed: {}", e.getMessage());
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, throwable) -> timeout.cancel());
+    }
+
+    /**
+     * 超时统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> byCode = new HashMap<>();
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> entry : timeoutsByCode.entrySet()) {
+            byCode.put(entry.getKey(), entry.getValue().get());
+            total += entry.getValue().get();
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending", timer != null ? timer.pendingTimeouts() : 0);
+        stats.put("timeouts", total);
+        stats.put("timeoutsByCode", byCode);
+        return stats;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.tcpclient.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端节点
+ * 每个节点有独立的连接池，并记录延迟的指数加权移动平均（EWMA）、在途请求数和连续失败次数；
+ * 连续失败达到阈值的节点在一段时间内被摘除，不参与选择
+ */
+@Slf4j
+public class ServerEndpoint {
+
+    private final String host;
+    private final int port;
+    private final TcpConnectionPool pool;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private final AtomicLong totalRequests = new AtomicLong(0);
+    private final AtomicLong totalFailures = new AtomicLong(0);
+    private final AtomicLong ejections = new AtomicLong(0);
+
+    // 延迟EWMA（纳秒）及上次更新时间，按时间衰减
+    private double latencyEwma;
+    private long lastUpdateNanos = System.nanoTime();
+    private volatile long ejectedUntil;
+
+    public ServerEndpoint(String host, int port, TcpConnectionPool pool) {
+        this.host = host;
+        this.port = port;
+        this.pool = pool;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    public TcpConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * 是否可以接收请求：有可用连接且未被摘除
+     */
+    public boolean isAvailable() {
+        return !isEjected() && pool.hasActiveConnection();
+    }
+
+    /**
+     * 是否有可用连接（不考虑摘除状态）
+     */
+    public boolean hasActiveConnection() {
+        return pool.hasActiveConnection();
+    }
+
+    public boolean isEjected() {
+        return ejectedUntil > System.currentTimeMillis();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 负载评分，越小越好：延迟EWMA ×（在途请求数 + 1）
+     */
+    public double score() {
+        return (getLatencyEwma() + 1) * (inFlight.get() + 1);
+    }
+
+    public synchronized double getLatencyEwma() {
+        return latencyEwma;
+    }
+
+    /**
+     * 请求发出
+     */
+    public void onStart() {
+        inFlight.incrementAndGet();
+        totalRequests.incrementAndGet();
+    }
+
+    /**
+     * 请求成功，更新延迟EWMA；延迟高于当前均值时直接取该值（peak EWMA），对延迟突增反应更快
+     */
+    public void onSuccess(long latencyNanos, long decayNanos) {
+        inFlight.decrementAndGet();
+        consecutiveFailures.set(0);
+        synchronized (this) {
+            long now = System.nanoTime();
+            double weight = Math.exp(-(double) (now - lastUpdateNanos) / decayNanos);
+            lastUpdateNanos = now;
+            if (latencyNanos > latencyEwma) {
+                latencyEwma = latencyNanos;
+            } else {
+                latencyEwma = latencyEwma * weight + latencyNanos * (1 - weight);
+            }
+        }
+    }
+
+    /**
+     * 请求失败（连接断开），连续失败达到阈值时摘除节点；建连失败不计入，没有可用连接的节点本身不会被选中
+     */
+    public void onFailure(int ejectThreshold, long ejectDurationMs) {
+        inFlight.decrementAndGet();
+        totalFailures.incrementAndGet();
+        if (consecutiveFailures.incrementAndGet() >= ejectThreshold && !isEjected()) {
+            ejectedUntil = System.currentTimeMillis() + ejectDurationMs;
+            ejections.incrementAndGet();
+            consecutiveFailures.set(0);
+            log.warn("Server endpoint {} ejected for {}ms after {} consecutive failures", getAddress(), ejectDurationMs, ejectThreshold);
+        }
+    }
+
+    /**
+     * 节点统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("address", getAddress());
+        stats.put("available", isAvailable());
+        stats.put("ejected", isEjected());
+        stats.put("latencyEwmaMicros", (long) (getLatencyEwma() / 1000));
+        stats.put("inFlight", inFlight.get());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("totalRequests", totalRequests.get());
+        stats.put("totalFailures", totalFailures.get());
+        stats.put("ejections", ejections.get());
+        stats.put("pool", pool.getStats());
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerEndpoint" + getAddress();
+    }
+}
@@ -3,7 +3,9 @@ package com.example.tcpclient.client;
 import com.example.tcpclient.codec.TcpProtocolDecoder;
 import com.example.tcpclient.codec.TcpProtocolEncoder;
 import com.example.tcpclient.handler.ClientHandler;
+import com.example.tcpclient.protocol.SerialGenerator;
 import com.example.tcpclient.protocol.TcpProtocol;
+import com.example.tcpclient.service.ClientConfig;
 import com.example.tcpclient.service.ClientConfigService;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
@@ -14,12 +16,36 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * TCP客户端
+ * 支持多个服务端节点，每个节点一个连接池，按负载均衡策略（延迟EWMA或一致性哈希）选择节点；
+ * 流式请求（文件传输）使用独立连接，不占用连接池；每个连接（含独立连接和重连建立的连接）建立后先签到再使用；
+ * 所有连接共用应用级的事件循环组，断开连接不会销毁IO线程；
+ * 服务端断开后连接池自动重连，幂等请求（签到、查询等）在断线期间进入有界缓冲区，重连后重放；
+ * 配置的幂等交易在响应慢时发送对冲请求（见RequestHedger）
  */
 @Slf4j
 @Component
@@ -28,149 +54,720 @@ public class TcpClient {
     @Autowired
     private ClientConfigService clientConfigService;
     
-    private EventLoopGroup group;
-    private Channel channel;
-    private ClientHandler clientHandler;
-    private final AtomicLong transactionSerialCounter = new AtomicLong(1);
+    @Autowired
+    private ClientEventLoopGroup clientEventLoopGroup;
+    
+    @Autowired
+    private MicroBatchTuner microBatchTuner;
+    
+    @Autowired
+    private RequestHedger requestHedger;
+    
+    @Autowired
+    private RequestTimer requestTimer;
+    
+    private volatile LoadBalancer loadBalancer;
+    private ScheduledFuture<?> healthCheckTask;
+    private SerialGenerator serialGenerator;
+    
+    // 断线期间等待重放的请求
+    private final Queue<ReplayRequest> replayBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger replayBufferCount = new AtomicInteger(0);
+    private final AtomicLong replayedRequests = new AtomicLong(0);
+    private final AtomicLong replayRejected = new AtomicLong(0);
+    private final AtomicLong timeoutClosedConnections = new AtomicLong(0);
     
     /**
-     * 连接到服务器
+     * 单个请求最多重放次数
      */
-    public CompletableFuture<Void> connect() {
+    private static final int MAX_REPLAY_ATTEMPTS = 3;
+    
+    // 分片键正则缓存
+    private volatile String shardKeyRegex;
+    private volatile Pattern shardKeyPattern;
+    
+    /**
+     * 连接到所有服务端节点（每个节点建立一个连接池），任一节点连接成功即完成；
+     * 之后连接断开会自动重连，直到调用disconnect
+     */
+    public synchronized CompletableFuture<Void> connect() {
         if (isConnected()) {
             return CompletableFuture.completedFuture(null);
         }
         
+        List<ServerEndpoint> endpoints = new ArrayList<>();
+        for (InetSocketAddress address : clientConfigService.getServerEndpoints()) {
+            endpoints.add(createEndpoint(address.getHostString(), address.getPort()));
+        }
+        LoadBalancer balancer = new LoadBalancer(endpoints, clientConfigService.getVirtualNodes());
+        loadBalancer = balancer;
+        
         CompletableFuture<Void> future = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger(0);
+        for (ServerEndpoint endpoint : endpoints) {
+            endpoint.getPool().start().whenComplete((v, throwable) -> {
+                if (throwable == null) {
+                    log.info("Connected to server {}, pool size: {}", endpoint.getAddress(), clientConfigService.getPoolSize());
+                    if (future.complete(null)) {
+                        startHealthCheck();
+                    }
+                } else {
+                    log.error("Failed to connect to server {}", endpoint.getAddress());
+                    if (failures.incrementAndGet() == endpoints.size()) {
+                        future.completeExceptionally(throwable);
+                        synchronized (this) {
+                            if (loadBalancer == balancer) {
+                                disconnect();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        
+        return future;
+    }
+    
+    private ServerEndpoint createEndpoint(String host, int port) {
+        ReconnectBackoff backoff = new ReconnectBackoff(clientConfigService.getReconnectBaseDelay(),
+                clientConfigService.getReconnectMaxDelay());
+        TcpConnectionPool pool = new TcpConnectionPool(() -> newSignedInConnection(host, port),
+                clientConfigService.getPoolSize(), clientConfigService.getPoolStrategy(),
+                clientEventLoopGroup.getGroup(), backoff);
+        pool.onConnectionAdded(this::drainReplayBuffer);
+        return new ServerEndpoint(host, port, pool);
+    }
+    
+    /**
+     * 定期健康检查各节点连接池：移除断开的连接，补足到目标大小
+     */
+    private void startHealthCheck() {
+        long interval = clientConfigService.getPoolHealthCheckInterval();
+        healthCheckTask = clientEventLoopGroup.getGroup().scheduleWithFixedDelay(() -> {
+            try {
+                LoadBalancer balancer = loadBalancer;
+                if (balancer == null) {
+                    return;
+                }
+                for (ServerEndpoint endpoint : balancer.getEndpoints()) {
+                    endpoint.getPool().maintain();
+                }
+                drainReplayBuffer();
+            } catch (Exception e) {
+                log.warn("Connection pool health check failed: {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    @PostConstruct
+    public void init() {
+        // 流水号的唯一性只由节点号区分，不推导默认值：未配置时拒绝启动
+        int nodeId = clientConfigService.getSerialNodeId();
+        if (nodeId < 0) {
+            throw new IllegalStateException("Serial node ID not configured: set tcp.client.serial.nodeId (0-"
+                    + SerialGenerator.MAX_NODE_ID + ") in client-config.json, unique among all clients of the same servers");
+        }
+        String serialDirectory = clientConfigService.getSerialDirectory();
+        Path stateFile = serialDirectory.isEmpty() ? null : Paths.get(serialDirectory, "node-" + nodeId + ".state");
+        serialGenerator = new SerialGenerator(nodeId, clientConfigService.getSerialMaxBorrowMillis(), stateFile);
+        clientConfigService.addListener(this::onConfigChanged);
+    }
+    
+    /**
+     * 配置文件变化时回调：服务端节点（host/port/servers）变化时重建节点列表，
+     * 连接池大小、选择策略和退避参数立即应用到各连接池
+     */
+    private synchronized void onConfigChanged(ClientConfig previous, ClientConfig current) {
+        LoadBalancer balancer = loadBalancer;
+        if (balancer == null) {
+            return;
+        }
         
-        group = new NioEventLoopGroup();
-        clientHandler = new ClientHandler();
+        if (!previous.getServerEndpoints().equals(current.getServerEndpoints())
+                || previous.getVirtualNodes() != current.getVirtualNodes()) {
+            balancer = updateEndpoints(balancer, current);
+        }
+        for (ServerEndpoint endpoint : balancer.getEndpoints()) {
+            TcpConnectionPool pool = endpoint.getPool();
+            pool.configure(current.getPoolSize(), current.getPoolStrategy());
+            pool.configureBackoff(current.getReconnectBaseDelay(), current.getReconnectMaxDelay());
+            pool.maintain();
+        }
+    }
+    
+    /**
+     * 按新配置重建节点列表：保留地址未变的节点及其连接池，为新节点建立连接池，关闭已移除节点的连接池
+     * （其上在途的幂等请求按连接断开处理并重放到其他节点）
+     */
+    private LoadBalancer updateEndpoints(LoadBalancer balancer, ClientConfig current) {
+        Map<String, ServerEndpoint> existing = new HashMap<>();
+        for (ServerEndpoint endpoint : balancer.getEndpoints()) {
+            existing.put(endpoint.getAddress(), endpoint);
+        }
         
-        try {
-            Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(group)
-                .channel(NioSocketChannel.class)
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, clientConfigService.getConnectTimeout())
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel ch) throws Exception {
-                        ChannelPipeline pipeline = ch.pipeline();
-                        
-                        // 添加编解码器
-                        pipeline.addLast(new TcpProtocolDecoder());
-                        pipeline.addLast(new TcpProtocolEncoder());
-                        
-                        // 添加业务处理器
-                        pipeline.addLast(clientHandler);
+        List<ServerEndpoint> endpoints = new ArrayList<>();
+        for (InetSocketAddress address : current.getServerEndpoints()) {
+            ServerEndpoint endpoint = existing.remove(address.getHostString() + ":" + address.getPort());
+            if (endpoint == null) {
+                endpoint = createEndpoint(address.getHostString(), address.getPort());
+                ServerEndpoint added = endpoint;
+                endpoint.getPool().start().whenComplete((v, throwable) -> {
+                    if (throwable == null) {
+                        log.info("Connected to server {}", added.getAddress());
+                    } else {
+                        log.error("Failed to connect to server {}, retrying in background", added.getAddress());
                     }
                 });
-            
-            ChannelFuture connectFuture = bootstrap.connect(clientConfigService.getTcpServerHost(), clientConfigService.getTcpServerPort());
-            connectFuture.addListener((ChannelFutureListener) channelFuture -> {
+            }
+            endpoints.add(endpoint);
+        }
+        
+        LoadBalancer updated = new LoadBalancer(endpoints, current.getVirtualNodes());
+        loadBalancer = updated;
+        for (ServerEndpoint removed : existing.values()) {
+            removed.getPool().close();
+        }
+        log.info("Server endpoints changed: {}", updated.getEndpoints());
+        return updated;
+    }
+    
+    /**
+     * 创建Bootstrap，每个连接使用独立的ClientHandler
+     */
+    private Bootstrap createBootstrap(EventLoopGroup eventLoopGroup) {
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(eventLoopGroup)
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, clientConfigService.getConnectTimeout())
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) throws Exception {
+                    ChannelPipeline pipeline = ch.pipeline();
+                    
+                    // 添加编解码器
+                    pipeline.addLast(new TcpProtocolDecoder());
+                    pipeline.addLast(new TcpProtocolEncoder());
+                    
+                    // 添加业务处理器
+                    pipeline.addLast(new ClientHandler(microBatchTuner));
+                }
+            });
+        return bootstrap;
+    }
+    
+    /**
+     * 到当前负载最低的节点建立一个额外连接（用于并行传输，已签到），由调用方负责关闭
+     */
+    public CompletableFuture<TcpConnection> openConnection() {
+        LoadBalancer balancer = loadBalancer;
+        ServerEndpoint endpoint = balancer != null ? balancer.selectByScore() : null;
+        if (endpoint == null) {
+            return CompletableFuture.failedFuture(new RuntimeException("Not connected to server"));
+        }
+        return newSignedInConnection(endpoint.getHost(), endpoint.getPort());
+    }
+    
+    /**
+     * 建立连接并在其上签到：服务端按连接登记会话，连接池的每个连接和独立连接都先签到再发送业务请求；
+     * 签到失败或超时时关闭连接
+     */
+    private CompletableFuture<TcpConnection> newSignedInConnection(String host, int port) {
+        return newConnection(host, port).thenCompose(this::signIn);
+    }
+    
+    private CompletableFuture<TcpConnection> signIn(TcpConnection connection) {
+        TcpProtocol.Message request;
+        try {
+            request = createSignInRequest(clientConfigService.getSignInData());
+        } catch (IllegalStateException e) {
+            connection.close();
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        CompletableFuture<TcpConnection> signedIn = new CompletableFuture<>();
+        requestTimer.schedule("SIGNIN", signedIn, connection::close);
+        connection.sendRequest(request).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                signedIn.completeExceptionally(throwable);
+            } else if (response.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS) {
+                signedIn.completeExceptionally(new RuntimeException(
+                        "Sign-in rejected: " + new String(response.getData(), StandardCharsets.UTF_8)));
+            } else {
+                signedIn.complete(connection);
+            }
+            if (signedIn.isCompletedExceptionally()) {
+                connection.close();
+            }
+        });
+        return signedIn;
+    }
+    
+    private CompletableFuture<TcpConnection> newConnection(String host, int port) {
+        if (!clientEventLoopGroup.isAvailable()) {
+            return CompletableFuture.failedFuture(new RuntimeException("Client is shutting down"));
+        }
+        return newConnection(clientEventLoopGroup.getGroup(), host, port);
+    }
+    
+    private CompletableFuture<TcpConnection> newConnection(EventLoopGroup eventLoopGroup, String host, int port) {
+        CompletableFuture<TcpConnection> future = new CompletableFuture<>();
+        createBootstrap(eventLoopGroup).connect(host, port)
+            .addListener((ChannelFutureListener) channelFuture -> {
                 if (channelFuture.isSuccess()) {
-                    channel = channelFuture.channel();
-                    log.info("Connected to server {}:{}", clientConfigService.getTcpServerHost(), clientConfigService.getTcpServerPort());
-                    future.complete(null);
+                    future.complete(new TcpConnection(channelFuture.channel()));
                 } else {
-                    log.error("Failed to connect to server {}:{}", clientConfigService.getTcpServerHost(), clientConfigService.getTcpServerPort());
                     future.completeExceptionally(channelFuture.cause());
-                    group.shutdownGracefully();
                 }
             });
-            
-        } catch (Exception e) {
-            log.error("Error connecting to server: {}", e.getMessage());
-            future.completeExceptionally(e);
-            if (group != null) {
-                group.shutdownGracefully();
+        return future;
+    }
+    
+    /**
+     * 断开连接
+     */
+    public synchronized CompletableFuture<Void> disconnect() {
+        LoadBalancer balancer = loadBalancer;
+        loadBalancer = null;
+        
+        if (healthCheckTask != null) {
+            healthCheckTask.cancel(false);
+            healthCheckTask = null;
+        }
+        
+        // 主动断开时不再重放
+        ReplayRequest replay;
+        while ((replay = replayBuffer.poll()) != null) {
+            replayBufferCount.decrementAndGet();
+            replay.result.completeExceptionally(new ConnectionClosedException("Disconnected from server"));
+        }
+        
+        if (balancer == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<Void>> closed = new ArrayList<>();
+        for (ServerEndpoint endpoint : balancer.getEndpoints()) {
+            closed.add(endpoint.getPool().close());
+        }
+        return CompletableFuture.allOf(closed.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((v, throwable) -> log.info("Disconnected from server"));
+    }
+    
+    /**
+     * 应用关闭时先关闭连接，事件循环组随后由ClientEventLoopGroup关闭
+     */
+    @PreDestroy
+    public void shutdown() {
+        disconnect().join();
+    }
+    
+    /**
+     * 建连延迟测试：对比共享事件循环组与每次新建事件循环组（旧实现）的建连耗时
+     */
+    public Map<String, Object> benchmarkConnect(int iterations) {
+        InetSocketAddress address = clientConfigService.getServerEndpoints().get(0);
+        String host = address.getHostString();
+        int port = address.getPort();
+        long[] shared = new long[iterations];
+        long[] dedicated = new long[iterations];
+        
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            TcpConnection connection = newConnection(host, port).join();
+            shared[i] = System.nanoTime() - start;
+            connection.close().join();
+        }
+        
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            EventLoopGroup eventLoopGroup = new NioEventLoopGroup();
+            try {
+                TcpConnection connection = newConnection(eventLoopGroup, host, port).join();
+                dedicated[i] = System.nanoTime() - start;
+                connection.close().join();
+            } finally {
+                eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
             }
         }
         
-        return future;
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("iterations", iterations);
+        result.put("sharedGroup", latencyStats(shared));
+        result.put("newGroupPerConnect", latencyStats(dedicated));
+        return result;
     }
     
     /**
-     * 断开连接
+     * 流水号生成基准测试：在当前线程上用独立的生成器（节点号和借用上限与当前配置相同）连续生成，
+     * 统计吞吐量并校验流水号严格递增
      */
-    public CompletableFuture<Void> disconnect() {
-        CompletableFuture<Void> future = new CompletableFuture<>();
+    public Map<String, Object> benchmarkSerial(int iterations) {
+        SerialGenerator generator = new SerialGenerator(serialGenerator.getNodeId(), clientConfigService.getSerialMaxBorrowMillis());
+        for (int i = 0; i < iterations; i++) {
+            generator.nextId();
+        }
         
-        if (channel != null && channel.isActive()) {
-            channel.close().addListener((ChannelFutureListener) channelFuture -> {
-                if (group != null) {
-                    group.shutdownGracefully().addListener(groupFuture -> {
-                        log.info("Disconnected from server");
-                        future.complete(null);
-                    });
-                } else {
-                    future.complete(null);
+        long previous = generator.nextId();
+        long violations = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long serial = generator.nextId();
+            if (serial <= previous) {
+                violations++;
+            }
+            previous = serial;
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", violations == 0);
+        result.put("iterations", iterations);
+        result.put("nsPerOp", (double) elapsed / iterations);
+        result.put("idsPerSecond", (long) (iterations * 1e9 / elapsed));
+        result.put("orderViolations", violations);
+        result.put("lastSerial", String.format("%020d", previous));
+        result.put("lastTimestamp", SerialGenerator.timestampOf(previous));
+        result.put("generator", generator.getStats());
+        return result;
+    }
+    
+    private Map<String, Object> latencyStats(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long value : sorted) {
+            total += value;
+        }
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("avgMicros", total / sorted.length / 1000);
+        stats.put("p50Micros", sorted[sorted.length / 2] / 1000);
+        stats.put("p99Micros", sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1000);
+        stats.put("maxMicros", sorted[sorted.length - 1] / 1000);
+        return stats;
+    }
+    
+    /**
+     * 检查是否已连接（已调用connect且未断开；自动重连期间也视为已连接，请求会等待重放）
+     */
+    public boolean isConnected() {
+        return loadBalancer != null;
+    }
+    
+    /**
+     * 是否正在自动重连（所有节点都没有可用连接）
+     */
+    public boolean isReconnecting() {
+        LoadBalancer balancer = loadBalancer;
+        return balancer != null && balancer.isReconnecting();
+    }
+    
+    /**
+     * 获取各节点及连接池状态
+     */
+    public Map<String, Object> getPoolStats() {
+        LoadBalancer balancer = loadBalancer;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loadBalanceStrategy", clientConfigService.getLoadBalanceStrategy());
+        stats.put("microBatch", microBatchTuner.getStats());
+        stats.put("hedge", requestHedger.getStats());
+        stats.put("endpoints", balancer != null ? balancer.getStats() : new ArrayList<>());
+        stats.put("replayBuffered", replayBufferCount.get());
+        stats.put("replayBufferSize", clientConfigService.getReplayBufferSize());
+        stats.put("replayedRequests", replayedRequests.get());
+        stats.put("replayRejected", replayRejected.get());
+        Map<String, Object> timeouts = requestTimer.getStats();
+        timeouts.put("closedConnections", timeoutClosedConnections.get());
+        stats.put("timeouts", timeouts);
+        stats.put("serial", serialGenerator.getStats());
+        return stats;
+    }
+    
+    /**
+     * 断开连接池中的所有连接以触发自动重连（用于测试）
+     */
+    public void dropConnections() {
+        LoadBalancer balancer = loadBalancer;
+        if (balancer != null) {
+            log.info("Dropping all pooled connections");
+            for (ServerEndpoint endpoint : balancer.getEndpoints()) {
+                endpoint.getPool().dropConnections();
+            }
+        }
+    }
+    
+    /**
+     * 选择节点和连接发送请求，连接断开时幂等请求进入重放缓冲区；
+     * 超时按交易码配置，从发出请求开始计算（包含等待重放的时间）
+     */
+    private CompletableFuture<TcpProtocol.Message> send(TcpProtocol.Message request) {
+        CompletableFuture<TcpProtocol.Message> result = new CompletableFuture<>();
+        ReplayRequest replay = new ReplayRequest(request, result, shardKey(request));
+        requestTimer.schedule(transactionCode(request), result, () -> expire(replay));
+        dispatch(replay, 0);
+        return result;
+    }
+    
+    /**
+     * 请求超时后清理关联状态：移出重放缓冲区；仍在连接上等待响应时关闭该连接。
+     * 响应按连接内顺序匹配，超时请求的响应迟迟不到会阻塞其后的所有请求，
+     * 关闭连接后其余请求按连接断开处理（幂等请求重放），连接池自动补充新连接
+     */
+    private void expire(ReplayRequest replay) {
+        if (replayBuffer.remove(replay)) {
+            replayBufferCount.decrementAndGet();
+            return;
+        }
+        
+        TcpConnection connection = replay.connection;
+        CompletableFuture<TcpProtocol.Message> pending = replay.pending;
+        if (connection != null && pending != null && !pending.isDone() && connection.isActive()) {
+            log.warn("Request {} timed out, closing connection {}", transactionCode(replay.request), connection.getInfo().get("localAddress"));
+            timeoutClosedConnections.incrementAndGet();
+            connection.close();
+        }
+    }
+    
+    private void dispatch(ReplayRequest replay, int attempt) {
+        if (replay.result.isDone()) {
+            // 等待重放期间已超时
+            return;
+        }
+        
+        LoadBalancer balancer = loadBalancer;
+        ServerEndpoint endpoint = balancer != null ? balancer.select(replay.shardKey) : null;
+        TcpConnection connection = endpoint != null ? endpoint.getPool().select() : null;
+        if (connection == null) {
+            handleSendFailure(replay, attempt, new ConnectionClosedException("Not connected to server"));
+            return;
+        }
+        
+        String transactionCode = replay.request.getRequestHeader().getTransactionCode();
+        long hedgeDelay = attempt == 0 ? requestHedger.onRequest(transactionCode) : -1;
+        ScheduledFuture<?> hedgeTask = hedgeDelay >= 0
+                ? clientEventLoopGroup.getGroup().schedule(() -> hedge(replay, endpoint, connection), hedgeDelay, TimeUnit.NANOSECONDS)
+                : null;
+        
+        long startTime = System.nanoTime();
+        endpoint.onStart();
+        CompletableFuture<TcpProtocol.Message> pending = connection.sendRequest(replay.request);
+        replay.connection = connection;
+        replay.pending = pending;
+        pending.whenComplete((response, throwable) -> {
+            if (hedgeTask != null) {
+                hedgeTask.cancel(false);
+            }
+            if (throwable == null) {
+                long latency = System.nanoTime() - startTime;
+                endpoint.onSuccess(latency, clientConfigService.getEwmaDecay() * 1_000_000L);
+                requestHedger.recordLatency(transactionCode, latency);
+                replay.result.complete(response);
+            } else {
+                endpoint.onFailure(clientConfigService.getEjectFailures(), clientConfigService.getEjectDuration());
+                handleSendFailure(replay, attempt, throwable);
+            }
+        });
+    }
+    
+    /**
+     * 对冲延迟内原请求未返回时，在另一个连接（优先另一个节点）上发送副本，先到的响应完成请求；
+     * 协议没有取消报文且响应按连接内顺序匹配，落后的响应仍会被读取，到达时直接丢弃
+     */
+    private void hedge(ReplayRequest replay, ServerEndpoint primaryEndpoint, TcpConnection primaryConnection) {
+        LoadBalancer balancer = loadBalancer;
+        if (replay.result.isDone() || balancer == null) {
+            return;
+        }
+        
+        ServerEndpoint endpoint = balancer.selectForHedge(primaryEndpoint);
+        TcpConnection connection = endpoint == primaryEndpoint
+                ? endpoint.getPool().selectExcluding(primaryConnection)
+                : endpoint.getPool().select();
+        if (connection == null || !requestHedger.tryAcquire()) {
+            return;
+        }
+        
+        long startTime = System.nanoTime();
+        endpoint.onStart();
+        connection.sendRequest(replay.request).whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                endpoint.onSuccess(System.nanoTime() - startTime, clientConfigService.getEwmaDecay() * 1_000_000L);
+                if (replay.result.complete(response)) {
+                    requestHedger.onHedgeWin();
                 }
-            });
-        } else {
-            if (group != null) {
-                group.shutdownGracefully().addListener(groupFuture -> {
-                    future.complete(null);
-                });
             } else {
-                future.complete(null);
+                // 对冲请求失败不影响原请求
+                endpoint.onFailure(clientConfigService.getEjectFailures(), clientConfigService.getEjectDuration());
             }
+        });
+    }
+    
+    /**
+     * 一致性哈希模式下从请求数据中提取分片键，签到请求和其他模式返回null
+     */
+    private String shardKey(TcpProtocol.Message request) {
+        if (request.getRequestHeader().getTransactionType() != TcpProtocol.TRANSACTION_TYPE_BUSINESS
+                || !LoadBalancer.STRATEGY_CONSISTENT_HASH.equals(clientConfigService.getLoadBalanceStrategy())) {
+            return null;
         }
         
-        return future;
+        String data = new String(request.getData(), StandardCharsets.UTF_8);
+        String regex = clientConfigService.getShardKeyPattern();
+        if (regex.isEmpty()) {
+            return data;
+        }
+        
+        Pattern pattern = shardKeyPattern;
+        if (!regex.equals(shardKeyRegex)) {
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                log.warn("Invalid shard key pattern {}: {}", regex, e.getMessage());
+                return data;
+            }
+            shardKeyPattern = pattern;
+            shardKeyRegex = regex;
+        }
+        
+        Matcher matcher = pattern.matcher(data);
+        if (!matcher.find()) {
+            return data;
+        }
+        return matcher.groupCount() > 0 && matcher.group(1) != null ? matcher.group(1) : matcher.group();
+    }
+    
+    private void handleSendFailure(ReplayRequest replay, int attempt, Throwable throwable) {
+        if (replay.result.isDone()) {
+            // 已超时或已由对冲请求完成
+            return;
+        }
+        
+        if (!(throwable instanceof ConnectionClosedException) || loadBalancer == null
+                || attempt >= MAX_REPLAY_ATTEMPTS || !isReplayable(replay.request)) {
+            replay.result.completeExceptionally(throwable);
+            return;
+        }
+        
+        if (replayBufferCount.incrementAndGet() > clientConfigService.getReplayBufferSize()) {
+            replayBufferCount.decrementAndGet();
+            replayRejected.incrementAndGet();
+            replay.result.completeExceptionally(new ConnectionClosedException("Replay buffer full: " + throwable.getMessage()));
+            return;
+        }
+        
+        replay.attempt = attempt + 1;
+        replayBuffer.add(replay);
+        
+        // 仍有可用连接（只是部分连接断开）时立即重放
+        LoadBalancer balancer = loadBalancer;
+        if (balancer != null && balancer.hasActiveConnection()) {
+            drainReplayBuffer();
+        }
     }
     
     /**
-     * 检查是否已连接
+     * 重放缓冲区中的请求；没有可用连接时只清理已超时的请求
      */
-    public boolean isConnected() {
-        return channel != null && channel.isActive();
+    private void drainReplayBuffer() {
+        LoadBalancer balancer = loadBalancer;
+        if (balancer == null || !balancer.hasActiveConnection()) {
+            replayBuffer.removeIf(replay -> {
+                if (replay.result.isDone()) {
+                    replayBufferCount.decrementAndGet();
+                    return true;
+                }
+                return false;
+            });
+            return;
+        }
+        
+        ReplayRequest replay;
+        while ((replay = replayBuffer.poll()) != null) {
+            replayBufferCount.decrementAndGet();
+            if (!replay.result.isDone()) {
+                replayedRequests.incrementAndGet();
+                dispatch(replay, replay.attempt);
+            }
+        }
+    }
+    
+    /**
+     * 是否为可重放的幂等请求
+     */
+    private boolean isReplayable(TcpProtocol.Message request) {
+        return clientConfigService.getReplayCodes().contains(transactionCode(request));
+    }
+    
+    /**
+     * 请求的交易码，签到请求为SIGNIN
+     */
+    private String transactionCode(TcpProtocol.Message request) {
+        TcpProtocol.RequestHeader header = request.getRequestHeader();
+        return header.getTransactionType() == TcpProtocol.TRANSACTION_TYPE_SIGNIN
+                ? "SIGNIN" : header.getTransactionCode();
     }
     
     /**
      * 发送签到请求
      */
     public CompletableFuture<TcpProtocol.Message> sendSignInRequest(String userData) {
-        if (!isConnected()) {
-            return CompletableFuture.failedFuture(new RuntimeException("Not connected to server"));
+        TcpProtocol.Message request;
+        try {
+            request = createSignInRequest(userData);
+        } catch (IllegalStateException e) {
+            return CompletableFuture.failedFuture(e);
         }
         
-        String transactionSerial = generateTransactionSerial();
+        return send(request);
+    }
+    
+    /**
+     * 创建签到请求报文（时钟回拨过大无法生成流水号时抛出IllegalStateException）
+     */
+    private TcpProtocol.Message createSignInRequest(String userData) {
         TcpProtocol.RequestHeader requestHeader = new TcpProtocol.RequestHeader(
                 clientConfigService.getSenderNodeId(),
                 "SERVER",
                 TcpProtocol.TRANSACTION_TYPE_SIGNIN,
                 "SIGNIN",
-                transactionSerial
+                serialGenerator.nextId()
         );
-        
-        TcpProtocol.Message request = new TcpProtocol.Message(requestHeader, userData.getBytes());
-        
-        return clientHandler.sendRequest(channel.pipeline().context(clientHandler), request)
-                .orTimeout(30, TimeUnit.SECONDS);
+        return new TcpProtocol.Message(requestHeader, userData.getBytes());
     }
     
     /**
      * 发送业务请求
      */
     public CompletableFuture<TcpProtocol.Message> sendBusinessRequest(String transactionCode, String data) {
-        if (!isConnected()) {
-            return CompletableFuture.failedFuture(new RuntimeException("Not connected to server"));
+        TcpProtocol.Message request;
+        try {
+            request = createBusinessRequest(transactionCode, data.getBytes());
+        } catch (IllegalStateException e) {
+            return CompletableFuture.failedFuture(e);
         }
         
-        String transactionSerial = generateTransactionSerial();
-        TcpProtocol.RequestHeader requestHeader = new TcpProtocol.RequestHeader(
-                clientConfigService.getSenderNodeId(),
-                "SERVER",
-                TcpProtocol.TRANSACTION_TYPE_BUSINESS,
-                transactionCode,
-                transactionSerial
-        );
-        
-        TcpProtocol.Message request = new TcpProtocol.Message(requestHeader, data.getBytes());
+        return send(request);
+    }
+    
+    /**
+     * 发送流式请求（一个请求对应多个响应帧），使用独立连接（已签到），完成后关闭；
+     * 整个流的超时按交易码配置（见tcp.client.timeout.codes），超时时关闭连接
+     */
+    public CompletableFuture<TcpProtocol.Message> sendStreamingRequest(String transactionCode, byte[] data,
+                                                                     Predicate<TcpProtocol.Message> frameConsumer) {
+        TcpProtocol.Message request;
+        try {
+            request = createBusinessRequest(transactionCode, data);
+        } catch (IllegalStateException e) {
+            return CompletableFuture.failedFuture(e);
+        }
         
-        return clientHandler.sendRequest(channel.pipeline().context(clientHandler), request)
-                .orTimeout(60, TimeUnit.SECONDS);
+        return openConnection().thenCompose(connection -> {
+            CompletableFuture<TcpProtocol.Message> result = connection.sendStreamingRequest(request, frameConsumer);
+            requestTimer.schedule(transactionCode, result, connection::close);
+            return result.whenComplete((response, throwable) -> connection.close());
+        });
     }
     
     /**
@@ -195,9 +792,36 @@ public class TcpClient {
     }
     
     /**
-     * 生成交易流水号
+     * 创建业务请求报文（时钟回拨过大无法生成流水号时抛出IllegalStateException）
      */
-    private String generateTransactionSerial() {
-        return String.format("%020d", transactionSerialCounter.getAndIncrement());
+    public TcpProtocol.Message createBusinessRequest(String transactionCode, byte[] data) {
+        TcpProtocol.RequestHeader requestHeader = new TcpProtocol.RequestHeader(
+                clientConfigService.getSenderNodeId(),
+                "SERVER",
+                TcpProtocol.TRANSACTION_TYPE_BUSINESS,
+                transactionCode,
+                serialGenerator.nextId()
+        );
+        return new TcpProtocol.Message(requestHeader, data);
+    }
+    
+    /**
+     * 等待发送或重放的请求
+     */
+    private static class ReplayRequest {
+        
+        private final TcpProtocol.Message request;
+        private final CompletableFuture<TcpProtocol.Message> result;
+        private final String shardKey;
+        private int attempt;
+        // 当前发送所在的连接及其等待响应的future，超时清理时使用
+        private volatile TcpConnection connection;
+        private volatile CompletableFuture<TcpProtocol.Message> pending;
+        
+        ReplayRequest(TcpProtocol.Message request, CompletableFuture<TcpProtocol.Message> result, String shardKey) {
+            this.request = request;
+            this.result = result;
+            this.shardKey = shardKey;
+        }
     }
 }
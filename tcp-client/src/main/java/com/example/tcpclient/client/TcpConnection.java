@@ -0,0 +1,103 @@
+package com.example.tcpclient.client;
+
+import com.example.tcpclient.handler.ClientHandler;
+import com.example.tcpclient.protocol.TcpProtocol;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 到服务器的单个TCP连接
+ * 封装Channel及其ClientHandler，支持在同一连接上流水线发送多个请求
+ */
+public class TcpConnection {
+
+    private final Channel channel;
+    private final ClientHandler clientHandler;
+    private final AtomicLong totalRequests = new AtomicLong(0);
+
+    TcpConnection(Channel channel) {
+        this.channel = channel;
+        this.clientHandler = channel.pipeline().get(ClientHandler.class);
+    }
+
+    /**
+     * 连接是否可用
+     */
+    public boolean isActive() {
+        return channel.isActive();
+    }
+
+    /**
+     * 尚未收到响应的请求数
+     */
+    public int getInFlight() {
+        return clientHandler.getInFlight();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    /**
+     * 连接关闭时回调
+     */
+    public void onClose(Runnable callback) {
+        channel.closeFuture().addListener(future -> callback.run());
+    }
+
+    /**
+     * 发送请求并等待响应
+     */
+    public CompletableFuture<TcpProtocol.Message> sendRequest(TcpProtocol.Message request) {
+        if (!isActive()) {
+            return CompletableFuture.failedFuture(new ConnectionClosedException("Connection closed"));
+        }
+        totalRequests.incrementAndGet();
+        return clientHandler.sendRequest(channel.pipeline().context(clientHandler), request);
+    }
+
+    /**
+     * 发送流式请求，每个响应帧交给frameConsumer处理，frameConsumer返回true表示最后一帧
+     */
+    public CompletableFuture<TcpProtocol.Message> sendStreamingRequest(TcpProtocol.Message request,
+                                                                     Predicate<TcpProtocol.Message> frameConsumer) {
+        if (!isActive()) {
+            return CompletableFuture.failedFuture(new ConnectionClosedException("Connection closed"));
+        }
+        totalRequests.incrementAndGet();
+        return clientHandler.sendStreamingRequest(channel.pipeline().context(clientHandler), request, frameConsumer);
+    }
+
+    /**
+     * 关闭连接
+     */
+    public CompletableFuture<Void> close() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.close().addListener((ChannelFutureListener) channelFuture -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * 连接信息
+     */
+    public Map<String, Object> getInfo() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("localAddress", String.valueOf(channel.localAddress()));
+        info.put("remoteAddress", String.valueOf(channel.remoteAddress()));
+        info.put("active", isActive());
+        info.put("inFlight", getInFlight());
+        info.put("totalRequests", totalRequests.get());
+        return info;
+    }
+
+    @Override
+    public String toString() {
+        return "TcpConnection" + channel.localAddress();
+    }
+}
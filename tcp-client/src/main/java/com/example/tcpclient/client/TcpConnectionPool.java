@@ -0,0 +1,340 @@
+package com.example.tcpclient.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * TCP连接池
+ * 维护到服务器的多个长连接，按最少在途请求数（least-in-flight）或随机二选一（p2c）选择连接；
+ * 定期健康检查：移除已断开的连接、补足或收缩到目标大小（目标大小可在运行时调整）；
+ * 连接断开后按带抖动的指数退避自动重连，重连成功时通知监听器（用于重放断线期间的请求）
+ */
+@Slf4j
+public class TcpConnectionPool {
+
+    public static final String STRATEGY_LEAST_IN_FLIGHT = "least-in-flight";
+    public static final String STRATEGY_P2C = "p2c";
+
+    private final Supplier<CompletableFuture<TcpConnection>> connectionFactory;
+    private final List<TcpConnection> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pendingConnects = new AtomicInteger(0);
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+    private final ScheduledExecutorService scheduler;
+    private final ReconnectBackoff backoff;
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean(false);
+    private final AtomicLong reconnects = new AtomicLong(0);
+    private final AtomicLong reconnectFailures = new AtomicLong(0);
+    private final List<Runnable> connectionListeners = new CopyOnWriteArrayList<>();
+
+    private volatile int targetSize;
+    private volatile String strategy;
+    private volatile boolean closed;
+    private volatile long lastDisconnectTime;
+
+    public TcpConnectionPool(Supplier<CompletableFuture<TcpConnection>> connectionFactory, int targetSize, String strategy,
+                             ScheduledExecutorService scheduler, ReconnectBackoff backoff) {
+        this.connectionFactory = connectionFactory;
+        this.targetSize = Math.max(1, targetSize);
+        this.strategy = strategy;
+        this.scheduler = scheduler;
+        this.backoff = backoff;
+    }
+
+    /**
+     * 新连接建立时回调
+     */
+    public void onConnectionAdded(Runnable listener) {
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * 建立初始连接，至少一个连接成功即完成
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger(0);
+        int initialSize = targetSize;
+
+        for (int i = 0; i < initialSize; i++) {
+            addConnection().whenComplete((connection, throwable) -> {
+                if (throwable == null) {
+                    started.complete(null);
+                } else if (failures.incrementAndGet() == initialSize) {
+                    // 全部失败时继续在后台按退避重连，直到连接池被关闭
+                    scheduleReconnect();
+                    started.completeExceptionally(throwable);
+                }
+            });
+        }
+        return started;
+    }
+
+    /**
+     * 选择一个连接，没有可用连接时返回null
+     * 空闲连接存在时总会被选中（p2c在连接数较多时近似如此）
+     */
+    public TcpConnection select() {
+        List<TcpConnection> snapshot = connections;
+        int size = snapshot.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            TcpConnection connection = snapshot.get(0);
+            return connection.isActive() ? connection : null;
+        }
+
+        if (STRATEGY_P2C.equals(strategy)) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            TcpConnection a = snapshot.get(first);
+            TcpConnection b = snapshot.get(second);
+            if (a.isActive() && (!b.isActive() || a.getInFlight() <= b.getInFlight())) {
+                return a;
+            }
+            if (b.isActive()) {
+                return b;
+            }
+        }
+
+        // 从轮转起点开始扫描，在途数相同时分散到不同连接
+        int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+        TcpConnection best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            TcpConnection connection = snapshot.get((start + i) % size);
+            if (!connection.isActive()) {
+                continue;
+            }
+            int inFlight = connection.getInFlight();
+            if (inFlight < bestInFlight) {
+                best = connection;
+                bestInFlight = inFlight;
+                if (inFlight == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 选择除指定连接外在途请求最少的连接（对冲请求使用），没有时返回null
+     */
+    public TcpConnection selectExcluding(TcpConnection excluded) {
+        TcpConnection best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (TcpConnection connection : connections) {
+            if (connection == excluded || !connection.isActive()) {
+                continue;
+            }
+            int inFlight = connection.getInFlight();
+            if (inFlight < bestInFlight) {
+                best = connection;
+                bestInFlight = inFlight;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 调整目标大小和选择策略
+     */
+    public void configure(int targetSize, String strategy) {
+        int size = Math.max(1, targetSize);
+        if (size != this.targetSize || !strategy.equals(this.strategy)) {
+            log.info("Connection pool reconfigured: size {} -> {}, strategy {} -> {}", this.targetSize, size, this.strategy, strategy);
+        }
+        this.targetSize = size;
+        this.strategy = strategy;
+    }
+
+    /**
+     * 调整重连退避参数
+     */
+    public void configureBackoff(long baseDelay, long maxDelay) {
+        backoff.configure(baseDelay, maxDelay);
+    }
+
+    /**
+     * 健康检查：移除已断开的连接，按目标大小补充（经退避调度）或关闭多余的空闲连接
+     */
+    public void maintain() {
+        if (closed) {
+            return;
+        }
+
+        connections.removeIf(connection -> !connection.isActive());
+
+        if (targetSize - connections.size() - pendingConnects.get() > 0) {
+            scheduleReconnect();
+        }
+
+        int excess = connections.size() - targetSize;
+        for (TcpConnection connection : connections) {
+            if (excess <= 0) {
+                break;
+            }
+            if (connection.getInFlight() == 0 && connections.remove(connection)) {
+                connection.close();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * 按退避延迟调度一次重连，同一时间最多只有一个重连任务
+     */
+    private void scheduleReconnect() {
+        if (closed || !reconnectScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = backoff.nextDelay();
+        log.debug("Scheduling reconnect in {}ms (attempt {})", delay, backoff.getAttempt());
+        try {
+            scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // 事件循环组正在关闭
+            reconnectScheduled.set(false);
+        }
+    }
+
+    private void reconnect() {
+        reconnectScheduled.set(false);
+        if (closed) {
+            return;
+        }
+
+        int missing = targetSize - connections.size() - pendingConnects.get();
+        if (missing <= 0) {
+            backoff.reset();
+            return;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(missing);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        for (int i = 0; i < missing; i++) {
+            addConnection().whenComplete((connection, throwable) -> {
+                if (throwable != null) {
+                    failed.set(true);
+                    reconnectFailures.incrementAndGet();
+                } else {
+                    reconnects.incrementAndGet();
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    if (failed.get()) {
+                        scheduleReconnect();
+                    } else {
+                        backoff.reset();
+                    }
+                }
+            });
+        }
+    }
+
+    private CompletableFuture<TcpConnection> addConnection() {
+        pendingConnects.incrementAndGet();
+        return connectionFactory.get().whenComplete((connection, throwable) -> {
+            pendingConnects.decrementAndGet();
+            if (throwable != null) {
+                log.warn("Failed to open pooled connection: {}", throwable.getMessage());
+                return;
+            }
+            if (closed) {
+                connection.close();
+                return;
+            }
+            connections.add(connection);
+            connection.onClose(() -> {
+                if (connections.remove(connection)) {
+                    log.info("Pooled connection closed: {}", connection);
+                    lastDisconnectTime = System.currentTimeMillis();
+                    scheduleReconnect();
+                }
+            });
+            for (Runnable listener : connectionListeners) {
+                listener.run();
+            }
+        });
+    }
+
+    public boolean hasActiveConnection() {
+        return connections.stream().anyMatch(TcpConnection::isActive);
+    }
+
+    /**
+     * 是否正在等待重连（没有可用连接但连接池未关闭）
+     */
+    public boolean isReconnecting() {
+        return !closed && !hasActiveConnection();
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * 断开所有连接但不关闭连接池（模拟服务端重启，随后自动重连）
+     */
+    public void dropConnections() {
+        for (TcpConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 关闭所有连接
+     */
+    public CompletableFuture<Void> close() {
+        closed = true;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (TcpConnection connection : connections) {
+            futures.add(connection.close());
+        }
+        connections.clear();
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * 连接池统计信息
+     */
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> connectionInfos = new ArrayList<>();
+        int totalInFlight = 0;
+        for (TcpConnection connection : connections) {
+            connectionInfos.add(connection.getInfo());
+            totalInFlight += connection.getInFlight();
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", connections.size());
+        stats.put("targetSize", targetSize);
+        stats.put("pendingConnects", pendingConnects.get());
+        stats.put("strategy", strategy);
+        stats.put("inFlight", totalInFlight);
+        stats.put("reconnecting", isReconnecting());
+        stats.put("reconnectAttempt", backoff.getAttempt());
+        stats.put("reconnects", reconnects.get());
+        stats.put("reconnectFailures", reconnectFailures.get());
+        stats.put("lastDisconnectTime", lastDisconnectTime);
+        stats.put("connections", connectionInfos);
+        return stats;
+    }
+}
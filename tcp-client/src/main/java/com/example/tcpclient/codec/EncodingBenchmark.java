@@ -0,0 +1,118 @@
+package com.example.tcpclient.codec;
+
+import com.example.tcpclient.protocol.TcpProtocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 请求编码基准测试
+ * 在当前线程上对比旧实现（String.format生成流水号、各字段getBytes后补齐、先转为字节数组再写入）
+ * 与当前实现（数字流水号、预编码字段直接写入缓冲区）编码一个请求的耗时（ns/op）和内存分配（bytes/op）。
+ * 两种实现都包含创建请求报文对象，输出缓冲区在迭代间复用（与编码器按报文长度从池中分配一致）
+ */
+public class EncodingBenchmark {
+
+    private static final byte[] DATA = "benchmark".getBytes();
+
+    private final String senderNodeId;
+    private long serial = 1;
+    private long sink;
+
+    public EncodingBenchmark(String senderNodeId) {
+        this.senderNodeId = senderNodeId;
+    }
+
+    /**
+     * 先各预热iterations次，再分别测量iterations次
+     */
+    public Map<String, Object> run(int iterations) {
+        ByteBuf out = Unpooled.directBuffer(TcpProtocol.REQUEST_HEADER_LENGTH + TcpProtocol.LENGTH_FIELD_LENGTH + DATA.length);
+        try {
+            measure(iterations, out, true);
+            measure(iterations, out, false);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("iterations", iterations);
+            result.put("legacy", measure(iterations, out, true));
+            result.put("current", measure(iterations, out, false));
+            result.put("checksum", sink);
+            return result;
+        } finally {
+            out.release();
+        }
+    }
+
+    private Map<String, Object> measure(int iterations, ByteBuf out, boolean legacy) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            out.clear();
+            if (legacy) {
+                encodeLegacy(out);
+            } else {
+                encode(out);
+            }
+            sink += out.getByte(TcpProtocol.REQUEST_HEADER_LENGTH - 3);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBefore >= 0 ? allocatedBytes() - allocatedBefore : -1;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nsPerOp", (double) elapsed / iterations);
+        stats.put("bytesPerOp", allocated >= 0 ? (double) allocated / iterations : -1);
+        return stats;
+    }
+
+    private void encode(ByteBuf out) {
+        TcpProtocol.RequestHeader header = new TcpProtocol.RequestHeader(
+                senderNodeId, "SERVER", TcpProtocol.TRANSACTION_TYPE_BUSINESS, "QUERY", serial++);
+        new TcpProtocol.Message(header, DATA).writeTo(out);
+    }
+
+    /**
+     * 旧实现：流水号格式化为字符串，header和报文各转换一次字节数组
+     */
+    private void encodeLegacy(ByteBuf out) {
+        String transactionSerial = String.format("%020d", serial++);
+        TcpProtocol.RequestHeader header = new TcpProtocol.RequestHeader(
+                senderNodeId, "SERVER", TcpProtocol.TRANSACTION_TYPE_BUSINESS, "QUERY", transactionSerial);
+        TcpProtocol.Message message = new TcpProtocol.Message(header, DATA);
+
+        ByteBuffer headerBuffer = ByteBuffer.allocate(TcpProtocol.REQUEST_HEADER_LENGTH);
+        headerBuffer.put(padToLength(header.getSenderNodeId().getBytes(), TcpProtocol.NODE_ID_LENGTH));
+        headerBuffer.put(padToLength(header.getReceiverNodeId().getBytes(), TcpProtocol.NODE_ID_LENGTH));
+        headerBuffer.put(header.getTransactionType());
+        headerBuffer.put(padToLength(header.getTransactionCode().getBytes(), TcpProtocol.TRANSACTION_CODE_LENGTH));
+        headerBuffer.put(padToLength(header.getTransactionSerial().getBytes(), TcpProtocol.TRANSACTION_SERIAL_LENGTH));
+        headerBuffer.put(header.getReserved());
+
+        ByteBuffer messageBuffer = ByteBuffer.allocate(message.getLength());
+        messageBuffer.put(headerBuffer.array());
+        messageBuffer.putInt(message.getLength());
+        messageBuffer.put(message.getData());
+        out.writeBytes(messageBuffer.array());
+    }
+
+    private static byte[] padToLength(byte[] bytes, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, 0, result, 0, Math.min(bytes.length, length));
+        return result;
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM不支持时返回-1
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean
+                && threadMXBean.isThreadAllocatedMemorySupported()) {
+            return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -9,20 +9,24 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * TCP协议消息编码器
  * 协议格式：header + length + data
+ * 按报文长度一次分配输出缓冲区，header和数据直接写入，不经过中间字节数组
  */
 @Slf4j
 public class TcpProtocolEncoder extends MessageToByteEncoder<TcpProtocol.Message> {
     
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, TcpProtocol.Message msg, boolean preferDirect) {
+        return preferDirect ? ctx.alloc().ioBuffer(msg.getLength()) : ctx.alloc().heapBuffer(msg.getLength());
+    }
+    
     @Override
     protected void encode(ChannelHandlerContext ctx, TcpProtocol.Message msg, ByteBuf out) throws Exception {
         try {
-            // 将消息转换为字节数组
-            byte[] messageBytes = msg.toBytes();
-            
-            // 写入ByteBuf
-            out.writeBytes(messageBytes);
+            msg.writeTo(out);
             
-            log.debug("Encoded message: length={}, isRequest={}", msg.getLength(), msg.isRequest());
+            if (log.isDebugEnabled()) {
+                log.debug("Encoded message: length={}, isRequest={}", msg.getLength(), msg.isRequest());
+            }
             
         } catch (Exception e) {
             log.error("Error encoding message: {}", e.getMessage());
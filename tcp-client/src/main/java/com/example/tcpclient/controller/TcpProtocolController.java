@@ -1,12 +1,19 @@
 package com.example.tcpclient.controller;
 
 import com.example.tcpclient.service.TcpProtocolClientService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -18,9 +25,19 @@ import java.util.concurrent.CompletableFuture;
 @RequestMapping("/api/tcp")
 public class TcpProtocolController {
     
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    
+    /**
+     * 流式批量响应超时（毫秒）
+     */
+    private static final long BATCH_STREAM_TIMEOUT = 300000;
+    
     @Autowired
     private TcpProtocolClientService tcpProtocolClientService;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     /**
      * 连接到服务器
      */
@@ -68,9 +85,145 @@ public class TcpProtocolController {
     public ResponseEntity<Map<String, Object>> getStatus() {
         Map<String, Object> response = new HashMap<>();
         response.put("connected", tcpProtocolClientService.isConnected());
+        response.put("reconnecting", tcpProtocolClientService.isReconnecting());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 连接池状态
+     */
+    @GetMapping("/pool")
+    public ResponseEntity<Map<String, Object>> getPoolStats() {
+        return ResponseEntity.ok(tcpProtocolClientService.getPoolStats());
+    }
+    
+    /**
+     * 响应缓存统计信息（命中率等）
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(tcpProtocolClientService.getCacheStats());
+    }
+    
+    /**
+     * 相同请求合并统计信息（节省的请求数）
+     */
+    @GetMapping("/coalesce")
+    public ResponseEntity<Map<String, Object>> getCoalesceStats() {
+        return ResponseEntity.ok(tcpProtocolClientService.getCoalesceStats());
+    }
+    
+    /**
+     * 清空响应缓存
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<Map<String, Object>> invalidateCache() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("invalidated", tcpProtocolClientService.invalidateCache());
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 建连延迟测试：对比共享事件循环组与每次新建事件循环组，iterations默认50
+     */
+    @PostMapping("/connect/benchmark")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> connectBenchmark(@RequestBody(required = false) Map<String, Object> request) {
+        Object iterations = request != null ? request.getOrDefault("iterations", 50) : 50;
+        
+        if (!(iterations instanceof Integer) || (Integer) iterations <= 0) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Iterations must be a positive integer");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!tcpProtocolClientService.isConnected()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not connected to server");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.connectBenchmark((Integer) iterations)
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
+    /**
+     * 流水号生成基准测试：单线程连续生成iterations个流水号（默认10000000），统计吞吐量并校验递增
+     */
+    @PostMapping("/serial/benchmark")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> serialBenchmark(@RequestBody(required = false) Map<String, Object> request) {
+        Object iterations = request != null ? request.getOrDefault("iterations", 10000000) : 10000000;
+        
+        if (!(iterations instanceof Integer) || (Integer) iterations <= 0) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Iterations must be a positive integer");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.serialBenchmark((Integer) iterations)
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
+    /**
+     * 请求编码基准测试：对比旧编码实现与当前实现的ns/op和bytes/op，iterations默认1000000
+     */
+    @PostMapping("/encode/benchmark")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> encodeBenchmark(@RequestBody(required = false) Map<String, Object> request) {
+        Object iterations = request != null ? request.getOrDefault("iterations", 1000000) : 1000000;
+        
+        if (!(iterations instanceof Integer) || (Integer) iterations <= 0) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Iterations must be a positive integer");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.encodeBenchmark((Integer) iterations)
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
+    /**
+     * 查询负载测试：按时间片统计吞吐量，测试期间可重启服务端，或用dropAtMs在指定时间主动断开所有连接
+     */
+    @PostMapping("/load-test")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> loadTest(@RequestBody(required = false) Map<String, Object> request) {
+        Map<String, Object> params = request != null ? request : new HashMap<>();
+        Object durationMs = params.getOrDefault("durationMs", 10000);
+        Object concurrency = params.getOrDefault("concurrency", 16);
+        Object bucketMs = params.getOrDefault("bucketMs", 250);
+        Object dropAtMs = params.getOrDefault("dropAtMs", 0);
+        
+        if (!(durationMs instanceof Integer) || !(concurrency instanceof Integer) || !(bucketMs instanceof Integer)
+                || !(dropAtMs instanceof Integer) || (Integer) durationMs <= 0 || (Integer) concurrency <= 0
+                || (Integer) bucketMs <= 0 || (Integer) dropAtMs < 0) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "durationMs, concurrency and bucketMs must be positive integers, dropAtMs must not be negative");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!tcpProtocolClientService.isConnected()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not connected to server");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.queryLoadTest((Integer) durationMs, (Integer) concurrency, (Integer) bucketMs, (Integer) dropAtMs)
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
     /**
      * 发送签到请求
      */
@@ -227,6 +380,273 @@ public class TcpProtocolController {
                 });
     }
     
+    /**
+     * 批量请求：requests为{transactionCode, data}数组，所有请求通过连接池流水线发送，结果按请求顺序返回
+     */
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> batch(@RequestBody Map<String, Object> request) {
+        List<Map<String, String>> requests = new ArrayList<>();
+        ResponseEntity<Map<String, Object>> invalid = parseBatchRequests(request, requests);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(invalid);
+        }
+        
+        long startTime = System.currentTimeMillis();
+        List<CompletableFuture<Map<String, Object>>> futures = tcpProtocolClientService.batch(requests);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    List<Map<String, Object>> results = new ArrayList<>(futures.size());
+                    int succeeded = 0;
+                    for (CompletableFuture<Map<String, Object>> future : futures) {
+                        Map<String, Object> result = future.join();
+                        if (Boolean.TRUE.equals(result.get("success"))) {
+                            succeeded++;
+                        }
+                        results.add(result);
+                    }
+                    
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("count", results.size());
+                    response.put("succeeded", succeeded);
+                    response.put("elapsedMs", System.currentTimeMillis() - startTime);
+                    response.put("results", results);
+                    return ResponseEntity.ok(response);
+                });
+    }
+    
+    /**
+     * 流式批量请求（NDJSON）：每行一个结果，按请求顺序输出，前面的结果不必等待整个批次完成
+     */
+    @PostMapping(value = "/batch", params = "stream=true")
+    public ResponseEntity<ResponseBodyEmitter> batchStream(@RequestBody Map<String, Object> request) throws IOException {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(BATCH_STREAM_TIMEOUT);
+        List<Map<String, String>> requests = new ArrayList<>();
+        ResponseEntity<Map<String, Object>> invalid = parseBatchRequests(request, requests);
+        if (invalid != null) {
+            emitter.send(objectMapper.writeValueAsString(invalid.getBody()) + "\n", NDJSON);
+            emitter.complete();
+            return ResponseEntity.badRequest().contentType(NDJSON).body(emitter);
+        }
+        
+        List<CompletableFuture<Map<String, Object>>> futures = tcpProtocolClientService.batch(requests);
+        
+        // 依次等待每个结果，保证输出顺序与请求顺序一致
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (CompletableFuture<Map<String, Object>> future : futures) {
+            chain = chain.thenCompose(v -> future).thenAccept(result -> {
+                try {
+                    emitter.send(objectMapper.writeValueAsString(result) + "\n", NDJSON);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        chain.whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                log.warn("Batch stream aborted: {}", throwable.getMessage());
+                emitter.completeWithError(throwable);
+            } else {
+                emitter.complete();
+            }
+        });
+        
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+    
+    /**
+     * 校验并解析批量请求，返回null表示校验通过
+     */
+    private ResponseEntity<Map<String, Object>> parseBatchRequests(Map<String, Object> request, List<Map<String, String>> requests) {
+        String error = null;
+        Object items = request.get("requests");
+        if (!(items instanceof List) || ((List<?>) items).isEmpty()) {
+            error = "Requests must be a non-empty array";
+        } else if (((List<?>) items).size() > tcpProtocolClientService.getBatchMaxSize()) {
+            error = "Too many requests in batch, max " + tcpProtocolClientService.getBatchMaxSize();
+        } else {
+            for (Object item : (List<?>) items) {
+                Object transactionCode = item instanceof Map ? ((Map<?, ?>) item).get("transactionCode") : null;
+                if (transactionCode == null || transactionCode.toString().trim().isEmpty()) {
+                    error = "Transaction code is required for every request";
+                    break;
+                }
+                Object data = ((Map<?, ?>) item).get("data");
+                Map<String, String> parsed = new HashMap<>();
+                parsed.put("transactionCode", transactionCode.toString());
+                parsed.put("data", data != null ? data.toString() : "");
+                requests.add(parsed);
+            }
+        }
+        
+        if (error == null && !tcpProtocolClientService.isConnected()) {
+            error = "Not connected to server";
+        }
+        if (error == null) {
+            return null;
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", error);
+        return ResponseEntity.badRequest().body(response);
+    }
+    
+    /**
+     * 增量同步文件（rsync算法）
+     */
+    @PostMapping("/delta-sync")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> deltaSync(@RequestBody Map<String, String> request) {
+        String fileName = request.get("fileName");
+        
+        if (fileName == null || fileName.trim().isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "File name is required");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!tcpProtocolClientService.isConnected()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not connected to server");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.deltaSync(fileName)
+                .thenApply(result -> ResponseEntity.ok(result))
+                .exceptionally(throwable -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", false);
+                    response.put("message", "Delta sync failed: " + throwable.getMessage());
+                    return ResponseEntity.badRequest().body(response);
+                });
+    }
+    
+    /**
+     * 多连接并行下载文件
+     */
+    @PostMapping("/parallel-download")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> parallelDownload(@RequestBody Map<String, Object> request) {
+        Object fileName = request.get("fileName");
+        Object connections = request.get("connections");
+        
+        if (fileName == null || fileName.toString().trim().isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "File name is required");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (connections != null && !(connections instanceof Integer && (Integer) connections > 0)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Connections must be a positive integer");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!tcpProtocolClientService.isConnected()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not connected to server");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.parallelDownload(fileName.toString(), (Integer) connections)
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
+    /**
+     * 并行下载吞吐量对比，connections为连接数列表，默认[1, 2, 4, 8]
+     */
+    @PostMapping("/parallel-download/benchmark")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> parallelDownloadBenchmark(@RequestBody Map<String, Object> request) {
+        Object fileName = request.get("fileName");
+        Object connections = request.getOrDefault("connections", List.of(1, 2, 4, 8));
+        
+        if (fileName == null || fileName.toString().trim().isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "File name is required");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        List<Integer> connectionCounts = new ArrayList<>();
+        if (connections instanceof List) {
+            for (Object count : (List<?>) connections) {
+                if (count instanceof Integer && (Integer) count > 0) {
+                    connectionCounts.add((Integer) count);
+                }
+            }
+        }
+        if (connectionCounts.isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Connections must be a list of positive integers");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!tcpProtocolClientService.isConnected()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not connected to server");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.parallelDownloadBenchmark(fileName.toString(), connectionCounts)
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
+    /**
+     * 批量打包下载：patterns为文件名或glob列表，format为stream（默认）或tar
+     */
+    @PostMapping("/archive-download")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> archiveDownload(@RequestBody Map<String, Object> request) {
+        Object patterns = request.get("patterns");
+        String format = String.valueOf(request.getOrDefault("format", "stream"));
+        
+        List<String> patternList = new ArrayList<>();
+        if (patterns instanceof List) {
+            for (Object pattern : (List<?>) patterns) {
+                if (pattern != null && !pattern.toString().trim().isEmpty()) {
+                    patternList.add(pattern.toString().trim());
+                }
+            }
+        } else if (patterns != null && !patterns.toString().trim().isEmpty()) {
+            patternList.add(patterns.toString().trim());
+        }
+        
+        if (patternList.isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "At least one file name or pattern is required");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!"stream".equals(format) && !"tar".equals(format)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Format must be stream or tar");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        if (!tcpProtocolClientService.isConnected()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Not connected to server");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
+        
+        return tcpProtocolClientService.archiveDownload(patternList, "tar".equals(format))
+                .thenApply(result -> Boolean.TRUE.equals(result.get("success"))
+                        ? ResponseEntity.ok(result)
+                        : ResponseEntity.badRequest().body(result));
+    }
+    
     /**
      * 保存响应数据到文件
      */
@@ -1,89 +1,233 @@
 package com.example.tcpclient.handler;
 
+import com.example.tcpclient.client.ConnectionClosedException;
+import com.example.tcpclient.client.MicroBatchTuner;
 import com.example.tcpclient.protocol.TcpProtocol;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * 客户端处理器
+ * 响应报文不携带流水号，服务端按请求顺序返回响应，因此按发送顺序（FIFO）匹配；
+ * 同一连接上可以连续发送多个请求（流水线），入队和写出都在IO线程中完成以保证顺序一致；
+ * 启用微批处理时请求先写入缓冲区，窗口到期或达到消息数上限时统一flush，减少系统调用次数
  */
 @Slf4j
 public class ClientHandler extends SimpleChannelInboundHandler<TcpProtocol.Message> {
-    
-    private final ConcurrentHashMap<Long, CompletableFuture<TcpProtocol.Message>> pendingRequests = new ConcurrentHashMap<>();
-    private CompletableFuture<TcpProtocol.Message> currentRequest;
-    
+
+    // 仅在IO线程中访问
+    private final Queue<PendingRequest> pendingRequests = new ArrayDeque<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final MicroBatchTuner microBatchTuner;
+    private int unflushed;
+    private boolean flushScheduled;
+
+    public ClientHandler(MicroBatchTuner microBatchTuner) {
+        this.microBatchTuner = microBatchTuner;
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         log.info("Connected to server: {}", ctx.channel().remoteAddress());
         super.channelActive(ctx);
     }
-    
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         log.info("Disconnected from server: {}", ctx.channel().remoteAddress());
-        
+
         // 完成所有待处理的请求
-        pendingRequests.values().forEach(future -> 
-            future.completeExceptionally(new RuntimeException("Connection closed"))
-        );
-        pendingRequests.clear();
-        
-        if (currentRequest != null && !currentRequest.isDone()) {
-            currentRequest.completeExceptionally(new RuntimeException("Connection closed"));
-        }
-        
+        failAll(new ConnectionClosedException("Connection closed"));
+
         super.channelInactive(ctx);
     }
-    
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, TcpProtocol.Message msg) throws Exception {
         log.debug("Received message: isRequest={}, length={}", msg.isRequest(), msg.getLength());
-        
+
         if (msg.isRequest()) {
             // 收到请求报文（通常客户端不会收到请求）
             log.warn("Received unexpected request message");
-        } else {
-            // 收到响应报文
-            TcpProtocol.ResponseHeader responseHeader = msg.getResponseHeader();
-            log.info("Received response: status={}, data={}", 
-                    responseHeader.getStatus(), new String(msg.getData()));
-            
-            if (currentRequest != null && !currentRequest.isDone()) {
-                currentRequest.complete(msg);
-                currentRequest = null;
-            } else {
-                log.warn("Received unexpected response message");
+            return;
+        }
+
+        PendingRequest pending = pendingRequests.peek();
+        if (pending == null) {
+            log.warn("Received unexpected response message");
+            return;
+        }
+
+        // 流式响应：逐帧交给消费者处理，直到最后一帧
+        if (pending.frameConsumer != null) {
+            handleStreamFrame(pending, msg);
+            return;
+        }
+
+        // 收到响应报文
+        TcpProtocol.ResponseHeader responseHeader = msg.getResponseHeader();
+        log.info("Received response: status={}, data={}",
+                responseHeader.getStatus(), new String(msg.getData()));
+
+        // 先出队再完成，回调中可能立即发送下一个请求；已超时的请求也要占用一个响应
+        complete(pending, msg);
+    }
+
+    /**
+     * 处理流式响应帧；请求已失败或超时时丢弃剩余帧直到最后一帧，避免错配给后续请求
+     */
+    private void handleStreamFrame(PendingRequest pending, TcpProtocol.Message msg) {
+        boolean finished = isLastFrame(msg);
+
+        if (!pending.future.isDone()) {
+            try {
+                finished |= pending.frameConsumer.test(msg);
+            } catch (Exception e) {
+                log.error("Error handling stream frame: {}", e.getMessage());
+                pending.future.completeExceptionally(e);
             }
         }
+
+        if (finished) {
+            complete(pending, msg);
+        }
+    }
+
+    private boolean isLastFrame(TcpProtocol.Message msg) {
+        byte[] data = msg.getData();
+        return msg.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS
+                || data.length == 0
+                || data[0] == TcpProtocol.STREAM_FRAME_LAST;
+    }
+
+    private void complete(PendingRequest pending, TcpProtocol.Message msg) {
+        pendingRequests.poll();
+        inFlight.decrementAndGet();
+        if (pending.frameConsumer == null) {
+            microBatchTuner.recordLatency(System.nanoTime() - pending.startNanos);
+        }
+        pending.future.complete(msg);
     }
-    
+
+    /**
+     * 发送流式请求，每个响应帧交给frameConsumer处理，frameConsumer返回true表示最后一帧
+     */
+    public CompletableFuture<TcpProtocol.Message> sendStreamingRequest(ChannelHandlerContext ctx, TcpProtocol.Message request,
+                                                                     Predicate<TcpProtocol.Message> frameConsumer) {
+        return enqueue(ctx, request, frameConsumer);
+    }
+
     /**
      * 发送请求并等待响应
      */
     public CompletableFuture<TcpProtocol.Message> sendRequest(ChannelHandlerContext ctx, TcpProtocol.Message request) {
-        if (currentRequest != null && !currentRequest.isDone()) {
-            return CompletableFuture.failedFuture(new RuntimeException("Another request is in progress"));
+        return enqueue(ctx, request, null);
+    }
+
+    /**
+     * 尚未收到响应的请求数（含已超时但响应未到达的请求）
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private CompletableFuture<TcpProtocol.Message> enqueue(ChannelHandlerContext ctx, TcpProtocol.Message request,
+                                                         Predicate<TcpProtocol.Message> frameConsumer) {
+        PendingRequest pending = new PendingRequest(frameConsumer);
+        inFlight.incrementAndGet();
+
+        EventLoop eventLoop = ctx.channel().eventLoop();
+        if (eventLoop.inEventLoop()) {
+            write(ctx, request, pending);
+        } else {
+            eventLoop.execute(() -> write(ctx, request, pending));
+        }
+        return pending.future;
+    }
+
+    private void write(ChannelHandlerContext ctx, TcpProtocol.Message request, PendingRequest pending) {
+        if (!ctx.channel().isActive()) {
+            inFlight.decrementAndGet();
+            pending.future.completeExceptionally(new ConnectionClosedException("Connection closed"));
+            return;
+        }
+
+        pendingRequests.add(pending);
+        ctx.write(request).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                pending.future.completeExceptionally(new ConnectionClosedException("Write failed: " + future.cause().getMessage()));
+                ctx.close();
+            }
+        });
+        unflushed++;
+
+        if (!microBatchTuner.isEnabled() || pending.frameConsumer != null || unflushed >= microBatchTuner.getMaxMessages()) {
+            flush(ctx);
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            long windowNanos = microBatchTuner.getWindowNanos();
+            if (windowNanos > 0) {
+                ctx.executor().schedule(() -> scheduledFlush(ctx), windowNanos, TimeUnit.NANOSECONDS);
+            } else {
+                // 排在已提交的写请求之后执行，合并同一轮事件循环中的请求
+                ctx.executor().execute(() -> scheduledFlush(ctx));
+            }
+        }
+    }
+
+    private void scheduledFlush(ChannelHandlerContext ctx) {
+        flushScheduled = false;
+        flush(ctx);
+    }
+
+    private void flush(ChannelHandlerContext ctx) {
+        if (unflushed == 0) {
+            return;
         }
-        
-        currentRequest = new CompletableFuture<>();
-        ctx.writeAndFlush(request);
-        
-        return currentRequest;
+        microBatchTuner.recordFlush(unflushed);
+        unflushed = 0;
+        ctx.flush();
     }
-    
+
+    private void failAll(Throwable cause) {
+        PendingRequest pending;
+        while ((pending = pendingRequests.poll()) != null) {
+            inFlight.decrementAndGet();
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         log.error("Exception in client handler: {}", cause.getMessage());
-        
-        if (currentRequest != null && !currentRequest.isDone()) {
-            currentRequest.completeExceptionally(cause);
-        }
-        
+
+        // 连接随后关闭，尚未收到响应的请求都按连接断开处理
+        failAll(new ConnectionClosedException("Connection error: " + cause.getMessage()));
+
         ctx.close();
     }
+
+    /**
+     * 等待响应的请求
+     */
+    private static class PendingRequest {
+
+        private final CompletableFuture<TcpProtocol.Message> future = new CompletableFuture<>();
+        private final Predicate<TcpProtocol.Message> frameConsumer;
+        private final long startNanos = System.nanoTime();
+
+        PendingRequest(Predicate<TcpProtocol.Message> frameConsumer) {
+            this.frameConsumer = frameConsumer;
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package com.example.tcpclient.protocol;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 增量同步（rsync算法）协议定义
+ *
+ * 请求数据：nameLength(2) + name + flags(1) + blockSize(4) + blockCount(4) + blockCount * (weak(4) + strong(16))
+ * 响应数据：每帧首字节为流式帧标志，其后为若干完整指令：
+ *   'C' + startBlock(4) + blockCount(4)   复制本地已有的连续数据块
+ *   'L' + length(4) + data               写入字面数据
+ *   'E' + fileSize(8) + sha256(32)        结束，携带目标文件大小和SHA-256
+ * 目标偏移单调递增；原地重建模式下服务端只匹配偏移不小于当前位置的数据块，
+ * 保证客户端复制时源数据尚未被覆盖
+ */
+public class DeltaSync {
+    
+    // 指令类型
+    public static final byte OP_COPY = 'C';
+    public static final byte OP_LITERAL = 'L';
+    public static final byte OP_END = 'E';
+    
+    // 请求标志：客户端原地重建
+    public static final byte FLAG_IN_PLACE = 0x01;
+    
+    // 强校验长度（MD5）
+    public static final int STRONG_CHECKSUM_LENGTH = 16;
+    
+    // 单个签名长度（weak + strong）
+    public static final int SIGNATURE_LENGTH = 4 + STRONG_CHECKSUM_LENGTH;
+    
+    // 签名块数上限（保证请求报文不超过1MB）
+    public static final int MAX_SIGNATURE_BLOCKS = 40000;
+    
+    // 块大小范围
+    public static final int MIN_BLOCK_SIZE = 1024;
+    public static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+    
+    private static final int MOD_MASK = 0xFFFF;
+    
+    /**
+     * 计算弱校验和（rsync滚动校验）
+     */
+    public static int weakChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int x = data[offset + i] & 0xFF;
+            a += x;
+            b += (length - i) * x;
+        }
+        return pack(a, b);
+    }
+    
+    /**
+     * 滚动弱校验和：移出一个字节、移入一个字节
+     */
+    public static int roll(int weak, int length, byte out, byte in) {
+        int a = weak & MOD_MASK;
+        int b = weak >>> 16;
+        int x = out & 0xFF;
+        a = a - x + (in & 0xFF);
+        b = b - length * x + a;
+        return pack(a, b);
+    }
+    
+    private static int pack(int a, int b) {
+        return (a & MOD_MASK) | ((b & MOD_MASK) << 16);
+    }
+    
+    /**
+     * 创建强校验摘要
+     */
+    public static MessageDigest newStrongDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
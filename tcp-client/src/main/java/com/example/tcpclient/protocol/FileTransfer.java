@@ -0,0 +1,34 @@
+package com.example.tcpclient.protocol;
+
+/**
+ * 文件分段传输协议定义
+ *
+ * FSTAT 请求数据：nameLength(2) + name
+ *       响应数据：fileSize(8) + lastModified(8) + hasSha256(1) + sha256(32，hasSha256为1时)
+ * FREAD 请求数据：nameLength(2) + name + offset(8) + length(8)
+ *       响应数据：流式帧，每帧首字节为流式帧标志，其后为文件区间内的连续数据
+ * 客户端可在多个连接上并发发送FREAD，按偏移写入本地文件
+ * FARCH 请求数据：format(1) + patternCount(2) + patternCount * (length(2) + pattern)，pattern为文件名或glob
+ *       响应数据：流式帧，所有帧数据（去掉帧标志）拼接为连续字节流，记录可跨帧：
+ *         format=0：'F' + nameLength(2) + name + size(8) + data，结束记录 'E' + fileCount(4) + totalBytes(8)
+ *         format=1：POSIX ustar格式（512字节头 + 数据补齐到512字节，末尾两个全零块）
+ */
+public class FileTransfer {
+    
+    // SHA-256长度
+    public static final int SHA256_LENGTH = 32;
+    
+    // FSTAT响应长度（含SHA-256）
+    public static final int STAT_RESPONSE_LENGTH = 8 + 8 + 1 + SHA256_LENGTH;
+    
+    // 打包格式
+    public static final byte ARCHIVE_FORMAT_STREAM = 0;
+    public static final byte ARCHIVE_FORMAT_TAR = 1;
+    
+    // 打包流记录类型
+    public static final byte RECORD_FILE = 'F';
+    public static final byte RECORD_END = 'E';
+    
+    // tar块大小
+    public static final int TAR_BLOCK_SIZE = 512;
+}
@@ -1,8 +1,13 @@
 package com.example.tcpclient.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.Data;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * TCP协议定义
@@ -21,6 +26,18 @@ public class TcpProtocol {
     // 长度字段长度（4字节）
     public static final int LENGTH_FIELD_LENGTH = 4;
     
+    // 请求header各定长字段长度
+    public static final int NODE_ID_LENGTH = 6;
+    public static final int TRANSACTION_CODE_LENGTH = 7;
+    public static final int TRANSACTION_SERIAL_LENGTH = 20;
+    
+    // 预编码字段缓存的条目上限，超出后新值每次编码
+    private static final int MAX_ENCODED_FIELDS = 1024;
+    
+    // 节点号、交易码按字段长度补齐后的字节（取值有限，编码一次后复用）
+    private static final Map<String, byte[]> NODE_ID_FIELDS = new ConcurrentHashMap<>();
+    private static final Map<String, byte[]> TRANSACTION_CODE_FIELDS = new ConcurrentHashMap<>();
+    
     // 交易类型标识
     public static final byte TRANSACTION_TYPE_BUSINESS = 0;  // 业务类交易
     public static final byte TRANSACTION_TYPE_SIGNIN = 1;    // 签到交易
@@ -29,8 +46,19 @@ public class TcpProtocol {
     public static final byte RESPONSE_SUCCESS = 0x00;        // 成功
     public static final byte RESPONSE_FAILED = 0x01;         // 失败
     
+    // 文件传输交易码
+    public static final String TRANSACTION_CODE_DELTA_SYNC = "DSYNC";   // 增量同步
+    public static final String TRANSACTION_CODE_FILE_STAT = "FSTAT";    // 文件信息
+    public static final String TRANSACTION_CODE_FILE_READ = "FREAD";    // 分段读取
+    public static final String TRANSACTION_CODE_FILE_ARCHIVE = "FARCH"; // 批量打包下载
+    
+    // 流式响应帧标志（响应数据首字节），一个请求对应多个响应帧
+    public static final byte STREAM_FRAME_MORE = 0x00;       // 后续还有帧
+    public static final byte STREAM_FRAME_LAST = 0x01;       // 最后一帧
+    
     /**
      * 请求报文header（42字节）
+     * 发送时节点号和交易码写出预编码的字节，数字流水号直接按20位ASCII写入输出缓冲区，不产生临时对象
      */
     @Data
     public static class RequestHeader {
@@ -40,6 +68,10 @@ public class TcpProtocol {
         private String transactionCode;   // 交易类型码（7字节）
         private String transactionSerial; // 交易流水号（20字节）
         private byte[] reserved;          // 预留（2字节）
+        private long serialNumber = -1;   // 数字流水号，-1表示使用transactionSerial字符串
+        
+        // 发送请求时共用的全零预留字段（只读）
+        private static final byte[] EMPTY_RESERVED = new byte[2];
         
         public RequestHeader() {
             this.reserved = new byte[2];
@@ -57,34 +89,64 @@ public class TcpProtocol {
         }
         
         /**
-         * 将header转换为字节数组
+         * 使用数字流水号，编码时补零为20位，字符串形式仅在读取时生成
          */
-        public byte[] toBytes() {
-            ByteBuffer buffer = ByteBuffer.allocate(REQUEST_HEADER_LENGTH);
-            buffer.order(ByteOrder.BIG_ENDIAN);
-            
-            // 发送系统节点号（6字节）
-            byte[] senderBytes = padToLength(senderNodeId.getBytes(), 6);
-            buffer.put(senderBytes);
+        public RequestHeader(String senderNodeId, String receiverNodeId,
+                           byte transactionType, String transactionCode,
+                           long serialNumber) {
+            this.senderNodeId = senderNodeId;
+            this.receiverNodeId = receiverNodeId;
+            this.transactionType = transactionType;
+            this.transactionCode = transactionCode;
+            this.serialNumber = serialNumber;
+            this.reserved = EMPTY_RESERVED;
+        }
+        
+        public String getTransactionSerial() {
+            if (transactionSerial == null && serialNumber >= 0) {
+                transactionSerial = String.format("%020d", serialNumber);
+            }
+            return transactionSerial;
+        }
+        
+        public void setTransactionSerial(String transactionSerial) {
+            this.transactionSerial = transactionSerial;
+            this.serialNumber = -1;
+        }
+        
+        /**
+         * 将header直接写入缓冲区
+         */
+        public void writeTo(ByteBuf out) {
+            out.ensureWritable(REQUEST_HEADER_LENGTH);
             
-            // 接收系统节点号（6字节）
-            byte[] receiverBytes = padToLength(receiverNodeId.getBytes(), 6);
-            buffer.put(receiverBytes);
+            // 发送/接收系统节点号（各6字节）
+            out.writeBytes(encodedField(NODE_ID_FIELDS, senderNodeId, NODE_ID_LENGTH));
+            out.writeBytes(encodedField(NODE_ID_FIELDS, receiverNodeId, NODE_ID_LENGTH));
             
             // 交易类型标识（1字节）
-            buffer.put(transactionType);
+            out.writeByte(transactionType);
             
             // 交易类型码（7字节）
-            byte[] codeBytes = padToLength(transactionCode.getBytes(), 7);
-            buffer.put(codeBytes);
+            out.writeBytes(encodedField(TRANSACTION_CODE_FIELDS, transactionCode, TRANSACTION_CODE_LENGTH));
             
             // 交易流水号（20字节）
-            byte[] serialBytes = padToLength(transactionSerial.getBytes(), 20);
-            buffer.put(serialBytes);
+            if (serialNumber >= 0) {
+                writeSerial(out, serialNumber);
+            } else {
+                out.writeBytes(padToLength(transactionSerial.getBytes(StandardCharsets.UTF_8), TRANSACTION_SERIAL_LENGTH));
+            }
             
             // 预留（2字节）
-            buffer.put(reserved);
-            
+            out.writeBytes(reserved);
+        }
+        
+        /**
+         * 将header转换为字节数组
+         */
+        public byte[] toBytes() {
+            ByteBuf buffer = Unpooled.wrappedBuffer(new byte[REQUEST_HEADER_LENGTH]).clear();
+            writeTo(buffer);
             return buffer.array();
         }
         
@@ -130,16 +192,44 @@ public class TcpProtocol {
             
             return header;
         }
-        
-        /**
-         * 将字节数组填充到指定长度
-         */
-        private byte[] padToLength(byte[] bytes, int length) {
-            byte[] result = new byte[length];
-            int copyLength = Math.min(bytes.length, length);
-            System.arraycopy(bytes, 0, result, 0, copyLength);
-            return result;
+    }
+    
+    /**
+     * 按20位十进制ASCII（高位补零）写入流水号，从低位向高位直接写入缓冲区
+     */
+    public static void writeSerial(ByteBuf out, long serialNumber) {
+        out.ensureWritable(TRANSACTION_SERIAL_LENGTH);
+        int start = out.writerIndex();
+        long value = serialNumber;
+        for (int i = TRANSACTION_SERIAL_LENGTH - 1; i >= 0; i--) {
+            out.setByte(start + i, (int) ('0' + value % 10));
+            value /= 10;
         }
+        out.writerIndex(start + TRANSACTION_SERIAL_LENGTH);
+    }
+    
+    /**
+     * 字段值按长度补齐后的字节，优先取缓存
+     */
+    private static byte[] encodedField(Map<String, byte[]> cache, String value, int length) {
+        byte[] bytes = cache.get(value);
+        if (bytes == null) {
+            bytes = padToLength(value.getBytes(StandardCharsets.UTF_8), length);
+            if (cache.size() < MAX_ENCODED_FIELDS) {
+                cache.putIfAbsent(value, bytes);
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * 将字节数组填充到指定长度
+     */
+    private static byte[] padToLength(byte[] bytes, int length) {
+        byte[] result = new byte[length];
+        int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, 0, result, 0, copyLength);
+        return result;
     }
     
     /**
@@ -201,24 +291,29 @@ public class TcpProtocol {
         }
         
         /**
-         * 将完整报文转换为字节数组
+         * 将完整报文直接写入缓冲区
          */
-        public byte[] toBytes() {
-            ByteBuffer buffer = ByteBuffer.allocate(length);
-            buffer.order(ByteOrder.BIG_ENDIAN);
+        public void writeTo(ByteBuf out) {
+            out.ensureWritable(length);
             
             if (isRequest) {
                 // 请求报文：header + length + data
-                buffer.put(requestHeader.toBytes());
-                buffer.putInt(length);
-                buffer.put(data);
+                requestHeader.writeTo(out);
             } else {
                 // 响应报文：header + length + data
-                buffer.put(responseHeader.toBytes());
-                buffer.putInt(length);
-                buffer.put(data);
+                out.writeByte(responseHeader.getStatus());
+                out.writeByte(0x00);
             }
-            
+            out.writeInt(length);
+            out.writeBytes(data);
+        }
+        
+        /**
+         * 将完整报文转换为字节数组
+         */
+        public byte[] toBytes() {
+            ByteBuf buffer = Unpooled.wrappedBuffer(new byte[length]).clear();
+            writeTo(buffer);
             return buffer.array();
         }
         
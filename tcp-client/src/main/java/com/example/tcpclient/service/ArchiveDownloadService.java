@@ -0,0 +1,363 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.client.TcpClient;
+import com.example.tcpclient.protocol.FileTransfer;
+import com.example.tcpclient.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 批量打包下载服务
+ * 一次请求拉取多个匹配的文件，边接收边解包到下载目录（支持连续流格式和tar格式）
+ */
+@Slf4j
+@Service
+public class ArchiveDownloadService {
+
+    @Autowired
+    private TcpClient tcpClient;
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    /**
+     * 下载匹配文件名或glob的所有文件
+     */
+    public CompletableFuture<Map<String, Object>> download(List<String> patterns, boolean tar) {
+        int requestLength = 1 + 2;
+        for (String pattern : patterns) {
+            requestLength += 2 + pattern.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        ByteBuffer request = ByteBuffer.allocate(requestLength);
+        request.put(tar ? FileTransfer.ARCHIVE_FORMAT_TAR : FileTransfer.ARCHIVE_FORMAT_STREAM);
+        request.putShort((short) patterns.size());
+        for (String pattern : patterns) {
+            byte[] patternBytes = pattern.getBytes(StandardCharsets.UTF_8);
+            request.putShort((short) patternBytes.length);
+            request.put(patternBytes);
+        }
+
+        Path downloadDir = Paths.get(clientConfigService.getDownloadDirectory()).toAbsolutePath().normalize();
+        Unpacker unpacker = new Unpacker(downloadDir, tar);
+        log.info("Starting archive download: patterns={}, format={}", patterns, tar ? "tar" : "stream");
+
+        return tcpClient.sendStreamingRequest(TcpProtocol.TRANSACTION_CODE_FILE_ARCHIVE, request.array(), unpacker::apply)
+                .thenApply(lastFrame -> unpacker.toResult())
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        unpacker.abort();
+                    }
+                });
+    }
+
+    /**
+     * 增量解包器：所有帧数据拼接为连续字节流，记录头逐字节累积，文件数据直接写入磁盘
+     */
+    private static class Unpacker {
+
+        private final Path downloadDir;
+        private final boolean tar;
+        private final long startTime = System.nanoTime();
+        private final byte[] header = new byte[FileTransfer.TAR_BLOCK_SIZE];
+        private int headerLength;
+
+        // 当前文件
+        private String currentName;
+        private Path currentPath;
+        private Path currentTempPath;
+        private FileChannel currentChannel;
+        private long currentPosition;
+        private long remaining;
+        private long padding;
+
+        private boolean ended;
+        private int zeroBlocks;
+        private int files;
+        private long fileBytes;
+        private long bytesReceived;
+        private int frames;
+
+        Unpacker(Path downloadDir, boolean tar) {
+            this.downloadDir = downloadDir;
+            this.tar = tar;
+        }
+
+        /**
+         * 处理一个响应帧，返回true表示最后一帧
+         */
+        boolean apply(TcpProtocol.Message frame) {
+            frames++;
+            bytesReceived += frame.getLength();
+
+            if (frame.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS) {
+                throw new IllegalStateException(new String(frame.getData(), StandardCharsets.UTF_8));
+            }
+
+            byte[] data = frame.getData();
+            try {
+                consume(data, 1, data.length - 1);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to unpack archive: " + e.getMessage(), e);
+            }
+
+            boolean last = data[0] == TcpProtocol.STREAM_FRAME_LAST;
+            if (last && (!ended || currentChannel != null)) {
+                throw new IllegalStateException("Archive stream ended unexpectedly");
+            }
+            return last;
+        }
+
+        private void consume(byte[] data, int offset, int length) throws IOException {
+            int end = offset + length;
+            while (offset < end) {
+                if (ended) {
+                    // tar结束块之后允许有填充
+                    return;
+                }
+
+                if (remaining > 0) {
+                    int count = (int) Math.min(remaining, end - offset);
+                    if (currentChannel != null) {
+                        ByteBuffer buffer = ByteBuffer.wrap(data, offset, count);
+                        while (buffer.hasRemaining()) {
+                            currentPosition += currentChannel.write(buffer, currentPosition);
+                        }
+                    }
+                    offset += count;
+                    remaining -= count;
+                    if (remaining == 0) {
+                        completeFile();
+                    }
+                    continue;
+                }
+
+                if (padding > 0) {
+                    int count = (int) Math.min(padding, end - offset);
+                    offset += count;
+                    padding -= count;
+                    continue;
+                }
+
+                // 累积记录头
+                int needed = headerNeeded();
+                if (needed > header.length) {
+                    throw new IOException("Archive record header too large: " + needed);
+                }
+                int count = Math.min(needed - headerLength, end - offset);
+                System.arraycopy(data, offset, header, headerLength, count);
+                headerLength += count;
+                offset += count;
+                if (headerLength == headerNeeded()) {
+                    if (tar) {
+                        parseTarHeader();
+                    } else {
+                        parseStreamHeader();
+                    }
+                    headerLength = 0;
+                }
+            }
+        }
+
+        /**
+         * 当前记录头的完整长度（连续流格式的记录头为变长）
+         */
+        private int headerNeeded() {
+            if (tar) {
+                return FileTransfer.TAR_BLOCK_SIZE;
+            }
+            if (headerLength < 1) {
+                return 1;
+            }
+            if (header[0] == FileTransfer.RECORD_END) {
+                return 1 + 4 + 8;
+            }
+            if (headerLength < 3) {
+                return 3;
+            }
+            return 3 + (((header[1] & 0xFF) << 8) | (header[2] & 0xFF)) + 8;
+        }
+
+        private void parseStreamHeader() throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(header, 0, headerLength);
+            byte type = buffer.get();
+            if (type == FileTransfer.RECORD_END) {
+                int fileCount = buffer.getInt();
+                long totalBytes = buffer.getLong();
+                if (fileCount != files || totalBytes != fileBytes) {
+                    throw new IOException("Archive summary mismatch: files=" + fileCount + "/" + files
+                            + ", bytes=" + totalBytes + "/" + fileBytes);
+                }
+                ended = true;
+                return;
+            }
+            if (type != FileTransfer.RECORD_FILE) {
+                throw new IOException("Unknown archive record: " + type);
+            }
+
+            byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(nameBytes);
+            startFile(new String(nameBytes, StandardCharsets.UTF_8), buffer.getLong());
+        }
+
+        private void parseTarHeader() throws IOException {
+            boolean zero = true;
+            for (byte b : header) {
+                if (b != 0) {
+                    zero = false;
+                    break;
+                }
+            }
+            if (zero) {
+                if (++zeroBlocks == 2) {
+                    ended = true;
+                }
+                return;
+            }
+            zeroBlocks = 0;
+
+            long checksum = 0;
+            for (int i = 0; i < header.length; i++) {
+                checksum += (i >= 148 && i < 156) ? ' ' : header[i] & 0xFF;
+            }
+            if (checksum != parseOctal(148, 8)) {
+                throw new IOException("Invalid tar header checksum");
+            }
+
+            String name = parseString(0, 100);
+            String prefix = parseString(345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+
+            long size;
+            if ((header[124] & 0x80) != 0) {
+                size = 0;
+                for (int i = 128; i < 136; i++) {
+                    size = (size << 8) | (header[i] & 0xFF);
+                }
+            } else {
+                size = parseOctal(124, 12);
+            }
+            padding = (FileTransfer.TAR_BLOCK_SIZE - size % FileTransfer.TAR_BLOCK_SIZE) % FileTransfer.TAR_BLOCK_SIZE;
+
+            byte type = header[156];
+            if (type == '0' || type == 0) {
+                startFile(name, size);
+            } else {
+                // 非普通文件：跳过数据
+                log.debug("Skipping tar entry: name={}, type={}", name, (char) type);
+                remaining = size;
+            }
+        }
+
+        private String parseString(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        private long parseOctal(int offset, int length) {
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                byte b = header[i];
+                if (b >= '0' && b <= '7') {
+                    value = value * 8 + (b - '0');
+                } else if (b == 0 || (b == ' ' && value > 0)) {
+                    break;
+                }
+            }
+            return value;
+        }
+
+        /**
+         * 开始写入一个文件（先写临时文件，完整接收后替换）
+         */
+        private void startFile(String name, long size) throws IOException {
+            Path filePath = downloadDir.resolve(name).normalize();
+            if (!filePath.startsWith(downloadDir) || filePath.equals(downloadDir)) {
+                throw new IOException("Invalid file name in archive: " + name);
+            }
+
+            Files.createDirectories(filePath.getParent());
+            currentName = name;
+            currentPath = filePath;
+            currentTempPath = filePath.resolveSibling("." + filePath.getFileName() + ".part");
+            currentChannel = FileChannel.open(currentTempPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            currentPosition = 0;
+            remaining = size;
+
+            if (size == 0) {
+                completeFile();
+            }
+        }
+
+        private void completeFile() throws IOException {
+            if (currentChannel == null) {
+                return;
+            }
+            currentChannel.close();
+            currentChannel = null;
+            Files.move(currentTempPath, currentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            files++;
+            fileBytes += currentPosition;
+            log.debug("Unpacked file: {}, size: {}", currentName, currentPosition);
+        }
+
+        /**
+         * 失败时删除未完成的文件
+         */
+        void abort() {
+            if (currentChannel == null) {
+                return;
+            }
+            try {
+                currentChannel.close();
+                Files.deleteIfExists(currentTempPath);
+            } catch (IOException e) {
+                log.warn("Failed to clean up file {}: {}", currentName, e.getMessage());
+            }
+            currentChannel = null;
+        }
+
+        Map<String, Object> toResult() {
+            long elapsedNanos = System.nanoTime() - startTime;
+            double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("format", tar ? "tar" : "stream");
+            result.put("files", files);
+            result.put("fileBytes", fileBytes);
+            result.put("bytesReceived", bytesReceived);
+            result.put("frames", frames);
+            result.put("downloadDirectory", downloadDir.toString());
+            result.put("elapsedMs", elapsedNanos / 1_000_000);
+            result.put("filesPerSecond", elapsedSeconds > 0 ? files / elapsedSeconds : 0);
+            result.put("throughputMBps", elapsedSeconds > 0 ? fileBytes / elapsedSeconds / (1024 * 1024) : 0);
+
+            log.info("Archive download completed: files={}, bytes={}, frames={}, elapsed={}ms",
+                    files, fileBytes, frames, elapsedNanos / 1_000_000);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.tcpclient.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 客户端配置快照
+ * 加载配置文件时一次性解析为类型化的不可变对象，读取时不再访问文件或解析键路径；
+ * 配置文件变化时由ClientConfigService整体替换。各项含义见ClientConfigService中对应的getter
+ */
+@Slf4j
+@Getter
+public final class ClientConfig {
+
+    /**
+     * 原始配置（只读）
+     */
+    private final Map<String, Object> raw;
+
+    // 服务端与连接
+    private final String tcpServerHost;
+    private final int tcpServerPort;
+    private final List<InetSocketAddress> serverEndpoints;
+    private final int connectTimeout;
+    private final String downloadDirectory;
+    private final String senderNodeId;
+    private final String signInData;
+
+    // 增量同步与并行下载
+    private final int deltaBlockSize;
+    private final boolean deltaInPlace;
+    private final int parallelConnections;
+    private final int parallelRangeSize;
+    private final int parallelMaxRetries;
+    private final int parallelRangeTimeout;
+
+    // 连接池、事件循环与重连
+    private final int poolSize;
+    private final String poolStrategy;
+    private final int poolHealthCheckInterval;
+    private final int eventLoopThreads;
+    private final int reconnectBaseDelay;
+    private final int reconnectMaxDelay;
+    private final int replayBufferSize;
+    private final Set<String> replayCodes;
+
+    // 负载均衡
+    private final String loadBalanceStrategy;
+    private final String shardKeyPattern;
+    private final int virtualNodes;
+    private final int ewmaDecay;
+    private final int ejectFailures;
+    private final int ejectDuration;
+
+    // 批量与微批处理
+    private final int batchMaxSize;
+    private final boolean microBatchEnabled;
+    private final int microBatchWindowMicros;
+    private final int microBatchMaxMessages;
+    private final boolean microBatchAdaptive;
+    private final int microBatchTargetP50Micros;
+    private final int microBatchMaxWindowMicros;
+    private final int microBatchTuneInterval;
+
+    // 响应缓存与请求合并
+    private final boolean cacheEnabled;
+    private final int cacheMaxEntries;
+    @Getter(lombok.AccessLevel.NONE)
+    private final Map<String, Long> cacheTtl;
+    private final Set<String> cacheInvalidateOn;
+    private final Set<String> coalesceCodes;
+
+    // 对冲请求
+    private final boolean hedgeEnabled;
+    private final Set<String> hedgeCodes;
+    private final double hedgePercentile;
+    private final int hedgeMinDelayMicros;
+    private final double hedgeBudgetPercent;
+    private final int hedgeRefreshInterval;
+
+    // 请求超时
+    @Getter(lombok.AccessLevel.NONE)
+    private final Map<String, Long> requestTimeouts;
+    private final long defaultRequestTimeout;
+    private final int timeoutTickMillis;
+
+    // 交易流水号
+    private final int serialNodeId;
+    private final int serialMaxBorrowMillis;
+    private final String serialDirectory;
+
+    public ClientConfig(Map<String, Object> raw) {
+        this.raw = Collections.unmodifiableMap(new HashMap<>(raw));
+
+        tcpServerHost = stringValue("tcp.client.server.host", "localhost");
+        tcpServerPort = intValue("tcp.client.server.port", 8888);
+        serverEndpoints = parseServerEndpoints();
+        connectTimeout = intValue("tcp.client.connect.timeout", 5000);
+        downloadDirectory = stringValue("tcp.client.download.directory", "downloads");
+        senderNodeId = stringValue("tcp.client.sender.nodeId", "CLIENT");
+        signInData = stringValue("tcp.client.sender.signInData", "");
+
+        deltaBlockSize = intValue("tcp.client.delta.blockSize", 65536);
+        deltaInPlace = booleanValue("tcp.client.delta.inPlace", true);
+        parallelConnections = intValue("tcp.client.parallel.connections", 4);
+        parallelRangeSize = intValue("tcp.client.parallel.rangeSize", 8388608);
+        parallelMaxRetries = intValue("tcp.client.parallel.maxRetries", 3);
+        parallelRangeTimeout = intValue("tcp.client.parallel.rangeTimeout", 60000);
+
+        poolSize = Math.max(1, Math.min(intValue("tcp.client.pool.size", 4), intValue("tcp.client.pool.maxSize", 32)));
+        poolStrategy = "p2c".equals(value("tcp.client.pool.strategy")) ? "p2c" : "least-in-flight";
+        poolHealthCheckInterval = Math.max(100, intValue("tcp.client.pool.healthCheckInterval", 5000));
+        int threads = intValue("tcp.client.eventLoop.threads", 0);
+        eventLoopThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        reconnectBaseDelay = Math.max(1, intValue("tcp.client.reconnect.baseDelay", 100));
+        reconnectMaxDelay = Math.max(reconnectBaseDelay, intValue("tcp.client.reconnect.maxDelay", 10000));
+        replayBufferSize = Math.max(0, intValue("tcp.client.reconnect.replayBufferSize", 1000));
+        replayCodes = codes("tcp.client.reconnect.replayCodes", List.of("SIGNIN", "QUERY"));
+
+        loadBalanceStrategy = "consistent-hash".equals(value("tcp.client.loadBalance.strategy")) ? "consistent-hash" : "ewma";
+        shardKeyPattern = stringValue("tcp.client.loadBalance.shardKeyPattern", "");
+        virtualNodes = Math.max(1, intValue("tcp.client.loadBalance.virtualNodes", 160));
+        ewmaDecay = Math.max(1, intValue("tcp.client.loadBalance.ewmaDecay", 10000));
+        ejectFailures = Math.max(1, intValue("tcp.client.loadBalance.ejectFailures", 5));
+        ejectDuration = Math.max(0, intValue("tcp.client.loadBalance.ejectDuration", 30000));
+
+        batchMaxSize = Math.max(1, intValue("tcp.client.batch.maxSize", 1000));
+        microBatchEnabled = booleanValue("tcp.client.microBatch.enabled", true);
+        microBatchWindowMicros = Math.max(0, intValue("tcp.client.microBatch.windowMicros", 0));
+        microBatchMaxMessages = Math.max(1, intValue("tcp.client.microBatch.maxMessages", 64));
+        microBatchAdaptive = booleanValue("tcp.client.microBatch.adaptive", true);
+        microBatchTargetP50Micros = Math.max(1, intValue("tcp.client.microBatch.targetP50Micros", 2000));
+        microBatchMaxWindowMicros = Math.max(0, intValue("tcp.client.microBatch.maxWindowMicros", 2000));
+        microBatchTuneInterval = Math.max(100, intValue("tcp.client.microBatch.tuneInterval", 1000));
+
+        cacheEnabled = booleanValue("tcp.client.cache.enabled", false);
+        cacheMaxEntries = Math.max(1, intValue("tcp.client.cache.maxEntries", 10000));
+        cacheTtl = millisByCode("tcp.client.cache.ttl", Map.of("QUERY", 5000));
+        cacheInvalidateOn = codes("tcp.client.cache.invalidateOn", List.of("UPDATE", "DELETE"));
+        coalesceCodes = codes("tcp.client.coalesce.codes", List.of("QUERY"));
+
+        hedgeEnabled = booleanValue("tcp.client.hedge.enabled", true);
+        hedgeCodes = codes("tcp.client.hedge.codes", List.of("QUERY"));
+        hedgePercentile = Math.min(100, Math.max(1, intValue("tcp.client.hedge.percentile", 95)));
+        hedgeMinDelayMicros = Math.max(0, intValue("tcp.client.hedge.minDelayMicros", 1000));
+        hedgeBudgetPercent = Math.min(100, Math.max(0, intValue("tcp.client.hedge.budgetPercent", 5)));
+        hedgeRefreshInterval = Math.max(100, intValue("tcp.client.hedge.refreshInterval", 1000));
+
+        requestTimeouts = millisByCode("tcp.client.timeout.codes",
+                Map.of("SIGNIN", 30000, "DSYNC", 1800000, "FARCH", 1800000));
+        defaultRequestTimeout = Math.max(1, intValue("tcp.client.timeout.default", 60000));
+        timeoutTickMillis = Math.max(1, intValue("tcp.client.timeout.tickMillis", 10));
+
+        serialNodeId = intValue("tcp.client.serial.nodeId", -1);
+        serialMaxBorrowMillis = Math.max(0, intValue("tcp.client.serial.maxBorrowMillis", 1000));
+        serialDirectory = stringValue("tcp.client.serial.directory", "serial");
+    }
+
+    /**
+     * 交易码的缓存有效期（毫秒），0表示不缓存
+     */
+    public long getCacheTtl(String transactionCode) {
+        Long ttl = cacheTtl.get(transactionCode);
+        return ttl != null ? Math.max(0, ttl) : 0;
+    }
+
+    /**
+     * 交易码的请求超时（毫秒）
+     */
+    public long getRequestTimeout(String transactionCode) {
+        Long timeout = requestTimeouts.get(transactionCode);
+        return timeout != null && timeout > 0 ? timeout : defaultRequestTimeout;
+    }
+
+    private List<InetSocketAddress> parseServerEndpoints() {
+        List<InetSocketAddress> endpoints = new ArrayList<>();
+        Object value = value("tcp.client.servers");
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                String address = String.valueOf(item).trim();
+                int separator = address.lastIndexOf(':');
+                if (separator <= 0) {
+                    log.warn("Invalid server endpoint: {}", address);
+                    continue;
+                }
+                try {
+                    endpoints.add(InetSocketAddress.createUnresolved(address.substring(0, separator),
+                            Integer.parseInt(address.substring(separator + 1))));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Invalid server endpoint: {}", address);
+                }
+            }
+        }
+        if (endpoints.isEmpty()) {
+            endpoints.add(InetSocketAddress.createUnresolved(tcpServerHost, tcpServerPort));
+        }
+        return List.copyOf(endpoints);
+    }
+
+    private Object value(String key) {
+        Object current = raw;
+        for (String k : key.split("\\.")) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<?, ?>) current).get(k);
+        }
+        return current;
+    }
+
+    private String stringValue(String key, String defaultValue) {
+        Object value = value(key);
+        return value != null ? value.toString() : defaultValue;
+    }
+
+    private int intValue(String key, int defaultValue) {
+        Object value = value(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    private boolean booleanValue(String key, boolean defaultValue) {
+        Object value = value(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    private Set<String> codes(String key, List<String> defaultValue) {
+        Object value = value(key);
+        if (value == null) {
+            return Set.copyOf(defaultValue);
+        }
+        List<String> codes = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object code : (List<?>) value) {
+                codes.add(String.valueOf(code));
+            }
+        }
+        return Set.copyOf(codes);
+    }
+
+    private Map<String, Long> millisByCode(String key, Map<String, Integer> defaultValue) {
+        Object value = value(key);
+        Map<String, Long> result = new HashMap<>();
+        if (value == null) {
+            defaultValue.forEach((code, millis) -> result.put(code, millis.longValue()));
+        } else if (value instanceof Map) {
+            ((Map<?, ?>) value).forEach((code, millis) -> {
+                if (millis instanceof Number) {
+                    result.put(String.valueOf(code), ((Number) millis).longValue());
+                }
+            });
+        }
+        return Map.copyOf(result);
+    }
+}
@@ -6,25 +6,45 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 /**
  * 客户端配置服务 - 支持热更新
+ * 配置文件解析为不可变的ClientConfig快照，getter直接读取当前快照，不访问文件；
+ * 后台线程通过WatchService监听配置文件，变化时重新解析并整体替换快照，再通知订阅者（解析失败时保留原快照）
  */
 @Slf4j
 @Service
 public class ClientConfigService {
     
+    /**
+     * 收到文件变化事件后等待写入完成的时间（毫秒），合并编辑器保存时的多次事件
+     */
+    private static final long RELOAD_DEBOUNCE_MS = 100;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, Object> configCache = new ConcurrentHashMap<>();
-    private long lastModified = 0;
+    private final List<BiConsumer<ClientConfig, ClientConfig>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ClientConfig config;
     private Path configFilePath;
+    private WatchService watchService;
     
     @PostConstruct
     public void init() {
@@ -42,6 +62,32 @@ public class ClientConfigService {
             // 使用默认配置
             loadDefaultConfig();
         }
+        startWatcher();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Failed to close client config watcher: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 当前配置快照
+     */
+    public ClientConfig getConfig() {
+        return config;
+    }
+    
+    /**
+     * 订阅配置变化，参数为变化前和变化后的快照；在监听线程中回调
+     */
+    public void addListener(BiConsumer<ClientConfig, ClientConfig> listener) {
+        listeners.add(listener);
     }
     
     /**
@@ -78,22 +124,90 @@ public class ClientConfigService {
     /**
      * 加载配置文件
      */
-    private void loadConfig() {
+    private synchronized void loadConfig() {
         try {
             if (configFilePath != null && Files.exists(configFilePath)) {
                 String content = Files.readString(configFilePath);
-                Map<String, Object> config = objectMapper.readValue(content, Map.class);
-                configCache.clear();
-                configCache.putAll(config);
-                lastModified = Files.getLastModifiedTime(configFilePath).toMillis();
+                Map<String, Object> raw = objectMapper.readValue(content, Map.class);
+                ClientConfig next = new ClientConfig(raw);
                 log.info("Client config loaded from file: {}", configFilePath);
-            } else {
+                publish(next);
+            } else if (config == null) {
                 log.warn("Client config file not found: {}, using default config", configFilePath);
                 loadDefaultConfig();
+            } else {
+                log.warn("Client config file not found: {}, keeping current config", configFilePath);
             }
         } catch (Exception e) {
-            log.error("Failed to load client config file: {}", e.getMessage());
-            loadDefaultConfig();
+            if (config == null) {
+                log.error("Failed to load client config file: {}", e.getMessage());
+                loadDefaultConfig();
+            } else {
+                log.error("Failed to reload client config file, keeping current config: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 替换配置快照，内容有变化时通知订阅者
+     */
+    private void publish(ClientConfig next) {
+        ClientConfig previous = config;
+        config = next;
+        if (previous == null || previous.getRaw().equals(next.getRaw())) {
+            return;
+        }
+        for (BiConsumer<ClientConfig, ClientConfig> listener : listeners) {
+            try {
+                listener.accept(previous, next);
+            } catch (Exception e) {
+                log.warn("Client config listener failed: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 监听配置文件所在目录（配置文件在jar包内时不监听）
+     */
+    private void startWatcher() {
+        if (configFilePath == null || configFilePath.getFileSystem() != FileSystems.getDefault()) {
+            return;
+        }
+        Path directory = configFilePath.toAbsolutePath().getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("Failed to watch client config file {}: {}", configFilePath, e.getMessage());
+            return;
+        }
+        
+        Thread watcher = new Thread(this::watch, "client-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+    
+    private void watch() {
+        Path fileName = configFilePath.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+                }
+                key.reset();
+                
+                if (changed) {
+                    Thread.sleep(RELOAD_DEBOUNCE_MS);
+                    log.info("Client config file modified, reloading...");
+                    loadConfig();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 应用关闭
         }
     }
     
@@ -101,7 +215,6 @@ public class ClientConfigService {
      * 加载默认配置
      */
     private void loadDefaultConfig() {
-        configCache.clear();
         // 设置默认配置
         Map<String, Object> defaultConfig = new HashMap<>();
         
@@ -122,80 +235,457 @@ public class ClientConfigService {
         
         Map<String, Object> sender = new HashMap<>();
         sender.put("nodeId", "CLIENT");
+        sender.put("signInData", "");
         tcpClient.put("sender", sender);
         
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("blockSize", 65536);
+        delta.put("inPlace", true);
+        tcpClient.put("delta", delta);
+        
+        Map<String, Object> parallel = new HashMap<>();
+        parallel.put("connections", 4);
+        parallel.put("rangeSize", 8388608);
+        parallel.put("maxRetries", 3);
+        parallel.put("rangeTimeout", 60000);
+        tcpClient.put("parallel", parallel);
+        
+        Map<String, Object> pool = new HashMap<>();
+        pool.put("size", 4);
+        pool.put("maxSize", 32);
+        pool.put("strategy", "least-in-flight");
+        pool.put("healthCheckInterval", 5000);
+        tcpClient.put("pool", pool);
+        
+        Map<String, Object> eventLoop = new HashMap<>();
+        eventLoop.put("threads", 0);
+        tcpClient.put("eventLoop", eventLoop);
+        
+        Map<String, Object> reconnect = new HashMap<>();
+        reconnect.put("baseDelay", 100);
+        reconnect.put("maxDelay", 10000);
+        reconnect.put("replayBufferSize", 1000);
+        reconnect.put("replayCodes", List.of("SIGNIN", "QUERY"));
+        tcpClient.put("reconnect", reconnect);
+        
+        tcpClient.put("servers", new ArrayList<>());
+        
+        Map<String, Object> batch = new HashMap<>();
+        batch.put("maxSize", 1000);
+        tcpClient.put("batch", batch);
+        
+        Map<String, Object> microBatch = new HashMap<>();
+        microBatch.put("enabled", true);
+        microBatch.put("windowMicros", 0);
+        microBatch.put("maxMessages", 64);
+        microBatch.put("adaptive", true);
+        microBatch.put("targetP50Micros", 2000);
+        microBatch.put("maxWindowMicros", 2000);
+        microBatch.put("tuneInterval", 1000);
+        tcpClient.put("microBatch", microBatch);
+        
+        Map<String, Object> cache = new HashMap<>();
+        cache.put("enabled", false);
+        cache.put("maxEntries", 10000);
+        cache.put("ttl", Map.of("QUERY", 5000));
+        cache.put("invalidateOn", List.of("UPDATE", "DELETE"));
+        tcpClient.put("cache", cache);
+        
+        Map<String, Object> coalesce = new HashMap<>();
+        coalesce.put("codes", List.of("QUERY"));
+        tcpClient.put("coalesce", coalesce);
+        
+        Map<String, Object> hedge = new HashMap<>();
+        hedge.put("enabled", true);
+        hedge.put("codes", List.of("QUERY"));
+        hedge.put("percentile", 95);
+        hedge.put("minDelayMicros", 1000);
+        hedge.put("budgetPercent", 5);
+        hedge.put("refreshInterval", 1000);
+        tcpClient.put("hedge", hedge);
+        
+        Map<String, Object> timeout = new HashMap<>();
+        timeout.put("default", 60000);
+        timeout.put("codes", Map.of("SIGNIN", 30000, "DSYNC", 1800000, "FARCH", 1800000));
+        timeout.put("tickMillis", 10);
+        tcpClient.put("timeout", timeout);
+        
+        Map<String, Object> serial = new HashMap<>();
+        serial.put("nodeId", -1);
+        serial.put("maxBorrowMillis", 1000);
+        serial.put("directory", "serial");
+        tcpClient.put("serial", serial);
+        
+        Map<String, Object> loadBalance = new HashMap<>();
+        loadBalance.put("strategy", "ewma");
+        loadBalance.put("shardKeyPattern", "");
+        loadBalance.put("virtualNodes", 160);
+        loadBalance.put("ewmaDecay", 10000);
+        loadBalance.put("ejectFailures", 5);
+        loadBalance.put("ejectDuration", 30000);
+        tcpClient.put("loadBalance", loadBalance);
+        
         defaultConfig.put("tcp", Map.of("client", tcpClient));
-        configCache.putAll(defaultConfig);
+        publish(new ClientConfig(defaultConfig));
         
         log.info("Using default client config");
     }
     
     /**
-     * 检查并重新加载配置（如果文件被修改）
+     * 获取TCP服务器主机
      */
-    private void checkAndReloadConfig() {
-        try {
-            if (configFilePath != null && Files.exists(configFilePath)) {
-                long currentModified = Files.getLastModifiedTime(configFilePath).toMillis();
-                if (currentModified > lastModified) {
-                    log.info("Client config file modified, reloading...");
-                    loadConfig();
-                }
-            }
-        } catch (Exception e) {
-            log.error("Failed to check client config file modification: {}", e.getMessage());
-        }
+    public String getTcpServerHost() {
+        return config.getTcpServerHost();
     }
     
     /**
-     * 获取TCP服务器主机
+     * 获取服务端节点列表（tcp.client.servers，格式为host:port）；未配置时使用tcp.client.server.host/port
      */
-    public String getTcpServerHost() {
-        checkAndReloadConfig();
-        Object value = getNestedValue("tcp.client.server.host", "localhost");
-        return value != null ? value.toString() : "localhost";
+    public List<InetSocketAddress> getServerEndpoints() {
+        return config.getServerEndpoints();
     }
     
     /**
      * 获取TCP服务器端口
      */
     public int getTcpServerPort() {
-        checkAndReloadConfig();
-        Object port = getNestedValue("tcp.client.server.port", 8888);
-        if (port instanceof Number) {
-            return ((Number) port).intValue();
-        }
-        return 8888;
+        return config.getTcpServerPort();
     }
     
     /**
      * 获取连接超时时间
      */
     public int getConnectTimeout() {
-        checkAndReloadConfig();
-        Object timeout = getNestedValue("tcp.client.connect.timeout", 5000);
-        if (timeout instanceof Number) {
-            return ((Number) timeout).intValue();
-        }
-        return 5000;
+        return config.getConnectTimeout();
     }
     
     /**
      * 获取下载目录
      */
     public String getDownloadDirectory() {
-        checkAndReloadConfig();
-        Object value = getNestedValue("tcp.client.download.directory", "downloads");
-        return value != null ? value.toString() : "downloads";
+        return config.getDownloadDirectory();
     }
     
     /**
      * 获取发送方节点ID
      */
     public String getSenderNodeId() {
-        checkAndReloadConfig();
-        Object value = getNestedValue("tcp.client.sender.nodeId", "CLIENT");
-        return value != null ? value.toString() : "CLIENT";
+        return config.getSenderNodeId();
+    }
+    
+    /**
+     * 获取每个新连接自动签到时发送的签到数据（如 user:admin,caps:0x3）
+     */
+    public String getSignInData() {
+        return config.getSignInData();
+    }
+    
+    /**
+     * 获取增量同步块大小
+     */
+    public int getDeltaBlockSize() {
+        return config.getDeltaBlockSize();
+    }
+    
+    /**
+     * 增量同步是否原地重建文件
+     */
+    public boolean isDeltaInPlace() {
+        return config.isDeltaInPlace();
+    }
+    
+    /**
+     * 获取并行下载连接数
+     */
+    public int getParallelConnections() {
+        return config.getParallelConnections();
+    }
+    
+    /**
+     * 获取并行下载分段大小
+     */
+    public int getParallelRangeSize() {
+        return config.getParallelRangeSize();
+    }
+    
+    /**
+     * 获取并行下载单个分段的最大重试次数
+     */
+    public int getParallelMaxRetries() {
+        return config.getParallelMaxRetries();
+    }
+    
+    /**
+     * 获取并行下载单个分段的超时时间（毫秒）
+     */
+    public int getParallelRangeTimeout() {
+        return config.getParallelRangeTimeout();
+    }
+    
+    /**
+     * 获取连接池大小（限制在1到maxSize之间）
+     */
+    public int getPoolSize() {
+        return config.getPoolSize();
+    }
+    
+    /**
+     * 获取连接选择策略：least-in-flight 或 p2c
+     */
+    public String getPoolStrategy() {
+        return config.getPoolStrategy();
+    }
+    
+    /**
+     * 获取连接池健康检查间隔（毫秒）
+     */
+    public int getPoolHealthCheckInterval() {
+        return config.getPoolHealthCheckInterval();
+    }
+    
+    /**
+     * 获取共享事件循环组的线程数（0表示使用CPU核数，仅在启动时生效）
+     */
+    public int getEventLoopThreads() {
+        return config.getEventLoopThreads();
+    }
+    
+    /**
+     * 获取重连退避的初始延迟（毫秒）
+     */
+    public int getReconnectBaseDelay() {
+        return config.getReconnectBaseDelay();
+    }
+    
+    /**
+     * 获取重连退避的最大延迟（毫秒）
+     */
+    public int getReconnectMaxDelay() {
+        return config.getReconnectMaxDelay();
+    }
+    
+    /**
+     * 获取断线期间待重放请求的缓冲上限
+     */
+    public int getReplayBufferSize() {
+        return config.getReplayBufferSize();
+    }
+    
+    /**
+     * 获取断线后可重放的交易码（幂等交易），签到交易使用SIGNIN
+     */
+    public Set<String> getReplayCodes() {
+        return config.getReplayCodes();
+    }
+    
+    /**
+     * 获取多服务端负载均衡策略：ewma 或 consistent-hash
+     */
+    public String getLoadBalanceStrategy() {
+        return config.getLoadBalanceStrategy();
+    }
+    
+    /**
+     * 获取从请求数据中提取分片键的正则（有分组时取第一个分组），为空时使用整个请求数据
+     */
+    public String getShardKeyPattern() {
+        return config.getShardKeyPattern();
+    }
+    
+    /**
+     * 获取一致性哈希环上每个节点的虚拟节点数（仅在连接时生效）
+     */
+    public int getVirtualNodes() {
+        return config.getVirtualNodes();
+    }
+    
+    /**
+     * 获取延迟EWMA的衰减时间（毫秒）
+     */
+    public int getEwmaDecay() {
+        return config.getEwmaDecay();
+    }
+    
+    /**
+     * 获取摘除节点的连续失败次数阈值
+     */
+    public int getEjectFailures() {
+        return config.getEjectFailures();
+    }
+    
+    /**
+     * 获取节点被摘除的时长（毫秒）
+     */
+    public int getEjectDuration() {
+        return config.getEjectDuration();
+    }
+    
+    /**
+     * 获取批量接口单次请求数上限
+     */
+    public int getBatchMaxSize() {
+        return config.getBatchMaxSize();
+    }
+    
+    /**
+     * 是否启用写出微批处理
+     */
+    public boolean isMicroBatchEnabled() {
+        return config.isMicroBatchEnabled();
+    }
+    
+    /**
+     * 获取微批处理的合并窗口（微秒），0表示只合并同一轮事件循环中的请求；自适应模式下为初始值
+     */
+    public int getMicroBatchWindowMicros() {
+        return config.getMicroBatchWindowMicros();
+    }
+    
+    /**
+     * 获取单次flush的最大消息数
+     */
+    public int getMicroBatchMaxMessages() {
+        return config.getMicroBatchMaxMessages();
+    }
+    
+    /**
+     * 是否根据p50延迟自适应调节合并窗口
+     */
+    public boolean isMicroBatchAdaptive() {
+        return config.isMicroBatchAdaptive();
+    }
+    
+    /**
+     * 获取自适应调节的p50延迟目标（微秒）
+     */
+    public int getMicroBatchTargetP50Micros() {
+        return config.getMicroBatchTargetP50Micros();
+    }
+    
+    /**
+     * 获取自适应调节的最大合并窗口（微秒）
+     */
+    public int getMicroBatchMaxWindowMicros() {
+        return config.getMicroBatchMaxWindowMicros();
+    }
+    
+    /**
+     * 获取自适应调节周期（毫秒，仅在启动时生效）
+     */
+    public int getMicroBatchTuneInterval() {
+        return config.getMicroBatchTuneInterval();
+    }
+    
+    /**
+     * 是否启用幂等交易的响应缓存
+     */
+    public boolean isCacheEnabled() {
+        return config.isCacheEnabled();
+    }
+    
+    /**
+     * 获取响应缓存的最大条目数
+     */
+    public int getCacheMaxEntries() {
+        return config.getCacheMaxEntries();
+    }
+    
+    /**
+     * 获取交易码的缓存有效期（毫秒），未配置或为0表示该交易码不缓存
+     */
+    public long getCacheTtl(String transactionCode) {
+        return config.getCacheTtl(transactionCode);
+    }
+    
+    /**
+     * 获取成功后清空响应缓存的交易码
+     */
+    public Set<String> getCacheInvalidateOn() {
+        return config.getCacheInvalidateOn();
+    }
+    
+    /**
+     * 获取开启相同请求合并的交易码（仅幂等交易）
+     */
+    public Set<String> getCoalesceCodes() {
+        return config.getCoalesceCodes();
+    }
+    
+    /**
+     * 是否启用对冲请求
+     */
+    public boolean isHedgeEnabled() {
+        return config.isHedgeEnabled();
+    }
+    
+    /**
+     * 获取允许对冲的交易码（仅幂等交易）
+     */
+    public Set<String> getHedgeCodes() {
+        return config.getHedgeCodes();
+    }
+    
+    /**
+     * 获取对冲延迟使用的响应延迟百分位（0-100）
+     */
+    public double getHedgePercentile() {
+        return config.getHedgePercentile();
+    }
+    
+    /**
+     * 获取最小对冲延迟（微秒）
+     */
+    public int getHedgeMinDelayMicros() {
+        return config.getHedgeMinDelayMicros();
+    }
+    
+    /**
+     * 获取对冲预算：对冲请求数占请求数的最大百分比
+     */
+    public double getHedgeBudgetPercent() {
+        return config.getHedgeBudgetPercent();
+    }
+    
+    /**
+     * 获取对冲延迟的统计周期（毫秒，仅在启动时生效）
+     */
+    public int getHedgeRefreshInterval() {
+        return config.getHedgeRefreshInterval();
+    }
+    
+    /**
+     * 获取交易码的请求超时（毫秒），未单独配置的交易码使用默认值，签到交易使用SIGNIN
+     */
+    public long getRequestTimeout(String transactionCode) {
+        return config.getRequestTimeout(transactionCode);
+    }
+    
+    /**
+     * 获取超时时间轮的刻度（毫秒，仅在启动时生效）
+     */
+    public int getTimeoutTickMillis() {
+        return config.getTimeoutTickMillis();
+    }
+    
+    /**
+     * 获取交易流水号的节点号（0-255，-1表示未配置，客户端拒绝启动；仅在启动时生效）
+     */
+    public int getSerialNodeId() {
+        return config.getSerialNodeId();
+    }
+    
+    /**
+     * 获取流水号序号用完时逻辑时钟最多领先系统时钟的毫秒数（仅在启动时生效）
+     */
+    public int getSerialMaxBorrowMillis() {
+        return config.getSerialMaxBorrowMillis();
+    }
+    
+    /**
+     * 获取流水号状态文件目录（为空时不保存，仅在启动时生效）
+     */
+    public String getSerialDirectory() {
+        return config.getSerialDirectory();
     }
     
     /**
@@ -209,24 +699,6 @@ public class ClientConfigService {
      * 获取当前配置
      */
     public Map<String, Object> getCurrentConfig() {
-        return new HashMap<>(configCache);
-    }
-    
-    /**
-     * 获取嵌套值
-     */
-    private Object getNestedValue(String key, Object defaultValue) {
-        String[] keys = key.split("\\.");
-        Object current = configCache;
-        
-        for (String k : keys) {
-            if (current instanceof Map) {
-                current = ((Map<?, ?>) current).get(k);
-            } else {
-                return defaultValue;
-            }
-        }
-        
-        return current != null ? current : defaultValue;
+        return new HashMap<>(config.getRaw());
     }
 }
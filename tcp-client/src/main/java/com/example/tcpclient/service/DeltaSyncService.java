@@ -0,0 +1,318 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.client.TcpClient;
+import com.example.tcpclient.protocol.DeltaSync;
+import com.example.tcpclient.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 增量同步服务（rsync算法）
+ * 上传本地文件的块签名，按服务端返回的复制块/字面数据指令重建文件（原地或经临时文件替换）
+ */
+@Slf4j
+@Service
+public class DeltaSyncService {
+
+    @Autowired
+    private TcpClient tcpClient;
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    /**
+     * 同步下载目录中的文件到服务端最新版本
+     */
+    public CompletableFuture<Map<String, Object>> sync(String fileName) {
+        Reconstruction reconstruction = null;
+        byte[] request;
+
+        try {
+            Path downloadDir = Paths.get(clientConfigService.getDownloadDirectory()).toAbsolutePath().normalize();
+            Path filePath = downloadDir.resolve(fileName).normalize();
+            if (!filePath.startsWith(downloadDir) || filePath.equals(downloadDir)) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid file name: " + fileName));
+            }
+            Files.createDirectories(downloadDir);
+
+            long localSize = Files.exists(filePath) ? Files.size(filePath) : 0;
+            reconstruction = new Reconstruction(fileName, filePath, chooseBlockSize(localSize), clientConfigService.isDeltaInPlace());
+            request = reconstruction.buildSignatureRequest();
+
+        } catch (IOException e) {
+            log.error("Failed to prepare delta sync for {}: {}", fileName, e.getMessage());
+            if (reconstruction != null) {
+                reconstruction.close(false);
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+
+        log.info("Starting delta sync: file={}, localSize={}, blockSize={}, inPlace={}, signatureBytes={}",
+                fileName, reconstruction.localSize, reconstruction.blockSize, reconstruction.inPlace, request.length);
+
+        Reconstruction current = reconstruction;
+        return tcpClient.sendStreamingRequest(TcpProtocol.TRANSACTION_CODE_DELTA_SYNC, request, current::apply)
+                .thenApply(lastFrame -> current.toResult(request.length))
+                .whenComplete((result, throwable) -> current.close(throwable == null));
+    }
+
+    /**
+     * 选择块大小，保证签名数量不超过上限
+     */
+    private int chooseBlockSize(long localSize) {
+        int blockSize = Math.max(DeltaSync.MIN_BLOCK_SIZE, clientConfigService.getDeltaBlockSize());
+        while (localSize / blockSize > DeltaSync.MAX_SIGNATURE_BLOCKS && blockSize < DeltaSync.MAX_BLOCK_SIZE) {
+            blockSize *= 2;
+        }
+        return Math.min(blockSize, DeltaSync.MAX_BLOCK_SIZE);
+    }
+
+    /**
+     * 单次增量同步的重建状态
+     * 原地模式直接在本地文件上按位置写入；否则写入临时文件，校验通过后原子替换
+     */
+    private static class Reconstruction {
+
+        private final String fileName;
+        private final Path filePath;
+        private final Path tempPath;
+        private final FileChannel source;
+        private final FileChannel target;
+        private final int blockSize;
+        private final boolean inPlace;
+        private final long localSize;
+        private final ByteBuffer blockBuffer;
+        private final long startTime = System.nanoTime();
+
+        private long targetPosition;
+        private long targetSize = -1;
+        private long bytesReceived;
+        private long literalBytes;
+        private long copiedBytes;
+        private long movedBytes;
+        private int frames;
+
+        Reconstruction(String fileName, Path filePath, int blockSize, boolean inPlace) throws IOException {
+            this.fileName = fileName;
+            this.filePath = filePath;
+            this.blockSize = blockSize;
+            this.inPlace = inPlace;
+            this.blockBuffer = ByteBuffer.allocate(blockSize);
+            this.source = FileChannel.open(filePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.localSize = source.size();
+
+            if (inPlace) {
+                this.tempPath = null;
+                this.target = source;
+            } else {
+                this.tempPath = filePath.resolveSibling("." + filePath.getFileName() + ".delta");
+                this.target = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        /**
+         * 计算本地文件的块签名并生成请求数据
+         */
+        byte[] buildSignatureRequest() throws IOException {
+            byte[] nameBytes = fileName.getBytes(StandardCharsets.UTF_8);
+            int blockCount = (int) (localSize / blockSize);
+
+            ByteBuffer request = ByteBuffer.allocate(2 + nameBytes.length + 1 + 4 + 4 + blockCount * DeltaSync.SIGNATURE_LENGTH);
+            request.putShort((short) nameBytes.length);
+            request.put(nameBytes);
+            request.put(inPlace ? DeltaSync.FLAG_IN_PLACE : 0);
+            request.putInt(blockSize);
+            request.putInt(blockCount);
+
+            MessageDigest strongDigest = DeltaSync.newStrongDigest();
+            byte[] block = blockBuffer.array();
+            for (int i = 0; i < blockCount; i++) {
+                readBlock((long) i * blockSize);
+                request.putInt(DeltaSync.weakChecksum(block, 0, blockSize));
+                strongDigest.update(block, 0, blockSize);
+                request.put(strongDigest.digest());
+            }
+
+            return request.array();
+        }
+
+        /**
+         * 应用一个响应帧中的指令，返回true表示同步结束
+         */
+        boolean apply(TcpProtocol.Message frame) {
+            frames++;
+            bytesReceived += frame.getLength();
+
+            if (frame.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS) {
+                throw new IllegalStateException(new String(frame.getData(), StandardCharsets.UTF_8));
+            }
+
+            try {
+                ByteBuffer data = ByteBuffer.wrap(frame.getData());
+                byte flag = data.get();
+
+                while (data.hasRemaining()) {
+                    byte op = data.get();
+                    if (op == DeltaSync.OP_COPY) {
+                        copyBlocks(data.getInt(), data.getInt());
+                    } else if (op == DeltaSync.OP_LITERAL) {
+                        int length = data.getInt();
+                        writeFully(ByteBuffer.wrap(data.array(), data.position(), length));
+                        data.position(data.position() + length);
+                        literalBytes += length;
+                    } else if (op == DeltaSync.OP_END) {
+                        targetSize = data.getLong();
+                        byte[] expectedSha256 = new byte[32];
+                        data.get(expectedSha256);
+                        finish(expectedSha256);
+                    } else {
+                        throw new IllegalStateException("Unknown delta instruction: " + op);
+                    }
+                }
+
+                if (flag == TcpProtocol.STREAM_FRAME_LAST && targetSize < 0) {
+                    throw new IllegalStateException("Delta stream ended without end instruction");
+                }
+                return flag == TcpProtocol.STREAM_FRAME_LAST;
+
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to apply delta: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * 复制本地已有块；原地模式下块偏移与目标位置相同时无需任何IO
+         */
+        private void copyBlocks(int startBlock, int count) throws IOException {
+            long length = (long) count * blockSize;
+            long sourcePosition = (long) startBlock * blockSize;
+            copiedBytes += length;
+
+            if (inPlace && sourcePosition == targetPosition) {
+                targetPosition += length;
+                return;
+            }
+
+            // 原地模式下源块偏移总是不小于目标位置，尚未被覆盖
+            for (int i = 0; i < count; i++) {
+                readBlock(sourcePosition + (long) i * blockSize);
+                writeFully(blockBuffer);
+                movedBytes += blockSize;
+            }
+        }
+
+        private void finish(byte[] expectedSha256) throws IOException {
+            target.truncate(targetSize);
+            target.force(false);
+
+            byte[] actualSha256 = sha256();
+            if (!Arrays.equals(expectedSha256, actualSha256)) {
+                throw new IOException("Checksum mismatch after delta sync: " + fileName);
+            }
+        }
+
+        private byte[] sha256() throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            long position = 0;
+            while (position < targetSize) {
+                buffer.clear();
+                int read = target.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                digest.update(buffer.array(), 0, read);
+                position += read;
+            }
+            return digest.digest();
+        }
+
+        private void readBlock(long position) throws IOException {
+            blockBuffer.clear();
+            while (blockBuffer.hasRemaining()) {
+                if (source.read(blockBuffer, position + blockBuffer.position()) < 0) {
+                    throw new IOException("Unexpected end of local file");
+                }
+            }
+            blockBuffer.flip();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                targetPosition += target.write(buffer, targetPosition);
+            }
+        }
+
+        Map<String, Object> toResult(int signatureBytes) {
+            long elapsedNanos = System.nanoTime() - startTime;
+            double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("fileName", fileName);
+            result.put("filePath", filePath.toString());
+            result.put("localSize", localSize);
+            result.put("fileSize", targetSize);
+            result.put("blockSize", blockSize);
+            result.put("inPlace", inPlace);
+            result.put("signatureBytes", signatureBytes);
+            result.put("bytesReceived", bytesReceived);
+            result.put("bytesOnWire", bytesReceived + signatureBytes);
+            result.put("literalBytes", literalBytes);
+            result.put("copiedBytes", copiedBytes);
+            result.put("movedBytes", movedBytes);
+            result.put("frames", frames);
+            result.put("elapsedMs", elapsedNanos / 1_000_000);
+            result.put("throughputMBps", elapsedSeconds > 0 ? targetSize / elapsedSeconds / (1024 * 1024) : 0);
+
+            log.info("Delta sync completed: file={}, size={}, onWire={} bytes, literal={} bytes, copied={} bytes, elapsed={}ms",
+                    fileName, targetSize, bytesReceived + signatureBytes, literalBytes, copiedBytes, elapsedNanos / 1_000_000);
+            return result;
+        }
+
+        /**
+         * 关闭文件；非原地模式下成功时用临时文件替换本地文件，失败时删除临时文件
+         */
+        void close(boolean success) {
+            try {
+                source.close();
+                if (inPlace) {
+                    return;
+                }
+                target.close();
+                if (success) {
+                    Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to finalize file {}: {}", fileName, e.getMessage());
+            }
+        }
+    }
+}
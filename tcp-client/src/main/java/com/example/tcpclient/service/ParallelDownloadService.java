@@ -0,0 +1,395 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.client.TcpClient;
+import com.example.tcpclient.client.TcpConnection;
+import com.example.tcpclient.protocol.FileTransfer;
+import com.example.tcpclient.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多连接并行下载服务
+ * 将文件按区间切分，在多个连接上并发读取（FREAD），按偏移写入预分配的临时文件，
+ * 单个区间失败时换连接从断点重试，全部完成后与服务端索引中的SHA-256比对再替换目标文件
+ */
+@Slf4j
+@Service
+public class ParallelDownloadService {
+
+    @Autowired
+    private TcpClient tcpClient;
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    /**
+     * 使用配置的连接数下载文件
+     */
+    public CompletableFuture<Map<String, Object>> download(String fileName) {
+        return download(fileName, clientConfigService.getParallelConnections());
+    }
+
+    /**
+     * 使用指定连接数下载文件
+     */
+    public CompletableFuture<Map<String, Object>> download(String fileName, int connections) {
+        Path downloadDir = Paths.get(clientConfigService.getDownloadDirectory()).toAbsolutePath().normalize();
+        Path filePath = downloadDir.resolve(fileName).normalize();
+        if (!filePath.startsWith(downloadDir) || filePath.equals(downloadDir)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid file name: " + fileName));
+        }
+        if (connections < 1) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Connections must be positive: " + connections));
+        }
+
+        Download download = new Download(fileName, filePath, connections);
+        return tcpClient.openConnection()
+                .thenCompose(connection -> {
+                    download.connections.add(connection);
+                    return stat(download, connection);
+                })
+                .thenCompose(v -> download.start())
+                .thenApply(v -> download.finish())
+                .whenComplete((result, throwable) -> {
+                    download.close(throwable == null);
+                    if (throwable != null) {
+                        log.error("Parallel download failed: file={}, error={}", fileName, throwable.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * 依次使用不同连接数下载同一文件，比较吞吐量
+     */
+    public CompletableFuture<Map<String, Object>> benchmark(String fileName, List<Integer> connectionCounts) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+
+        for (Integer connections : connectionCounts) {
+            chain = chain.thenCompose(v -> download(fileName, connections))
+                    .thenAccept(result -> {
+                        Map<String, Object> summary = new HashMap<>();
+                        summary.put("connections", connections);
+                        summary.put("elapsedMs", result.get("elapsedMs"));
+                        summary.put("throughputMBps", result.get("throughputMBps"));
+                        summary.put("retries", result.get("retries"));
+                        results.add(summary);
+                    });
+        }
+
+        return chain.thenApply(v -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("fileName", fileName);
+            result.put("results", results);
+            return result;
+        });
+    }
+
+    /**
+     * 查询文件大小和SHA-256
+     */
+    private CompletableFuture<Void> stat(Download download, TcpConnection connection) {
+        byte[] nameBytes = download.fileName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer request = ByteBuffer.allocate(2 + nameBytes.length);
+        request.putShort((short) nameBytes.length);
+        request.put(nameBytes);
+
+        return connection.sendRequest(tcpClient.createBusinessRequest(TcpProtocol.TRANSACTION_CODE_FILE_STAT, request.array()))
+                .orTimeout(clientConfigService.getParallelRangeTimeout(), TimeUnit.MILLISECONDS)
+                .thenAccept(response -> {
+                    if (response.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS) {
+                        throw new IllegalStateException(new String(response.getData(), StandardCharsets.UTF_8));
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(response.getData());
+                    download.fileSize = data.getLong();
+                    data.getLong();
+                    if (data.get() == 1) {
+                        download.expectedSha256 = new byte[FileTransfer.SHA256_LENGTH];
+                        data.get(download.expectedSha256);
+                    }
+                });
+    }
+
+    /**
+     * 单次并行下载的状态
+     */
+    private class Download {
+
+        private final String fileName;
+        private final Path filePath;
+        private final Path tempPath;
+        private final int requestedConnections;
+        private final int rangeSize = Math.max(64 * 1024, clientConfigService.getParallelRangeSize());
+        private final int maxRetries = clientConfigService.getParallelMaxRetries();
+        private final int rangeTimeout = clientConfigService.getParallelRangeTimeout();
+        private final List<TcpConnection> connections = new CopyOnWriteArrayList<>();
+        private final Queue<Range> pendingRanges = new ConcurrentLinkedQueue<>();
+        private final AtomicLong bytesReceived = new AtomicLong(0);
+        private final AtomicInteger retries = new AtomicInteger(0);
+        private final long startTime = System.nanoTime();
+
+        private volatile long fileSize;
+        private volatile byte[] expectedSha256;
+        private FileChannel channel;
+        private int rangeCount;
+        private boolean checksumVerified;
+
+        Download(String fileName, Path filePath, int requestedConnections) {
+            this.fileName = fileName;
+            this.filePath = filePath;
+            this.tempPath = filePath.resolveSibling("." + filePath.getFileName() + ".part");
+            this.requestedConnections = requestedConnections;
+        }
+
+        /**
+         * 预分配临时文件、切分区间并启动所有连接上的下载
+         */
+        CompletableFuture<Void> start() {
+            try {
+                Files.createDirectories(filePath.getParent());
+                try (RandomAccessFile file = new RandomAccessFile(tempPath.toFile(), "rw")) {
+                    file.setLength(fileSize);
+                }
+                channel = FileChannel.open(tempPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            for (long offset = 0; offset < fileSize; offset += rangeSize) {
+                pendingRanges.add(new Range(offset, Math.min(rangeSize, fileSize - offset)));
+            }
+            rangeCount = pendingRanges.size();
+
+            int workerCount = Math.max(1, Math.min(requestedConnections, rangeCount));
+            log.info("Starting parallel download: file={}, size={}, ranges={}, connections={}",
+                    fileName, fileSize, rangeCount, workerCount);
+
+            List<CompletableFuture<Void>> workers = new ArrayList<>();
+            workers.add(runWorker(connections.get(0)));
+            for (int i = 1; i < workerCount; i++) {
+                workers.add(tcpClient.openConnection().thenCompose(connection -> {
+                    connections.add(connection);
+                    return runWorker(connection);
+                }));
+            }
+            return CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0]));
+        }
+
+        /**
+         * 在一个连接上依次领取并下载区间，直到没有剩余区间
+         */
+        private CompletableFuture<Void> runWorker(TcpConnection connection) {
+            Range range = pendingRanges.poll();
+            if (range == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return fetchRange(connection, range)
+                    .handle((v, throwable) -> {
+                        if (throwable == null) {
+                            return runWorker(connection);
+                        }
+                        return retry(connection, range, throwable);
+                    })
+                    .thenCompose(next -> next);
+        }
+
+        /**
+         * 关闭出错的连接，换新连接从断点重新下载该区间
+         */
+        private CompletableFuture<Void> retry(TcpConnection failed, Range range, Throwable cause) {
+            if (++range.attempts > maxRetries) {
+                return CompletableFuture.failedFuture(new IOException("Range " + range.offset + "+" + range.length
+                        + " failed after " + maxRetries + " retries: " + cause.getMessage(), cause));
+            }
+
+            retries.incrementAndGet();
+            log.warn("Range download failed, retrying: file={}, offset={}, received={}, attempt={}, error={}",
+                    fileName, range.offset, range.received, range.attempts, cause.getMessage());
+
+            // 旧连接关闭后不会再投递该区间的数据帧
+            connections.remove(failed);
+            pendingRanges.add(range);
+            return failed.close()
+                    .thenCompose(v -> tcpClient.openConnection())
+                    .thenCompose(connection -> {
+                        connections.add(connection);
+                        return runWorker(connection);
+                    });
+        }
+
+        /**
+         * 下载一个区间（从上次中断的位置开始）
+         */
+        private CompletableFuture<Void> fetchRange(TcpConnection connection, Range range) {
+            byte[] nameBytes = fileName.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer request = ByteBuffer.allocate(2 + nameBytes.length + 8 + 8);
+            request.putShort((short) nameBytes.length);
+            request.put(nameBytes);
+            request.putLong(range.offset + range.received);
+            request.putLong(range.length - range.received);
+
+            TcpProtocol.Message message = tcpClient.createBusinessRequest(TcpProtocol.TRANSACTION_CODE_FILE_READ, request.array());
+            return connection.sendStreamingRequest(message, frame -> writeFrame(range, frame))
+                    .orTimeout(rangeTimeout, TimeUnit.MILLISECONDS)
+                    .thenAccept(lastFrame -> {
+                        if (range.received != range.length) {
+                            throw new IllegalStateException("Incomplete range: expected " + range.length + ", received " + range.received);
+                        }
+                    });
+        }
+
+        /**
+         * 将一个数据帧写入区间对应的文件位置，返回true表示区间结束
+         */
+        private boolean writeFrame(Range range, TcpProtocol.Message frame) {
+            if (frame.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS) {
+                throw new IllegalStateException(new String(frame.getData(), StandardCharsets.UTF_8));
+            }
+
+            byte[] data = frame.getData();
+            int length = data.length - 1;
+            if (range.received + length > range.length) {
+                throw new IllegalStateException("Range overflow at offset " + range.offset);
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data, 1, length);
+                long position = range.offset + range.received;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to write file: " + e.getMessage(), e);
+            }
+
+            range.received += length;
+            bytesReceived.addAndGet(length);
+            return data[0] == TcpProtocol.STREAM_FRAME_LAST;
+        }
+
+        /**
+         * 落盘并校验SHA-256
+         */
+        Map<String, Object> finish() {
+            try {
+                channel.force(false);
+                if (expectedSha256 != null) {
+                    if (!Arrays.equals(expectedSha256, sha256())) {
+                        throw new IllegalStateException("Checksum mismatch after parallel download: " + fileName);
+                    }
+                    checksumVerified = true;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to verify file: " + e.getMessage(), e);
+            }
+
+            long elapsedNanos = System.nanoTime() - startTime;
+            double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("fileName", fileName);
+            result.put("filePath", filePath.toString());
+            result.put("fileSize", fileSize);
+            result.put("connections", Math.max(1, Math.min(requestedConnections, rangeCount)));
+            result.put("ranges", rangeCount);
+            result.put("rangeSize", rangeSize);
+            result.put("retries", retries.get());
+            result.put("bytesReceived", bytesReceived.get());
+            result.put("checksumVerified", checksumVerified);
+            result.put("sha256", expectedSha256 != null ? HexFormat.of().formatHex(expectedSha256) : null);
+            result.put("elapsedMs", elapsedNanos / 1_000_000);
+            result.put("throughputMBps", elapsedSeconds > 0 ? fileSize / elapsedSeconds / (1024 * 1024) : 0);
+
+            log.info("Parallel download completed: file={}, size={}, connections={}, ranges={}, retries={}, verified={}, elapsed={}ms",
+                    fileName, fileSize, result.get("connections"), rangeCount, retries.get(), checksumVerified, elapsedNanos / 1_000_000);
+            return result;
+        }
+
+        private byte[] sha256() throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            long position = 0;
+            while (position < fileSize) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                digest.update(buffer.array(), 0, read);
+                position += read;
+            }
+            return digest.digest();
+        }
+
+        /**
+         * 关闭所有连接；成功时用临时文件替换目标文件，失败时删除临时文件
+         */
+        void close(boolean success) {
+            connections.forEach(TcpConnection::close);
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                if (success) {
+                    Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to finalize file {}: {}", fileName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 文件区间
+     */
+    private static class Range {
+
+        private final long offset;
+        private final long length;
+        private volatile long received;
+        private int attempts;
+
+        Range(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.client.LatencyHistogram;
+import com.example.tcpclient.client.TcpClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 查询负载测试服务
+ * 以固定并发持续发送查询请求，按时间片统计吞吐量，用于观察服务端重启（或主动断开连接）期间的吞吐量下跌和恢复时间
+ */
+@Slf4j
+@Service
+public class QueryLoadService {
+
+    @Autowired
+    private TcpClient tcpClient;
+
+    /**
+     * 运行负载测试
+     *
+     * @param durationMs  持续时间
+     * @param concurrency 并发请求数（每个请求完成后立即发送下一个）
+     * @param bucketMs    统计时间片
+     * @param dropAtMs    大于0时在该时间点断开所有连接，模拟服务端重启
+     */
+    public CompletableFuture<Map<String, Object>> run(long durationMs, int concurrency, long bucketMs, long dropAtMs) {
+        int bucketCount = (int) ((durationMs + bucketMs - 1) / bucketMs);
+        AtomicLongArray completed = new AtomicLongArray(bucketCount);
+        AtomicLongArray failed = new AtomicLongArray(bucketCount);
+        LatencyHistogram latency = new LatencyHistogram();
+        long replayedBefore = replayedRequests();
+        long startTime = System.nanoTime();
+        long deadline = startTime + durationMs * 1_000_000;
+
+        log.info("Starting query load: duration={}ms, concurrency={}, dropAt={}ms", durationMs, concurrency, dropAtMs);
+
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        AtomicInteger activeWorkers = new AtomicInteger(concurrency);
+        Runnable onWorkerDone = () -> {
+            if (activeWorkers.decrementAndGet() == 0) {
+                Map<String, Object> result = toResult(completed, failed, bucketMs, concurrency, replayedRequests() - replayedBefore);
+                result.put("p50Micros", latency.percentile(50));
+                result.put("p99Micros", latency.percentile(99));
+                result.put("p999Micros", latency.percentile(99.9));
+                future.complete(result);
+            }
+        };
+        for (int i = 0; i < concurrency; i++) {
+            next(i, startTime, deadline, bucketMs, completed, failed, latency, onWorkerDone);
+        }
+
+        if (dropAtMs > 0 && dropAtMs < durationMs) {
+            CompletableFuture.delayedExecutor(dropAtMs, TimeUnit.MILLISECONDS)
+                    .execute(tcpClient::dropConnections);
+        }
+        return future;
+    }
+
+    private void next(int worker, long startTime, long deadline, long bucketMs, AtomicLongArray completed,
+                      AtomicLongArray failed, LatencyHistogram latency, Runnable onWorkerDone) {
+        long requestStart = System.nanoTime();
+        if (requestStart >= deadline) {
+            onWorkerDone.run();
+            return;
+        }
+        tcpClient.sendQueryRequest("load-" + worker).whenComplete((response, throwable) -> {
+            long now = System.nanoTime();
+            if (now < deadline) {
+                int bucket = (int) ((now - startTime) / 1_000_000 / bucketMs);
+                if (throwable == null) {
+                    completed.incrementAndGet(bucket);
+                    latency.record((now - requestStart) / 1000);
+                } else {
+                    failed.incrementAndGet(bucket);
+                }
+            }
+            if (throwable != null) {
+                // 没有可用连接时快速失败，稍作等待避免空转
+                CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS)
+                        .execute(() -> next(worker, startTime, deadline, bucketMs, completed, failed, latency, onWorkerDone));
+            } else {
+                next(worker, startTime, deadline, bucketMs, completed, failed, latency, onWorkerDone);
+            }
+        });
+    }
+
+    private long replayedRequests() {
+        Object value = tcpClient.getPoolStats().get("replayedRequests");
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * 汇总：以各时间片吞吐量的中位数作为基线，低于基线一半的时间片计入下跌时长
+     */
+    private Map<String, Object> toResult(AtomicLongArray completed, AtomicLongArray failed, long bucketMs,
+                                         int concurrency, long replayed) {
+        int bucketCount = completed.length();
+        long[] rates = new long[bucketCount];
+        List<Map<String, Object>> timeline = new ArrayList<>();
+        long totalCompleted = 0;
+        long totalFailed = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            rates[i] = completed.get(i) * 1000 / bucketMs;
+            totalCompleted += completed.get(i);
+            totalFailed += failed.get(i);
+
+            Map<String, Object> bucket = new HashMap<>();
+            bucket.put("startMs", i * bucketMs);
+            bucket.put("completed", completed.get(i));
+            bucket.put("failed", failed.get(i));
+            bucket.put("requestsPerSecond", rates[i]);
+            timeline.add(bucket);
+        }
+
+        long[] sorted = rates.clone();
+        Arrays.sort(sorted);
+        long baseline = sorted[bucketCount / 2];
+        long dipBuckets = Arrays.stream(rates).filter(rate -> rate < baseline / 2).count();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("concurrency", concurrency);
+        result.put("bucketMs", bucketMs);
+        result.put("totalCompleted", totalCompleted);
+        result.put("totalFailed", totalFailed);
+        result.put("replayedRequests", replayed);
+        result.put("baselineRequestsPerSecond", baseline);
+        result.put("minRequestsPerSecond", sorted[0]);
+        result.put("dipMs", dipBuckets * bucketMs);
+        result.put("timeline", timeline);
+
+        log.info("Query load completed: completed={}, failed={}, replayed={}, baseline={}/s, dip={}ms",
+                totalCompleted, totalFailed, replayed, baseline, dipBuckets * bucketMs);
+        return result;
+    }
+}
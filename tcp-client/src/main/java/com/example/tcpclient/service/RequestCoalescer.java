@@ -0,0 +1,86 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 相同请求合并（single-flight）
+ * 对配置了合并的交易码，交易码和请求数据都相同的并发请求只发出一次，响应分发给所有等待者；
+ * 请求完成后立即移出在途表，之后的请求重新发送。只应对幂等交易（如QUERY）开启。
+ * 合并键包含发送时的缓存代数：写操作成功使代数递增后，新请求不再加入写操作之前发出的在途请求，
+ * 因此不会拿到写操作之前的响应，也不会把它以新代数写入缓存
+ */
+@Slf4j
+@Service
+public class RequestCoalescer {
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    private final Map<String, CompletableFuture<TcpProtocol.Message>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong(0);
+    private final AtomicLong saved = new AtomicLong(0);
+    private final Map<String, AtomicLong> savedByCode = new ConcurrentHashMap<>();
+
+    /**
+     * 发送请求，已有同一代数下的相同请求在途时复用其结果；交易码未开启合并时直接发送
+     */
+    public CompletableFuture<TcpProtocol.Message> execute(String transactionCode, String data, long generation,
+                                                          Supplier<CompletableFuture<TcpProtocol.Message>> sender) {
+        if (!clientConfigService.getCoalesceCodes().contains(transactionCode)) {
+            return sender.get();
+        }
+
+        String key = transactionCode + "\n" + generation + "\n" + data;
+        CompletableFuture<TcpProtocol.Message> created = new CompletableFuture<>();
+        CompletableFuture<TcpProtocol.Message> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            saved.incrementAndGet();
+            savedByCode.computeIfAbsent(transactionCode, code -> new AtomicLong()).incrementAndGet();
+            return existing.copy();
+        }
+
+        sent.incrementAndGet();
+        try {
+            sender.get().whenComplete((response, throwable) -> {
+                inFlight.remove(key, created);
+                if (throwable != null) {
+                    created.completeExceptionally(throwable);
+                } else {
+                    created.complete(response);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        // 返回副本，调用方对结果的操作不影响其他等待者
+        return created.copy();
+    }
+
+    /**
+     * 合并统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> byCode = new HashMap<>();
+        savedByCode.forEach((code, count) -> byCode.put(code, count.get()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("codes", clientConfigService.getCoalesceCodes());
+        stats.put("inFlight", inFlight.size());
+        stats.put("sent", sent.get());
+        stats.put("saved", saved.get());
+        stats.put("savedByCode", byCode);
+        return stats;
+    }
+}
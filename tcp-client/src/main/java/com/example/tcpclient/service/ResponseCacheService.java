@@ -0,0 +1,200 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端响应缓存
+ * 缓存幂等交易（如QUERY）的成功响应，键为交易码加请求数据的SHA-256摘要；
+ * 按交易码配置TTL（未配置的交易码不缓存），总条目数超过上限时淘汰最久未使用的条目（LRU）；
+ * UPDATE/DELETE永不缓存，且成功后可按配置清空全部缓存。
+ * 使用代数（generation）防止清空前发出、清空后才返回的旧响应被写回缓存
+ */
+@Slf4j
+@Service
+public class ResponseCacheService {
+
+    /**
+     * 写操作交易码，始终不缓存
+     */
+    private static final Set<String> WRITE_CODES = Set.of("UPDATE", "DELETE");
+
+    @Autowired
+    private ClientConfigService clientConfigService;
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong expirations = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+    private final Map<String, AtomicLong> hitsByCode = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> missesByCode = new ConcurrentHashMap<>();
+
+    /**
+     * 该交易码的响应是否可缓存
+     */
+    public boolean isCacheable(String transactionCode) {
+        return clientConfigService.isCacheEnabled()
+                && !WRITE_CODES.contains(transactionCode)
+                && clientConfigService.getCacheTtl(transactionCode) > 0;
+    }
+
+    /**
+     * 查找未过期的缓存响应，未命中返回null
+     */
+    public TcpProtocol.Message lookup(String transactionCode, String data) {
+        if (!isCacheable(transactionCode)) {
+            return null;
+        }
+
+        String key = key(transactionCode, data);
+        long now = System.currentTimeMillis();
+        TcpProtocol.Message response = null;
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                response = entry.response;
+            } else if (entry != null) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+
+        if (response != null) {
+            hits.incrementAndGet();
+            hitsByCode.computeIfAbsent(transactionCode, code -> new AtomicLong()).incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            missesByCode.computeIfAbsent(transactionCode, code -> new AtomicLong()).incrementAndGet();
+        }
+        return response;
+    }
+
+    /**
+     * 当前代数，发送请求前获取，写回缓存时传入
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 缓存成功响应；请求发出后缓存被清空过则不写入
+     */
+    public void store(String transactionCode, String data, long requestGeneration, TcpProtocol.Message response) {
+        if (!isCacheable(transactionCode) || response.getResponseHeader().getStatus() != TcpProtocol.RESPONSE_SUCCESS) {
+            return;
+        }
+
+        String key = key(transactionCode, data);
+        long expiresAt = System.currentTimeMillis() + clientConfigService.getCacheTtl(transactionCode);
+        int maxEntries = clientConfigService.getCacheMaxEntries();
+        synchronized (entries) {
+            if (requestGeneration != generation.get()) {
+                return;
+            }
+            entries.put(key, new CacheEntry(response, expiresAt));
+            while (entries.size() > maxEntries) {
+                String eldest = entries.keySet().iterator().next();
+                entries.remove(eldest);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 交易成功后调用：写操作按配置清空缓存
+     */
+    public void onSuccess(String transactionCode) {
+        if (clientConfigService.isCacheEnabled() && clientConfigService.getCacheInvalidateOn().contains(transactionCode)) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public int invalidateAll() {
+        int size;
+        synchronized (entries) {
+            generation.incrementAndGet();
+            size = entries.size();
+            entries.clear();
+        }
+        invalidations.incrementAndGet();
+        log.debug("Response cache invalidated, {} entries removed", size);
+        return size;
+    }
+
+    private String key(String transactionCode, String data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return transactionCode + ":" + Base64.getEncoder().encodeToString(digest.digest(data.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+
+        Map<String, Object> byCode = new HashMap<>();
+        for (String code : missesByCode.keySet()) {
+            long codeHits = hitsByCode.getOrDefault(code, new AtomicLong()).get();
+            long codeMisses = missesByCode.get(code).get();
+            Map<String, Object> codeStats = new HashMap<>();
+            codeStats.put("hits", codeHits);
+            codeStats.put("misses", codeMisses);
+            codeStats.put("hitRate", codeHits + codeMisses > 0 ? (double) codeHits / (codeHits + codeMisses) : 0);
+            codeStats.put("ttl", clientConfigService.getCacheTtl(code));
+            byCode.put(code, codeStats);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", clientConfigService.isCacheEnabled());
+        stats.put("size", size);
+        stats.put("maxEntries", clientConfigService.getCacheMaxEntries());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0);
+        stats.put("expirations", expirations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("byCode", byCode);
+        return stats;
+    }
+
+    private static class CacheEntry {
+
+        private final TcpProtocol.Message response;
+        private final long expiresAt;
+
+        CacheEntry(TcpProtocol.Message response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
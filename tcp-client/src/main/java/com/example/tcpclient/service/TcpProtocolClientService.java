@@ -1,6 +1,7 @@
 package com.example.tcpclient.service;
 
 import com.example.tcpclient.client.TcpClient;
+import com.example.tcpclient.codec.EncodingBenchmark;
 import com.example.tcpclient.protocol.TcpProtocol;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,9 +11,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * TCP协议客户端服务
@@ -27,6 +31,24 @@ public class TcpProtocolClientService {
     @Autowired
     private ClientConfigService clientConfigService;
     
+    @Autowired
+    private DeltaSyncService deltaSyncService;
+    
+    @Autowired
+    private ParallelDownloadService parallelDownloadService;
+    
+    @Autowired
+    private ArchiveDownloadService archiveDownloadService;
+    
+    @Autowired
+    private QueryLoadService queryLoadService;
+    
+    @Autowired
+    private ResponseCacheService responseCacheService;
+    
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+    
     /**
      * 连接到服务器
      */
@@ -49,17 +71,37 @@ public class TcpProtocolClientService {
     }
     
     /**
-     * 发送签到请求
+     * 是否正在自动重连
      */
-    public CompletableFuture<Map<String, Object>> signIn(String userData) {
-        return tcpClient.sendSignInRequest(userData)
-                .thenApply(response -> {
+    public boolean isReconnecting() {
+        return tcpClient.isReconnecting();
+    }
+    
+    /**
+     * 获取连接池状态
+     */
+    public Map<String, Object> getPoolStats() {
+        return tcpClient.getPoolStats();
+    }
+    
+    /**
+     * 建连延迟测试
+     */
+    public CompletableFuture<Map<String, Object>> connectBenchmark(int iterations) {
+        return CompletableFuture.supplyAsync(() -> tcpClient.benchmarkConnect(iterations))
+                .exceptionally(throwable -> {
                     Map<String, Object> result = new HashMap<>();
-                    result.put("success", response.getResponseHeader().getStatus() == TcpProtocol.RESPONSE_SUCCESS);
-                    result.put("status", response.getResponseHeader().getStatus());
-                    result.put("data", new String(response.getData()));
+                    result.put("success", false);
+                    result.put("error", throwable.getMessage());
                     return result;
-                })
+                });
+    }
+    
+    /**
+     * 流水号生成基准测试（不需要连接）
+     */
+    public CompletableFuture<Map<String, Object>> serialBenchmark(int iterations) {
+        return CompletableFuture.supplyAsync(() -> tcpClient.benchmarkSerial(iterations))
                 .exceptionally(throwable -> {
                     Map<String, Object> result = new HashMap<>();
                     result.put("success", false);
@@ -69,17 +111,23 @@ public class TcpProtocolClientService {
     }
     
     /**
-     * 发送查询请求
+     * 请求编码基准测试（不需要连接）
      */
-    public CompletableFuture<Map<String, Object>> query(String queryData) {
-        return tcpClient.sendQueryRequest(queryData)
-                .thenApply(response -> {
+    public CompletableFuture<Map<String, Object>> encodeBenchmark(int iterations) {
+        return CompletableFuture.supplyAsync(() -> new EncodingBenchmark(clientConfigService.getSenderNodeId()).run(iterations))
+                .exceptionally(throwable -> {
                     Map<String, Object> result = new HashMap<>();
-                    result.put("success", response.getResponseHeader().getStatus() == TcpProtocol.RESPONSE_SUCCESS);
-                    result.put("status", response.getResponseHeader().getStatus());
-                    result.put("data", new String(response.getData()));
+                    result.put("success", false);
+                    result.put("error", throwable.getMessage());
                     return result;
-                })
+                });
+    }
+    
+    /**
+     * 查询负载测试（观察断线重连期间的吞吐量）
+     */
+    public CompletableFuture<Map<String, Object>> queryLoadTest(long durationMs, int concurrency, long bucketMs, long dropAtMs) {
+        return queryLoadService.run(durationMs, concurrency, bucketMs, dropAtMs)
                 .exceptionally(throwable -> {
                     Map<String, Object> result = new HashMap<>();
                     result.put("success", false);
@@ -89,10 +137,10 @@ public class TcpProtocolClientService {
     }
     
     /**
-     * 发送更新请求
+     * 发送签到请求
      */
-    public CompletableFuture<Map<String, Object>> update(String updateData) {
-        return tcpClient.sendUpdateRequest(updateData)
+    public CompletableFuture<Map<String, Object>> signIn(String userData) {
+        return tcpClient.sendSignInRequest(userData)
                 .thenApply(response -> {
                     Map<String, Object> result = new HashMap<>();
                     result.put("success", response.getResponseHeader().getStatus() == TcpProtocol.RESPONSE_SUCCESS);
@@ -108,14 +156,62 @@ public class TcpProtocolClientService {
                 });
     }
     
+    /**
+     * 发送查询请求
+     */
+    public CompletableFuture<Map<String, Object>> query(String queryData) {
+        return sendCachedRequest("QUERY", queryData, () -> tcpClient.sendQueryRequest(queryData));
+    }
+    
+    /**
+     * 发送更新请求
+     */
+    public CompletableFuture<Map<String, Object>> update(String updateData) {
+        return sendCachedRequest("UPDATE", updateData, () -> tcpClient.sendUpdateRequest(updateData));
+    }
+    
     /**
      * 发送删除请求
      */
     public CompletableFuture<Map<String, Object>> delete(String deleteData) {
-        return tcpClient.sendDeleteRequest(deleteData)
+        return sendCachedRequest("DELETE", deleteData, () -> tcpClient.sendDeleteRequest(deleteData));
+    }
+    
+    /**
+     * 发送自定义业务请求
+     */
+    public CompletableFuture<Map<String, Object>> sendBusinessRequest(String transactionCode, String data) {
+        return sendCachedRequest(transactionCode, data, () -> tcpClient.sendBusinessRequest(transactionCode, data));
+    }
+    
+    /**
+     * 经过响应缓存发送业务请求：可缓存的交易先查缓存，命中时不发送请求并在结果中标记cached；
+     * 未命中时与同一缓存代数下在途的相同请求合并，成功响应以发送时的代数写入缓存，
+     * 配置为清空缓存的交易（UPDATE/DELETE）成功后清空全部缓存
+     */
+    private CompletableFuture<Map<String, Object>> sendCachedRequest(String transactionCode, String data,
+                                                                     Supplier<CompletableFuture<TcpProtocol.Message>> sender) {
+        TcpProtocol.Message cached = responseCacheService.lookup(transactionCode, data);
+        if (cached != null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("status", cached.getResponseHeader().getStatus());
+            result.put("data", new String(cached.getData()));
+            result.put("cached", true);
+            return CompletableFuture.completedFuture(result);
+        }
+        
+        // 合并键包含代数，加入的在途请求一定是在此代数下发出的，写回缓存时使用同一代数
+        long generation = responseCacheService.generation();
+        return requestCoalescer.execute(transactionCode, data, generation, sender)
                 .thenApply(response -> {
+                    boolean success = response.getResponseHeader().getStatus() == TcpProtocol.RESPONSE_SUCCESS;
+                    if (success) {
+                        responseCacheService.store(transactionCode, data, generation, response);
+                        responseCacheService.onSuccess(transactionCode);
+                    }
                     Map<String, Object> result = new HashMap<>();
-                    result.put("success", response.getResponseHeader().getStatus() == TcpProtocol.RESPONSE_SUCCESS);
+                    result.put("success", success);
                     result.put("status", response.getResponseHeader().getStatus());
                     result.put("data", new String(response.getData()));
                     return result;
@@ -129,17 +225,102 @@ public class TcpProtocolClientService {
     }
     
     /**
-     * 发送自定义业务请求
+     * 响应缓存统计信息
      */
-    public CompletableFuture<Map<String, Object>> sendBusinessRequest(String transactionCode, String data) {
-        return tcpClient.sendBusinessRequest(transactionCode, data)
-                .thenApply(response -> {
+    public Map<String, Object> getCacheStats() {
+        return responseCacheService.getStats();
+    }
+    
+    /**
+     * 相同请求合并统计信息
+     */
+    public Map<String, Object> getCoalesceStats() {
+        return requestCoalescer.getStats();
+    }
+    
+    /**
+     * 清空响应缓存，返回清除的条目数
+     */
+    public int invalidateCache() {
+        return responseCacheService.invalidateAll();
+    }
+    
+    /**
+     * 批量接口单次请求数上限
+     */
+    public int getBatchMaxSize() {
+        return clientConfigService.getBatchMaxSize();
+    }
+    
+    /**
+     * 批量发送请求：所有请求立即通过连接池流水线发出，返回的结果列表与请求顺序一致；
+     * 交易码为SIGNIN时发送签到请求
+     */
+    public List<CompletableFuture<Map<String, Object>>> batch(List<Map<String, String>> requests) {
+        List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            Map<String, String> request = requests.get(i);
+            String transactionCode = request.get("transactionCode");
+            String data = request.getOrDefault("data", "");
+            CompletableFuture<Map<String, Object>> result = "SIGNIN".equals(transactionCode)
+                    ? signIn(data != null ? data : "")
+                    : sendBusinessRequest(transactionCode, data != null ? data : "");
+            int index = i;
+            results.add(result.thenApply(item -> {
+                item.put("index", index);
+                item.put("transactionCode", transactionCode);
+                return item;
+            }));
+        }
+        return results;
+    }
+    
+    /**
+     * 增量同步下载目录中的文件
+     */
+    public CompletableFuture<Map<String, Object>> deltaSync(String fileName) {
+        return deltaSyncService.sync(fileName)
+                .exceptionally(throwable -> {
                     Map<String, Object> result = new HashMap<>();
-                    result.put("success", response.getResponseHeader().getStatus() == TcpProtocol.RESPONSE_SUCCESS);
-                    result.put("status", response.getResponseHeader().getStatus());
-                    result.put("data", new String(response.getData()));
+                    result.put("success", false);
+                    result.put("error", throwable.getMessage());
                     return result;
-                })
+                });
+    }
+    
+    /**
+     * 多连接并行下载文件，connections为空时使用配置的连接数
+     */
+    public CompletableFuture<Map<String, Object>> parallelDownload(String fileName, Integer connections) {
+        CompletableFuture<Map<String, Object>> future = connections != null
+                ? parallelDownloadService.download(fileName, connections)
+                : parallelDownloadService.download(fileName);
+        return future.exceptionally(throwable -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("error", throwable.getMessage());
+            return result;
+        });
+    }
+    
+    /**
+     * 并行下载吞吐量对比（不同连接数）
+     */
+    public CompletableFuture<Map<String, Object>> parallelDownloadBenchmark(String fileName, List<Integer> connectionCounts) {
+        return parallelDownloadService.benchmark(fileName, connectionCounts)
+                .exceptionally(throwable -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("success", false);
+                    result.put("error", throwable.getMessage());
+                    return result;
+                });
+    }
+    
+    /**
+     * 批量打包下载匹配的文件
+     */
+    public CompletableFuture<Map<String, Object>> archiveDownload(List<String> patterns, boolean tar) {
+        return archiveDownloadService.download(patterns, tar)
                 .exceptionally(throwable -> {
                     Map<String, Object> result = new HashMap<>();
                     result.put("success", false);
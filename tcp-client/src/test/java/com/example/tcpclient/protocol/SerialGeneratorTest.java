@@ -0,0 +1,95 @@
+package com.example.tcpclient.protocol;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SerialGenerator的状态文件：预留上限的写入和重启时等待系统时钟越过上限
+ */
+class SerialGeneratorTest {
+
+    private static final long NOW = SerialGenerator.EPOCH + 1_000_000L;
+    private static final int SEQUENCES_PER_MILLI = 1 << SerialGenerator.SEQUENCE_BITS;
+
+    @TempDir
+    Path directory;
+
+    private static long saved(Path stateFile) throws IOException {
+        return Long.parseLong(new String(Files.readAllBytes(stateFile), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void reservationIsSavedWhenTimestampReachesIt() throws IOException {
+        Path stateFile = directory.resolve("state").resolve("node-1.state");
+        AtomicLong clock = new AtomicLong(NOW);
+        SerialGenerator generator = new SerialGenerator(1, 10, stateFile, clock::get);
+        for (int i = 0; i < 1000; i++) {
+            generator.nextId();
+        }
+        assertEquals(NOW + SerialGenerator.RESERVE_MILLIS, saved(stateFile));
+        assertEquals(1L, generator.getStats().get("reservations"));
+
+        clock.set(NOW + SerialGenerator.RESERVE_MILLIS - 1);
+        generator.nextId();
+        assertEquals(1L, generator.getStats().get("reservations"));
+
+        clock.set(NOW + SerialGenerator.RESERVE_MILLIS);
+        generator.nextId();
+        assertEquals(NOW + 2 * SerialGenerator.RESERVE_MILLIS, saved(stateFile));
+        assertEquals(2L, generator.getStats().get("reservations"));
+    }
+
+    @Test
+    void restartWaitsUntilBorrowedTimeHasPassed() {
+        Path stateFile = directory.resolve("node-1.state");
+        SerialGenerator before = new SerialGenerator(1, 10, stateFile, () -> NOW);
+        long last = -1;
+        for (int i = 0; i < 3 * SEQUENCES_PER_MILLI; i++) {
+            last = before.nextId();
+        }
+        assertEquals(NOW + 2, SerialGenerator.timestampOf(last));
+
+        // 重启后系统时钟仍停在NOW（借用的时间尚未到达）：等待系统时钟越过保存的上限后才签发流水号
+        long restarted = System.currentTimeMillis();
+        SerialGenerator after = new SerialGenerator(1, 10, stateFile,
+                () -> NOW + System.currentTimeMillis() - restarted);
+        long serial = after.nextId();
+        assertTrue(serial > last);
+        assertTrue(SerialGenerator.timestampOf(serial) >= NOW + SerialGenerator.RESERVE_MILLIS);
+        assertTrue((Long) after.getStats().get("startupWaitMillis") > 0);
+    }
+
+    @Test
+    void restartAfterLargeClockRegressionIsRefused() throws IOException {
+        Path stateFile = directory.resolve("node-1.state");
+        Files.write(stateFile, Long.toString(NOW + SerialGenerator.MAX_STARTUP_WAIT_MILLIS + 1)
+                .getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IllegalStateException.class, () -> new SerialGenerator(1, 10, stateFile, () -> NOW));
+    }
+
+    @Test
+    void restartAfterReservationExpiredDoesNotWait() throws IOException {
+        Path stateFile = directory.resolve("node-1.state");
+        Files.write(stateFile, Long.toString(NOW).getBytes(StandardCharsets.US_ASCII));
+        SerialGenerator generator = new SerialGenerator(1, 10, stateFile, () -> NOW);
+        assertEquals(NOW, SerialGenerator.timestampOf(generator.nextId()));
+        assertEquals(0L, generator.getStats().get("startupWaitMillis"));
+    }
+
+    @Test
+    void corruptStateFileIsRejected() throws IOException {
+        Path stateFile = directory.resolve("node-1.state");
+        Files.write(stateFile, "not a timestamp".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IllegalStateException.class, () -> new SerialGenerator(1, 10, stateFile, () -> NOW));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.tcpclient.service;
+
+import com.example.tcpclient.protocol.TcpProtocol;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * RequestCoalescer只合并同一缓存代数下的在途请求
+ */
+class RequestCoalescerTest {
+
+    private RequestCoalescer coalescer;
+    private final AtomicInteger sends = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new RequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "clientConfigService", new ClientConfigService() {
+            @Override
+            public Set<String> getCoalesceCodes() {
+                return Set.of("QUERY");
+            }
+        });
+    }
+
+    private CompletableFuture<TcpProtocol.Message> send(long generation, CompletableFuture<TcpProtocol.Message> response) {
+        return coalescer.execute("QUERY", "id=1", generation, () -> {
+            sends.incrementAndGet();
+            return response;
+        });
+    }
+
+    private static TcpProtocol.Message message(String data) {
+        return new TcpProtocol.Message(new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_SUCCESS), data.getBytes());
+    }
+
+    @Test
+    void joinsInFlightRequestOfSameGeneration() {
+        CompletableFuture<TcpProtocol.Message> response = new CompletableFuture<>();
+        CompletableFuture<TcpProtocol.Message> first = send(0, response);
+        CompletableFuture<TcpProtocol.Message> second = send(0, new CompletableFuture<>());
+        assertEquals(1, sends.get());
+
+        response.complete(message("old"));
+        assertEquals("old", new String(first.join().getData()));
+        assertEquals("old", new String(second.join().getData()));
+        assertEquals(1L, coalescer.getStats().get("saved"));
+    }
+
+    @Test
+    void newGenerationDoesNotJoinEarlierRequest() {
+        CompletableFuture<TcpProtocol.Message> before = new CompletableFuture<>();
+        CompletableFuture<TcpProtocol.Message> after = new CompletableFuture<>();
+        CompletableFuture<TcpProtocol.Message> stale = send(0, before);
+        // 写操作成功后代数递增，之后的查询重新发送
+        CompletableFuture<TcpProtocol.Message> fresh = send(1, after);
+        assertEquals(2, sends.get());
+
+        after.complete(message("new"));
+        assertEquals("new", new String(fresh.join().getData()));
+        assertFalse(stale.isDone());
+        before.complete(message("old"));
+        assertEquals("old", new String(stale.join().getData()));
+        assertEquals(0L, coalescer.getStats().get("saved"));
+    }
+
+    @Test
+    void completedRequestLeavesInFlightTable() {
+        CompletableFuture<TcpProtocol.Message> response = new CompletableFuture<>();
+        send(0, response);
+        response.complete(message("done"));
+        assertEquals(0, coalescer.getStats().get("inFlight"));
+        send(0, new CompletableFuture<>());
+        assertEquals(2, sends.get());
+        assertEquals(1, coalescer.getStats().get("inFlight"));
+    }
+}
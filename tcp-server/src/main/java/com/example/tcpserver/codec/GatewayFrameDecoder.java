@@ -0,0 +1,100 @@
+package com.example.tcpserver.codec;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import com.example.tcpserver.service.GatewayRouter;
+import com.example.tcpserver.service.GatewayUpstream;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 网关分帧（启用网关时位于TcpProtocolDecoder之前）
+ * 按请求header后的长度字段切出完整的请求报文，不复制字节：接收节点号在路由表中的业务请求输出为ForwardedRequest，
+ * 原样转发到上游；其余报文（含签到和流式交易，会话由网关自身维护）作为ByteBuf交给TcpProtocolDecoder在本实例处理
+ */
+@Slf4j
+public class GatewayFrameDecoder extends ByteToMessageDecoder {
+
+    private static final int REQUEST_HEADER_LENGTH = 42;
+    private static final int LENGTH_FIELD_LENGTH = 4;
+    public static final int NODE_ID_LENGTH = 6;
+    private static final int RECEIVER_OFFSET = 6;
+    private static final int TRANSACTION_TYPE_OFFSET = 12;
+    private static final int TRANSACTION_CODE_OFFSET = 13;
+    private static final int MAX_MESSAGE_LENGTH = 1024 * 1024;
+
+    private final GatewayRouter router;
+    private final byte[] field = new byte[TcpProtocol.TRANSACTION_CODE_LENGTH];
+
+    public GatewayFrameDecoder(GatewayRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.readableBytes() >= REQUEST_HEADER_LENGTH + LENGTH_FIELD_LENGTH) {
+            int start = in.readerIndex();
+            int messageLength = in.getInt(start + REQUEST_HEADER_LENGTH);
+            if (messageLength < REQUEST_HEADER_LENGTH + LENGTH_FIELD_LENGTH || messageLength > MAX_MESSAGE_LENGTH) {
+                log.error("Invalid message length: {}", messageLength);
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                return;
+            }
+            if (in.readableBytes() < messageLength) {
+                return;
+            }
+
+            GatewayUpstream upstream = null;
+            if (in.getByte(start + TRANSACTION_TYPE_OFFSET) == TcpProtocol.TRANSACTION_TYPE_BUSINESS) {
+                upstream = router.route(pack(in, start + RECEIVER_OFFSET, NODE_ID_LENGTH),
+                        pack(in, start + TRANSACTION_CODE_OFFSET, TcpProtocol.TRANSACTION_CODE_LENGTH));
+            }
+            if (upstream == null) {
+                out.add(in.readRetainedSlice(messageLength));
+            } else {
+                long senderKey = pack(in, start, NODE_ID_LENGTH);
+                out.add(new ForwardedRequest(upstream, senderKey, in.readRetainedSlice(messageLength)));
+            }
+        }
+    }
+
+    /**
+     * 节点号或交易码打包为long（见TcpProtocol.packTransactionCode），不创建字符串
+     */
+    private long pack(ByteBuf in, int index, int length) {
+        in.getBytes(index, field, 0, length);
+        return TcpProtocol.packTransactionCode(field, 0, length);
+    }
+
+    /**
+     * 需要转发到上游的请求报文
+     */
+    public static class ForwardedRequest {
+
+        private final GatewayUpstream upstream;
+        private final long senderNodeKey;
+        private final ByteBuf frame;
+
+        public ForwardedRequest(GatewayUpstream upstream, long senderNodeKey, ByteBuf frame) {
+            this.upstream = upstream;
+            this.senderNodeKey = senderNodeKey;
+            this.frame = frame;
+        }
+
+        public GatewayUpstream getUpstream() {
+            return upstream;
+        }
+
+        public long getSenderNodeKey() {
+            return senderNodeKey;
+        }
+
+        public ByteBuf getFrame() {
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.tcpserver.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 响应报文分帧（网关上游连接使用）
+ * 按响应header后的长度字段切出完整的响应报文，输出共享底层缓冲区的ByteBuf（不复制、不解析）
+ */
+@Slf4j
+public class ResponseFrameDecoder extends ByteToMessageDecoder {
+
+    private static final int RESPONSE_HEADER_LENGTH = 2;
+    private static final int LENGTH_FIELD_LENGTH = 4;
+    private static final int MAX_MESSAGE_LENGTH = 1024 * 1024 + RESPONSE_HEADER_LENGTH + LENGTH_FIELD_LENGTH;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.readableBytes() >= RESPONSE_HEADER_LENGTH + LENGTH_FIELD_LENGTH) {
+            int messageLength = in.getInt(in.readerIndex() + RESPONSE_HEADER_LENGTH);
+            if (messageLength < RESPONSE_HEADER_LENGTH + LENGTH_FIELD_LENGTH || messageLength > MAX_MESSAGE_LENGTH) {
+                log.error("Invalid upstream response length: {}", messageLength);
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                return;
+            }
+            if (in.readableBytes() < messageLength) {
+                return;
+            }
+            out.add(in.readRetainedSlice(messageLength));
+        }
+    }
+}
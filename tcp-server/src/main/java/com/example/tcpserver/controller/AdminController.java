@@ -1,8 +1,18 @@
 package com.example.tcpserver.controller;
 
 import com.example.tcpserver.handler.TcpProtocolHandler;
+import com.example.tcpserver.handler.TransactionHandlerRegistry;
+import com.example.tcpserver.handler.TransactionScheduler;
+import com.example.tcpserver.service.DeltaSyncService;
+import com.example.tcpserver.service.FileHashIndex;
+import com.example.tcpserver.service.FileTransferService;
 import com.example.tcpserver.service.FileService;
+import com.example.tcpserver.service.GatewayRouter;
+import com.example.tcpserver.service.IdempotencyCache;
+import com.example.tcpserver.service.KeyValueStore;
 import com.example.tcpserver.service.ResponseConfigService;
+import com.example.tcpserver.service.SessionTable;
+import com.example.tcpserver.service.TransactionJournal;
 import com.example.tcpserver.service.ExternalConfigManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +43,39 @@ public class AdminController {
     @Autowired
     private FileService fileService;
     
+    @Autowired
+    private FileHashIndex fileHashIndex;
+    
+    @Autowired
+    private DeltaSyncService deltaSyncService;
+    
+    @Autowired
+    private FileTransferService fileTransferService;
+    
+    @Autowired
+    private TcpProtocolHandler tcpProtocolHandler;
+    
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+    
+    @Autowired
+    private TransactionJournal transactionJournal;
+    
+    @Autowired
+    private KeyValueStore keyValueStore;
+    
+    @Autowired
+    private TransactionHandlerRegistry transactionHandlerRegistry;
+    
+    @Autowired
+    private TransactionScheduler transactionScheduler;
+    
+    @Autowired
+    private SessionTable sessionTable;
+    
+    @Autowired
+    private GatewayRouter gatewayRouter;
+    
     @Value("${tcp.server.port:8888}")
     private int tcpPort;
     
@@ -99,7 +142,16 @@ public class AdminController {
         stats.put("totalRequests", TcpProtocolHandler.getTotalRequests());
         stats.put("totalResponses", TcpProtocolHandler.getTotalResponses());
         stats.put("connectedClients", TcpProtocolHandler.getConnectedClients());
-        stats.put("nextTransactionSerial", TcpProtocolHandler.getNextTransactionSerial());
+        stats.put("nextTransactionSerial", String.format("%020d", tcpProtocolHandler.nextTransactionSerial()));
+        stats.put("serial", tcpProtocolHandler.getSerialStats());
+        stats.put("idempotency", idempotencyCache.getStats());
+        stats.put("handlers", transactionHandlerRegistry.getStats());
+        stats.put("scheduler", transactionScheduler.getStats());
+        stats.put("sessions", sessionTable.getStats());
+        stats.put("gateway", gatewayRouter.getStats());
+        stats.put("delayedResponses", TcpProtocolHandler.getDelayedResponses());
+        stats.put("deltaSync", deltaSyncService.getStats());
+        stats.put("fileTransfer", fileTransferService.getStats());
         
         // 协议信息
         Map<String, Object> protocolInfo = new HashMap<>();
@@ -121,6 +173,135 @@ public class AdminController {
         return ResponseEntity.ok(stats);
     }
     
+    /**
+     * 获取交易调度统计信息：各组的队列深度、排队等待时间和拒绝次数，连接上排队任务的拒绝次数
+     */
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<Map<String, Object>> getSchedulerStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pools", transactionScheduler.getStats());
+        stats.put("connections", transactionScheduler.getConnectionStats());
+        stats.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(stats);
+    }
+    
+    /**
+     * 获取签到会话统计信息和当前会话列表（最多limit条）
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> getSessions(@RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("stats", sessionTable.getStats());
+        result.put("sessions", sessionTable.list(limit));
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 获取网关路由表和各上游的转发统计
+     */
+    @GetMapping("/gateway/stats")
+    public ResponseEntity<Map<String, Object>> getGatewayStats() {
+        Map<String, Object> stats = gatewayRouter.getStats();
+        stats.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(stats);
+    }
+    
+    /**
+     * 立即重新加载网关路由文件
+     */
+    @PostMapping("/gateway/reload")
+    public ResponseEntity<Map<String, Object>> reloadGatewayRoutes() {
+        Map<String, Object> result = gatewayRouter.reload();
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 网关转发开销基准测试：同样的请求直连上游和经本实例转发各发送一轮
+     */
+    @PostMapping("/gateway/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkGateway(
+            @RequestParam String nodeId,
+            @RequestParam(defaultValue = "20000") int requests,
+            @RequestParam(defaultValue = "4") int threads,
+            @RequestParam(defaultValue = "QUERY") String transactionCode,
+            @RequestParam(defaultValue = "bench") String data) {
+        Map<String, Object> result = gatewayRouter.benchmark(nodeId, requests, threads, transactionCode, data);
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 获取交易日志统计信息
+     */
+    @GetMapping("/journal/stats")
+    public ResponseEntity<Map<String, Object>> getJournalStats() {
+        Map<String, Object> stats = transactionJournal.getStats();
+        stats.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(stats);
+    }
+    
+    /**
+     * 按时间范围（毫秒时间戳）和流水号范围查询交易日志
+     */
+    @GetMapping("/journal/scan")
+    public ResponseEntity<Map<String, Object>> scanJournal(
+            @RequestParam(defaultValue = "0") long fromTime,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long toTime,
+            @RequestParam(defaultValue = "0") long fromSerial,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long toSerial,
+            @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = transactionJournal.scan(fromTime, toTime, fromSerial, toSerial, limit);
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 获取键值存储统计信息
+     */
+    @GetMapping("/store/stats")
+    public ResponseEntity<Map<String, Object>> getStoreStats() {
+        Map<String, Object> stats = keyValueStore.getStats();
+        stats.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(stats);
+    }
+    
+    /**
+     * 立即压缩键值存储的旧数据文件
+     */
+    @PostMapping("/store/compact")
+    public ResponseEntity<Map<String, Object>> compactStore() {
+        Map<String, Object> result = keyValueStore.compact();
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 键值存储混合读写基准测试
+     */
+    @PostMapping("/store/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkStore(
+            @RequestParam(defaultValue = "100000") int operations,
+            @RequestParam(defaultValue = "4") int threads,
+            @RequestParam(defaultValue = "0.8") double readRatio,
+            @RequestParam(defaultValue = "10000") int keys,
+            @RequestParam(defaultValue = "100") int valueSize) {
+        Map<String, Object> result = keyValueStore.benchmark(operations, threads, readRatio, keys, valueSize);
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
     /**
      * 获取文件统计信息
      */
@@ -139,11 +320,55 @@ public class AdminController {
         stats.put("totalFileSizeFormatted", formatFileSize(totalSize));
         
         stats.put("files", fileList);
+        stats.put("index", fileHashIndex.getStats());
         stats.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
         
         return ResponseEntity.ok(stats);
     }
     
+    /**
+     * 获取文件内容哈希索引
+     */
+    @GetMapping("/files/index")
+    public ResponseEntity<Map<String, Object>> getFileIndex() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("stats", fileHashIndex.getStats());
+        result.put("entries", fileHashIndex.getEntries());
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 查找内容重复的文件
+     */
+    @GetMapping("/files/duplicates")
+    public ResponseEntity<Map<String, Object>> getDuplicateFiles() {
+        Map<String, List<String>> duplicates = fileHashIndex.findDuplicates();
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("duplicateGroups", duplicates.size());
+        result.put("duplicates", duplicates);
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 重新扫描文件目录并更新哈希索引
+     */
+    @PostMapping("/files/index/rescan")
+    public ResponseEntity<Map<String, Object>> rescanFileIndex() {
+        fileHashIndex.rescan();
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("message", "文件索引扫描已触发");
+        result.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return ResponseEntity.ok(result);
+    }
+    
     /**
      * 获取服务器健康状态
      */
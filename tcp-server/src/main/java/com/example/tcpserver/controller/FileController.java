@@ -0,0 +1,169 @@
+package com.example.tcpserver.controller;
+
+import com.example.tcpserver.service.FileHashEntry;
+import com.example.tcpserver.service.FileHashIndex;
+import com.example.tcpserver.service.FileInfo;
+import com.example.tcpserver.service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 文件下载控制器
+ * 支持Range分段下载、ETag条件请求，响应体以零拷贝方式发送
+ */
+@Slf4j
+@RestController
+@RequestMapping("/files")
+public class FileController {
+
+    // Tomcat sendfile 请求属性（与 DefaultServlet 使用的属性一致）
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileHashIndex fileHashIndex;
+
+    @Value("${tcp.server.file.sendfile:true}")
+    private boolean sendfileEnabled;
+
+    /**
+     * 下载文件
+     */
+    @GetMapping("/{fileName}")
+    public ResponseEntity<?> download(@PathVariable String fileName,
+                                      @RequestHeader HttpHeaders requestHeaders,
+                                      HttpServletRequest request,
+                                      WebRequest webRequest) throws IOException {
+        Path filePath = fileService.resolveFile(fileName);
+        if (filePath == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        FileInfo fileInfo = fileService.getFileInfo(filePath);
+
+        // 已索引的文件使用SHA-256作为ETag，客户端可凭本地内容哈希跳过下载
+        FileHashEntry hashEntry = fileHashIndex.getEntry(fileInfo);
+        String etag = hashEntry != null ? "\"" + hashEntry.getSha256() + "\"" : fileService.getETag(fileInfo);
+
+        // If-None-Match / If-Modified-Since 命中时直接返回304（同时写入ETag和Last-Modified响应头）
+        if (webRequest.checkNotModified(etag, fileInfo.getLastModified())) {
+            return null;
+        }
+
+        long fileSize = fileInfo.getFileSize();
+        FileSystemResource resource = new FileSystemResource(filePath);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (hashEntry != null) {
+            headers.set("Digest", "sha-256=" + Base64.getEncoder().encodeToString(HexFormat.of().parseHex(hashEntry.getSha256())));
+            headers.set("X-Checksum-CRC32C", hashEntry.getCrc32c());
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = isRangeApplicable(requestHeaders, etag) ? requestHeaders.getRange() : List.of();
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(fileSize);
+        }
+
+        boolean isHead = "HEAD".equals(request.getMethod());
+
+        // 整个文件
+        if (ranges.isEmpty()) {
+            headers.setContentLength(fileSize);
+            if (!isHead && trySendfile(request, filePath, 0, fileSize)) {
+                log.debug("Serving file via sendfile: {}, size: {} bytes", fileName, fileSize);
+                return ResponseEntity.ok().headers(headers).build();
+            }
+            // If-Range不匹配时，避免框架再次按Range截取Resource
+            if (requestHeaders.containsKey(HttpHeaders.RANGE)) {
+                return ResponseEntity.ok().headers(headers).body(new InputStreamResource(resource.getInputStream()));
+            }
+            return ResponseEntity.ok().headers(headers).body(resource);
+        }
+
+        // 多个区间：交给框架按ResourceRegion流式写出multipart/byteranges
+        if (ranges.size() > 1) {
+            return ResponseEntity.ok().headers(headers).body(resource);
+        }
+
+        // 单个区间
+        ResourceRegion region;
+        try {
+            region = ranges.get(0).toResourceRegion(resource);
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(fileSize);
+        }
+
+        long start = region.getPosition();
+        long end = start + region.getCount() - 1;
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+        headers.setContentLength(region.getCount());
+        if (!isHead && trySendfile(request, filePath, start, end + 1)) {
+            log.debug("Serving file range via sendfile: {}, range: {}-{}", fileName, start, end);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).build();
+        }
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(region);
+    }
+
+    /**
+     * 检查Range是否适用（If-Range不匹配时返回整个文件）
+     */
+    private boolean isRangeApplicable(HttpHeaders requestHeaders, String etag) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        return ifRange == null || ifRange.equals(etag);
+    }
+
+    /**
+     * 尝试使用Tomcat sendfile（FileChannel.transferTo）发送文件
+     */
+    private boolean trySendfile(HttpServletRequest request, Path filePath, long start, long end) {
+        if (!sendfileEnabled || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            return false;
+        }
+
+        request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_END_ATTR, end);
+        return true;
+    }
+
+    /**
+     * 416响应
+     */
+    private ResponseEntity<?> rangeNotSatisfiable(long fileSize) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+            .build();
+    }
+}
@@ -75,6 +75,10 @@ public class HomeController {
         html.append("<a href=\"/admin/files/stats\" target=\"_blank\">/admin/files/stats</a>");
         html.append("</div>");
         html.append("<div class=\"api-item\">");
+        html.append("<strong>文件下载:</strong> ");
+        html.append("/files/{fileName} (支持Range/ETag)");
+        html.append("</div>");
+        html.append("<div class=\"api-item\">");
         html.append("<strong>模拟场景:</strong> ");
         html.append("<a href=\"/api/simulation/scenarios\" target=\"_blank\">/api/simulation/scenarios</a>");
         html.append("</div>");
@@ -119,6 +123,7 @@ public class HomeController {
             "clients", "/admin/clients", 
             "protocolStats", "/admin/protocol/stats",
             "fileStats", "/admin/files/stats",
+            "fileDownload", "/files/{fileName}",
             "simulation", "/api/simulation/scenarios",
             "health", "/admin/health",
             "system", "/admin/system"
@@ -0,0 +1,104 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 流式交易的响应位置
+ * 由TcpProtocolHandler在请求准入时（连接的事件循环中）占住连接上的下一个响应位置；处理器在任意线程写出的帧交给连接的事件循环，
+ * 流到达响应队列队首之前在流中排队（数量由StreamResponseWriter限制），到达队首后直接写出；最后一帧写出后才轮到其后的响应，
+ * 同一连接上流水线发送的请求（包括多个流式交易）仍按请求顺序返回
+ */
+public final class ResponseStream {
+
+    private final ChannelHandlerContext ctx;
+    private final Runnable drain;
+
+    // 以下字段只在连接的事件循环中访问
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private boolean finished;
+    private boolean aborted;
+
+    ResponseStream(ChannelHandlerContext ctx, Runnable drain) {
+        this.ctx = ctx;
+        this.drain = drain;
+    }
+
+    /**
+     * 写出一帧（任意线程调用），last为true表示流结束；返回的future在帧写出后完成，连接已关闭或流已结束时失败
+     */
+    public ChannelFuture write(TcpProtocol.Message frame, boolean last) {
+        ChannelPromise promise = ctx.newPromise();
+        if (ctx.executor().inEventLoop()) {
+            enqueue(frame, last, promise);
+        } else {
+            try {
+                ctx.executor().execute(() -> enqueue(frame, last, promise));
+            } catch (RejectedExecutionException e) {
+                promise.tryFailure(e);
+            }
+        }
+        return promise;
+    }
+
+    private void enqueue(TcpProtocol.Message frame, boolean last, ChannelPromise promise) {
+        if (finished) {
+            promise.tryFailure(new IllegalStateException("Response stream already finished"));
+            return;
+        }
+        if (aborted || !ctx.channel().isActive()) {
+            promise.tryFailure(new IOException("Connection closed"));
+            return;
+        }
+        frames.add(new Frame(frame, promise));
+        finished = last;
+        drain.run();
+    }
+
+    /**
+     * 流位于响应队列队首时写出排队的帧（由调用方flush），返回是否写出了帧
+     */
+    boolean writeQueued() {
+        boolean written = !frames.isEmpty();
+        Frame frame;
+        while ((frame = frames.poll()) != null) {
+            ctx.write(frame.message, frame.promise);
+        }
+        return written;
+    }
+
+    /**
+     * 最后一帧已写出，之后的响应可以写出
+     */
+    boolean isFinished() {
+        return finished && frames.isEmpty();
+    }
+
+    /**
+     * 连接关闭：排队的帧失败（写出器不再阻塞），之后写入的帧直接失败
+     */
+    void abort() {
+        aborted = true;
+        Frame frame;
+        while ((frame = frames.poll()) != null) {
+            frame.promise.tryFailure(new IOException("Connection closed"));
+        }
+    }
+
+    private static final class Frame {
+
+        private final TcpProtocol.Message message;
+        private final ChannelPromise promise;
+
+        Frame(TcpProtocol.Message message, ChannelPromise promise) {
+            this.message = message;
+            this.promise = promise;
+        }
+    }
+}
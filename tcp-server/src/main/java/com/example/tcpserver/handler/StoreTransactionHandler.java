@@ -0,0 +1,61 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import com.example.tcpserver.service.KeyValueStore;
+import com.example.tcpserver.service.ResponseConfigService;
+import io.netty.channel.ChannelHandlerContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 键值存储处理器：启用键值存储时QUERY/UPDATE/DELETE读写存储（优先于模板响应处理器）。
+ * 读取可能访问磁盘，在交易码所在组的工作线程中执行；写入的响应在刷盘后完成
+ */
+@Component
+@Order(0)
+public class StoreTransactionHandler implements TransactionHandler {
+
+    @Autowired
+    private KeyValueStore keyValueStore;
+
+    @Autowired
+    private ResponseConfigService responseConfigService;
+
+    @Override
+    public List<String> getTransactionCodes() {
+        return keyValueStore.isEnabled() ? List.of("QUERY", "UPDATE", "DELETE") : List.of();
+    }
+
+    @Override
+    public ExecutionMode getExecutionMode() {
+        return ExecutionMode.OFFLOAD;
+    }
+
+    /**
+     * QUERY成功时响应数据为值本身；键不存在时为失败响应，执行失败时返回异常完成的future
+     */
+    @Override
+    public CompletableFuture<TcpProtocol.Message> handle(ChannelHandlerContext ctx, TcpProtocol.Message request) {
+        long transactionCodeKey = request.getRequestHeader().getTransactionCodeKey();
+        return keyValueStore.execute(transactionCodeKey, request.getData()).thenApply(result -> {
+            if (!result.isFound()) {
+                String transactionCode = request.getRequestHeader().getTransactionCode();
+                return new TcpProtocol.Message(new TcpProtocol.ResponseHeader(responseConfigService.getBusinessFailedStatus()),
+                        responseConfigService.generateBusinessFailedResponse(transactionCode, "Key not found: " + result.getKey()).getBytes());
+            }
+            byte[] responseData;
+            if (transactionCodeKey == TcpProtocol.QUERY_KEY) {
+                responseData = result.getValue();
+            } else if (transactionCodeKey == TcpProtocol.UPDATE_KEY) {
+                responseData = responseConfigService.generateUpdateSuccessResponse(result.getKey()).getBytes();
+            } else {
+                responseData = responseConfigService.generateDeleteSuccessResponse(result.getKey()).getBytes();
+            }
+            return new TcpProtocol.Message(new TcpProtocol.ResponseHeader(responseConfigService.getBusinessSuccessStatus()), responseData);
+        });
+    }
+}
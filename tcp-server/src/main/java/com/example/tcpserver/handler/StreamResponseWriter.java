@@ -0,0 +1,160 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.ChannelFutureListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 流式响应写出器
+ * 将数据按帧写出（每帧首字节为流式帧标志），同时限制未写出的帧数量，
+ * 生产者在连接写缓冲积压（或流排在连接上之前的响应之后）时阻塞，避免大文件传输占用与文件大小成正比的内存
+ */
+public class StreamResponseWriter {
+
+    private final ResponseStream stream;
+    private final Semaphore inFlightFrames;
+    private final byte[] frame;
+    private int position;
+    private long bytesWritten;
+    private int framesWritten;
+    private volatile Throwable writeFailure;
+
+    public StreamResponseWriter(ResponseStream stream, int frameSize, int maxInFlightFrames) {
+        this.stream = stream;
+        this.inFlightFrames = new Semaphore(maxInFlightFrames);
+        this.frame = new byte[frameSize];
+        this.position = 1;
+    }
+
+    /**
+     * 当前帧剩余可写字节数
+     */
+    public int remaining() {
+        return frame.length - position;
+    }
+
+    /**
+     * 单帧最大可写数据长度（不含帧标志）
+     */
+    public int capacity() {
+        return frame.length - 1;
+    }
+
+    /**
+     * 确保当前帧至少有指定的剩余空间，不足时先写出当前帧
+     */
+    public void reserve(int length) throws IOException {
+        if (length > capacity()) {
+            throw new IllegalArgumentException("Record too large for frame: " + length);
+        }
+        if (remaining() < length) {
+            flush(TcpProtocol.STREAM_FRAME_MORE);
+        }
+    }
+
+    public void writeByte(byte value) {
+        frame[position++] = value;
+    }
+
+    public void writeInt(int value) {
+        frame[position++] = (byte) (value >>> 24);
+        frame[position++] = (byte) (value >>> 16);
+        frame[position++] = (byte) (value >>> 8);
+        frame[position++] = (byte) value;
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    public void writeBytes(byte[] data, int offset, int length) {
+        System.arraycopy(data, offset, frame, position, length);
+        position += length;
+    }
+
+    /**
+     * 追加数据，当前帧写满时自动写出（用于记录可跨帧的连续字节流）
+     */
+    public void append(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (remaining() == 0) {
+                flush(TcpProtocol.STREAM_FRAME_MORE);
+            }
+            int count = Math.min(length, remaining());
+            writeBytes(data, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * 从文件指定位置读取数据写入当前帧，返回读取的字节数（-1表示文件结束）
+     */
+    public int writeFrom(FileChannel channel, long filePosition, int length) throws IOException {
+        int read = channel.read(ByteBuffer.wrap(frame, position, Math.min(length, remaining())), filePosition);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    /**
+     * 写出当前帧（非最后一帧）
+     */
+    public void flush() throws IOException {
+        flush(TcpProtocol.STREAM_FRAME_MORE);
+    }
+
+    /**
+     * 写出最后一帧
+     */
+    public void finish() throws IOException {
+        flush(TcpProtocol.STREAM_FRAME_LAST);
+    }
+
+    /**
+     * 写出当前帧，写缓冲中未完成的帧达到上限时阻塞等待
+     */
+    private void flush(byte flag) throws IOException {
+        if (writeFailure != null) {
+            throw new IOException("Stream aborted: " + writeFailure.getMessage(), writeFailure);
+        }
+
+        try {
+            inFlightFrames.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for channel", e);
+        }
+
+        byte[] data = new byte[position];
+        System.arraycopy(frame, 0, data, 0, position);
+        data[0] = flag;
+
+        bytesWritten += position - 1;
+        framesWritten++;
+        position = 1;
+
+        TcpProtocol.Message response = new TcpProtocol.Message(
+            new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_SUCCESS), data);
+        stream.write(response, flag == TcpProtocol.STREAM_FRAME_LAST).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                writeFailure = future.cause();
+            }
+            inFlightFrames.release();
+        });
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getFramesWritten() {
+        return framesWritten;
+    }
+}
@@ -1,33 +1,114 @@
 package com.example.tcpserver.handler;
 
+import com.example.tcpserver.codec.GatewayFrameDecoder;
+import com.example.tcpserver.protocol.SerialGenerator;
 import com.example.tcpserver.protocol.TcpProtocol;
+import com.example.tcpserver.service.IdempotencyCache;
 import com.example.tcpserver.service.ResponseConfigService;
+import com.example.tcpserver.service.SessionTable;
+import com.example.tcpserver.service.TransactionJournal;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TCP协议处理器
+ * 单例，所有连接共享（连接级状态保存在channel属性中）；
+ * 客户端按顺序匹配响应，同一连接上的响应（包括流式交易的全部响应帧）必须按请求顺序写出，注入延迟的响应会阻塞其后的响应
  */
 @Slf4j
 @Component
+@ChannelHandler.Sharable
 public class TcpProtocolHandler extends SimpleChannelInboundHandler<TcpProtocol.Message> {
 
     @Autowired
     private ResponseConfigService responseConfigService;
+    
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+    
+    @Autowired
+    private TransactionJournal transactionJournal;
+    
+    @Autowired
+    private TransactionHandlerRegistry handlerRegistry;
+    
+    @Autowired
+    private TransactionScheduler transactionScheduler;
+    
+    @Autowired
+    private SessionTable sessionTable;
+    
+    /**
+     * 延迟注入（测试用）：业务响应按概率延迟写出
+     */
+    @Value("${tcp.server.latency-injection.probability:0}")
+    private double latencyInjectionProbability;
+    
+    @Value("${tcp.server.latency-injection.delay:0}")
+    private long latencyInjectionDelay;
+    
+    /**
+     * 连接上等待写出的响应（前面有被延迟的响应时排队）
+     */
+    private static final AttributeKey<ArrayDeque<PendingResponse>> PENDING_RESPONSES = AttributeKey.valueOf("pendingResponses");
+    
+    private static final AtomicLong delayedResponses = new AtomicLong(0);
+    
+    /**
+     * 交易流水号节点号（0-255，必须配置，-1表示未配置）
+     */
+    @Value("${tcp.server.serial.node-id:-1}")
+    private int serialNodeId;
+    
+    @Value("${tcp.server.serial.max-borrow-millis:1000}")
+    private long serialMaxBorrowMillis;
+    
+    /**
+     * 流水号状态文件目录（文件名为node-<节点号>.state），为空时不保存，重启后可能重复签发流水号
+     */
+    @Value("${tcp.server.serial.directory:serial}")
+    private String serialDirectory;
+    
+    private SerialGenerator serialGenerator;
 
     // 统计信息
     private static volatile int connectedClients = 0;
     private static volatile long totalRequests = 0;
     private static volatile long totalResponses = 0;
-    private static final AtomicLong transactionSerialCounter = new AtomicLong(1);
+    
+    @PostConstruct
+    public void init() {
+        if (serialNodeId < 0) {
+            throw new IllegalStateException("Serial node ID not configured: set tcp.server.serial.node-id (0-"
+                    + SerialGenerator.MAX_NODE_ID + "), unique among all server instances");
+        }
+        Path stateFile = serialDirectory.isEmpty() ? null : Paths.get(serialDirectory, "node-" + serialNodeId + ".state");
+        serialGenerator = new SerialGenerator(serialNodeId, serialMaxBorrowMillis, stateFile);
+    }
     
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
@@ -41,10 +122,21 @@ public class TcpProtocolHandler extends SimpleChannelInboundHandler<TcpProtocol.
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         String clientAddress = ctx.channel().remoteAddress().toString();
         connectedClients--;
+        sessionTable.release(ctx.channel());
+        releasePendingResponses(ctx);
         log.info("Client disconnected: {}, Total clients: {}", clientAddress, connectedClients);
         super.channelInactive(ctx);
     }
     
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof GatewayFrameDecoder.ForwardedRequest forwarded) {
+            handleForwardedRequest(ctx, forwarded);
+        } else {
+            super.channelRead(ctx, msg);
+        }
+    }
+    
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, TcpProtocol.Message msg) throws Exception {
         if (msg.isRequest()) {
@@ -59,22 +151,86 @@ public class TcpProtocolHandler extends SimpleChannelInboundHandler<TcpProtocol.
      */
     private void handleRequest(ChannelHandlerContext ctx, TcpProtocol.Message msg) {
         totalRequests++;
+        long startNanos = System.nanoTime();
         
         TcpProtocol.RequestHeader header = msg.getRequestHeader();
-        log.info("Received request: sender={}, receiver={}, type={}, code={}, serial={}", 
-                header.getSenderNodeId(), header.getReceiverNodeId(), 
-                header.getTransactionType(), header.getTransactionCode(), 
-                header.getTransactionSerial());
+        if (log.isDebugEnabled()) {
+            log.debug("Received request: sender={}, receiver={}, type={}, code={}, serial={}", 
+                    header.getSenderNodeId(), header.getReceiverNodeId(), 
+                    header.getTransactionType(), header.getTransactionCode(), 
+                    header.getTransactionSerial());
+        }
         
         // 根据交易类型处理
         if (header.getTransactionType() == TcpProtocol.TRANSACTION_TYPE_SIGNIN) {
-            handleSignInRequest(ctx, msg);
+            handleSignInRequest(ctx, msg, startNanos);
         } else if (header.getTransactionType() == TcpProtocol.TRANSACTION_TYPE_BUSINESS) {
-            handleBusinessRequest(ctx, msg);
+            handleBusinessRequest(ctx, msg, startNanos);
         } else {
             String errorMessage = responseConfigService.generateUnknownTransactionTypeResponse(header.getTransactionType());
-            sendErrorResponse(ctx, msg, errorMessage);
+            sendErrorResponse(ctx, msg, errorMessage, startNanos);
+        }
+    }
+    
+    /**
+     * 处理网关转发的请求：会话校验后占住响应位置，原始报文转发到上游，上游的响应报文原样写回（不解析、不复制）；
+     * 开启交易日志时才解析转发报文的header并复制请求和响应字节，记录中标记为转发
+     */
+    private void handleForwardedRequest(ChannelHandlerContext ctx, GatewayFrameDecoder.ForwardedRequest forwarded) {
+        totalRequests++;
+        long startNanos = System.nanoTime();
+        ByteBuf frame = forwarded.getFrame();
+        TcpProtocol.Message journaled = journaledRequest(frame);
+        if (!sessionTable.admit(ctx.channel(), forwarded.getSenderNodeKey())) {
+            String senderNodeId = frame.toString(frame.readerIndex(), GatewayFrameDecoder.NODE_ID_LENGTH, StandardCharsets.US_ASCII).trim();
+            frame.release();
+            TcpProtocol.Message response = new TcpProtocol.Message(new TcpProtocol.ResponseHeader(responseConfigService.getBusinessFailedStatus()),
+                    responseConfigService.generateNotSignedInResponse(senderNodeId).getBytes());
+            writeResponse(ctx, response, 0);
+            if (journaled != null) {
+                transactionJournal.record(journaled.getRequestHeader(), journaled.getData(), response, startNanos);
+            }
+            return;
+        }
+        
+        PendingResponse reserved = reserveResponse(ctx);
+        forwarded.getUpstream().forward(frame).whenComplete((response, error) -> ctx.executor().execute(() -> {
+            if (error == null) {
+                if (journaled != null) {
+                    byte[] encoded = new byte[response.readableBytes()];
+                    response.getBytes(response.readerIndex(), encoded);
+                    transactionJournal.recordForwarded(journaled.getRequestHeader(), journaled.getData(), encoded, startNanos);
+                }
+                completeResponse(ctx, reserved, response);
+                return;
+            }
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            log.warn("Forwarding to upstream {} failed: {}", forwarded.getUpstream().getAddress(), cause.toString());
+            String responseData = responseConfigService.generateGatewayErrorResponse(
+                    forwarded.getUpstream().getAddress() + " " + cause.getClass().getSimpleName());
+            TcpProtocol.Message failure = new TcpProtocol.Message(
+                    new TcpProtocol.ResponseHeader(responseConfigService.getBusinessFailedStatus()), responseData.getBytes());
+            if (journaled != null) {
+                transactionJournal.recordForwarded(journaled.getRequestHeader(), journaled.getData(), failure.toBytes(), startNanos);
+            }
+            completeResponse(ctx, reserved, failure);
+        }));
+    }
+    
+    /**
+     * 开启交易日志时解析转发报文的header和请求数据，未开启时返回null（转发路径不解析报文）
+     */
+    private TcpProtocol.Message journaledRequest(ByteBuf frame) {
+        if (!transactionJournal.isEnabled()) {
+            return null;
         }
+        int start = frame.readerIndex();
+        byte[] headerBytes = new byte[TcpProtocol.REQUEST_HEADER_LENGTH];
+        frame.getBytes(start, headerBytes);
+        int dataOffset = TcpProtocol.REQUEST_HEADER_LENGTH + TcpProtocol.LENGTH_FIELD_LENGTH;
+        byte[] data = new byte[frame.readableBytes() - dataOffset];
+        frame.getBytes(start + dataOffset, data);
+        return new TcpProtocol.Message(TcpProtocol.RequestHeader.fromBytes(headerBytes), data);
     }
     
     /**
@@ -91,82 +247,357 @@ public class TcpProtocolHandler extends SimpleChannelInboundHandler<TcpProtocol.
     }
     
     /**
-     * 处理签到交易
+     * 处理签到交易：准入时即在会话表中登记（流水线中紧随其后的业务请求可以通过校验），
+     * 响应在签到组的工作线程中优先生成；会话表或签到组队列已满时直接返回签到失败，连接保持未签到
+     */
+    private void handleSignInRequest(ChannelHandlerContext ctx, TcpProtocol.Message msg, long startNanos) {
+        PendingResponse reserved = reserveResponse(ctx);
+        if (!sessionTable.signIn(ctx.channel(), msg.getRequestHeader().getSenderNodeKey(), msg.getData())) {
+            sendSignInFailedResponse(ctx, msg, "session table full", startNanos, reserved);
+            return;
+        }
+        transactionScheduler.submitSignIn(ctx.channel(), () -> {
+            // 使用配置化的响应
+            String responseData = responseConfigService.generateSigninSuccessResponse();
+            TcpProtocol.ResponseHeader responseHeader = new TcpProtocol.ResponseHeader(responseConfigService.getSigninSuccessStatus());
+            TcpProtocol.Message response = new TcpProtocol.Message(responseHeader, responseData.getBytes());
+            ctx.executor().execute(() -> sendSignInResponse(ctx, msg, response, startNanos, reserved));
+        }, reason -> ctx.executor().execute(() -> {
+            sessionTable.release(ctx.channel());
+            sendSignInFailedResponse(ctx, msg, "sign-in " + reason, startNanos, reserved);
+        }));
+    }
+    
+    private void sendSignInFailedResponse(ChannelHandlerContext ctx, TcpProtocol.Message msg, String reason,
+                                          long startNanos, PendingResponse reserved) {
+        String responseData = responseConfigService.generateSigninFailedResponse(reason);
+        TcpProtocol.ResponseHeader responseHeader = new TcpProtocol.ResponseHeader(responseConfigService.getSigninFailedStatus());
+        sendSignInResponse(ctx, msg, new TcpProtocol.Message(responseHeader, responseData.getBytes()), startNanos, reserved);
+    }
+    
+    /**
+     * 发送签到响应，写入预先占住的响应位置
      */
-    private void handleSignInRequest(ChannelHandlerContext ctx, TcpProtocol.Message msg) {
+    private void sendSignInResponse(ChannelHandlerContext ctx, TcpProtocol.Message msg, TcpProtocol.Message response,
+                                    long startNanos, PendingResponse reserved) {
         TcpProtocol.RequestHeader requestHeader = msg.getRequestHeader();
-        
-        // 使用配置化的响应
-        String responseData = responseConfigService.generateSigninSuccessResponse();
-        byte responseStatus = responseConfigService.getSigninSuccessStatus();
-        
-        // 创建响应header
-        TcpProtocol.ResponseHeader responseHeader = new TcpProtocol.ResponseHeader(responseStatus);
-        
-        // 创建响应消息
-        TcpProtocol.Message response = new TcpProtocol.Message(responseHeader, responseData.getBytes());
-        
-        // 发送响应
-        ctx.writeAndFlush(response);
+        completeResponse(ctx, reserved, response);
+        transactionJournal.record(requestHeader, msg.getData(), response, startNanos);
         
         log.info("Sent sign in response to client: {}, status: {}, data: {}", 
-                requestHeader.getSenderNodeId(), responseStatus, responseData);
+                requestHeader.getSenderNodeId(), response.getResponseHeader().getStatus(), new String(response.getData()));
     }
     
     /**
-     * 处理业务交易
+     * 处理业务交易：按打包的交易码（不创建字符串）从注册表查找处理器，按处理器声明的方式执行
      */
-    private void handleBusinessRequest(ChannelHandlerContext ctx, TcpProtocol.Message msg) {
+    private void handleBusinessRequest(ChannelHandlerContext ctx, TcpProtocol.Message msg, long startNanos) {
         TcpProtocol.RequestHeader requestHeader = msg.getRequestHeader();
-        String transactionCode = requestHeader.getTransactionCode();
         
-        // 根据交易码处理不同的业务
-        String responseData;
-        byte responseStatus;
+        // 未签到的连接（或发送节点号与签到时不一致）在要求签到时直接拒绝
+        if (!sessionTable.admit(ctx.channel(), requestHeader.getSenderNodeKey())) {
+            sendRejectedResponse(ctx, msg, responseConfigService.generateNotSignedInResponse(requestHeader.getSenderNodeId()),
+                    startNanos, null);
+            return;
+        }
         
-        switch (transactionCode.trim()) {
-            case "QUERY":
-                responseData = responseConfigService.generateQuerySuccessResponse(new String(msg.getData()));
-                responseStatus = responseConfigService.getBusinessSuccessStatus();
-                break;
-            case "UPDATE":
-                responseData = responseConfigService.generateUpdateSuccessResponse(new String(msg.getData()));
-                responseStatus = responseConfigService.getBusinessSuccessStatus();
-                break;
-            case "DELETE":
-                responseData = responseConfigService.generateDeleteSuccessResponse(new String(msg.getData()));
-                responseStatus = responseConfigService.getBusinessSuccessStatus();
-                break;
-            default:
-                responseData = responseConfigService.generateUnknownTransactionCodeResponse(transactionCode);
-                responseStatus = responseConfigService.getBusinessFailedStatus();
-                break;
+        TransactionHandler handler = handlerRegistry.lookup(requestHeader.getTransactionCodeKey());
+        
+        // 重复请求（相同发送节点和流水号）写回首次执行的响应，不再执行；流式交易有多个响应帧，不做幂等处理
+        if (handler == null || !handler.isStreaming()) {
+            CompletableFuture<byte[]> original = idempotencyCache.begin(requestHeader);
+            if (original != null) {
+                replayResponse(ctx, msg, original, startNanos);
+                return;
+            }
+        }
+        
+        if (handler == null) {
+            String responseData = responseConfigService.generateUnknownTransactionCodeResponse(requestHeader.getTransactionCode());
+            TcpProtocol.ResponseHeader responseHeader = new TcpProtocol.ResponseHeader(responseConfigService.getBusinessFailedStatus());
+            sendBusinessResponse(ctx, msg, new TcpProtocol.Message(responseHeader, responseData.getBytes()), true, startNanos, null);
+            return;
         }
         
-        // 创建响应header
-        TcpProtocol.ResponseHeader responseHeader = new TcpProtocol.ResponseHeader(responseStatus);
+        if (handler.isStreaming()) {
+            // 流式交易：先占住响应位置，处理器写出的帧排在之前的响应之后，流结束后才写出之后的响应
+            ResponseStream stream = reserveStream(ctx);
+            try {
+                handler.handleStream(ctx, msg, stream);
+            } catch (RuntimeException e) {
+                log.warn("Transaction {} failed: {}", requestHeader.getTransactionCode(), e.getMessage());
+                stream.write(new TcpProtocol.Message(new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_FAILED),
+                        String.valueOf(e.getMessage()).getBytes()), true);
+            }
+            return;
+        }
         
-        // 创建响应消息
-        TcpProtocol.Message response = new TcpProtocol.Message(responseHeader, responseData.getBytes());
+        if (handler.getExecutionMode() == TransactionHandler.ExecutionMode.OFFLOAD) {
+            // 先占住响应位置，交易码所在组的工作线程执行完成后写入；连接或组的队列已满时返回繁忙响应
+            PendingResponse reserved = reserveResponse(ctx);
+            transactionScheduler.submit(ctx.channel(), requestHeader.getTransactionCodeKey(), () ->
+                    completeAsync(ctx, msg, invoke(handler, ctx, msg), startNanos, reserved),
+                    reason -> ctx.executor().execute(() -> {
+                        TcpProtocol.Message rejected = sendRejectedResponse(ctx, msg,
+                                responseConfigService.generateOverloadedResponse(requestHeader.getTransactionCode() + " " + reason),
+                                startNanos, reserved);
+                        // 未执行，等待中的重复请求得到同样的繁忙响应
+                        idempotencyCache.release(requestHeader, rejected.toBytes());
+                    }));
+            return;
+        }
         
-        // 发送响应
-        ctx.writeAndFlush(response);
+        CompletableFuture<TcpProtocol.Message> result = invoke(handler, ctx, msg);
+        if (result != null && result.isDone()) {
+            sendBusinessResponse(ctx, msg, businessResponse(msg, result), !result.isCompletedExceptionally(), startNanos, null);
+        } else {
+            completeAsync(ctx, msg, result, startNanos, reserveResponse(ctx));
+        }
+    }
+    
+    /**
+     * 重复请求写回首次执行的响应：已缓存时直接写出；首次执行尚未完成时先占住响应位置，完成后写入
+     */
+    private void replayResponse(ChannelHandlerContext ctx, TcpProtocol.Message msg, CompletableFuture<byte[]> original,
+                                long startNanos) {
+        if (original.isDone()) {
+            sendReplayedResponse(ctx, msg, original.join(), startNanos, null);
+            return;
+        }
+        PendingResponse reserved = reserveResponse(ctx);
+        original.thenAccept(response -> ctx.executor().execute(() ->
+                sendReplayedResponse(ctx, msg, response, startNanos, reserved)));
+    }
+    
+    private void sendReplayedResponse(ChannelHandlerContext ctx, TcpProtocol.Message msg, byte[] response,
+                                      long startNanos, PendingResponse reserved) {
+        TcpProtocol.RequestHeader requestHeader = msg.getRequestHeader();
+        if (reserved != null) {
+            completeResponse(ctx, reserved, Unpooled.wrappedBuffer(response));
+        } else {
+            writeResponse(ctx, Unpooled.wrappedBuffer(response), 0);
+        }
+        transactionJournal.recordReplay(requestHeader, msg.getData(), response, startNanos);
+        log.info("Replayed original response for duplicate request: sender={}, code={}, serial={}",
+                requestHeader.getSenderNodeId(), requestHeader.getTransactionCode(), requestHeader.getTransactionSerial());
+    }
+    
+    /**
+     * 调用处理器，抛出的异常转换为异常完成的future
+     */
+    private CompletableFuture<TcpProtocol.Message> invoke(TransactionHandler handler, ChannelHandlerContext ctx, TcpProtocol.Message msg) {
+        try {
+            return handler.handle(ctx, msg);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * 异步完成的响应回到连接的事件循环，写入预先占住的响应位置
+     */
+    private void completeAsync(ChannelHandlerContext ctx, TcpProtocol.Message msg, CompletableFuture<TcpProtocol.Message> result,
+                               long startNanos, PendingResponse reserved) {
+        CompletableFuture<TcpProtocol.Message> future = result != null ? result
+                : CompletableFuture.failedFuture(new IllegalStateException("Handler returned no response"));
+        future.whenComplete((response, error) -> ctx.executor().execute(() ->
+                sendBusinessResponse(ctx, msg, businessResponse(msg, future), !future.isCompletedExceptionally(), startNanos, reserved)));
+    }
+    
+    /**
+     * 处理结果转换为响应，异常完成时为失败响应
+     */
+    private TcpProtocol.Message businessResponse(TcpProtocol.Message msg, CompletableFuture<TcpProtocol.Message> result) {
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            String transactionCode = msg.getRequestHeader().getTransactionCode();
+            log.warn("Transaction {} failed: {}", transactionCode, cause.getMessage());
+            return new TcpProtocol.Message(new TcpProtocol.ResponseHeader(responseConfigService.getBusinessFailedStatus()),
+                    responseConfigService.generateBusinessFailedResponse(transactionCode, String.valueOf(cause.getMessage())).getBytes());
+        }
+    }
+    
+    /**
+     * 发送业务响应，需要幂等的交易先编码并交给等待中的重复请求：处理完成（completed）的响应写入幂等缓存，
+     * 处理器抛出异常或异常完成（如刷盘失败）的失败响应不缓存，客户端重试时重新执行；reserved不为空时写入预先占住的响应位置
+     */
+    private void sendBusinessResponse(ChannelHandlerContext ctx, TcpProtocol.Message msg, TcpProtocol.Message response,
+                                      boolean completed, long startNanos, PendingResponse reserved) {
+        TcpProtocol.RequestHeader requestHeader = msg.getRequestHeader();
+        Object encoded = response;
+        if (idempotencyCache.isCacheable(requestHeader)) {
+            byte[] bytes = response.toBytes();
+            if (completed) {
+                idempotencyCache.store(requestHeader, bytes);
+            } else {
+                idempotencyCache.release(requestHeader, bytes);
+            }
+            encoded = Unpooled.wrappedBuffer(bytes);
+        }
+        if (reserved != null) {
+            completeResponse(ctx, reserved, encoded);
+        } else {
+            writeResponse(ctx, encoded, injectedDelay());
+        }
+        transactionJournal.record(requestHeader, msg.getData(), response, startNanos);
         
-        log.info("Sent business response: code={}, status={}, data={}", transactionCode, responseStatus, responseData);
+        if (log.isDebugEnabled()) {
+            log.debug("Sent business response: code={}, status={}, data={}", requestHeader.getTransactionCode(),
+                    response.getResponseHeader().getStatus(), new String(response.getData()));
+        }
     }
     
     
+    /**
+     * 发送拒绝响应（繁忙、未签到）：请求未执行，不写入幂等缓存（客户端重试时仍会执行）；
+     * reserved不为空时写入预先占住的响应位置，返回发送的响应
+     */
+    private TcpProtocol.Message sendRejectedResponse(ChannelHandlerContext ctx, TcpProtocol.Message msg, String responseData,
+                                      long startNanos, PendingResponse reserved) {
+        TcpProtocol.RequestHeader requestHeader = msg.getRequestHeader();
+        TcpProtocol.Message response = new TcpProtocol.Message(
+                new TcpProtocol.ResponseHeader(responseConfigService.getBusinessFailedStatus()), responseData.getBytes());
+        if (reserved != null) {
+            completeResponse(ctx, reserved, response);
+        } else {
+            writeResponse(ctx, response, 0);
+        }
+        transactionJournal.record(requestHeader, msg.getData(), response, startNanos);
+        log.warn("Rejected transaction {} from {}: {}", requestHeader.getTransactionCode(),
+                requestHeader.getSenderNodeId(), responseData);
+        return response;
+    }
+    
     /**
      * 发送错误响应
      */
-    private void sendErrorResponse(ChannelHandlerContext ctx, TcpProtocol.Message originalMsg, String errorMessage) {
+    private void sendErrorResponse(ChannelHandlerContext ctx, TcpProtocol.Message originalMsg, String errorMessage, long startNanos) {
         TcpProtocol.ResponseHeader errorHeader = new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_FAILED);
         TcpProtocol.Message errorResponse = new TcpProtocol.Message(errorHeader, errorMessage.getBytes());
         
-        ctx.writeAndFlush(errorResponse);
+        writeResponse(ctx, errorResponse, 0);
+        transactionJournal.record(originalMsg.getRequestHeader(), originalMsg.getData(), errorResponse, startNanos);
         log.warn("Sent error response: {}", errorMessage);
     }
     
+    /**
+     * 按请求顺序写出响应（响应报文或已编码的响应字节）：delayMs大于0时延迟写出，连接上有未写出的延迟响应时排在其后
+     * （channelRead0和定时任务都在连接的事件循环中执行，队列无需加锁）
+     */
+    private void writeResponse(ChannelHandlerContext ctx, Object response, long delayMs) {
+        ArrayDeque<PendingResponse> pending = ctx.channel().attr(PENDING_RESPONSES).get();
+        if (delayMs <= 0 && (pending == null || pending.isEmpty())) {
+            ctx.writeAndFlush(response);
+            return;
+        }
+        
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+            ctx.channel().attr(PENDING_RESPONSES).set(pending);
+        }
+        PendingResponse entry = new PendingResponse(response, delayMs <= 0);
+        pending.add(entry);
+        if (delayMs > 0) {
+            delayedResponses.incrementAndGet();
+            ArrayDeque<PendingResponse> queue = pending;
+            ctx.executor().schedule(() -> {
+                entry.ready = true;
+                drainPendingResponses(ctx, queue);
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * 占住下一个响应位置（异步完成的响应），之后的响应排在其后直到completeResponse
+     */
+    private PendingResponse reserveResponse(ChannelHandlerContext ctx) {
+        ArrayDeque<PendingResponse> pending = ctx.channel().attr(PENDING_RESPONSES).get();
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+            ctx.channel().attr(PENDING_RESPONSES).set(pending);
+        }
+        PendingResponse entry = new PendingResponse(null, false);
+        pending.add(entry);
+        return entry;
+    }
+    
+    /**
+     * 为流式交易占住下一个响应位置，流结束前之后的响应排在其后
+     */
+    private ResponseStream reserveStream(ChannelHandlerContext ctx) {
+        PendingResponse entry = reserveResponse(ctx);
+        ArrayDeque<PendingResponse> pending = ctx.channel().attr(PENDING_RESPONSES).get();
+        entry.stream = new ResponseStream(ctx, () -> drainPendingResponses(ctx, pending));
+        return entry.stream;
+    }
+    
+    /**
+     * 填入预先占住位置的响应并写出已就绪的响应（在连接的事件循环中调用）
+     */
+    private void completeResponse(ChannelHandlerContext ctx, PendingResponse entry, Object response) {
+        if (!ctx.channel().isActive()) {
+            // 连接已关闭，排队的响应已在channelInactive中释放
+            ReferenceCountUtil.release(response);
+            return;
+        }
+        entry.response = response;
+        entry.ready = true;
+        drainPendingResponses(ctx, ctx.channel().attr(PENDING_RESPONSES).get());
+    }
+    
+    private void drainPendingResponses(ChannelHandlerContext ctx, ArrayDeque<PendingResponse> pending) {
+        boolean written = false;
+        while (!pending.isEmpty()) {
+            PendingResponse head = pending.peek();
+            if (head.stream != null) {
+                // 位于队首的流直接写出已到达的帧，最后一帧写出前之后的响应继续等待
+                written |= head.stream.writeQueued();
+                if (!head.stream.isFinished()) {
+                    break;
+                }
+                pending.poll();
+                continue;
+            }
+            if (!head.ready) {
+                break;
+            }
+            ctx.write(pending.poll().response);
+            written = true;
+        }
+        if (written) {
+            ctx.flush();
+        }
+    }
+    
+    /**
+     * 连接关闭时释放未写出的响应缓冲区（网关转发的响应为池化缓冲区），未结束的流不再接受帧
+     */
+    private void releasePendingResponses(ChannelHandlerContext ctx) {
+        ArrayDeque<PendingResponse> pending = ctx.channel().attr(PENDING_RESPONSES).get();
+        if (pending != null) {
+            for (PendingResponse entry : pending) {
+                if (entry.stream != null) {
+                    entry.stream.abort();
+                } else {
+                    ReferenceCountUtil.release(entry.response);
+                }
+            }
+            pending.clear();
+        }
+    }
+    
+    /**
+     * 本次业务响应的注入延迟（毫秒），未命中时为0
+     */
+    private long injectedDelay() {
+        if (latencyInjectionDelay <= 0 || latencyInjectionProbability <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextDouble() < latencyInjectionProbability ? latencyInjectionDelay : 0;
+    }
+    
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         log.error("Exception in channel: {}", cause.getMessage());
@@ -186,7 +617,33 @@ public class TcpProtocolHandler extends SimpleChannelInboundHandler<TcpProtocol.
         return totalResponses;
     }
     
-    public static long getNextTransactionSerial() {
-        return transactionSerialCounter.getAndIncrement();
+    /**
+     * 生成交易流水号（时间戳 + 节点号 + 序号，见SerialGenerator）
+     */
+    public long nextTransactionSerial() {
+        return serialGenerator.nextId();
+    }
+    
+    public Map<String, Object> getSerialStats() {
+        return serialGenerator.getStats();
+    }
+    
+    public static long getDelayedResponses() {
+        return delayedResponses.get();
+    }
+    
+    /**
+     * 等待写出的响应（stream不为空时为流式交易的响应位置）
+     */
+    private static class PendingResponse {
+        
+        private Object response;
+        private boolean ready;
+        private ResponseStream stream;
+        
+        PendingResponse(Object response, boolean ready) {
+            this.response = response;
+            this.ready = ready;
+        }
     }
 }
@@ -0,0 +1,41 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import com.example.tcpserver.service.ResponseConfigService;
+import io.netty.channel.ChannelHandlerContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 模板响应处理器：QUERY/UPDATE/DELETE按响应配置的模板回显（未启用键值存储时使用）
+ */
+@Component
+public class TemplateTransactionHandler implements TransactionHandler {
+
+    @Autowired
+    private ResponseConfigService responseConfigService;
+
+    @Override
+    public List<String> getTransactionCodes() {
+        return List.of("QUERY", "UPDATE", "DELETE");
+    }
+
+    @Override
+    public CompletableFuture<TcpProtocol.Message> handle(ChannelHandlerContext ctx, TcpProtocol.Message request) {
+        String data = new String(request.getData());
+        long transactionCodeKey = request.getRequestHeader().getTransactionCodeKey();
+        String responseData;
+        if (transactionCodeKey == TcpProtocol.QUERY_KEY) {
+            responseData = responseConfigService.generateQuerySuccessResponse(data);
+        } else if (transactionCodeKey == TcpProtocol.UPDATE_KEY) {
+            responseData = responseConfigService.generateUpdateSuccessResponse(data);
+        } else {
+            responseData = responseConfigService.generateDeleteSuccessResponse(data);
+        }
+        TcpProtocol.ResponseHeader responseHeader = new TcpProtocol.ResponseHeader(responseConfigService.getBusinessSuccessStatus());
+        return CompletableFuture.completedFuture(new TcpProtocol.Message(responseHeader, responseData.getBytes()));
+    }
+}
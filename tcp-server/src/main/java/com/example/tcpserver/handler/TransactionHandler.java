@@ -0,0 +1,60 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 业务交易处理器
+ * 实现为Spring Bean即自动注册到TransactionHandlerRegistry，按声明的交易码分派；
+ * 多个处理器声明同一交易码时按@Order顺序取第一个（未标注的排在最后）
+ */
+public interface TransactionHandler {
+
+    /**
+     * 执行方式
+     */
+    enum ExecutionMode {
+        /**
+         * 在连接的事件循环中直接执行，只适合不阻塞的内存操作
+         */
+        INLINE,
+        /**
+         * 提交到交易码所在组的工作线程执行（见TransactionScheduler），响应仍按请求顺序写出
+         */
+        OFFLOAD
+    }
+
+    /**
+     * 处理的交易码（每个不超过7字节）
+     */
+    List<String> getTransactionCodes();
+
+    default ExecutionMode getExecutionMode() {
+        return ExecutionMode.INLINE;
+    }
+
+    /**
+     * 是否为流式交易（一个请求对应多个响应帧，由handleStream处理），流式交易不经网关转发
+     */
+    default boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * 处理请求，返回响应（可异步完成，异常完成时返回失败响应）；非流式交易实现
+     */
+    default CompletableFuture<TcpProtocol.Message> handle(ChannelHandlerContext ctx, TcpProtocol.Message request) {
+        throw new UnsupportedOperationException("Streaming transaction handler");
+    }
+
+    /**
+     * 处理流式交易（在连接的事件循环中调用，可转交其他线程）：响应帧通过stream写出，最后一帧的last必须为true，
+     * 否则连接上之后的响应一直排在其后
+     */
+    default void handleStream(ChannelHandlerContext ctx, TcpProtocol.Message request, ResponseStream stream) {
+        throw new UnsupportedOperationException("Non-streaming transaction handler");
+    }
+}
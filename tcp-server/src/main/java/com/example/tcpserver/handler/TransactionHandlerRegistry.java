@@ -0,0 +1,167 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 交易处理器注册表
+ * 启动时收集所有TransactionHandler，按交易码打包后的long（见TcpProtocol.packTransactionCode）建立开放寻址表：
+ * 从两倍交易码数开始逐步扩大表容量，直到所有交易码落在不同槽位（完美哈希，查找只需一次比较）；
+ * 超过MAX_TABLE_SIZE仍有冲突时退回线性探测。分派不创建或比较字符串。
+ * OFFLOAD方式的处理器由TransactionScheduler按交易码分组调度
+ */
+@Slf4j
+@Component
+public class TransactionHandlerRegistry {
+
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+
+    @Autowired
+    private List<TransactionHandler> transactionHandlers;
+
+    private int mask;
+    private long[] keys;
+    private TransactionHandler[] handlers;
+    private AtomicLongArray dispatched;
+    private int maxProbe;
+
+    @PostConstruct
+    public void init() {
+        List<TransactionHandler> ordered = new ArrayList<>(transactionHandlers);
+        AnnotationAwareOrderComparator.sort(ordered);
+
+        Map<Long, TransactionHandler> registrations = new LinkedHashMap<>();
+        for (TransactionHandler handler : ordered) {
+            for (String code : handler.getTransactionCodes()) {
+                if (code.trim().isEmpty() || code.trim().getBytes().length > TcpProtocol.TRANSACTION_CODE_LENGTH) {
+                    throw new IllegalStateException("Invalid transaction code '" + code + "' in " + handler.getClass().getSimpleName());
+                }
+                TransactionHandler existing = registrations.putIfAbsent(TcpProtocol.packTransactionCode(code), handler);
+                if (existing != null) {
+                    log.info("Transaction code {} is handled by {}, ignoring {}", code.trim(),
+                            existing.getClass().getSimpleName(), handler.getClass().getSimpleName());
+                }
+            }
+        }
+        build(registrations);
+
+        log.info("Registered {} transaction codes: table size={}, max probe={}", registrations.size(), mask + 1, maxProbe);
+    }
+
+    /**
+     * 建表：找不到无冲突的容量时使用最大容量线性探测
+     */
+    private void build(Map<Long, TransactionHandler> registrations) {
+        int size = Integer.highestOneBit(Math.max(2, registrations.size() * 2 - 1)) << 1;
+        while (size < MAX_TABLE_SIZE && !collisionFree(registrations, size)) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        keys = new long[size];
+        handlers = new TransactionHandler[size];
+        dispatched = new AtomicLongArray(size);
+        maxProbe = 0;
+        for (Map.Entry<Long, TransactionHandler> registration : registrations.entrySet()) {
+            int slot = index(registration.getKey());
+            int probe = 1;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+                probe++;
+            }
+            keys[slot] = registration.getKey();
+            handlers[slot] = registration.getValue();
+            maxProbe = Math.max(maxProbe, probe);
+        }
+    }
+
+    private boolean collisionFree(Map<Long, TransactionHandler> registrations, int size) {
+        boolean[] used = new boolean[size];
+        for (long key : registrations.keySet()) {
+            int slot = (int) mix(key) & (size - 1);
+            if (used[slot]) {
+                return false;
+            }
+            used[slot] = true;
+        }
+        return true;
+    }
+
+    private int index(long key) {
+        return (int) mix(key) & mask;
+    }
+
+    private static long mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * 按打包的交易码查找处理器，未注册返回null
+     */
+    public TransactionHandler lookup(long transactionCodeKey) {
+        if (transactionCodeKey == 0) {
+            return null;
+        }
+        int slot = index(transactionCodeKey);
+        while (keys[slot] != 0) {
+            if (keys[slot] == transactionCodeKey) {
+                dispatched.incrementAndGet(slot);
+                return handlers[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 交易码是否由流式处理器处理（不计入分派次数）
+     */
+    public boolean isStreaming(long transactionCodeKey) {
+        if (transactionCodeKey == 0) {
+            return false;
+        }
+        int slot = index(transactionCodeKey);
+        while (keys[slot] != 0) {
+            if (keys[slot] == transactionCodeKey) {
+                return handlers[slot].isStreaming();
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * 注册表统计信息：各交易码的处理器、执行方式和分派次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> codes = new HashMap<>();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("handler", handlers[slot].getClass().getSimpleName());
+                entry.put("executionMode", handlers[slot].getExecutionMode().name());
+                entry.put("dispatched", dispatched.get(slot));
+                codes.put(TcpProtocol.unpackTransactionCode(keys[slot]), entry);
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("codes", codes);
+        stats.put("tableSize", mask + 1);
+        stats.put("maxProbe", maxProbe);
+        stats.put("perfectHash", maxProbe <= 1);
+        return stats;
+    }
+}
@@ -0,0 +1,428 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 交易调度器（线程池隔离）
+ * 签到和OFFLOAD方式的业务交易按交易码分组，每组有独立的工作线程和有界队列，慢交易占满自己的线程池也不影响其他组；
+ * 签到任务进入优先队列，同组内先于业务任务执行。
+ * 同一连接的任务按请求顺序依次执行（前一个任务完成后下一个才进入其所在组的队列），
+ * 因此流水线请求仍能读到之前请求的写入；不同连接之间并行。
+ * 任务进入组的队列时才按组的待执行任务数准入（超过队列长度加线程数时拒绝，调用方返回繁忙响应），
+ * 在连接上排在前一个任务之后等待的任务不占用目标组的名额，慢组阻塞的连接不会耗尽其他组的队列；
+ * 连接上排队的任务数另有上限，超过时直接拒绝，不在内存中堆积
+ */
+@Slf4j
+@Component
+public class TransactionScheduler {
+
+    public static final String DEFAULT_POOL = "default";
+
+    /**
+     * 分组配置中代表签到交易的交易码
+     */
+    public static final String SIGNIN_CODE = "SIGNIN";
+
+    private static final AttributeKey<ConnectionTasks> CONNECTION_TASKS = AttributeKey.valueOf("scheduledTasks");
+
+    /**
+     * 分组：组名=交易码（逗号分隔）[:线程数[:队列长度]]，组之间用分号分隔；未列出的交易码进入default组
+     */
+    @Value("${tcp.server.scheduler.groups:signin=SIGNIN:1:256;query=QUERY:4:1024;update=UPDATE,DELETE:2:256}")
+    private String groups;
+
+    @Value("${tcp.server.scheduler.threads:4}")
+    private int defaultThreads;
+
+    @Value("${tcp.server.scheduler.queue-capacity:1024}")
+    private int defaultQueueCapacity;
+
+    /**
+     * 每个连接上已提交未完成的任务数上限（流水线请求在连接上排队）
+     */
+    @Value("${tcp.server.scheduler.max-pending-per-connection:256}")
+    private int maxPendingPerConnection;
+
+    private final Map<String, WorkerPool> pools = new LinkedHashMap<>();
+    private long[] codeKeys;
+    private WorkerPool[] codePools;
+    private WorkerPool signinPool;
+    private WorkerPool defaultPool;
+
+    private final AtomicLong connectionRejected = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        List<Long> keys = new ArrayList<>();
+        List<WorkerPool> keyPools = new ArrayList<>();
+        for (String group : groups.split(";")) {
+            if (group.isBlank()) {
+                continue;
+            }
+            String[] parts = group.trim().split(":");
+            int separator = parts[0].indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalStateException("Invalid scheduler group '" + group + "', expected name=CODE,CODE[:threads[:queue]]");
+            }
+            String name = parts[0].substring(0, separator).trim();
+            int threads = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : defaultThreads;
+            int capacity = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : defaultQueueCapacity;
+            WorkerPool pool = new WorkerPool(name, threads, capacity);
+            pools.put(name, pool);
+
+            for (String code : parts[0].substring(separator + 1).split(",")) {
+                if (code.trim().equals(SIGNIN_CODE)) {
+                    signinPool = pool;
+                } else if (!code.isBlank()) {
+                    keys.add(TcpProtocol.packTransactionCode(code.trim()));
+                    keyPools.add(pool);
+                }
+            }
+        }
+        defaultPool = pools.computeIfAbsent(DEFAULT_POOL, name -> new WorkerPool(name, defaultThreads, defaultQueueCapacity));
+        if (signinPool == null) {
+            signinPool = defaultPool;
+        }
+        codeKeys = keys.stream().mapToLong(Long::longValue).toArray();
+        codePools = keyPools.toArray(new WorkerPool[0]);
+
+        for (WorkerPool pool : pools.values()) {
+            pool.start();
+        }
+        log.info("Transaction scheduler initialized: pools={}, signin pool={}", pools.keySet(), signinPool.name);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (WorkerPool pool : pools.values()) {
+            pool.stop();
+        }
+    }
+
+    /**
+     * 提交签到任务（优先执行）；连接上排队的任务已满或进入签到组时组已满则不执行，
+     * 以拒绝原因调用rejected（在提交线程或连接上前一个任务的工作线程中调用）
+     */
+    public void submitSignIn(Channel channel, Runnable task, Consumer<String> rejected) {
+        submit(channel, signinPool, true, task, rejected);
+    }
+
+    /**
+     * 提交业务任务到交易码所在的组；连接上排队的任务已满或进入组时组已满则不执行，
+     * 以拒绝原因调用rejected（在提交线程或连接上前一个任务的工作线程中调用）
+     */
+    public void submit(Channel channel, long transactionCodeKey, Runnable task, Consumer<String> rejected) {
+        submit(channel, poolFor(transactionCodeKey), false, task, rejected);
+    }
+
+    private WorkerPool poolFor(long transactionCodeKey) {
+        for (int i = 0; i < codeKeys.length; i++) {
+            if (codeKeys[i] == transactionCodeKey) {
+                return codePools[i];
+            }
+        }
+        return defaultPool;
+    }
+
+    private void submit(Channel channel, WorkerPool pool, boolean priority, Runnable task, Consumer<String> rejected) {
+        ConnectionTasks tasks = channel.attr(CONNECTION_TASKS).get();
+        if (tasks == null) {
+            ConnectionTasks created = new ConnectionTasks(maxPendingPerConnection);
+            tasks = channel.attr(CONNECTION_TASKS).setIfAbsent(created);
+            if (tasks == null) {
+                tasks = created;
+            }
+        }
+        if (!tasks.add(new ScheduledTask(pool, priority, task, rejected, tasks))) {
+            connectionRejected.incrementAndGet();
+            rejected.accept("connection backlog full (" + maxPendingPerConnection + " pending)");
+        }
+    }
+
+    /**
+     * 交易码所在组的名称（签到为签到组）
+     */
+    public String getPoolName(long transactionCodeKey) {
+        return poolFor(transactionCodeKey).name;
+    }
+
+    public String getSigninPoolName() {
+        return signinPool.name;
+    }
+
+    /**
+     * 连接上排队任务数的上限和因此拒绝的次数
+     */
+    public Map<String, Object> getConnectionStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxPendingPerConnection", maxPendingPerConnection);
+        stats.put("rejected", connectionRejected.get());
+        return stats;
+    }
+
+    /**
+     * 各组的线程数、队列深度、等待时间和拒绝次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (WorkerPool pool : pools.values()) {
+            stats.put(pool.name, pool.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 连接上排队的任务
+     */
+    private static final class ScheduledTask implements Runnable {
+
+        private final WorkerPool pool;
+        private final boolean priority;
+        private final Runnable task;
+        private final Consumer<String> rejected;
+        private final ConnectionTasks connection;
+        private long enqueuedNanos;
+
+        ScheduledTask(WorkerPool pool, boolean priority, Runnable task, Consumer<String> rejected, ConnectionTasks connection) {
+            this.pool = pool;
+            this.priority = priority;
+            this.task = task;
+            this.rejected = rejected;
+            this.connection = connection;
+        }
+
+        /**
+         * 进入组的队列，组已满时返回false
+         */
+        boolean dispatch() {
+            if (!pool.admit()) {
+                return false;
+            }
+            enqueuedNanos = System.nanoTime();
+            pool.enqueue(this, priority);
+            return true;
+        }
+
+        void reject() {
+            try {
+                rejected.accept("queue full (pool " + pool.name + ")");
+            } catch (RuntimeException e) {
+                log.error("Rejection callback failed in pool {}: {}", pool.name, e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            // 只统计在组队列中的等待，不含在连接上排在前一个任务之后的时间
+            pool.recordWait(System.nanoTime() - enqueuedNanos);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Scheduled transaction task failed in pool {}: {}", pool.name, e.getMessage());
+            } finally {
+                pool.release();
+                connection.advance();
+            }
+        }
+    }
+
+    /**
+     * 连接上提交的任务，队首为正在执行（或已进入组队列）的任务，其余任务尚未占用组的名额
+     */
+    private static final class ConnectionTasks {
+
+        private final int maxPending;
+        private final ArrayDeque<ScheduledTask> tasks = new ArrayDeque<>();
+
+        ConnectionTasks(int maxPending) {
+            this.maxPending = Math.max(1, maxPending);
+        }
+
+        /**
+         * 加入连接的队列，连接上排队的任务已满时返回false
+         */
+        boolean add(ScheduledTask task) {
+            synchronized (this) {
+                if (tasks.size() >= maxPending) {
+                    return false;
+                }
+                tasks.add(task);
+                if (tasks.size() > 1) {
+                    return true;
+                }
+            }
+            dispatch(task);
+            return true;
+        }
+
+        void advance() {
+            ScheduledTask next;
+            synchronized (this) {
+                tasks.poll();
+                next = tasks.peek();
+            }
+            dispatch(next);
+        }
+
+        /**
+         * 队首任务进入组的队列；组已满时拒绝该任务，继续派发下一个
+         */
+        private void dispatch(ScheduledTask task) {
+            while (task != null && !task.dispatch()) {
+                task.reject();
+                synchronized (this) {
+                    tasks.poll();
+                    task = tasks.peek();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一组交易的工作线程：优先队列和普通队列，准入上限为队列长度加线程数
+     */
+    private static final class WorkerPool {
+
+        private final String name;
+        private final int threads;
+        private final int queueCapacity;
+        private final List<Thread> workers = new ArrayList<>();
+
+        // 以下字段由this加锁保护
+        private final ArrayDeque<Runnable> priorityQueue = new ArrayDeque<>();
+        private final ArrayDeque<Runnable> normalQueue = new ArrayDeque<>();
+        private int active;
+        private boolean running = true;
+
+        private final AtomicInteger admitted = new AtomicInteger(0);
+        private final AtomicLong submitted = new AtomicLong(0);
+        private final AtomicLong completed = new AtomicLong(0);
+        private final AtomicLong rejected = new AtomicLong(0);
+        private final AtomicLong prioritized = new AtomicLong(0);
+        private final AtomicLong totalWaitNanos = new AtomicLong(0);
+        private final AtomicLong maxWaitNanos = new AtomicLong(0);
+        private final AtomicInteger maxQueued = new AtomicInteger(0);
+
+        WorkerPool(String name, int threads, int queueCapacity) {
+            this.name = name;
+            this.threads = Math.max(1, threads);
+            this.queueCapacity = Math.max(0, queueCapacity);
+        }
+
+        void start() {
+            for (int i = 1; i <= threads; i++) {
+                Thread thread = new Thread(this::work, "txn-" + name + "-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                workers.add(thread);
+            }
+        }
+
+        synchronized void stop() {
+            running = false;
+            notifyAll();
+        }
+
+        /**
+         * 准入：已准入未完成的任务数达到队列长度加线程数时拒绝
+         */
+        boolean admit() {
+            int limit = queueCapacity + threads;
+            while (true) {
+                int current = admitted.get();
+                if (current >= limit) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                if (admitted.compareAndSet(current, current + 1)) {
+                    submitted.incrementAndGet();
+                    maxQueued.accumulateAndGet(current + 1 - threads, Math::max);
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            admitted.decrementAndGet();
+            completed.incrementAndGet();
+        }
+
+        synchronized void enqueue(Runnable task, boolean priority) {
+            if (priority) {
+                priorityQueue.add(task);
+                prioritized.incrementAndGet();
+            } else {
+                normalQueue.add(task);
+            }
+            notify();
+        }
+
+        void recordWait(long waitNanos) {
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        private void work() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    while (running && priorityQueue.isEmpty() && normalQueue.isEmpty()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    task = !priorityQueue.isEmpty() ? priorityQueue.poll() : normalQueue.poll();
+                    active++;
+                }
+                try {
+                    task.run();
+                } finally {
+                    synchronized (this) {
+                        active--;
+                    }
+                }
+            }
+        }
+
+        Map<String, Object> getStats() {
+            long done = completed.get();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("threads", threads);
+            stats.put("queueCapacity", queueCapacity);
+            synchronized (this) {
+                stats.put("active", active);
+                stats.put("queueDepth", Math.max(0, admitted.get() - active));
+            }
+            stats.put("maxQueueDepth", Math.max(0, maxQueued.get()));
+            stats.put("submitted", submitted.get());
+            stats.put("completed", done);
+            stats.put("rejected", rejected.get());
+            stats.put("prioritized", prioritized.get());
+            stats.put("avgWaitMicros", done > 0 ? totalWaitNanos.get() / done / 1000 : 0);
+            stats.put("maxWaitMicros", maxWaitNanos.get() / 1000);
+            return stats;
+        }
+    }
+}
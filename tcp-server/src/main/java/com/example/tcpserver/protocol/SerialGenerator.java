@@ -0,0 +1,263 @@
+package com.example.tcpserver.protocol;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 交易流水号生成器（Snowflake风格）
+ * 流水号为63位非负long，按20位十进制写入报文：41位毫秒时间戳（自2024-01-01起，可用约69年）+ 8位节点号 + 14位序号；
+ * 节点号必须显式配置且在所有实例中唯一（流水号的唯一性只由节点号区分），不同节点、同一节点的不同进程（时间戳不同）
+ * 生成的流水号不重复，且同一节点内随时间递增。
+ * 时间戳和序号合并在一个AtomicLong中，通过CAS无锁生成；同一毫秒序号用完时借用下一毫秒（逻辑时钟领先系统时钟），
+ * 领先不超过maxBorrowMillis，超过时等待系统时钟追上。
+ * 时钟回拨时逻辑时钟不后退，继续在上次的时间戳上分配序号，序号用完时同样按上述规则借用或等待；
+ * 回拨幅度过大、需要等待超过maxBorrowMillis时拒绝生成（抛出IllegalStateException），直到系统时钟追上。
+ * 逻辑时钟只在进程内单调：指定状态文件时，流水号的时间戳到达已保存的上限前先把上限推进RESERVE_MILLIS并写入文件，
+ * 启动时等待系统时钟越过文件中的上限（重启前借用的时间、重启期间的时钟回拨），保证重启后不重复签发流水号；
+ * 需要等待超过MAX_STARTUP_WAIT_MILLIS时拒绝启动。未指定状态文件时，在借用时间内重启或时钟回拨后重启都可能生成重复的流水号，
+ * 服务端幂等缓存会把这样的请求当作重复请求，返回之前请求的响应
+ */
+public class SerialGenerator {
+
+    /**
+     * 时间戳起点：2024-01-01T00:00:00Z
+     */
+    public static final long EPOCH = 1704067200000L;
+
+    public static final int NODE_ID_BITS = 8;
+    public static final int SEQUENCE_BITS = 14;
+    public static final int MAX_NODE_ID = (1 << NODE_ID_BITS) - 1;
+
+    /**
+     * 每次写入状态文件时预留的毫秒数（重启时最多等待的正常时长）
+     */
+    public static final long RESERVE_MILLIS = 1000;
+
+    /**
+     * 启动时等待系统时钟越过已保存上限的最长时间，超过时拒绝启动
+     */
+    public static final long MAX_STARTUP_WAIT_MILLIS = 60_000;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = NODE_ID_BITS + SEQUENCE_BITS;
+
+    private final int nodeId;
+    private final long nodeBits;
+    private final long maxBorrowMillis;
+    private final LongSupplier clock;
+    private final Path stateFile;
+
+    /**
+     * 逻辑时钟（相对EPOCH的毫秒数）左移SEQUENCE_BITS位，低位为当前毫秒已分配的序号
+     */
+    private final AtomicLong state = new AtomicLong(0);
+
+    private final AtomicLong borrowedMillis = new AtomicLong(0);
+    private final AtomicLong waits = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    /**
+     * 已写入状态文件的上限（相对EPOCH的毫秒数），签发的流水号时间戳都小于该值
+     */
+    private volatile long reservedUntil;
+    private final AtomicLong reservations = new AtomicLong(0);
+    private long startupWaitMillis;
+
+    public SerialGenerator(int nodeId, long maxBorrowMillis) {
+        this(nodeId, maxBorrowMillis, null, System::currentTimeMillis);
+    }
+
+    /**
+     * 指定状态文件（为null时不保存），文件中的上限未过时阻塞等待系统时钟
+     */
+    public SerialGenerator(int nodeId, long maxBorrowMillis, Path stateFile) {
+        this(nodeId, maxBorrowMillis, stateFile, System::currentTimeMillis);
+    }
+
+    /**
+     * 指定系统时钟（毫秒，用于测试时钟回拨）
+     */
+    SerialGenerator(int nodeId, long maxBorrowMillis, LongSupplier clock) {
+        this(nodeId, maxBorrowMillis, null, clock);
+    }
+
+    SerialGenerator(int nodeId, long maxBorrowMillis, Path stateFile, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Serial node ID must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.maxBorrowMillis = Math.max(0, maxBorrowMillis);
+        this.clock = clock;
+        this.stateFile = stateFile;
+        if (stateFile != null) {
+            awaitSavedState(readSavedState());
+        }
+    }
+
+    /**
+     * 生成下一个流水号
+     */
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long last = current >>> SEQUENCE_BITS;
+            long now = clock.getAsLong() - EPOCH;
+            long next;
+            if (now > last) {
+                next = now << SEQUENCE_BITS;
+            } else if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = current + 1;
+            } else {
+                // 本毫秒序号用完（或时钟回拨后序号用完），借用下一毫秒
+                long ahead = last + 1 - now;
+                if (ahead > maxBorrowMillis) {
+                    awaitClock(ahead - maxBorrowMillis);
+                    continue;
+                }
+                next = (last + 1) << SEQUENCE_BITS;
+                if (state.compareAndSet(current, next)) {
+                    borrowedMillis.incrementAndGet();
+                    return issue(next);
+                }
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                return issue(next);
+            }
+        }
+    }
+
+    /**
+     * 返回流水号前确认其时间戳小于状态文件中的上限，到达上限时先推进上限
+     */
+    private long issue(long state) {
+        long timestamp = state >>> SEQUENCE_BITS;
+        if (stateFile != null && timestamp >= reservedUntil) {
+            reserve(timestamp);
+        }
+        return compose(state);
+    }
+
+    private synchronized void reserve(long timestamp) {
+        if (timestamp < reservedUntil) {
+            return;
+        }
+        long until = timestamp + RESERVE_MILLIS;
+        try {
+            Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            Files.write(temp, Long.toString(until + EPOCH).getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                    StandardOpenOption.DSYNC);
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            rejected.incrementAndGet();
+            throw new IllegalStateException("Failed to save serial state to " + stateFile + ": " + e.getMessage(), e);
+        }
+        reservedUntil = until;
+        reservations.incrementAndGet();
+    }
+
+    /**
+     * 读取上次保存的上限（Unix毫秒），文件不存在时返回0
+     */
+    private long readSavedState() {
+        try {
+            if (stateFile.getParent() != null) {
+                Files.createDirectories(stateFile.getParent());
+            }
+            if (!Files.exists(stateFile)) {
+                return 0;
+            }
+            return Long.parseLong(new String(Files.readAllBytes(stateFile), StandardCharsets.US_ASCII).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Failed to read serial state from " + stateFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 等待系统时钟越过上次保存的上限：之前的进程签发的流水号时间戳都小于该上限
+     */
+    private void awaitSavedState(long saved) {
+        long behind = saved - clock.getAsLong();
+        if (behind <= 0) {
+            return;
+        }
+        if (behind > MAX_STARTUP_WAIT_MILLIS) {
+            throw new IllegalStateException("Clock is " + behind + "ms behind the last serial timestamp saved in "
+                    + stateFile + ", refusing to reissue serials");
+        }
+        long start = System.nanoTime();
+        while (behind > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(behind));
+            behind = saved - clock.getAsLong();
+        }
+        startupWaitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long compose(long state) {
+        return ((state >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT) | nodeBits | (state & SEQUENCE_MASK);
+    }
+
+    /**
+     * 逻辑时钟领先过多时等待系统时钟；需要等待的时间超过maxBorrowMillis说明时钟回拨，拒绝生成
+     */
+    private void awaitClock(long millis) {
+        if (millis > maxBorrowMillis) {
+            rejected.incrementAndGet();
+            throw new IllegalStateException("Clock moved backwards, refusing to generate serial for " + millis + "ms");
+        }
+        waits.incrementAndGet();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 流水号中的时间戳（毫秒，Unix时间）
+     */
+    public static long timestampOf(long serial) {
+        return (serial >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    public static int nodeIdOf(long serial) {
+        return (int) ((serial >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+
+    public static int sequenceOf(long serial) {
+        return (int) (serial & SEQUENCE_MASK);
+    }
+
+    /**
+     * 生成器统计信息
+     */
+    public Map<String, Object> getStats() {
+        long logical = state.get() >>> SEQUENCE_BITS;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("maxBorrowMillis", maxBorrowMillis);
+        stats.put("aheadMillis", logical > 0 ? Math.max(0, logical - (clock.getAsLong() - EPOCH)) : 0);
+        stats.put("borrowedMillis", borrowedMillis.get());
+        stats.put("waits", waits.get());
+        stats.put("rejected", rejected.get());
+        if (stateFile != null) {
+            stats.put("stateFile", stateFile.toAbsolutePath().toString());
+            stats.put("reservedUntil", reservedUntil > 0 ? reservedUntil + EPOCH : 0);
+            stats.put("reservations", reservations.get());
+            stats.put("startupWaitMillis", startupWaitMillis);
+        }
+        return stats;
+    }
+}
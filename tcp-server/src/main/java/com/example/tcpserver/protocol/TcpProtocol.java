@@ -1,6 +1,8 @@
 package com.example.tcpserver.protocol;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -29,15 +31,37 @@ public class TcpProtocol {
     public static final byte RESPONSE_SUCCESS = 0x00;        // 成功
     public static final byte RESPONSE_FAILED = 0x01;         // 失败
     
+    // 文件传输交易码
+    public static final String TRANSACTION_CODE_DELTA_SYNC = "DSYNC";   // 增量同步
+    public static final String TRANSACTION_CODE_FILE_STAT = "FSTAT";    // 文件信息
+    public static final String TRANSACTION_CODE_FILE_READ = "FREAD";    // 分段读取
+    public static final String TRANSACTION_CODE_FILE_ARCHIVE = "FARCH"; // 批量打包下载
+    
+    // 交易类型码长度（7字节）
+    public static final int TRANSACTION_CODE_LENGTH = 7;
+    
+    // 业务交易码的打包值（见packTransactionCode），分派时直接比较，不创建字符串
+    public static final long QUERY_KEY = packTransactionCode("QUERY");
+    public static final long UPDATE_KEY = packTransactionCode("UPDATE");
+    public static final long DELETE_KEY = packTransactionCode("DELETE");
+    
+    // 流式响应帧标志（响应数据首字节），一个请求对应多个响应帧
+    public static final byte STREAM_FRAME_MORE = 0x00;       // 后续还有帧
+    public static final byte STREAM_FRAME_LAST = 0x01;       // 最后一帧
+    
     /**
      * 请求报文header（42字节）
      */
     @Data
     public static class RequestHeader {
         private String senderNodeId;      // 发送系统节点号（6字节）
+        @Setter(AccessLevel.NONE)
+        private long senderNodeKey;       // 发送系统节点号打包为long（见packTransactionCode），用于会话校验
         private String receiverNodeId;   // 接收系统节点号（6字节）
         private byte transactionType;     // 交易类型标识（1字节）
-        private String transactionCode;   // 交易类型码（7字节）
+        private String transactionCode;   // 交易类型码（7字节，解析时不创建，首次读取时由transactionCodeKey生成）
+        @Setter(AccessLevel.NONE)
+        private long transactionCodeKey;  // 交易类型码打包为long（见packTransactionCode），用于分派
         private String transactionSerial; // 交易流水号（20字节）
         private byte[] reserved;          // 预留（2字节）
         
@@ -48,14 +72,31 @@ public class TcpProtocol {
         public RequestHeader(String senderNodeId, String receiverNodeId, 
                            byte transactionType, String transactionCode, 
                            String transactionSerial) {
-            this.senderNodeId = senderNodeId;
+            setSenderNodeId(senderNodeId);
             this.receiverNodeId = receiverNodeId;
             this.transactionType = transactionType;
-            this.transactionCode = transactionCode;
+            setTransactionCode(transactionCode);
             this.transactionSerial = transactionSerial;
             this.reserved = new byte[2];
         }
         
+        public void setSenderNodeId(String senderNodeId) {
+            this.senderNodeId = senderNodeId;
+            this.senderNodeKey = senderNodeId != null ? packTransactionCode(senderNodeId) : 0;
+        }
+        
+        public String getTransactionCode() {
+            if (transactionCode == null) {
+                transactionCode = unpackTransactionCode(transactionCodeKey);
+            }
+            return transactionCode;
+        }
+        
+        public void setTransactionCode(String transactionCode) {
+            this.transactionCode = transactionCode;
+            this.transactionCodeKey = transactionCode != null ? packTransactionCode(transactionCode) : 0;
+        }
+        
         /**
          * 将header转换为字节数组
          */
@@ -75,7 +116,7 @@ public class TcpProtocol {
             buffer.put(transactionType);
             
             // 交易类型码（7字节）
-            byte[] codeBytes = padToLength(transactionCode.getBytes(), 7);
+            byte[] codeBytes = padToLength(getTransactionCode().getBytes(), 7);
             buffer.put(codeBytes);
             
             // 交易流水号（20字节）
@@ -105,6 +146,7 @@ public class TcpProtocol {
             byte[] senderBytes = new byte[6];
             buffer.get(senderBytes);
             header.senderNodeId = new String(senderBytes).trim();
+            header.senderNodeKey = packTransactionCode(senderBytes, 0, senderBytes.length);
             
             // 接收系统节点号（6字节）
             byte[] receiverBytes = new byte[6];
@@ -114,10 +156,9 @@ public class TcpProtocol {
             // 交易类型标识（1字节）
             header.transactionType = buffer.get();
             
-            // 交易类型码（7字节）
-            byte[] codeBytes = new byte[7];
-            buffer.get(codeBytes);
-            header.transactionCode = new String(codeBytes).trim();
+            // 交易类型码（7字节），只打包为long，不创建字符串
+            header.transactionCodeKey = packTransactionCode(bytes, buffer.position(), TRANSACTION_CODE_LENGTH);
+            buffer.position(buffer.position() + TRANSACTION_CODE_LENGTH);
             
             // 交易流水号（20字节）
             byte[] serialBytes = new byte[20];
@@ -142,6 +183,47 @@ public class TcpProtocol {
         }
     }
     
+    /**
+     * 交易类型码打包为long：去掉首尾空白（不大于0x20的字节）后最多7字节，最高字节为长度，其余字节依次为交易码；
+     * 不同交易码的打包值不同，空交易码为0；6字节的节点号也用同样方式打包
+     */
+    public static long packTransactionCode(byte[] bytes, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (bytes[start] & 0xFF) <= 0x20) {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xFF) <= 0x20) {
+            end--;
+        }
+        int n = Math.min(end - start, TRANSACTION_CODE_LENGTH);
+        long key = (long) n << 56;
+        for (int i = 0; i < n; i++) {
+            key |= (long) (bytes[start + i] & 0xFF) << (8 * (6 - i));
+        }
+        return key;
+    }
+    
+    /**
+     * 交易类型码字符串打包为long（与报文中的7字节编码一致，超长部分截去）
+     */
+    public static long packTransactionCode(String transactionCode) {
+        byte[] bytes = transactionCode.getBytes();
+        return packTransactionCode(bytes, 0, Math.min(bytes.length, TRANSACTION_CODE_LENGTH));
+    }
+    
+    /**
+     * 打包值还原为交易类型码字符串
+     */
+    public static String unpackTransactionCode(long key) {
+        int n = (int) (key >>> 56);
+        byte[] bytes = new byte[n];
+        for (int i = 0; i < n; i++) {
+            bytes[i] = (byte) (key >>> (8 * (6 - i)));
+        }
+        return new String(bytes);
+    }
+    
     /**
      * 响应报文header（2字节）
      */
@@ -1,8 +1,10 @@
 package com.example.tcpserver.server;
 
+import com.example.tcpserver.codec.GatewayFrameDecoder;
 import com.example.tcpserver.codec.TcpProtocolDecoder;
 import com.example.tcpserver.codec.TcpProtocolEncoder;
 import com.example.tcpserver.handler.TcpProtocolHandler;
+import com.example.tcpserver.service.GatewayRouter;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -29,6 +31,9 @@ public class TcpServer {
     @Autowired
     private TcpProtocolHandler tcpProtocolHandler;
     
+    @Autowired
+    private GatewayRouter gatewayRouter;
+    
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private Channel serverChannel;
@@ -53,6 +58,11 @@ public class TcpServer {
                     protected void initChannel(SocketChannel ch) throws Exception {
                         ChannelPipeline pipeline = ch.pipeline();
                         
+                        // 网关模式：先分帧，需要转发的请求不经解码直接交给处理器
+                        if (gatewayRouter.isEnabled()) {
+                            pipeline.addLast(new GatewayFrameDecoder(gatewayRouter));
+                        }
+                        
                         // 添加编解码器
                         pipeline.addLast(new TcpProtocolDecoder());
                         pipeline.addLast(new TcpProtocolEncoder());
@@ -0,0 +1,381 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.handler.ResponseStream;
+import com.example.tcpserver.handler.StreamResponseWriter;
+import com.example.tcpserver.handler.TransactionHandler;
+import com.example.tcpserver.protocol.DeltaSync;
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 增量同步服务（rsync算法）
+ * 根据客户端上传的块签名扫描服务端文件，流式返回复制块/字面数据指令
+ */
+@Slf4j
+@Service
+public class DeltaSyncService implements TransactionHandler {
+
+    @Autowired
+    private FileService fileService;
+
+    @Value("${tcp.server.delta.threads:4}")
+    private int threads;
+
+    @Value("${tcp.server.delta.frame-size:262144}")
+    private int frameSize;
+
+    @Value("${tcp.server.delta.max-in-flight-frames:16}")
+    private int maxInFlightFrames;
+
+    private ExecutorService executor;
+
+    // 统计信息
+    private final AtomicLong totalSyncs = new AtomicLong(0);
+    private final AtomicLong totalLiteralBytes = new AtomicLong(0);
+    private final AtomicLong totalMatchedBytes = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadId = new AtomicInteger(0);
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "delta-sync-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public List<String> getTransactionCodes() {
+        return List.of(TcpProtocol.TRANSACTION_CODE_DELTA_SYNC);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * 处理增量同步请求（在独立线程池中执行，不阻塞IO线程），响应帧写入连接上占住的响应位置
+     */
+    @Override
+    public void handleStream(ChannelHandlerContext ctx, TcpProtocol.Message msg, ResponseStream stream) {
+        executor.execute(() -> {
+            try {
+                process(stream, msg);
+            } catch (Exception e) {
+                log.error("Delta sync failed: {}", e.getMessage());
+                sendError(stream, "Delta sync failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void process(ResponseStream stream, TcpProtocol.Message msg) throws IOException {
+        long startTime = System.nanoTime();
+        ByteBuffer request = ByteBuffer.wrap(msg.getData());
+
+        // 解析请求
+        byte[] nameBytes = new byte[request.getShort() & 0xFFFF];
+        request.get(nameBytes);
+        String fileName = new String(nameBytes, StandardCharsets.UTF_8);
+        boolean inPlace = (request.get() & DeltaSync.FLAG_IN_PLACE) != 0;
+        int blockSize = request.getInt();
+        int blockCount = request.getInt();
+
+        if (blockSize < DeltaSync.MIN_BLOCK_SIZE || blockSize > DeltaSync.MAX_BLOCK_SIZE
+                || blockCount < 0 || blockCount > DeltaSync.MAX_SIGNATURE_BLOCKS
+                || request.remaining() != blockCount * DeltaSync.SIGNATURE_LENGTH) {
+            sendError(stream, "Invalid delta sync request");
+            return;
+        }
+
+        Path filePath = fileService.resolveFile(fileName);
+        if (filePath == null) {
+            sendError(stream, "File not found: " + fileName);
+            return;
+        }
+
+        // 建立弱校验索引：weak -> 块序号列表
+        Map<Integer, int[]> weakIndex = new HashMap<>(blockCount * 2);
+        byte[][] strongChecksums = new byte[blockCount][];
+        for (int i = 0; i < blockCount; i++) {
+            int weak = request.getInt();
+            byte[] strong = new byte[DeltaSync.STRONG_CHECKSUM_LENGTH];
+            request.get(strong);
+            strongChecksums[i] = strong;
+            weakIndex.merge(weak, new int[]{i}, (existing, added) -> {
+                int[] merged = Arrays.copyOf(existing, existing.length + 1);
+                merged[existing.length] = added[0];
+                return merged;
+            });
+        }
+
+        StreamResponseWriter writer = new StreamResponseWriter(stream, frameSize, maxInFlightFrames);
+        DeltaGenerator generator = new DeltaGenerator(writer, blockSize, inPlace, weakIndex, strongChecksums);
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            generator.generate(channel);
+        }
+
+        totalSyncs.incrementAndGet();
+        totalLiteralBytes.addAndGet(generator.literalBytes);
+        totalMatchedBytes.addAndGet(generator.matchedBytes);
+
+        log.info("Delta sync completed: file={}, size={}, blocks={}, inPlace={}, matched={} bytes, literal={} bytes, frames={}, elapsed={}ms",
+                fileName, generator.fileSize, blockCount, inPlace, generator.matchedBytes, generator.literalBytes,
+                writer.getFramesWritten(), (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private void sendError(ResponseStream stream, String errorMessage) {
+        TcpProtocol.Message response = new TcpProtocol.Message(
+            new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_FAILED), errorMessage.getBytes(StandardCharsets.UTF_8));
+        stream.write(response, true);
+        log.warn("Sent delta sync error response: {}", errorMessage);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalSyncs", totalSyncs.get());
+        stats.put("totalLiteralBytes", totalLiteralBytes.get());
+        stats.put("totalMatchedBytes", totalMatchedBytes.get());
+        return stats;
+    }
+
+    /**
+     * 单次增量计算：滑动窗口扫描文件，生成指令流
+     */
+    private static class DeltaGenerator {
+
+        private final StreamResponseWriter writer;
+        private final int blockSize;
+        private final boolean inPlace;
+        private final Map<Integer, int[]> weakIndex;
+        private final byte[][] strongChecksums;
+        private final MessageDigest strongDigest = DeltaSync.newStrongDigest();
+        private final MessageDigest fileDigest;
+
+        // 文件窗口：buffer[0..bufferLength) 对应文件 [bufferStart, bufferStart + bufferLength)
+        private final byte[] buffer;
+        private long bufferStart;
+        private int bufferLength;
+        private FileChannel channel;
+        private boolean eof;
+
+        // 待合并的复制指令
+        private int pendingCopyStart = -1;
+        private int pendingCopyCount;
+
+        private long fileSize;
+        private long literalBytes;
+        private long matchedBytes;
+
+        DeltaGenerator(StreamResponseWriter writer, int blockSize, boolean inPlace,
+                       Map<Integer, int[]> weakIndex, byte[][] strongChecksums) {
+            this.writer = writer;
+            this.blockSize = blockSize;
+            this.inPlace = inPlace;
+            this.weakIndex = weakIndex;
+            this.strongChecksums = strongChecksums;
+            this.buffer = new byte[writer.capacity() + 2 * blockSize];
+            try {
+                this.fileDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        void generate(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+
+            long pos = 0;            // 当前窗口起始位置（即目标文件写入位置）
+            long literalStart = 0;   // 尚未发送的字面数据起始位置
+            int maxLiteral = writer.capacity() - 5;
+            boolean windowValid = false;
+            int weak = 0;
+
+            while (true) {
+                fill(literalStart, pos + blockSize + 1);
+                if (pos + blockSize > bufferStart + bufferLength) {
+                    break;
+                }
+
+                if (!windowValid) {
+                    weak = DeltaSync.weakChecksum(buffer, (int) (pos - bufferStart), blockSize);
+                    windowValid = true;
+                }
+
+                int block = weakIndex.isEmpty() ? -1 : findBlock(weak, pos);
+                if (block >= 0) {
+                    flushLiteral(literalStart, pos);
+                    addCopy(block);
+                    pos += blockSize;
+                    literalStart = pos;
+                    windowValid = false;
+                    continue;
+                }
+
+                // 未匹配：窗口后移一个字节
+                int offset = (int) (pos - bufferStart);
+                if (pos + blockSize < bufferStart + bufferLength) {
+                    weak = DeltaSync.roll(weak, blockSize, buffer[offset], buffer[offset + blockSize]);
+                } else {
+                    windowValid = false;
+                }
+                pos++;
+
+                if (pos - literalStart >= maxLiteral) {
+                    flushLiteral(literalStart, pos);
+                    literalStart = pos;
+                }
+            }
+
+            // 文件末尾不足一块的数据
+            fill(literalStart, fileSize);
+            while (literalStart < fileSize) {
+                long end = Math.min(fileSize, literalStart + maxLiteral);
+                flushLiteral(literalStart, end);
+                literalStart = end;
+            }
+            flushCopy();
+
+            writer.reserve(1 + 8 + 32);
+            writer.writeByte(DeltaSync.OP_END);
+            writer.writeLong(fileSize);
+            byte[] sha256 = fileDigest.digest();
+            writer.writeBytes(sha256, 0, sha256.length);
+            writer.finish();
+        }
+
+        /**
+         * 查找与当前窗口匹配的块，优先选择同一位置的块；
+         * 原地重建模式下忽略偏移小于当前写入位置的块（客户端已覆盖）
+         */
+        private int findBlock(int weak, long pos) {
+            int[] candidates = weakIndex.get(weak);
+            if (candidates == null) {
+                return -1;
+            }
+
+            byte[] strong = null;
+            int match = -1;
+            for (int candidate : candidates) {
+                long candidateOffset = (long) candidate * blockSize;
+                if (inPlace && candidateOffset < pos) {
+                    continue;
+                }
+                if (strong == null) {
+                    strongDigest.update(buffer, (int) (pos - bufferStart), blockSize);
+                    strong = strongDigest.digest();
+                }
+                if (Arrays.equals(strong, strongChecksums[candidate])) {
+                    if (candidateOffset == pos) {
+                        return candidate;
+                    }
+                    if (match < 0) {
+                        match = candidate;
+                    }
+                }
+            }
+            return match;
+        }
+
+        private void addCopy(int block) throws IOException {
+            matchedBytes += blockSize;
+            if (pendingCopyStart >= 0 && pendingCopyStart + pendingCopyCount == block) {
+                pendingCopyCount++;
+                return;
+            }
+            flushCopy();
+            pendingCopyStart = block;
+            pendingCopyCount = 1;
+        }
+
+        private void flushCopy() throws IOException {
+            if (pendingCopyStart < 0) {
+                return;
+            }
+            writer.reserve(1 + 4 + 4);
+            writer.writeByte(DeltaSync.OP_COPY);
+            writer.writeInt(pendingCopyStart);
+            writer.writeInt(pendingCopyCount);
+            pendingCopyStart = -1;
+            pendingCopyCount = 0;
+        }
+
+        private void flushLiteral(long start, long end) throws IOException {
+            if (end <= start) {
+                return;
+            }
+            flushCopy();
+            int length = (int) (end - start);
+            writer.reserve(1 + 4 + length);
+            writer.writeByte(DeltaSync.OP_LITERAL);
+            writer.writeInt(length);
+            writer.writeBytes(buffer, (int) (start - bufferStart), length);
+            literalBytes += length;
+        }
+
+        /**
+         * 保证窗口包含 [keepFrom, upTo) 范围内的数据（文件末尾除外）
+         */
+        private void fill(long keepFrom, long upTo) throws IOException {
+            if (upTo <= bufferStart + bufferLength || eof) {
+                return;
+            }
+
+            // 丢弃 keepFrom 之前的数据
+            int discard = (int) (keepFrom - bufferStart);
+            if (discard > 0) {
+                System.arraycopy(buffer, discard, buffer, 0, bufferLength - discard);
+                bufferStart = keepFrom;
+                bufferLength -= discard;
+            }
+
+            ByteBuffer target = ByteBuffer.wrap(buffer, bufferLength, buffer.length - bufferLength);
+            long readPosition = bufferStart + bufferLength;
+            while (target.hasRemaining()) {
+                int read = channel.read(target, readPosition);
+                if (read < 0) {
+                    eof = true;
+                    break;
+                }
+                fileDigest.update(buffer, bufferLength, read);
+                bufferLength += read;
+                readPosition += read;
+            }
+        }
+    }
+}
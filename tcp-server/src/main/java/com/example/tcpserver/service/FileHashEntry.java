@@ -0,0 +1,35 @@
+package com.example.tcpserver.service;
+
+import lombok.Data;
+
+/**
+ * 文件内容哈希索引项
+ * 以文件名、大小、修改时间判断是否需要重新计算
+ */
+@Data
+public class FileHashEntry {
+    private String fileName;
+    private long fileSize;
+    private long lastModified;
+    private String crc32c;     // CRC32C（十六进制），用于快速校验
+    private String sha256;     // SHA-256（十六进制），用于内容标识
+    private long hashedAt;
+    
+    public FileHashEntry() {}
+    
+    public FileHashEntry(String fileName, long fileSize, long lastModified, String crc32c, String sha256) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.crc32c = crc32c;
+        this.sha256 = sha256;
+        this.hashedAt = System.currentTimeMillis();
+    }
+    
+    /**
+     * 检查索引项是否与文件当前状态一致
+     */
+    public boolean matches(long fileSize, long lastModified) {
+        return this.fileSize == fileSize && this.lastModified == lastModified;
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.tcpserver.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * 文件内容哈希索引
+ * 后台并行计算CRC32C和SHA-256，持久化到文件目录下的索引文件，
+ * 重启后按文件名、大小、修改时间复用已有结果
+ */
+@Slf4j
+@Service
+public class FileHashIndex {
+
+    // 每次映射的最大字节数
+    private static final long MAP_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    @Autowired
+    private FileService fileService;
+
+    @Value("${tcp.server.file.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${tcp.server.file.index.file:.file-index.json}")
+    private String indexFileName;
+
+    @Value("${tcp.server.file.index.threads:0}")
+    private int threads;
+
+    @Value("${tcp.server.file.index.interval:60}")
+    private long scanIntervalSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, FileHashEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean scanning = new AtomicBoolean(false);
+    private final AtomicLong hashedFiles = new AtomicLong(0);
+    private final AtomicLong hashedBytes = new AtomicLong(0);
+    private volatile long lastScanTime = 0;
+    private volatile long lastScanDurationMillis = 0;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService hashWorkers;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("File hash index disabled");
+            return;
+        }
+
+        loadIndex();
+
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerId = new AtomicInteger(0);
+        hashWorkers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "file-hash-" + workerId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "file-index-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scan, 0, Math.max(1, scanIntervalSeconds), TimeUnit.SECONDS);
+
+        log.info("File hash index initialized, workers: {}, entries: {}, interval: {}s",
+                workerCount, entries.size(), scanIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (hashWorkers != null) {
+            hashWorkers.shutdownNow();
+        }
+    }
+
+    /**
+     * 触发一次后台扫描
+     */
+    public void rescan() {
+        if (scheduler != null) {
+            scheduler.execute(this::scan);
+        }
+    }
+
+    /**
+     * 扫描文件目录，对新增或变更的文件计算哈希
+     */
+    private void scan() {
+        if (!scanning.compareAndSet(false, true)) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            Path baseDir = fileService.getBaseDirectory();
+            if (!Files.isDirectory(baseDir)) {
+                return;
+            }
+
+            Set<String> seen = new HashSet<>();
+            List<Future<Boolean>> tasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDir)) {
+                for (Path filePath : stream) {
+                    String fileName = filePath.getFileName().toString();
+                    if (fileName.startsWith(".") || !Files.isRegularFile(filePath)) {
+                        continue;
+                    }
+                    seen.add(fileName);
+
+                    BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+                    FileHashEntry existing = entries.get(fileName);
+                    if (existing != null && existing.matches(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                        continue;
+                    }
+
+                    tasks.add(hashWorkers.submit(() -> hashAndStore(filePath)));
+                }
+            }
+
+            boolean changed = entries.keySet().retainAll(seen);
+            for (Future<Boolean> task : tasks) {
+                try {
+                    changed |= task.get();
+                } catch (Exception e) {
+                    log.warn("Hash task failed: {}", e.getMessage());
+                }
+            }
+
+            if (changed) {
+                saveIndex();
+            }
+
+        } catch (IOException e) {
+            log.error("Error scanning file directory: {}", e.getMessage());
+        } finally {
+            lastScanTime = System.currentTimeMillis();
+            lastScanDurationMillis = lastScanTime - startTime;
+            scanning.set(false);
+        }
+    }
+
+    /**
+     * 计算单个文件哈希并写入索引
+     */
+    private boolean hashAndStore(Path filePath) {
+        String fileName = filePath.getFileName().toString();
+        try {
+            BasicFileAttributes before = Files.readAttributes(filePath, BasicFileAttributes.class);
+            FileHashEntry entry = hashFile(filePath, before.size(), before.lastModifiedTime().toMillis());
+
+            // 计算期间文件被修改则丢弃结果，下次扫描再处理
+            BasicFileAttributes after = Files.readAttributes(filePath, BasicFileAttributes.class);
+            if (!entry.matches(after.size(), after.lastModifiedTime().toMillis())) {
+                log.debug("File changed while hashing, skipped: {}", fileName);
+                return false;
+            }
+
+            entries.put(fileName, entry);
+            hashedFiles.incrementAndGet();
+            hashedBytes.addAndGet(entry.getFileSize());
+            log.debug("Hashed file: {}, size: {}, sha256: {}", fileName, entry.getFileSize(), entry.getSha256());
+            return true;
+
+        } catch (IOException e) {
+            log.warn("Error hashing file {}: {}", fileName, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 使用内存映射分段读取文件，同时计算CRC32C和SHA-256
+     */
+    private FileHashEntry hashFile(Path filePath, long fileSize, long lastModified) throws IOException {
+        CRC32C crc32c = new CRC32C();
+        MessageDigest sha256 = newSha256();
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < fileSize) {
+                long chunkSize = Math.min(MAP_CHUNK_SIZE, fileSize - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, chunkSize);
+                crc32c.update(buffer.duplicate());
+                sha256.update(buffer);
+                position += chunkSize;
+            }
+        }
+
+        return new FileHashEntry(
+            filePath.getFileName().toString(),
+            fileSize,
+            lastModified,
+            String.format("%08x", crc32c.getValue()),
+            HexFormat.of().formatHex(sha256.digest())
+        );
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 获取与文件当前状态一致的索引项，未索引或已过期时返回null
+     */
+    public FileHashEntry getEntry(FileInfo fileInfo) {
+        FileHashEntry entry = entries.get(fileInfo.getFileName());
+        if (entry != null && entry.matches(fileInfo.getFileSize(), fileInfo.getLastModified())) {
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * 获取所有索引项
+     */
+    public List<FileHashEntry> getEntries() {
+        return new ArrayList<>(new TreeMap<>(entries).values());
+    }
+
+    /**
+     * 查找内容重复的文件（按SHA-256分组）
+     */
+    public Map<String, List<String>> findDuplicates() {
+        Map<String, List<String>> bySha256 = new HashMap<>();
+        for (FileHashEntry entry : entries.values()) {
+            bySha256.computeIfAbsent(entry.getSha256(), k -> new ArrayList<>()).add(entry.getFileName());
+        }
+        bySha256.values().removeIf(names -> names.size() < 2);
+        bySha256.values().forEach(names -> names.sort(String::compareTo));
+        return bySha256;
+    }
+
+    /**
+     * 获取索引统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("indexedFiles", entries.size());
+        stats.put("hashedFiles", hashedFiles.get());
+        stats.put("hashedBytes", hashedBytes.get());
+        stats.put("scanning", scanning.get());
+        stats.put("lastScanTime", lastScanTime);
+        stats.put("lastScanDurationMillis", lastScanDurationMillis);
+        return stats;
+    }
+
+    /**
+     * 加载索引文件
+     */
+    private void loadIndex() {
+        Path indexPath = fileService.getBaseDirectory().resolve(indexFileName);
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+
+        try {
+            List<FileHashEntry> loaded = objectMapper.readValue(indexPath.toFile(), new TypeReference<List<FileHashEntry>>() {});
+            for (FileHashEntry entry : loaded) {
+                entries.put(entry.getFileName(), entry);
+            }
+            log.info("Loaded file hash index: {}, entries: {}", indexPath, loaded.size());
+        } catch (IOException e) {
+            log.warn("Failed to load file hash index {}, will rebuild: {}", indexPath, e.getMessage());
+        }
+    }
+
+    /**
+     * 保存索引文件（先写临时文件再原子替换）
+     */
+    private void saveIndex() {
+        Path indexPath = fileService.getBaseDirectory().resolve(indexFileName);
+        Path tempPath = indexPath.resolveSibling(indexFileName + ".tmp");
+
+        try {
+            objectMapper.writeValue(tempPath.toFile(), getEntries());
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved file hash index: {}, entries: {}", indexPath, entries.size());
+        } catch (IOException e) {
+            log.error("Failed to save file hash index: {}", e.getMessage());
+        }
+    }
+}
@@ -7,8 +7,10 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,7 +44,7 @@ public class FileService {
             
             if (files != null) {
                 for (File file : files) {
-                    if (file.isFile()) {
+                    if (file.isFile() && !file.getName().startsWith(".")) {
                         FileInfo fileInfo = new FileInfo(
                             file.getName(),
                             file.length(),
@@ -63,19 +65,77 @@ public class FileService {
     }
     
     /**
-     * 读取文件内容
+     * 解析文件路径（防止路径穿越）
+     * 只返回位于文件目录内的普通文件，否则返回null
      */
-    public byte[] readFile(String fileName) {
+    public Path resolveFile(String fileName) {
+        if (fileName == null || fileName.isEmpty() || fileName.indexOf('\0') >= 0) {
+            return null;
+        }
+        
         try {
-            Path filePath = Paths.get(fileDirectory, fileName);
+            Path baseDir = getBaseDirectory();
+            Path filePath = baseDir.resolve(fileName).normalize();
             
-            if (!Files.exists(filePath)) {
-                log.warn("File not found: {}", fileName);
+            if (!filePath.startsWith(baseDir) || filePath.equals(baseDir)) {
+                log.warn("Rejected file path outside of file directory: {}", fileName);
+                return null;
+            }
+            
+            // 隐藏文件（如索引文件）不对外提供
+            if (!Files.isRegularFile(filePath) || filePath.getFileName().toString().startsWith(".")) {
                 return null;
             }
             
-            if (!Files.isRegularFile(filePath)) {
-                log.warn("Not a regular file: {}", fileName);
+            // 符号链接解析后仍需位于文件目录内
+            if (!filePath.toRealPath().startsWith(baseDir.toRealPath())) {
+                log.warn("Rejected symbolic link outside of file directory: {}", fileName);
+                return null;
+            }
+            
+            return filePath;
+            
+        } catch (InvalidPathException | IOException e) {
+            log.warn("Invalid file name {}: {}", fileName, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 获取文件目录
+     */
+    public Path getBaseDirectory() {
+        return Paths.get(fileDirectory).toAbsolutePath().normalize();
+    }
+    
+    /**
+     * 获取单个文件信息
+     */
+    public FileInfo getFileInfo(Path filePath) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        return new FileInfo(
+            filePath.getFileName().toString(),
+            attributes.size(),
+            attributes.lastModifiedTime().toMillis()
+        );
+    }
+    
+    /**
+     * 生成文件ETag（基于文件大小和修改时间）
+     */
+    public String getETag(FileInfo fileInfo) {
+        return "\"" + Long.toHexString(fileInfo.getFileSize()) + "-" + Long.toHexString(fileInfo.getLastModified()) + "\"";
+    }
+    
+    /**
+     * 读取文件内容
+     */
+    public byte[] readFile(String fileName) {
+        try {
+            Path filePath = resolveFile(fileName);
+            
+            if (filePath == null) {
+                log.warn("File not found: {}", fileName);
                 return null;
             }
             
@@ -93,7 +153,6 @@ public class FileService {
      * 检查文件是否存在
      */
     public boolean fileExists(String fileName) {
-        Path filePath = Paths.get(fileDirectory, fileName);
-        return Files.exists(filePath) && Files.isRegularFile(filePath);
+        return resolveFile(fileName) != null;
     }
 }
@@ -0,0 +1,396 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.handler.ResponseStream;
+import com.example.tcpserver.handler.StreamResponseWriter;
+import com.example.tcpserver.handler.TransactionHandler;
+import com.example.tcpserver.protocol.FileTransfer;
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件分段传输服务
+ * 提供文件信息查询（FSTAT）和按区间流式读取（FREAD），供客户端多连接并行下载；
+ * 批量打包下载（FARCH）将匹配的多个文件连续写入同一个流式响应，不生成临时文件
+ */
+@Slf4j
+@Service
+public class FileTransferService implements TransactionHandler {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileHashIndex fileHashIndex;
+
+    @Value("${tcp.server.transfer.threads:8}")
+    private int threads;
+
+    @Value("${tcp.server.transfer.frame-size:262144}")
+    private int frameSize;
+
+    @Value("${tcp.server.transfer.max-in-flight-frames:16}")
+    private int maxInFlightFrames;
+
+    private ExecutorService executor;
+
+    // 统计信息
+    private final AtomicLong totalStats = new AtomicLong(0);
+    private final AtomicLong totalReads = new AtomicLong(0);
+    private final AtomicLong totalReadBytes = new AtomicLong(0);
+    private final AtomicLong totalArchives = new AtomicLong(0);
+    private final AtomicLong totalArchivedFiles = new AtomicLong(0);
+    private final AtomicInteger activeReads = new AtomicInteger(0);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadId = new AtomicInteger(0);
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "file-transfer-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public List<String> getTransactionCodes() {
+        return List.of(TcpProtocol.TRANSACTION_CODE_FILE_STAT, TcpProtocol.TRANSACTION_CODE_FILE_READ,
+                TcpProtocol.TRANSACTION_CODE_FILE_ARCHIVE);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * 处理文件传输请求（在独立线程池中执行，不阻塞IO线程），响应帧写入连接上占住的响应位置
+     */
+    @Override
+    public void handleStream(ChannelHandlerContext ctx, TcpProtocol.Message msg, ResponseStream stream) {
+        String transactionCode = msg.getRequestHeader().getTransactionCode().trim();
+        executor.execute(() -> {
+            try {
+                switch (transactionCode) {
+                    case TcpProtocol.TRANSACTION_CODE_FILE_STAT:
+                        stat(stream, msg);
+                        break;
+                    case TcpProtocol.TRANSACTION_CODE_FILE_READ:
+                        read(stream, msg);
+                        break;
+                    default:
+                        archive(stream, msg);
+                        break;
+                }
+            } catch (Exception e) {
+                log.error("File transfer failed: code={}, error={}", transactionCode, e.getMessage());
+                sendError(stream, "File transfer failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 查询文件大小、修改时间和索引中的SHA-256
+     */
+    private void stat(ResponseStream stream, TcpProtocol.Message msg) throws IOException {
+        ByteBuffer request = ByteBuffer.wrap(msg.getData());
+        String fileName = readFileName(request);
+
+        Path filePath = fileService.resolveFile(fileName);
+        if (filePath == null) {
+            sendError(stream, "File not found: " + fileName);
+            return;
+        }
+
+        FileInfo fileInfo = fileService.getFileInfo(filePath);
+        FileHashEntry hashEntry = fileHashIndex.getEntry(fileInfo);
+
+        ByteBuffer response = ByteBuffer.allocate(FileTransfer.STAT_RESPONSE_LENGTH);
+        response.putLong(fileInfo.getFileSize());
+        response.putLong(fileInfo.getLastModified());
+        if (hashEntry != null) {
+            response.put((byte) 1);
+            response.put(HexFormat.of().parseHex(hashEntry.getSha256()));
+        } else {
+            response.put((byte) 0);
+        }
+
+        byte[] data = new byte[response.position()];
+        response.flip();
+        response.get(data);
+
+        stream.write(new TcpProtocol.Message(new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_SUCCESS), data), true);
+        totalStats.incrementAndGet();
+        log.debug("Sent file stat: file={}, size={}, indexed={}", fileName, fileInfo.getFileSize(), hashEntry != null);
+    }
+
+    /**
+     * 按区间流式读取文件
+     */
+    private void read(ResponseStream stream, TcpProtocol.Message msg) throws IOException {
+        long startTime = System.nanoTime();
+        ByteBuffer request = ByteBuffer.wrap(msg.getData());
+        String fileName = readFileName(request);
+        long offset = request.getLong();
+        long length = request.getLong();
+
+        Path filePath = fileService.resolveFile(fileName);
+        if (filePath == null) {
+            sendError(stream, "File not found: " + fileName);
+            return;
+        }
+
+        activeReads.incrementAndGet();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (offset < 0 || length < 0 || offset + length > fileSize) {
+                sendError(stream, "Invalid range: offset=" + offset + ", length=" + length + ", size=" + fileSize);
+                return;
+            }
+
+            StreamResponseWriter writer = new StreamResponseWriter(stream, frameSize, maxInFlightFrames);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                if (writer.remaining() == 0) {
+                    writer.flush();
+                }
+                int read = writer.writeFrom(channel, position, (int) Math.min(end - position, Integer.MAX_VALUE));
+                if (read < 0) {
+                    throw new IOException("File truncated while reading: " + fileName);
+                }
+                position += read;
+            }
+            writer.finish();
+
+            totalReads.incrementAndGet();
+            totalReadBytes.addAndGet(length);
+            log.debug("File range sent: file={}, offset={}, length={}, frames={}, elapsed={}ms",
+                    fileName, offset, length, writer.getFramesWritten(), (System.nanoTime() - startTime) / 1_000_000);
+        } finally {
+            activeReads.decrementAndGet();
+        }
+    }
+
+    /**
+     * 将匹配的文件依次打包为连续流
+     * 读取在传输线程中进行，写出在IO线程中进行，两者之间最多缓冲max-in-flight-frames帧，磁盘读取可领先于网络发送
+     */
+    private void archive(ResponseStream stream, TcpProtocol.Message msg) throws IOException {
+        long startTime = System.nanoTime();
+        ByteBuffer request = ByteBuffer.wrap(msg.getData());
+        byte format = request.get();
+        int patternCount = request.getShort() & 0xFFFF;
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (int i = 0; i < patternCount; i++) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + readFileName(request)));
+        }
+
+        if (format != FileTransfer.ARCHIVE_FORMAT_STREAM && format != FileTransfer.ARCHIVE_FORMAT_TAR) {
+            sendError(stream, "Unknown archive format: " + format);
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (FileInfo fileInfo : fileService.getFileList()) {
+            Path name = Paths.get(fileInfo.getFileName());
+            if (matchers.stream().anyMatch(matcher -> matcher.matches(name))) {
+                Path filePath = fileService.resolveFile(fileInfo.getFileName());
+                if (filePath != null) {
+                    files.add(filePath);
+                }
+            }
+        }
+        Collections.sort(files);
+
+        StreamResponseWriter writer = new StreamResponseWriter(stream, frameSize, maxInFlightFrames);
+        boolean tar = format == FileTransfer.ARCHIVE_FORMAT_TAR;
+        long totalBytes = 0;
+        int fileCount = 0;
+
+        activeReads.incrementAndGet();
+        try {
+            for (Path filePath : files) {
+                String fileName = filePath.getFileName().toString();
+                try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+
+                    byte[] header = tar ? tarHeader(fileName, size, lastModified) : streamHeader(fileName, size);
+                    if (header == null) {
+                        log.warn("File name too long for tar, skipped: {}", fileName);
+                        continue;
+                    }
+                    writer.append(header, 0, header.length);
+                    appendFile(writer, channel, size, fileName);
+                    if (tar) {
+                        int padding = (int) ((FileTransfer.TAR_BLOCK_SIZE - size % FileTransfer.TAR_BLOCK_SIZE) % FileTransfer.TAR_BLOCK_SIZE);
+                        writer.append(new byte[padding], 0, padding);
+                    }
+                    totalBytes += size;
+                    fileCount++;
+                } catch (NoSuchFileException e) {
+                    log.warn("File removed before archiving, skipped: {}", fileName);
+                }
+            }
+
+            if (tar) {
+                writer.append(new byte[FileTransfer.TAR_BLOCK_SIZE * 2], 0, FileTransfer.TAR_BLOCK_SIZE * 2);
+            } else {
+                byte[] end = ByteBuffer.allocate(1 + 4 + 8)
+                        .put(FileTransfer.RECORD_END).putInt(fileCount).putLong(totalBytes).array();
+                writer.append(end, 0, end.length);
+            }
+            writer.finish();
+
+            totalArchives.incrementAndGet();
+            totalArchivedFiles.addAndGet(fileCount);
+            totalReadBytes.addAndGet(totalBytes);
+            log.info("Archive sent: format={}, files={}, bytes={}, frames={}, elapsed={}ms",
+                    tar ? "tar" : "stream", fileCount, totalBytes, writer.getFramesWritten(), (System.nanoTime() - startTime) / 1_000_000);
+        } finally {
+            activeReads.decrementAndGet();
+        }
+    }
+
+    /**
+     * 将整个文件内容追加到流中
+     */
+    private void appendFile(StreamResponseWriter writer, FileChannel channel, long size, String fileName) throws IOException {
+        long position = 0;
+        while (position < size) {
+            if (writer.remaining() == 0) {
+                writer.flush();
+            }
+            int read = writer.writeFrom(channel, position, (int) Math.min(size - position, Integer.MAX_VALUE));
+            if (read < 0) {
+                throw new IOException("File truncated while reading: " + fileName);
+            }
+            position += read;
+        }
+    }
+
+    private byte[] streamHeader(String fileName, long size) {
+        byte[] nameBytes = fileName.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 2 + nameBytes.length + 8)
+                .put(FileTransfer.RECORD_FILE)
+                .putShort((short) nameBytes.length)
+                .put(nameBytes)
+                .putLong(size)
+                .array();
+    }
+
+    /**
+     * 生成ustar文件头，文件名超过100字节时返回null
+     */
+    private byte[] tarHeader(String fileName, long size, long lastModified) {
+        byte[] nameBytes = fileName.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            return null;
+        }
+
+        byte[] header = new byte[FileTransfer.TAR_BLOCK_SIZE];
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        if (size <= 077777777777L) {
+            putOctal(header, 124, 12, size);
+        } else {
+            // 超过8GB使用base-256编码
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        putOctal(header, 136, 12, lastModified / 1000);
+        header[156] = '0';
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // 校验和按校验字段为空格计算
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * 写入以NUL结尾的八进制字段
+     */
+    private void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            header[offset + i] = (byte) (index >= 0 ? octal.charAt(index) : '0');
+        }
+        header[offset + digits] = 0;
+    }
+
+    private String readFileName(ByteBuffer request) {
+        byte[] nameBytes = new byte[request.getShort() & 0xFFFF];
+        request.get(nameBytes);
+        return new String(nameBytes, StandardCharsets.UTF_8);
+    }
+
+    private void sendError(ResponseStream stream, String errorMessage) {
+        TcpProtocol.Message response = new TcpProtocol.Message(
+            new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_FAILED), errorMessage.getBytes(StandardCharsets.UTF_8));
+        stream.write(response, true);
+        log.warn("Sent file transfer error response: {}", errorMessage);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalStats", totalStats.get());
+        stats.put("totalReads", totalReads.get());
+        stats.put("totalReadBytes", totalReadBytes.get());
+        stats.put("totalArchives", totalArchives.get());
+        stats.put("totalArchivedFiles", totalArchivedFiles.get());
+        stats.put("activeReads", activeReads.get());
+        return stats;
+    }
+}
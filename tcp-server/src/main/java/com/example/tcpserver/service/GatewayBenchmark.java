@@ -0,0 +1,148 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 网关转发开销基准测试
+ * 同样的业务请求（接收节点号为nodeId）分两轮发送：先直接发往该节点路由到的上游实例，再发往本实例由网关转发，
+ * 每轮threads个连接各自按请求-响应顺序发送（每个连接先签到）。输出两轮的吞吐量、延迟分位数（微秒）和转发增加的延迟
+ */
+public class GatewayBenchmark {
+
+    private static final int MAX_REQUESTS = 1_000_000;
+    private static final int MAX_THREADS = 64;
+    private static final String SENDER_NODE_ID = "BENCH";
+
+    private final String gatewayHost;
+    private final int gatewayPort;
+
+    public GatewayBenchmark(String gatewayHost, int gatewayPort) {
+        this.gatewayHost = gatewayHost;
+        this.gatewayPort = gatewayPort;
+    }
+
+    public Map<String, Object> run(String nodeId, String upstreamAddress, int requests, int threads, String transactionCode, String data) {
+        Map<String, Object> result = new HashMap<>();
+        if (requests <= 0 || requests > MAX_REQUESTS || threads <= 0 || threads > MAX_THREADS) {
+            result.put("success", false);
+            result.put("message", "Invalid benchmark parameters (requests 1-" + MAX_REQUESTS + ", threads 1-" + MAX_THREADS + ")");
+            return result;
+        }
+
+        int separator = upstreamAddress.lastIndexOf(':');
+        String upstreamHost = upstreamAddress.substring(0, separator);
+        int upstreamPort = Integer.parseInt(upstreamAddress.substring(separator + 1));
+        try {
+            // 先直连预热上游，再依次测量直连和经网关转发
+            runRound(upstreamHost, upstreamPort, nodeId, Math.min(requests, 2000), threads, transactionCode, data);
+            Map<String, Object> direct = runRound(upstreamHost, upstreamPort, nodeId, requests, threads, transactionCode, data);
+            Map<String, Object> forwarded = runRound(gatewayHost, gatewayPort, nodeId, requests, threads, transactionCode, data);
+
+            result.put("success", true);
+            result.put("nodeId", nodeId);
+            result.put("upstream", upstreamAddress);
+            result.put("requests", requests);
+            result.put("threads", threads);
+            result.put("transactionCode", transactionCode);
+            result.put("direct", direct);
+            result.put("forwarded", forwarded);
+            result.put("overheadP50Micros", (double) forwarded.get("p50Micros") - (double) direct.get("p50Micros"));
+            result.put("overheadMeanMicros", (double) forwarded.get("meanMicros") - (double) direct.get("meanMicros"));
+            return result;
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", "Benchmark failed: " + e.getMessage());
+            return result;
+        }
+    }
+
+    private Map<String, Object> runRound(String host, int port, String nodeId, int requests, int threads,
+                                         String transactionCode, String data) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> workers = new ArrayList<>(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int count = requests / threads + (t < requests % threads ? 1 : 0);
+                workers.add(pool.submit(() -> runWorker(host, port, nodeId, count, transactionCode, data)));
+            }
+            List<long[]> latencies = new ArrayList<>(threads);
+            int failures = 0;
+            for (Future<long[]> worker : workers) {
+                long[] samples = worker.get();
+                failures += (int) samples[samples.length - 1];
+                latencies.add(Arrays.copyOf(samples, samples.length - 1));
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("target", host + ":" + port);
+            stats.put("elapsedMillis", elapsed / 1_000_000);
+            stats.put("requestsPerSecond", requests * 1_000_000_000.0 / elapsed);
+            stats.put("failedResponses", failures);
+            stats.put("p50Micros", all[(int) (all.length * 0.50)] / 1000.0);
+            stats.put("p99Micros", all[(int) (all.length * 0.99)] / 1000.0);
+            stats.put("maxMicros", all[all.length - 1] / 1000.0);
+            stats.put("meanMicros", Arrays.stream(all).average().orElse(0) / 1000.0);
+            return stats;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 在一个连接上签到后发送count个请求，返回各请求的延迟（纳秒），最后一个元素为失败响应数
+     */
+    private long[] runWorker(String host, int port, String nodeId, int count, String transactionCode, String data) throws IOException {
+        long[] samples = new long[count + 1];
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            out.write(request(TcpProtocol.TRANSACTION_TYPE_SIGNIN, "SIGNIN", nodeId, 0, "user:" + SENDER_NODE_ID));
+            readResponse(in);
+            for (int i = 0; i < count; i++) {
+                byte[] request = request(TcpProtocol.TRANSACTION_TYPE_BUSINESS, transactionCode, nodeId, i + 1, data);
+                long start = System.nanoTime();
+                out.write(request);
+                if (readResponse(in) != TcpProtocol.RESPONSE_SUCCESS) {
+                    samples[count]++;
+                }
+                samples[i] = System.nanoTime() - start;
+            }
+        }
+        return samples;
+    }
+
+    private static byte[] request(byte transactionType, String transactionCode, String nodeId, long serial, String data) {
+        TcpProtocol.RequestHeader header = new TcpProtocol.RequestHeader(SENDER_NODE_ID, nodeId, transactionType,
+                transactionCode, String.format("%020d", serial));
+        return new TcpProtocol.Message(header, data.getBytes()).toBytes();
+    }
+
+    /**
+     * 读取一个响应报文，返回状态
+     */
+    private static byte readResponse(DataInputStream in) throws IOException {
+        byte status = in.readByte();
+        in.readByte();
+        int length = in.readInt();
+        in.skipNBytes(length - TcpProtocol.RESPONSE_HEADER_LENGTH - TcpProtocol.LENGTH_FIELD_LENGTH);
+        return status;
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.handler.TransactionHandlerRegistry;
+import com.example.tcpserver.protocol.TcpProtocol;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网关路由
+ * 路由文件（JSON对象：接收节点号 -> 上游地址host:port）按修改时间热加载，接收节点号打包为long（见TcpProtocol.packTransactionCode）
+ * 后放入不可变的HashMap，整体替换，查找不加锁；多个节点号可以指向同一上游，共享连接池。
+ * 重新加载时地址不变的上游保留原连接，不再使用的上游关闭。路由表中没有的接收节点号和流式交易由本实例处理，
+ * 路由文件中不应包含本实例自己的节点号
+ */
+@Slf4j
+@Service
+public class GatewayRouter {
+
+    @Autowired
+    private TransactionHandlerRegistry handlerRegistry;
+
+    @Value("${tcp.server.gateway.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tcp.server.gateway.routes-file:gateway-routes.json}")
+    private String routesFile;
+
+    @Value("${tcp.server.gateway.reload-interval:2000}")
+    private long reloadInterval;
+
+    @Value("${tcp.server.gateway.connections-per-upstream:4}")
+    private int connectionsPerUpstream;
+
+    @Value("${tcp.server.gateway.connect-timeout:3000}")
+    private int connectTimeout;
+
+    @Value("${tcp.server.gateway.request-timeout:30000}")
+    private long requestTimeout;
+
+    @Value("${tcp.server.gateway.io-threads:0}")
+    private int ioThreads;
+
+    /**
+     * 网关在上游连接上签到使用的发送节点号，上游需将其配置在tcp.server.session.relay-senders中
+     */
+    @Value("${tcp.server.gateway.sender-node-id:GATE01}")
+    private String senderNodeId;
+
+    @Value("${tcp.server.port:8888}")
+    private int serverPort;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Path routesPath;
+    private EventLoopGroup upstreamGroup;
+    private ScheduledExecutorService reloader;
+
+    // 路由表整体替换，读取不加锁
+    private volatile Map<Long, GatewayUpstream> routes = Map.of();
+    private volatile Map<String, String> routeConfig = Map.of();
+    private volatile long lastModified = -1;
+
+    private final AtomicLong reloads = new AtomicLong(0);
+    private final AtomicLong reloadFailures = new AtomicLong(0);
+    private volatile String lastReloadTime;
+    private volatile String lastReloadError;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Gateway routing disabled");
+            return;
+        }
+        if (senderNodeId.isEmpty() || senderNodeId.getBytes().length > 6) {
+            throw new IllegalStateException("Invalid tcp.server.gateway.sender-node-id '" + senderNodeId + "' (1-6 bytes)");
+        }
+        routesPath = Paths.get(routesFile);
+        upstreamGroup = new NioEventLoopGroup(ioThreads);
+        reload();
+        reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gateway-route-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadInterval, reloadInterval, TimeUnit.MILLISECONDS);
+        log.info("Gateway routing enabled: routes file={}, connections per upstream={}, sender={}",
+                routesPath.toAbsolutePath(), connectionsPerUpstream, senderNodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+        for (GatewayUpstream upstream : routes.values()) {
+            upstream.close();
+        }
+        if (upstreamGroup != null) {
+            upstreamGroup.shutdownGracefully();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 按打包的接收节点号查找上游，由本实例处理时返回null；流式交易（多个响应帧）始终由本实例处理
+     */
+    public GatewayUpstream route(long receiverKey, long transactionCodeKey) {
+        GatewayUpstream upstream = routes.get(receiverKey);
+        if (upstream == null || handlerRegistry.isStreaming(transactionCodeKey)) {
+            return null;
+        }
+        return upstream;
+    }
+
+    private void reloadIfModified() {
+        try {
+            long modified = Files.exists(routesPath) ? Files.getLastModifiedTime(routesPath).toMillis() : 0;
+            if (modified != lastModified) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.error("Failed to check gateway routes file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新加载路由文件，文件格式错误时保留原路由表
+     */
+    public synchronized Map<String, Object> reload() {
+        Map<String, Object> result = new HashMap<>();
+        if (!enabled) {
+            result.put("success", false);
+            result.put("message", "Gateway routing is disabled");
+            return result;
+        }
+        long modified = 0;
+        try {
+            Map<String, String> config = new LinkedHashMap<>();
+            if (Files.exists(routesPath)) {
+                modified = Files.getLastModifiedTime(routesPath).toMillis();
+                Map<?, ?> raw = objectMapper.readValue(Files.readAllBytes(routesPath), Map.class);
+                for (Map.Entry<?, ?> entry : raw.entrySet()) {
+                    String nodeId = String.valueOf(entry.getKey()).trim();
+                    if (nodeId.isEmpty() || nodeId.getBytes().length > 6) {
+                        throw new IllegalArgumentException("Invalid node ID '" + nodeId + "' (1-6 bytes)");
+                    }
+                    config.put(nodeId, String.valueOf(entry.getValue()).trim());
+                }
+            }
+
+            Map<String, GatewayUpstream> upstreams = new HashMap<>();
+            for (GatewayUpstream upstream : routes.values()) {
+                upstreams.putIfAbsent(upstream.getAddress(), upstream);
+            }
+            Map<String, GatewayUpstream> used = new HashMap<>();
+            Map<Long, GatewayUpstream> table = new HashMap<>();
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                String address = entry.getValue();
+                GatewayUpstream upstream = used.computeIfAbsent(address, a -> upstreams.containsKey(a) ? upstreams.get(a)
+                        : new GatewayUpstream(a, upstreamGroup, connectionsPerUpstream, connectTimeout, requestTimeout, senderNodeId));
+                table.put(TcpProtocol.packTransactionCode(entry.getKey()), upstream);
+            }
+
+            routes = table;
+            routeConfig = config;
+            for (Map.Entry<String, GatewayUpstream> entry : upstreams.entrySet()) {
+                if (!used.containsKey(entry.getKey())) {
+                    entry.getValue().close();
+                }
+            }
+            reloads.incrementAndGet();
+            lastReloadTime = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            lastReloadError = null;
+            log.info("Gateway routes loaded: {}", config);
+
+            result.put("success", true);
+            result.put("routes", config);
+        } catch (Exception e) {
+            reloadFailures.incrementAndGet();
+            lastReloadError = e.getMessage();
+            log.error("Failed to load gateway routes from {}, keeping previous routes: {}", routesPath, e.getMessage());
+            result.put("success", false);
+            result.put("message", "Failed to load routes: " + e.getMessage());
+        }
+        // 加载失败时同样记下修改时间，文件再次修改后才重试
+        lastModified = modified;
+        return result;
+    }
+
+    /**
+     * 转发开销基准测试：对路由到上游的nodeId分别直连上游和经本实例转发
+     */
+    public Map<String, Object> benchmark(String nodeId, int requests, int threads, String transactionCode, String data) {
+        Map<String, Object> result = new HashMap<>();
+        String upstreamAddress = routeConfig.get(nodeId);
+        if (!enabled || upstreamAddress == null) {
+            result.put("success", false);
+            result.put("message", enabled ? "No route for node " + nodeId : "Gateway routing is disabled");
+            return result;
+        }
+        return new GatewayBenchmark("127.0.0.1", serverPort).run(nodeId, upstreamAddress, requests, threads, transactionCode, data);
+    }
+
+    /**
+     * 路由表、各上游的连接和转发统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        Map<String, Object> upstreams = new HashMap<>();
+        for (GatewayUpstream upstream : routes.values()) {
+            upstreams.putIfAbsent(upstream.getAddress(), upstream.getStats());
+        }
+        stats.put("routesFile", routesPath.toAbsolutePath().toString());
+        stats.put("routes", routeConfig);
+        stats.put("upstreams", upstreams);
+        stats.put("reloads", reloads.get());
+        stats.put("reloadFailures", reloadFailures.get());
+        stats.put("lastReloadTime", lastReloadTime);
+        stats.put("lastReloadError", lastReloadError);
+        return stats;
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.codec.ResponseFrameDecoder;
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网关上游（一个目标实例）
+ * 维护固定数量的长连接，按轮询选择连接转发请求报文；上游按请求顺序返回响应，每个连接用FIFO队列匹配响应。
+ * 请求和响应都以原始缓冲区转发，不复制报文。每个连接建立（包括断开后重建）后先以网关的发送节点号签到，
+ * 签到成功前到达的请求在连接上排队，签到失败时失败这些请求并关闭连接；上游需把该节点号配置为转发节点
+ * （tcp.server.session.relay-senders），其会话才能承载其他发送节点的请求。
+ * 连接断开时失败其上所有未完成的请求，下次转发时重新建立连接；超时的请求保留在队列中占位，迟到的响应到达后丢弃
+ */
+@Slf4j
+public class GatewayUpstream {
+
+    private final String address;
+    private final String host;
+    private final int port;
+    private final long requestTimeout;
+    private final String senderNodeId;
+    private final Bootstrap bootstrap;
+    private final Connection[] connections;
+    private final AtomicInteger next = new AtomicInteger(0);
+    private volatile boolean closed;
+
+    private final AtomicLong forwarded = new AtomicLong(0);
+    private final AtomicLong relayed = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong timedOut = new AtomicLong(0);
+    private final AtomicLong lateResponses = new AtomicLong(0);
+    private final AtomicLong connects = new AtomicLong(0);
+    private final AtomicLong signIns = new AtomicLong(0);
+    private final AtomicLong signInFailures = new AtomicLong(0);
+    private final AtomicLong totalRelayNanos = new AtomicLong(0);
+    private final AtomicLong maxRelayNanos = new AtomicLong(0);
+
+    public GatewayUpstream(String address, EventLoopGroup group, int connectionCount, int connectTimeout, long requestTimeout,
+                           String senderNodeId) {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid upstream address '" + address + "', expected host:port");
+        }
+        this.address = address;
+        this.host = address.substring(0, separator);
+        this.port = Integer.parseInt(address.substring(separator + 1));
+        this.requestTimeout = requestTimeout;
+        this.senderNodeId = senderNodeId;
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
+        this.connections = new Connection[Math.max(1, connectionCount)];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection();
+        }
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * 转发一个完整的请求报文（接管frame的引用计数），返回上游响应报文的缓冲区（由调用方释放）
+     */
+    public CompletableFuture<ByteBuf> forward(ByteBuf frame) {
+        CompletableFuture<ByteBuf> response = new CompletableFuture<>();
+        if (closed) {
+            frame.release();
+            failed.incrementAndGet();
+            response.completeExceptionally(new IOException("Upstream " + address + " removed from routes"));
+            return response;
+        }
+        forwarded.incrementAndGet();
+        long startNanos = System.nanoTime();
+        if (requestTimeout > 0) {
+            response.orTimeout(requestTimeout, TimeUnit.MILLISECONDS);
+        }
+        response.whenComplete((buffer, error) -> {
+            if (error == null) {
+                long elapsed = System.nanoTime() - startNanos;
+                relayed.incrementAndGet();
+                totalRelayNanos.addAndGet(elapsed);
+                maxRelayNanos.accumulateAndGet(elapsed, Math::max);
+            } else if (error instanceof TimeoutException) {
+                timedOut.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        });
+        connections[Math.floorMod(next.getAndIncrement(), connections.length)].send(frame, response);
+        return response;
+    }
+
+    /**
+     * 关闭所有连接（路由表中已不再使用）
+     */
+    public void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long responses = relayed.get();
+        int active = 0;
+        int inFlight = 0;
+        for (Connection connection : connections) {
+            synchronized (connection) {
+                if (connection.channel != null && connection.channel.isActive()) {
+                    active++;
+                }
+                inFlight += connection.inFlight.size() + connection.waiting.size();
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("address", address);
+        stats.put("connections", connections.length);
+        stats.put("activeConnections", active);
+        stats.put("connects", connects.get());
+        stats.put("signIns", signIns.get());
+        stats.put("signInFailures", signInFailures.get());
+        stats.put("inFlight", inFlight);
+        stats.put("forwarded", forwarded.get());
+        stats.put("relayed", responses);
+        stats.put("failed", failed.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("lateResponses", lateResponses.get());
+        stats.put("avgRelayMicros", responses > 0 ? totalRelayNanos.get() / responses / 1000 : 0);
+        stats.put("maxRelayMicros", maxRelayNanos.get() / 1000);
+        return stats;
+    }
+
+    /**
+     * 网关在上游连接上的签到报文
+     */
+    private ByteBuf signInFrame() {
+        TcpProtocol.RequestHeader header = new TcpProtocol.RequestHeader(senderNodeId, "SERVER",
+                TcpProtocol.TRANSACTION_TYPE_SIGNIN, "SIGNIN", String.format("%020d", System.currentTimeMillis()));
+        return Unpooled.wrappedBuffer(new TcpProtocol.Message(header, ("gateway:" + senderNodeId).getBytes(StandardCharsets.UTF_8)).toBytes());
+    }
+
+    private static final class WaitingRequest {
+
+        private final ByteBuf frame;
+        private final CompletableFuture<ByteBuf> response;
+
+        WaitingRequest(ByteBuf frame, CompletableFuture<ByteBuf> response) {
+            this.frame = frame;
+            this.response = response;
+        }
+    }
+
+    /**
+     * 到上游的一个连接：inFlight为已写出、等待响应的请求（按写出顺序，签到期间队首为签到请求），
+     * waiting为连接建立和签到完成前到达的请求；connecting从开始建立连接到签到完成期间不为null
+     */
+    private final class Connection {
+
+        // 以下字段由this加锁保护
+        private Channel channel;
+        private ChannelFuture connecting;
+        private final ArrayDeque<CompletableFuture<ByteBuf>> inFlight = new ArrayDeque<>();
+        private final ArrayDeque<WaitingRequest> waiting = new ArrayDeque<>();
+
+        synchronized void send(ByteBuf frame, CompletableFuture<ByteBuf> response) {
+            if (connecting == null && channel != null && channel.isActive()) {
+                write(frame, response);
+                return;
+            }
+            waiting.add(new WaitingRequest(frame, response));
+            if (connecting == null) {
+                connect();
+            }
+        }
+
+        /**
+         * 写出请求并登记响应（持有this锁，保证登记顺序与写出顺序一致）
+         */
+        private void write(ByteBuf frame, CompletableFuture<ByteBuf> response) {
+            inFlight.add(response);
+            channel.writeAndFlush(frame, channel.voidPromise());
+        }
+
+        private void connect() {
+            connects.incrementAndGet();
+            connecting = bootstrap.clone().handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline().addLast(new ResponseFrameDecoder());
+                    ch.pipeline().addLast(new ResponseHandler());
+                }
+            }).connect(host, port);
+            connecting.addListener((ChannelFuture future) -> connected(future));
+        }
+
+        /**
+         * 连接建立后先签到，签到响应到达后才写出排队的请求
+         */
+        private void connected(ChannelFuture future) {
+            synchronized (this) {
+                if (future.isSuccess() && !closed) {
+                    Channel connected = future.channel();
+                    channel = connected;
+                    connected.closeFuture().addListener(closeFuture -> disconnected(connected));
+                    CompletableFuture<ByteBuf> signIn = new CompletableFuture<>();
+                    if (requestTimeout > 0) {
+                        signIn.orTimeout(requestTimeout, TimeUnit.MILLISECONDS);
+                    }
+                    write(signInFrame(), signIn);
+                    signIn.whenComplete((response, error) -> signedIn(connected, response, error));
+                    return;
+                }
+                if (future.isSuccess()) {
+                    future.channel().close();
+                }
+            }
+            Throwable cause = future.cause() != null ? future.cause() : new IOException("Upstream " + address + " closed");
+            log.warn("Failed to connect to upstream {}: {}", address, cause.getMessage());
+            failWaiting(cause);
+        }
+
+        private void signedIn(Channel connected, ByteBuf response, Throwable error) {
+            Throwable cause = error;
+            if (response != null) {
+                byte status = response.getByte(response.readerIndex());
+                response.release();
+                if (status != TcpProtocol.RESPONSE_SUCCESS) {
+                    cause = new IOException("Upstream " + address + " rejected gateway sign-in (status " + status + ")");
+                }
+            }
+            if (cause == null) {
+                synchronized (this) {
+                    if (channel == connected && connected.isActive()) {
+                        connecting = null;
+                        while (!waiting.isEmpty()) {
+                            WaitingRequest request = waiting.poll();
+                            write(request.frame, request.response);
+                        }
+                        signIns.incrementAndGet();
+                        return;
+                    }
+                }
+                cause = new IOException("Upstream " + address + " connection closed");
+            }
+            signInFailures.incrementAndGet();
+            log.warn("Gateway sign-in to upstream {} failed: {}", address, cause.getMessage());
+            connected.close();
+            failWaiting(cause);
+        }
+
+        /**
+         * 连接建立或签到失败：失败排队的请求，下次转发时重新建立连接
+         */
+        private void failWaiting(Throwable cause) {
+            ArrayDeque<WaitingRequest> failedRequests;
+            synchronized (this) {
+                connecting = null;
+                failedRequests = new ArrayDeque<>(waiting);
+                waiting.clear();
+            }
+            for (WaitingRequest request : failedRequests) {
+                request.frame.release();
+                request.response.completeExceptionally(cause);
+            }
+        }
+
+        private void disconnected(Channel closedChannel) {
+            ArrayDeque<CompletableFuture<ByteBuf>> pending;
+            synchronized (this) {
+                if (channel != closedChannel) {
+                    return;
+                }
+                channel = null;
+                pending = new ArrayDeque<>(inFlight);
+                inFlight.clear();
+            }
+            IOException cause = new IOException("Upstream " + address + " connection closed");
+            for (CompletableFuture<ByteBuf> response : pending) {
+                response.completeExceptionally(cause);
+            }
+            if (!pending.isEmpty()) {
+                log.warn("Upstream {} connection closed with {} requests in flight", address, pending.size());
+            }
+        }
+
+        /**
+         * 上游响应按顺序匹配最早的未完成请求，请求已超时（或连接已被替换）时释放响应
+         */
+        private void received(ByteBuf frame) {
+            CompletableFuture<ByteBuf> response;
+            synchronized (this) {
+                response = inFlight.poll();
+            }
+            if (response == null || !response.complete(frame)) {
+                frame.release();
+                lateResponses.incrementAndGet();
+            }
+        }
+
+        synchronized void close() {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        private final class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+            ResponseHandler() {
+                super(false);
+            }
+
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+                received(frame);
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                log.warn("Upstream {} connection error: {}", address, cause.getMessage());
+                ctx.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 幂等缓存
+ * 以（发送节点号, 交易流水号）为键保存近期业务响应的编码字节，客户端超时重试、断线重放或对冲的重复请求直接写回缓存的响应，
+ * 不再执行业务处理（避免UPDATE/DELETE重复执行）。
+ * 键和元数据保存在基本类型数组组成的开放寻址表中（每个键只在起始槽位后的PROBE_WINDOW个槽位内存放，查找和插入都是O(1)，
+ * 窗口已满时替换其中最早写入的条目）；响应字节顺序写入堆外环形缓冲区，被新数据覆盖的条目自动失效。
+ * 条目按TTL过期，不需要后台清理。
+ * 首次执行的请求在准入时登记执行中标记，执行完成前到达的重复请求（超时重试）等待首次执行的响应，不会再次执行
+ */
+@Slf4j
+@Service
+public class IdempotencyCache {
+
+    /**
+     * 每个键可存放的连续槽位数
+     */
+    private static final int PROBE_WINDOW = 8;
+
+    @Value("${tcp.server.idempotency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${tcp.server.idempotency.codes:UPDATE,DELETE}")
+    private Set<String> codes;
+
+    @Value("${tcp.server.idempotency.max-entries:65536}")
+    private int maxEntries;
+
+    @Value("${tcp.server.idempotency.ttl:300000}")
+    private long ttl;
+
+    @Value("${tcp.server.idempotency.max-bytes:16777216}")
+    private int maxBytes;
+
+    // 需要缓存的交易码（打包为long，见TcpProtocol.packTransactionCode）
+    private long[] codeKeys;
+
+    // 开放寻址表，expiresAt为0表示空槽位
+    private int mask;
+    private long[] senderKeys;
+    private long[] serialKeys;
+    private long[] expiresAt;
+    private long[] positions;
+    private int[] lengths;
+
+    // 响应字节环形缓冲区，written为累计写入位置（含回绕时跳过的尾部）
+    private ByteBuffer ring;
+    private long written;
+    private int size;
+
+    // 执行中的请求，由this加锁保护；完成时得到首次执行的响应字节
+    private final Map<InFlightKey, CompletableFuture<byte[]>> inFlight = new HashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong inFlightHits = new AtomicLong(0);
+    private final AtomicLong stores = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+    private final AtomicLong evicted = new AtomicLong(0);
+    private final AtomicLong tooLarge = new AtomicLong(0);
+    private final Map<Long, AtomicLong> hitsByCode = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        codeKeys = codes.stream().mapToLong(TcpProtocol::packTransactionCode).toArray();
+        int capacity = Integer.highestOneBit(Math.max(PROBE_WINDOW, maxEntries - 1)) << 1;
+        mask = capacity - 1;
+        senderKeys = new long[capacity];
+        serialKeys = new long[capacity];
+        expiresAt = new long[capacity];
+        positions = new long[capacity];
+        lengths = new int[capacity];
+        ring = ByteBuffer.allocateDirect(Math.max(1024, maxBytes));
+        log.info("Idempotency cache {}: codes={}, slots={}, buffer={} bytes, ttl={}ms",
+                enabled ? "enabled" : "disabled", codes, capacity, ring.capacity(), ttl);
+    }
+
+    /**
+     * 该请求的响应是否需要缓存（已启用且交易码在配置中）
+     */
+    public boolean isCacheable(TcpProtocol.RequestHeader header) {
+        if (!enabled || header.getTransactionType() != TcpProtocol.TRANSACTION_TYPE_BUSINESS) {
+            return false;
+        }
+        long codeKey = header.getTransactionCodeKey();
+        for (long key : codeKeys) {
+            if (key == codeKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 请求准入：重复请求命中缓存时返回已完成的future；相同请求正在执行时返回其执行中标记（首次执行完成时得到响应）；
+     * 否则登记执行中标记并返回null，调用方执行请求后必须调用store或release
+     */
+    public CompletableFuture<byte[]> begin(TcpProtocol.RequestHeader header) {
+        if (!isCacheable(header)) {
+            return null;
+        }
+        lookups.incrementAndGet();
+
+        long senderKey = senderKey(header.getSenderNodeId());
+        long serialKey = serialKey(header.getTransactionSerial());
+        long now = System.currentTimeMillis();
+        byte[] response = null;
+        CompletableFuture<byte[]> pending;
+        synchronized (this) {
+            int slot = find(senderKey, serialKey);
+            if (slot >= 0) {
+                if (expiresAt[slot] <= now) {
+                    remove(slot);
+                    expired.incrementAndGet();
+                } else if (positions[slot] < written - ring.capacity()) {
+                    remove(slot);
+                    evicted.incrementAndGet();
+                } else {
+                    response = new byte[lengths[slot]];
+                    ring.get((int) (positions[slot] % ring.capacity()), response);
+                }
+            }
+            pending = response == null ? inFlight.putIfAbsent(new InFlightKey(senderKey, serialKey), new CompletableFuture<>()) : null;
+        }
+
+        if (response != null) {
+            hits.incrementAndGet();
+            hitsByCode.computeIfAbsent(header.getTransactionCodeKey(), code -> new AtomicLong()).incrementAndGet();
+            return CompletableFuture.completedFuture(response);
+        }
+        if (pending != null) {
+            inFlightHits.incrementAndGet();
+            hitsByCode.computeIfAbsent(header.getTransactionCodeKey(), code -> new AtomicLong()).incrementAndGet();
+        }
+        return pending;
+    }
+
+    /**
+     * 保存首次执行的响应字节（已编码的完整响应报文），移除执行中标记并把响应交给等待的重复请求
+     */
+    public void store(TcpProtocol.RequestHeader header, byte[] response) {
+        if (!isCacheable(header)) {
+            return;
+        }
+        if (response.length > ring.capacity() / 4) {
+            tooLarge.incrementAndGet();
+            release(header, response);
+            return;
+        }
+
+        long senderKey = senderKey(header.getSenderNodeId());
+        long serialKey = serialKey(header.getTransactionSerial());
+        long now = System.currentTimeMillis();
+        CompletableFuture<byte[]> pending;
+        synchronized (this) {
+            int slot = find(senderKey, serialKey);
+            if (slot < 0) {
+                slot = freeSlot(senderKey, serialKey, now);
+            }
+
+            // 写入环形缓冲区，尾部放不下时从头开始
+            int capacity = ring.capacity();
+            int offset = (int) (written % capacity);
+            if (offset + response.length > capacity) {
+                written += capacity - offset;
+                offset = 0;
+            }
+            ring.put(offset, response);
+
+            if (expiresAt[slot] == 0) {
+                size++;
+            }
+            senderKeys[slot] = senderKey;
+            serialKeys[slot] = serialKey;
+            expiresAt[slot] = now + ttl;
+            positions[slot] = written;
+            lengths[slot] = response.length;
+            written += response.length;
+            pending = inFlight.remove(new InFlightKey(senderKey, serialKey));
+        }
+        stores.incrementAndGet();
+        if (pending != null) {
+            pending.complete(response);
+        }
+    }
+
+    /**
+     * 请求未执行（如队列已满被拒绝）或执行失败（处理器异常、刷盘失败）：不缓存响应，移除执行中标记，
+     * 等待的重复请求得到同样的响应，之后的重试重新执行
+     */
+    public void release(TcpProtocol.RequestHeader header, byte[] response) {
+        if (!isCacheable(header)) {
+            return;
+        }
+        CompletableFuture<byte[]> pending;
+        synchronized (this) {
+            pending = inFlight.remove(new InFlightKey(senderKey(header.getSenderNodeId()), serialKey(header.getTransactionSerial())));
+        }
+        if (pending != null) {
+            pending.complete(response);
+        }
+    }
+
+    private int find(long senderKey, long serialKey) {
+        int start = index(senderKey, serialKey);
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int slot = (start + i) & mask;
+            if (expiresAt[slot] != 0 && senderKeys[slot] == senderKey && serialKeys[slot] == serialKey) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在窗口内选择空槽位或已失效的槽位，都不可用时替换最早写入的条目
+     */
+    private int freeSlot(long senderKey, long serialKey, long now) {
+        int start = index(senderKey, serialKey);
+        long oldestValid = written - ring.capacity();
+        int oldest = start;
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int slot = (start + i) & mask;
+            if (expiresAt[slot] == 0) {
+                return slot;
+            }
+            if (expiresAt[slot] <= now) {
+                remove(slot);
+                expired.incrementAndGet();
+                return slot;
+            }
+            if (positions[slot] < oldestValid) {
+                remove(slot);
+                evicted.incrementAndGet();
+                return slot;
+            }
+            if (positions[slot] < positions[oldest]) {
+                oldest = slot;
+            }
+        }
+        remove(oldest);
+        evicted.incrementAndGet();
+        return oldest;
+    }
+
+    private void remove(int slot) {
+        expiresAt[slot] = 0;
+        size--;
+    }
+
+    private int index(long senderKey, long serialKey) {
+        long hash = senderKey * 0x9E3779B97F4A7C15L ^ serialKey * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * 节点号（不超过6字节）打包为long；含非单字节字符时使用64位哈希（最高位置1以区分）
+     */
+    private static long senderKey(String senderNodeId) {
+        if (senderNodeId.length() <= 6) {
+            long key = 0;
+            boolean packed = true;
+            for (int i = 0; i < senderNodeId.length() && packed; i++) {
+                char c = senderNodeId.charAt(i);
+                packed = c < 0x100;
+                key = (key << 8) | c;
+            }
+            if (packed) {
+                return key | ((long) senderNodeId.length() << 48);
+            }
+        }
+        return hash(senderNodeId) | Long.MIN_VALUE;
+    }
+
+    /**
+     * 数字流水号直接解析为long（不超过Long.MAX_VALUE）；其他流水号使用64位哈希（最高位置1以区分）
+     */
+    private static long serialKey(String transactionSerial) {
+        long value = 0;
+        for (int i = 0; i < transactionSerial.length(); i++) {
+            char c = transactionSerial.charAt(i);
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return hash(transactionSerial) | Long.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * FNV-1a 64位哈希
+     */
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 幂等缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> byCode = new HashMap<>();
+        hitsByCode.forEach((code, count) -> byCode.put(TcpProtocol.unpackTransactionCode(code), count.get()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("codes", codes);
+        synchronized (this) {
+            stats.put("size", size);
+            stats.put("inFlight", inFlight.size());
+        }
+        stats.put("slots", mask + 1);
+        stats.put("bufferBytes", ring.capacity());
+        stats.put("ttl", ttl);
+        stats.put("lookups", lookups.get());
+        stats.put("duplicateHits", hits.get());
+        stats.put("inFlightDuplicateHits", inFlightHits.get());
+        stats.put("duplicateHitsByCode", byCode);
+        stats.put("stores", stores.get());
+        stats.put("expired", expired.get());
+        stats.put("evicted", evicted.get());
+        stats.put("tooLarge", tooLarge.get());
+        return stats;
+    }
+
+    private static final class InFlightKey {
+
+        private final long senderKey;
+        private final long serialKey;
+
+        InFlightKey(long senderKey, long serialKey) {
+            this.senderKey = senderKey;
+            this.serialKey = serialKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InFlightKey other && other.senderKey == senderKey && other.serialKey == serialKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(senderKey * 31 + serialKey);
+        }
+    }
+}
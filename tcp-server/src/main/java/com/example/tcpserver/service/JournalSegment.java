@@ -0,0 +1,297 @@
+package com.example.tcpserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * 交易日志段文件
+ * 定长记录（RECORD_SIZE字节，末尾4字节为记录的CRC32C）顺序写入内存映射文件，文件名为段内第一条记录的全局序号；
+ * 每INDEX_INTERVAL条记录为一个稀疏索引块，保存块内的时间戳和流水号范围，查询时跳过不相交的块。
+ * 段写满后封存，索引写入同名.index文件，启动时直接加载；未封存的段启动时扫描重建（遇到时间戳为0或CRC错误的记录即为末尾）。
+ * 写入由TransactionJournal加锁串行执行，查询使用snapshot()取得的记录数和索引副本，不与写入竞争
+ */
+@Slf4j
+public class JournalSegment {
+
+    public static final int RECORD_SIZE = 96;
+    public static final int INDEX_INTERVAL = 256;
+
+    // 记录内各字段偏移
+    static final int TIMESTAMP_OFFSET = 0;
+    static final int SERIAL_NUMBER_OFFSET = 8;
+    static final int CRC_OFFSET = RECORD_SIZE - 4;
+
+    private static final String SUFFIX = ".journal";
+    private static final String INDEX_SUFFIX = ".index";
+
+    private final Path file;
+    private final long baseRecord;
+    private final int capacity;
+    private volatile MappedByteBuffer buffer;
+
+    private int count;
+    private int forced;
+    private volatile boolean sealed;
+
+    // 稀疏索引：每块的时间戳和流水号范围（数组按段容量预先分配）
+    private final long[] blockMinTime;
+    private final long[] blockMaxTime;
+    private final long[] blockMinSerial;
+    private final long[] blockMaxSerial;
+
+    private JournalSegment(Path file, long baseRecord, int capacity) {
+        this.file = file;
+        this.baseRecord = baseRecord;
+        this.capacity = capacity;
+        int blocks = (capacity + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        blockMinTime = new long[blocks];
+        blockMaxTime = new long[blocks];
+        blockMinSerial = new long[blocks];
+        blockMaxSerial = new long[blocks];
+    }
+
+    /**
+     * 创建新的段文件
+     */
+    public static JournalSegment create(Path directory, long baseRecord, int capacity) throws IOException {
+        JournalSegment segment = new JournalSegment(directory.resolve(fileName(baseRecord)), baseRecord, capacity);
+        segment.map();
+        return segment;
+    }
+
+    /**
+     * 打开已有的段文件：有索引文件时加载索引，否则扫描记录重建
+     */
+    public static JournalSegment open(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        long baseRecord = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        int capacity = (int) (Files.size(file) / RECORD_SIZE);
+        JournalSegment segment = new JournalSegment(file, baseRecord, capacity);
+
+        Path indexFile = segment.indexFile();
+        if (Files.exists(indexFile) && segment.loadIndex(indexFile)) {
+            segment.sealed = true;
+        } else {
+            segment.map();
+            segment.recover();
+        }
+        return segment;
+    }
+
+    public static boolean isSegmentFile(Path file) {
+        return file.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    private static String fileName(long baseRecord) {
+        return String.format("%020d", baseRecord) + SUFFIX;
+    }
+
+    private Path indexFile() {
+        return file.resolveSibling(file.getFileName().toString().replace(SUFFIX, INDEX_SUFFIX));
+    }
+
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+        }
+    }
+
+    /**
+     * 扫描记录确定末尾并重建索引
+     */
+    private void recover() {
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(record);
+        CRC32C crc = new CRC32C();
+        while (count < capacity) {
+            buffer.get(count * RECORD_SIZE, record);
+            if (view.getLong(TIMESTAMP_OFFSET) == 0) {
+                break;
+            }
+            crc.reset();
+            crc.update(record, 0, CRC_OFFSET);
+            if ((int) crc.getValue() != view.getInt(CRC_OFFSET)) {
+                log.warn("Journal segment {} has a corrupt record at {}, truncating", file.getFileName(), count);
+                break;
+            }
+            updateIndex(view.getLong(TIMESTAMP_OFFSET), view.getLong(SERIAL_NUMBER_OFFSET));
+            count++;
+        }
+        forced = count;
+    }
+
+    /**
+     * 追加一条已编码的记录（调用方加锁），段已满返回false
+     */
+    boolean append(byte[] record, long timestamp, long serialNumber) {
+        if (count >= capacity) {
+            return false;
+        }
+        buffer.put(count * RECORD_SIZE, record);
+        updateIndex(timestamp, serialNumber);
+        count++;
+        return true;
+    }
+
+    private void updateIndex(long timestamp, long serialNumber) {
+        int block = count / INDEX_INTERVAL;
+        if (count % INDEX_INTERVAL == 0) {
+            blockMinTime[block] = timestamp;
+            blockMaxTime[block] = timestamp;
+            blockMinSerial[block] = serialNumber;
+            blockMaxSerial[block] = serialNumber;
+        } else {
+            blockMinTime[block] = Math.min(blockMinTime[block], timestamp);
+            blockMaxTime[block] = Math.max(blockMaxTime[block], timestamp);
+            blockMinSerial[block] = Math.min(blockMinSerial[block], serialNumber);
+            blockMaxSerial[block] = Math.max(blockMaxSerial[block], serialNumber);
+        }
+    }
+
+    /**
+     * 将尚未刷盘的记录写入磁盘（组提交，由提交线程调用），返回本次刷盘的记录数
+     */
+    int force(int upTo) {
+        int from = forced;
+        if (upTo <= from) {
+            return 0;
+        }
+        buffer.force(from * RECORD_SIZE, (upTo - from) * RECORD_SIZE);
+        forced = upTo;
+        return upTo - from;
+    }
+
+    /**
+     * 封存：记录全部刷盘后写入索引文件，返回本次刷盘的记录数
+     */
+    int seal() throws IOException {
+        int total = count;
+        int flushed = force(total);
+        try (OutputStream out = Files.newOutputStream(indexFile());
+             DataOutputStream data = new DataOutputStream(out)) {
+            data.writeInt(total);
+            int blocks = (total + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            for (int i = 0; i < blocks; i++) {
+                data.writeLong(blockMinTime[i]);
+                data.writeLong(blockMaxTime[i]);
+                data.writeLong(blockMinSerial[i]);
+                data.writeLong(blockMaxSerial[i]);
+            }
+        }
+        sealed = true;
+        return flushed;
+    }
+
+    private boolean loadIndex(Path indexFile) {
+        try (InputStream in = Files.newInputStream(indexFile);
+             DataInputStream data = new DataInputStream(in)) {
+            int total = data.readInt();
+            int blocks = (total + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            for (int i = 0; i < blocks; i++) {
+                blockMinTime[i] = data.readLong();
+                blockMaxTime[i] = data.readLong();
+                blockMinSerial[i] = data.readLong();
+                blockMaxSerial[i] = data.readLong();
+            }
+            count = total;
+            forced = total;
+            return true;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            log.warn("Failed to load journal index {}, rebuilding: {}", indexFile.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 查询用快照：当前记录数和索引副本（调用方加锁）
+     */
+    Snapshot snapshot() {
+        int blocks = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        Snapshot snapshot = new Snapshot();
+        snapshot.count = count;
+        snapshot.blockMinTime = Arrays.copyOf(blockMinTime, blocks);
+        snapshot.blockMaxTime = Arrays.copyOf(blockMaxTime, blocks);
+        snapshot.blockMinSerial = Arrays.copyOf(blockMinSerial, blocks);
+        snapshot.blockMaxSerial = Arrays.copyOf(blockMaxSerial, blocks);
+        return snapshot;
+    }
+
+    /**
+     * 读取第index条记录到record数组（封存的段首次读取时以只读方式映射）
+     */
+    void read(int index, byte[] record) throws IOException {
+        ByteBuffer source = buffer;
+        if (source == null) {
+            synchronized (this) {
+                if (buffer == null) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) capacity * RECORD_SIZE);
+                    }
+                }
+                source = buffer;
+            }
+        }
+        source.get(index * RECORD_SIZE, record);
+    }
+
+    /**
+     * 删除段文件及索引文件
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(indexFile());
+        Files.deleteIfExists(file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getBaseRecord() {
+        return baseRecord;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * 段的查询快照
+     */
+    static class Snapshot {
+
+        int count;
+        long[] blockMinTime;
+        long[] blockMaxTime;
+        long[] blockMinSerial;
+        long[] blockMaxSerial;
+
+        long maxTime() {
+            long max = Long.MIN_VALUE;
+            for (long time : blockMaxTime) {
+                max = Math.max(max, time);
+            }
+            return max;
+        }
+    }
+}
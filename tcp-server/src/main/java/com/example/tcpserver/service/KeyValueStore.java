@@ -0,0 +1,756 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 嵌入式键值存储（日志结构，可选）
+ * QUERY/UPDATE/DELETE交易的数据存储：所有写入（新值和删除标记）顺序追加到数据文件，数据文件本身就是预写日志；
+ * 内存哈希索引保存每个键最新记录的位置，读取按位置一次pread读出并校验CRC，不需要加锁。
+ * 写入在锁内追加并更新索引，由提交线程把期间的所有写入一次fsync（组提交），刷盘后完成写入返回的future，
+ * 调用方据此确认持久化（刷盘前新值已对读取可见）。
+ * 数据文件超过segment-size后滚动；后台压缩把失效数据比例达到compaction-min-garbage的旧文件中仍有效的记录
+ * 重新追加到当前文件，刷盘后删除旧文件。启动时按文件序号顺序扫描全部数据文件重建索引，末尾不完整或CRC错误的记录被截断。
+ * 记录格式：CRC32C(4) + 时间戳(8) + 键长度(4) + 值长度(4，删除标记为-1) + 键(UTF-8) + 值
+ */
+@Slf4j
+@Service
+public class KeyValueStore {
+
+    public static final int MAX_KEY_BYTES = 1024;
+
+    private static final int HEADER_LENGTH = 20;
+    private static final int TIMESTAMP_OFFSET = 4;
+    private static final int KEY_LENGTH_OFFSET = 12;
+    private static final int VALUE_LENGTH_OFFSET = 16;
+    private static final int TOMBSTONE = -1;
+
+    private static final String SUFFIX = ".data";
+
+    @Value("${tcp.server.store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tcp.server.store.directory:store}")
+    private String directory;
+
+    @Value("${tcp.server.store.segment-size:67108864}")
+    private long segmentSize;
+
+    @Value("${tcp.server.store.max-value-bytes:1048576}")
+    private int maxValueBytes;
+
+    @Value("${tcp.server.store.compaction-interval:60000}")
+    private long compactionInterval;
+
+    @Value("${tcp.server.store.compaction-min-garbage:0.5}")
+    private double compactionMinGarbage;
+
+    private Path storeDirectory;
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, DataFile> files = new ConcurrentSkipListMap<>();
+    private Thread committer;
+    private volatile boolean running;
+    private ScheduledExecutorService compactor;
+    private final Object compactionLock = new Object();
+
+    // 以下字段由this加锁保护
+    private DataFile active;
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(4096);
+    private List<CompletableFuture<Void>> pendingCommits = new ArrayList<>();
+    private long liveKeys;
+
+    private final AtomicLong gets = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong puts = new AtomicLong(0);
+    private final AtomicLong deletes = new AtomicLong(0);
+    private final AtomicLong readRetries = new AtomicLong(0);
+
+    // 以下字段仅由提交线程更新
+    private volatile long commits;
+    private volatile long committedWrites;
+    private volatile long maxBatch;
+    private volatile long commitNanos;
+    private volatile long commitFailures;
+
+    // 以下字段仅由压缩线程更新
+    private volatile long compactions;
+    private volatile long compactedFiles;
+    private volatile long relocatedRecords;
+    private volatile long reclaimedBytes;
+
+    // 启动恢复
+    private long recoveredRecords;
+    private long truncatedBytes;
+    private long recoveryMillis;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("Key-value store disabled");
+            return;
+        }
+
+        storeDirectory = Paths.get(directory);
+        Files.createDirectories(storeDirectory);
+
+        long start = System.currentTimeMillis();
+        List<Path> paths;
+        try (Stream<Path> stream = Files.list(storeDirectory)) {
+            paths = stream.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            DataFile file = DataFile.open(path, Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+            files.put(file.id, file);
+            recover(file);
+        }
+        recoveryMillis = System.currentTimeMillis() - start;
+
+        DataFile last = files.isEmpty() ? null : files.lastEntry().getValue();
+        if (last != null && last.size < segmentSize) {
+            active = last;
+        } else {
+            active = DataFile.open(storeDirectory.resolve(fileName(last != null ? last.id + 1 : 0)), last != null ? last.id + 1 : 0);
+            files.put(active.id, active);
+        }
+
+        running = true;
+        committer = new Thread(this::commitLoop, "store-commit");
+        committer.setDaemon(true);
+        committer.start();
+
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "store-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (compactionInterval > 0) {
+            compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Key-value store initialized: directory={}, files={}, keys={}, recovered {} records in {}ms, truncated {} bytes",
+                storeDirectory.toAbsolutePath(), files.size(), liveKeys, recoveredRecords, recoveryMillis, truncatedBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            committer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (DataFile file : files.values()) {
+            file.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 按打包的交易码执行存储交易：QUERY的数据为键，UPDATE为"键=值"（按第一个'='分隔，值为其后的原始字节），DELETE为键。
+     * 写入在刷盘后完成；请求格式错误或IO失败时返回异常完成的future
+     */
+    public CompletableFuture<StoreResult> execute(long transactionCodeKey, byte[] data) {
+        try {
+            if (transactionCodeKey == TcpProtocol.QUERY_KEY) {
+                String key = key(data, data.length);
+                byte[] value = get(key);
+                return CompletableFuture.completedFuture(new StoreResult(key, value != null, value));
+            }
+            if (transactionCodeKey == TcpProtocol.UPDATE_KEY) {
+                int separator = indexOf(data, (byte) '=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("UPDATE data must be key=value");
+                }
+                String key = key(data, separator);
+                byte[] value = Arrays.copyOfRange(data, separator + 1, data.length);
+                return put(key, value).thenApply(ignored -> new StoreResult(key, true, null));
+            }
+            if (transactionCodeKey == TcpProtocol.DELETE_KEY) {
+                String key = key(data, data.length);
+                return delete(key).thenApply(found -> new StoreResult(key, found, null));
+            }
+            throw new IllegalArgumentException("Unsupported transaction code: " + TcpProtocol.unpackTransactionCode(transactionCodeKey));
+        } catch (IllegalArgumentException | IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String key(byte[] data, int length) {
+        if (length == 0) {
+            throw new IllegalArgumentException("Key must not be empty");
+        }
+        if (length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key exceeds " + MAX_KEY_BYTES + " bytes");
+        }
+        return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] data, byte value) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 读取键的当前值，不存在返回null
+     */
+    public byte[] get(String key) throws IOException {
+        gets.incrementAndGet();
+        for (int attempt = 0; ; attempt++) {
+            Location location = index.get(key);
+            if (location == null || location.valueLength == TOMBSTONE) {
+                return null;
+            }
+            DataFile file = files.get(location.fileId);
+            try {
+                if (file == null) {
+                    // 文件已被压缩删除，记录已迁移，重新查索引
+                    throw new ClosedChannelException();
+                }
+                ByteBuffer record = file.read(location.offset, location.recordLength);
+                if (checksum(record) != record.getInt(0)) {
+                    throw new IOException("Corrupt record for key " + key + " in " + file.path.getFileName());
+                }
+                byte[] value = new byte[location.valueLength];
+                record.get(location.recordLength - location.valueLength, value);
+                hits.incrementAndGet();
+                return value;
+            } catch (ClosedChannelException e) {
+                if (attempt >= 3) {
+                    throw e;
+                }
+                readRetries.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 写入键值，返回的future在写入刷盘后完成
+     */
+    public CompletableFuture<Void> put(String key, byte[] value) throws IOException {
+        if (value.length > maxValueBytes) {
+            throw new IllegalArgumentException("Value exceeds " + maxValueBytes + " bytes");
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        synchronized (this) {
+            Location previous = append(key, keyBytes, value, System.currentTimeMillis());
+            if (previous == null || previous.valueLength == TOMBSTONE) {
+                liveKeys++;
+            }
+            awaitCommit(durable);
+        }
+        puts.incrementAndGet();
+        return durable;
+    }
+
+    /**
+     * 删除键（追加删除标记），返回的future在刷盘后完成，值为键删除前是否存在；不存在时不写入
+     */
+    public CompletableFuture<Boolean> delete(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        synchronized (this) {
+            Location current = index.get(key);
+            if (current == null || current.valueLength == TOMBSTONE) {
+                return CompletableFuture.completedFuture(false);
+            }
+            append(key, keyBytes, null, System.currentTimeMillis());
+            liveKeys--;
+            awaitCommit(durable);
+        }
+        deletes.incrementAndGet();
+        return durable.thenApply(ignored -> true);
+    }
+
+    /**
+     * 追加一条记录并更新索引（调用方加锁），返回键之前的位置
+     */
+    private Location append(String key, byte[] keyBytes, byte[] value, long timestamp) throws IOException {
+        int valueLength = value != null ? value.length : TOMBSTONE;
+        int recordLength = HEADER_LENGTH + keyBytes.length + (value != null ? value.length : 0);
+        if (writeBuffer.capacity() < recordLength) {
+            writeBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(recordLength) << 1);
+        }
+        ByteBuffer buffer = writeBuffer;
+        buffer.clear();
+        buffer.putInt(0).putLong(timestamp).putInt(keyBytes.length).putInt(valueLength).put(keyBytes);
+        if (value != null) {
+            buffer.put(value);
+        }
+        buffer.flip();
+        buffer.putInt(0, checksum(buffer));
+
+        Location location = write(buffer, recordLength, valueLength);
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            markDead(previous);
+        }
+        return previous;
+    }
+
+    /**
+     * 把记录写入当前文件（调用方加锁），写满时先滚动；删除标记本身计为失效数据
+     */
+    private Location write(ByteBuffer record, int recordLength, int valueLength) throws IOException {
+        if (active.size > 0 && active.size + recordLength > segmentSize) {
+            roll();
+        }
+        long offset = active.size;
+        record.position(0);
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size = offset + recordLength;
+        if (valueLength == TOMBSTONE) {
+            active.deadBytes.addAndGet(recordLength);
+        }
+        return new Location(active.id, offset, recordLength, valueLength);
+    }
+
+    private void markDead(Location location) {
+        if (location.valueLength == TOMBSTONE) {
+            return;
+        }
+        DataFile file = files.get(location.fileId);
+        if (file != null) {
+            file.deadBytes.addAndGet(location.recordLength);
+        }
+    }
+
+    /**
+     * 当前文件已满：刷盘后切换到新文件（滚动前的写入不再由提交线程刷盘）
+     */
+    private void roll() throws IOException {
+        active.channel.force(false);
+        DataFile next = DataFile.open(storeDirectory.resolve(fileName(active.id + 1)), active.id + 1);
+        files.put(next.id, next);
+        active = next;
+    }
+
+    private void awaitCommit(CompletableFuture<Void> durable) {
+        pendingCommits.add(durable);
+        if (pendingCommits.size() == 1) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 提交线程：取出等待刷盘的全部写入，对当前文件一次fsync后完成它们
+     */
+    private void commitLoop() {
+        while (true) {
+            List<CompletableFuture<Void>> batch;
+            DataFile file;
+            synchronized (this) {
+                while (pendingCommits.isEmpty() && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pendingCommits.isEmpty()) {
+                    return;
+                }
+                batch = pendingCommits;
+                pendingCommits = new ArrayList<>();
+                file = active;
+            }
+
+            long start = System.nanoTime();
+            try {
+                file.channel.force(false);
+                commitNanos += System.nanoTime() - start;
+                commits++;
+                committedWrites += batch.size();
+                maxBatch = Math.max(maxBatch, batch.size());
+                for (CompletableFuture<Void> durable : batch) {
+                    durable.complete(null);
+                }
+            } catch (IOException e) {
+                commitFailures++;
+                log.error("Key-value store commit failed: {}", e.getMessage());
+                for (CompletableFuture<Void> durable : batch) {
+                    durable.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待此前的全部写入刷盘
+     */
+    private void sync() {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        synchronized (this) {
+            awaitCommit(durable);
+        }
+        durable.join();
+    }
+
+    /**
+     * 压缩失效数据比例达到compaction-min-garbage的旧文件（定时执行，也可手动触发）
+     */
+    public Map<String, Object> compact() {
+        Map<String, Object> result = new HashMap<>();
+        if (!enabled) {
+            result.put("success", false);
+            result.put("message", "Key-value store is disabled");
+            return result;
+        }
+
+        synchronized (compactionLock) {
+            long start = System.nanoTime();
+            List<DataFile> candidates = new ArrayList<>();
+            synchronized (this) {
+                for (DataFile file : files.values()) {
+                    if (file != active && (file.size == 0 || file.deadBytes.get() >= file.size * compactionMinGarbage)) {
+                        candidates.add(file);
+                    }
+                }
+            }
+
+            long relocated = 0;
+            long reclaimed = 0;
+            try {
+                for (DataFile file : candidates) {
+                    long moved = compact(file);
+                    relocated += moved >>> 32;
+                    reclaimed += file.size - (moved & 0xFFFFFFFFL);
+                }
+            } catch (IOException e) {
+                log.error("Key-value store compaction failed: {}", e.getMessage());
+                result.put("success", false);
+                result.put("message", "Compaction failed: " + e.getMessage());
+                return result;
+            }
+
+            if (!candidates.isEmpty()) {
+                compactions++;
+                compactedFiles += candidates.size();
+                relocatedRecords += relocated;
+                reclaimedBytes += reclaimed;
+                log.info("Compacted {} store files: relocated {} records, reclaimed {} bytes", candidates.size(), relocated, reclaimed);
+            }
+            result.put("success", true);
+            result.put("compactedFiles", candidates.size());
+            result.put("relocatedRecords", relocated);
+            result.put("reclaimedBytes", reclaimed);
+            result.put("compactionMicros", (System.nanoTime() - start) / 1000);
+            return result;
+        }
+    }
+
+    /**
+     * 把文件中仍有效的记录迁移到当前文件后删除该文件；最早文件中的删除标记直接丢弃（没有更早的值需要遮盖）。
+     * 返回迁移的记录数（高32位）和字节数（低32位）
+     */
+    private long compact(DataFile file) throws IOException {
+        boolean oldest = files.firstKey() == file.id;
+        long records = 0;
+        long bytes = 0;
+        long position = 0;
+        while (position < file.size) {
+            ByteBuffer header = file.read(position, HEADER_LENGTH);
+            int recordLength = HEADER_LENGTH + header.getInt(KEY_LENGTH_OFFSET) + Math.max(0, header.getInt(VALUE_LENGTH_OFFSET));
+            ByteBuffer record = file.read(position, recordLength);
+            String key = recordKey(record);
+            Location current = index.get(key);
+            if (current != null && current.fileId == file.id && current.offset == position) {
+                if (current.valueLength == TOMBSTONE && oldest) {
+                    index.remove(key, current);
+                } else if (relocate(key, record, current)) {
+                    records++;
+                    bytes += recordLength;
+                }
+            }
+            position += recordLength;
+        }
+
+        sync();
+        files.remove(file.id);
+        file.close();
+        Files.deleteIfExists(file.path);
+        return (records << 32) | bytes;
+    }
+
+    private synchronized boolean relocate(String key, ByteBuffer record, Location current) throws IOException {
+        if (index.get(key) != current) {
+            return false;
+        }
+        index.put(key, write(record, current.recordLength, current.valueLength));
+        return true;
+    }
+
+    /**
+     * 启动时扫描数据文件重建索引，遇到不完整或CRC错误的记录时截断文件
+     */
+    private void recover(DataFile file) throws IOException {
+        long size = file.channel.size();
+        long position = 0;
+        while (position + HEADER_LENGTH <= size) {
+            ByteBuffer header = file.read(position, HEADER_LENGTH);
+            int keyLength = header.getInt(KEY_LENGTH_OFFSET);
+            int valueLength = header.getInt(VALUE_LENGTH_OFFSET);
+            if (keyLength <= 0 || keyLength > MAX_KEY_BYTES || valueLength < TOMBSTONE
+                    || position + HEADER_LENGTH + keyLength + Math.max(0, valueLength) > size) {
+                break;
+            }
+            int recordLength = HEADER_LENGTH + keyLength + Math.max(0, valueLength);
+            ByteBuffer record = file.read(position, recordLength);
+            if (checksum(record) != record.getInt(0)) {
+                break;
+            }
+
+            Location location = new Location(file.id, position, recordLength, valueLength);
+            if (valueLength == TOMBSTONE) {
+                file.deadBytes.addAndGet(recordLength);
+            }
+            Location previous = index.put(recordKey(record), location);
+            if (previous != null) {
+                markDead(previous);
+            }
+            boolean wasLive = previous != null && previous.valueLength != TOMBSTONE;
+            if (valueLength != TOMBSTONE && !wasLive) {
+                liveKeys++;
+            } else if (valueLength == TOMBSTONE && wasLive) {
+                liveKeys--;
+            }
+            recoveredRecords++;
+            position += recordLength;
+        }
+
+        if (position < size) {
+            log.warn("Store file {} has an incomplete or corrupt record at {}, truncating {} bytes",
+                    file.path.getFileName(), position, size - position);
+            file.channel.truncate(position);
+            file.channel.force(true);
+            truncatedBytes += size - position;
+        }
+        file.size = position;
+    }
+
+    private static String recordKey(ByteBuffer record) {
+        byte[] key = new byte[record.getInt(KEY_LENGTH_OFFSET)];
+        record.get(HEADER_LENGTH, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录CRC32C（覆盖CRC字段之后的全部字节）
+     */
+    private static int checksum(ByteBuffer record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.slice(TIMESTAMP_OFFSET, record.limit() - TIMESTAMP_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private static String fileName(int id) {
+        return String.format("%010d", id) + SUFFIX;
+    }
+
+    /**
+     * 混合读写基准测试（测试键带有独立前缀，结束后删除）
+     */
+    public Map<String, Object> benchmark(int operations, int threads, double readRatio, int keys, int valueSize) {
+        if (!enabled) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "Key-value store is disabled");
+            return result;
+        }
+        return new StoreBenchmark(this).run(operations, threads, readRatio, keys, valueSize);
+    }
+
+    long getCommits() {
+        return commits;
+    }
+
+    long getCommittedWrites() {
+        return committedWrites;
+    }
+
+    /**
+     * 存储统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+
+        long totalBytes = 0;
+        long deadBytes = 0;
+        for (DataFile file : files.values()) {
+            totalBytes += file.size;
+            deadBytes += file.deadBytes.get();
+        }
+        long commitCount = commits;
+        synchronized (this) {
+            stats.put("keys", liveKeys);
+            stats.put("activeFile", active.path.getFileName().toString());
+        }
+        stats.put("directory", storeDirectory.toAbsolutePath().toString());
+        stats.put("indexEntries", index.size());
+        stats.put("files", files.size());
+        stats.put("totalBytes", totalBytes);
+        stats.put("deadBytes", deadBytes);
+        stats.put("gets", gets.get());
+        stats.put("hits", hits.get());
+        stats.put("puts", puts.get());
+        stats.put("deletes", deletes.get());
+        stats.put("readRetries", readRetries.get());
+        stats.put("commits", commitCount);
+        stats.put("committedWrites", committedWrites);
+        stats.put("writesPerCommit", commitCount > 0 ? (double) committedWrites / commitCount : 0);
+        stats.put("maxWritesPerCommit", maxBatch);
+        stats.put("avgCommitMicros", commitCount > 0 ? commitNanos / commitCount / 1000 : 0);
+        stats.put("commitFailures", commitFailures);
+        stats.put("compactions", compactions);
+        stats.put("compactedFiles", compactedFiles);
+        stats.put("relocatedRecords", relocatedRecords);
+        stats.put("reclaimedBytes", reclaimedBytes);
+        stats.put("recoveredRecords", recoveredRecords);
+        stats.put("truncatedBytes", truncatedBytes);
+        stats.put("recoveryMillis", recoveryMillis);
+        return stats;
+    }
+
+    /**
+     * 存储交易结果：found表示键存在（UPDATE总为true），value为QUERY读到的值
+     */
+    public static class StoreResult {
+
+        private final String key;
+        private final boolean found;
+        private final byte[] value;
+
+        StoreResult(String key, boolean found, byte[] value) {
+            this.key = key;
+            this.found = found;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isFound() {
+            return found;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * 键最新记录的位置
+     */
+    private static final class Location {
+
+        private final int fileId;
+        private final long offset;
+        private final int recordLength;
+        private final int valueLength;
+
+        Location(int fileId, long offset, int recordLength, int valueLength) {
+            this.fileId = fileId;
+            this.offset = offset;
+            this.recordLength = recordLength;
+            this.valueLength = valueLength;
+        }
+    }
+
+    /**
+     * 数据文件：size为已写入的字节数（由写入锁保护，压缩和读取只访问其之前的数据）
+     */
+    private static final class DataFile {
+
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private volatile long size;
+        private final AtomicLong deadBytes = new AtomicLong(0);
+
+        private DataFile(int id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static DataFile open(Path path, int id) throws IOException {
+            return new DataFile(id, path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+
+        ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of " + path.getFileName() + " at " + (position + buffer.position()));
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close store file {}: {}", path.getFileName(), e.getMessage());
+            }
+        }
+    }
+}
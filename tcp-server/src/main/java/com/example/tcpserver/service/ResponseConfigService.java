@@ -150,6 +150,9 @@ public class ResponseConfigService {
     public static class ErrorConfig {
         private ResponseTemplate unknown_transaction_type;
         private ResponseTemplate invalid_request;
+        private ResponseTemplate overloaded;
+        private ResponseTemplate not_signed_in;
+        private ResponseTemplate gateway;
     }
     
     @Data
@@ -173,8 +176,9 @@ public class ResponseConfigService {
      */
     public String generateSigninFailedResponse(String reason) {
         checkAndReloadConfig();
+        String text = reason != null ? reason : "Unknown error";
         return getResponseTemplate("signin.failed.template", 
-            "Sign in failed: " + (reason != null ? reason : "Unknown error"));
+            "Sign in failed: " + text, Map.of("reason", text));
     }
     
     /**
@@ -204,6 +208,17 @@ public class ResponseConfigService {
             "Delete result: " + (data != null ? data : "") + " - deleted at " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
     }
     
+    /**
+     * 生成业务失败响应（交易码为QUERY/UPDATE/DELETE，模板中的{reason}替换为失败原因）
+     */
+    public String generateBusinessFailedResponse(String transactionCode, String reason) {
+        checkAndReloadConfig();
+        String code = transactionCode.trim().toLowerCase();
+        String name = code.isEmpty() ? "Business" : Character.toUpperCase(code.charAt(0)) + code.substring(1);
+        return getResponseTemplate("business." + code + ".failed.template",
+            name + " failed: " + reason, Map.of("reason", reason));
+    }
+    
     /**
      * 生成未知交易码响应
      */
@@ -213,6 +228,33 @@ public class ResponseConfigService {
             "Unknown transaction code: " + (code != null ? code : "UNKNOWN"));
     }
     
+    /**
+     * 生成服务繁忙响应（交易所在组的队列已满）
+     */
+    public String generateOverloadedResponse(String reason) {
+        checkAndReloadConfig();
+        return getResponseTemplate("error.overloaded.template", 
+            "Server busy: " + reason, Map.of("reason", reason));
+    }
+    
+    /**
+     * 生成未签到响应（连接未签到或发送节点号与签到时不一致）
+     */
+    public String generateNotSignedInResponse(String senderNodeId) {
+        checkAndReloadConfig();
+        return getResponseTemplate("error.not_signed_in.template", 
+            "Not signed in: " + senderNodeId, Map.of("sender", senderNodeId));
+    }
+    
+    /**
+     * 生成网关转发失败响应（上游不可用或超时）
+     */
+    public String generateGatewayErrorResponse(String reason) {
+        checkAndReloadConfig();
+        return getResponseTemplate("error.gateway.template", 
+            "Gateway error: " + reason, Map.of("reason", reason));
+    }
+    
     /**
      * 生成未知交易类型响应
      */
@@ -226,12 +268,19 @@ public class ResponseConfigService {
      * 获取响应模板
      */
     private String getResponseTemplate(String key, String defaultValue) {
+        return getResponseTemplate(key, defaultValue, Map.of());
+    }
+    
+    /**
+     * 获取响应模板，除{timestamp}外替换给定的变量
+     */
+    private String getResponseTemplate(String key, String defaultValue, Map<String, String> variables) {
         try {
             String template = getNestedValue(key);
             if (template != null) {
-                return formatTemplate(template, Map.of(
-                    "timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-                ));
+                Map<String, String> values = new HashMap<>(variables);
+                values.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                return formatTemplate(template, values);
             }
         } catch (Exception e) {
             log.warn("Failed to get template for key {}: {}", key, e.getMessage());
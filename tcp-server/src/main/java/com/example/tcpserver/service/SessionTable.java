@@ -0,0 +1,340 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 签到会话表
+ * 连接签到后分配一个会话槽位，槽位号保存在连接的属性中；发送节点号（打包为long）、签到时间、最近活动时间、
+ * 请求数和协商的能力位保存在按槽位索引的基本类型数组中，业务请求校验只需一次属性读取和一次long比较。
+ * 会话的写入都在连接的事件循环中进行（签到在准入时登记，流水线中紧随签到的业务请求也能通过校验），
+ * 只有空闲槽位的分配和回收需要加锁；后台线程定期找出空闲超过idle-timeout的会话，交给连接的事件循环确认后回收，
+ * required为true时同时关闭连接（客户端重连后重新签到）。required为false时只登记会话和统计未签到的请求，不拒绝。
+ * 以relay-senders中的节点号签到的会话（网关的上游连接）承载网关转发的其他发送节点的请求，不校验发送节点号；
+ * 默认为空（不信任任何转发节点），只有作为网关上游的实例才应配置，且该节点号不能分配给普通客户端
+ */
+@Slf4j
+@Service
+public class SessionTable {
+
+    private static final AttributeKey<Integer> SESSION_SLOT = AttributeKey.valueOf("sessionSlot");
+
+    /**
+     * 签到数据中声明能力位的字段（如 user:admin,caps:0x3）
+     */
+    private static final String CAPABILITIES_FIELD = "caps:";
+
+    @Value("${tcp.server.session.required:true}")
+    private boolean required;
+
+    @Value("${tcp.server.session.max-sessions:131072}")
+    private int maxSessions;
+
+    @Value("${tcp.server.session.idle-timeout:1800000}")
+    private long idleTimeout;
+
+    @Value("${tcp.server.session.sweep-interval:10000}")
+    private long sweepInterval;
+
+    /**
+     * 服务端支持的能力位，会话的能力为客户端声明与其相与（未声明时为全部支持的能力）
+     */
+    @Value("${tcp.server.session.capabilities:-1}")
+    private int supportedCapabilities;
+
+    /**
+     * 转发节点（网关）的发送节点号，逗号分隔，默认为空
+     */
+    @Value("${tcp.server.session.relay-senders:}")
+    private String relaySenders;
+
+    // 打包的转发节点号，只在启动时写入
+    private final Set<Long> relaySenderKeys = new HashSet<>();
+
+    // 按槽位索引，channels[slot]为null表示空闲
+    private Channel[] channels;
+    private long[] senderKeys;
+    private long[] signInMillis;
+    private long[] lastActiveMillis;
+    private long[] requests;
+    private int[] capabilities;
+    private boolean[] relays;
+
+    // 空闲槽位栈，由this加锁保护
+    private int[] freeSlots;
+    private int freeCount;
+
+    private ScheduledExecutorService sweeper;
+
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong signIns = new AtomicLong(0);
+    private final AtomicLong relaySignIns = new AtomicLong(0);
+    private final AtomicLong reSignIns = new AtomicLong(0);
+    private final AtomicLong released = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+    private final AtomicLong tableFull = new AtomicLong(0);
+    private final AtomicLong unsignedRequests = new AtomicLong(0);
+    private final AtomicLong senderMismatches = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, maxSessions);
+        channels = new Channel[capacity];
+        senderKeys = new long[capacity];
+        signInMillis = new long[capacity];
+        lastActiveMillis = new long[capacity];
+        requests = new long[capacity];
+        capabilities = new int[capacity];
+        relays = new boolean[capacity];
+        freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+        for (String sender : relaySenders.split(",")) {
+            String nodeId = sender.trim();
+            if (nodeId.getBytes().length > 6) {
+                throw new IllegalStateException("Invalid node ID '" + nodeId + "' in tcp.server.session.relay-senders (1-6 bytes)");
+            }
+            if (!nodeId.isEmpty()) {
+                relaySenderKeys.add(TcpProtocol.packTransactionCode(nodeId));
+            }
+        }
+
+        if (idleTimeout > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "session-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+        }
+        log.info("Session table initialized: capacity={}, required={}, idle timeout={}ms, relay senders={}",
+                capacity, required, idleTimeout, relaySenders);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 登记连接的签到（在连接的事件循环中调用），已签到的连接更新原会话；会话表已满时返回false
+     */
+    public boolean signIn(Channel channel, long senderKey, byte[] signInData) {
+        Integer current = channel.attr(SESSION_SLOT).get();
+        int slot;
+        if (current != null) {
+            slot = current;
+            reSignIns.incrementAndGet();
+        } else {
+            slot = allocate();
+            if (slot < 0) {
+                tableFull.incrementAndGet();
+                return false;
+            }
+            channels[slot] = channel;
+            channel.attr(SESSION_SLOT).set(slot);
+            active.incrementAndGet();
+        }
+
+        long now = System.currentTimeMillis();
+        senderKeys[slot] = senderKey;
+        signInMillis[slot] = now;
+        lastActiveMillis[slot] = now;
+        requests[slot] = 0;
+        capabilities[slot] = requestedCapabilities(signInData) & supportedCapabilities;
+        relays[slot] = relaySenderKeys.contains(senderKey);
+        signIns.incrementAndGet();
+        if (relays[slot]) {
+            relaySignIns.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * 业务请求准入（在连接的事件循环中调用）：连接已签到且发送节点号与签到时一致（转发节点的会话不比较）时
+     * 更新活动时间并返回true；未签到时只有required为true才返回false
+     */
+    public boolean admit(Channel channel, long senderKey) {
+        Integer slot = channel.attr(SESSION_SLOT).get();
+        if (slot == null) {
+            unsignedRequests.incrementAndGet();
+            return reject();
+        }
+        if (senderKeys[slot] != senderKey && !relays[slot]) {
+            senderMismatches.incrementAndGet();
+            return reject();
+        }
+        lastActiveMillis[slot] = System.currentTimeMillis();
+        requests[slot]++;
+        return true;
+    }
+
+    private boolean reject() {
+        if (required) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 连接的签到能力位，未签到返回0
+     */
+    public int getCapabilities(Channel channel) {
+        Integer slot = channel.attr(SESSION_SLOT).get();
+        return slot != null ? capabilities[slot] : 0;
+    }
+
+    /**
+     * 回收连接的会话（在连接的事件循环中调用，连接关闭或签到失败时）
+     */
+    public void release(Channel channel) {
+        Integer slot = channel.attr(SESSION_SLOT).getAndSet(null);
+        if (slot != null) {
+            free(slot);
+            released.incrementAndGet();
+        }
+    }
+
+    private synchronized int allocate() {
+        return freeCount > 0 ? freeSlots[--freeCount] : -1;
+    }
+
+    private void free(int slot) {
+        channels[slot] = null;
+        active.decrementAndGet();
+        synchronized (this) {
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * 找出空闲超时的会话，交给连接的事件循环确认（期间有新请求则保留）
+     */
+    private void sweep() {
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        for (int slot = 0; slot < channels.length; slot++) {
+            Channel channel = channels[slot];
+            if (channel != null && lastActiveMillis[slot] < deadline) {
+                int candidate = slot;
+                try {
+                    channel.eventLoop().execute(() -> expire(channel, candidate));
+                } catch (RejectedExecutionException e) {
+                    // 事件循环已关闭（服务停止中）
+                    return;
+                }
+            }
+        }
+    }
+
+    private void expire(Channel channel, int slot) {
+        Integer current = channel.attr(SESSION_SLOT).get();
+        if (current == null || current != slot || System.currentTimeMillis() - lastActiveMillis[slot] < idleTimeout) {
+            return;
+        }
+        log.info("Session expired: sender={}, remote={}", TcpProtocol.unpackTransactionCode(senderKeys[slot]), channel.remoteAddress());
+        channel.attr(SESSION_SLOT).set(null);
+        free(slot);
+        expired.incrementAndGet();
+        if (required) {
+            // 会话过期后连接上的业务请求都会被拒绝，关闭连接让客户端重连签到
+            channel.close();
+        }
+    }
+
+    /**
+     * 签到数据中声明的能力位（十进制或0x开头的十六进制），未声明或格式错误时为全部
+     */
+    private static int requestedCapabilities(byte[] signInData) {
+        if (signInData == null) {
+            return -1;
+        }
+        for (String field : new String(signInData, StandardCharsets.UTF_8).split(",")) {
+            String trimmed = field.trim();
+            if (trimmed.startsWith(CAPABILITIES_FIELD)) {
+                try {
+                    return Integer.decode(trimmed.substring(CAPABILITIES_FIELD.length()).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 当前会话列表（最多limit条，数组读取不加锁，可能与并发更新有微小偏差）
+     */
+    public List<Map<String, Object>> list(int limit) {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int slot = 0; slot < channels.length && sessions.size() < limit; slot++) {
+            Channel channel = channels[slot];
+            if (channel == null) {
+                continue;
+            }
+            Map<String, Object> session = new HashMap<>();
+            session.put("senderNodeId", TcpProtocol.unpackTransactionCode(senderKeys[slot]));
+            session.put("remoteAddress", String.valueOf(channel.remoteAddress()));
+            session.put("signInTime", LocalDateTime.ofInstant(Instant.ofEpochMilli(signInMillis[slot]), ZoneId.systemDefault())
+                    .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            session.put("idleMillis", now - lastActiveMillis[slot]);
+            session.put("requests", requests[slot]);
+            session.put("capabilities", String.format("0x%08x", capabilities[slot]));
+            session.put("relay", relays[slot]);
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    /**
+     * 会话统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("required", required);
+        stats.put("capacity", channels.length);
+        stats.put("active", active.get());
+        stats.put("idleTimeout", idleTimeout);
+        stats.put("signIns", signIns.get());
+        stats.put("relaySignIns", relaySignIns.get());
+        stats.put("relaySenders", relaySenders);
+        stats.put("reSignIns", reSignIns.get());
+        stats.put("released", released.get());
+        stats.put("expired", expired.get());
+        stats.put("tableFull", tableFull.get());
+        stats.put("unsignedRequests", unsignedRequests.get());
+        stats.put("senderMismatches", senderMismatches.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.tcpserver.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 键值存储混合读写基准测试
+ * 先写入keys个测试键，再由threads个线程共执行operations次操作：按readRatio随机选择读取或写入（写入等待刷盘完成），
+ * 键均匀随机选择。输出吞吐量（ops/s）、读写各自的延迟分位数（微秒）和测试期间每次组提交合并的写入数；测试键结束后删除
+ */
+public class StoreBenchmark {
+
+    private static final String KEY_PREFIX = "__bench__:";
+    private static final int MAX_OPERATIONS = 5_000_000;
+    private static final int MAX_THREADS = 64;
+
+    private final KeyValueStore store;
+
+    public StoreBenchmark(KeyValueStore store) {
+        this.store = store;
+    }
+
+    public Map<String, Object> run(int operations, int threads, double readRatio, int keys, int valueSize) {
+        Map<String, Object> result = new HashMap<>();
+        if (operations <= 0 || operations > MAX_OPERATIONS || threads <= 0 || threads > MAX_THREADS
+                || keys <= 0 || valueSize < 0 || readRatio < 0 || readRatio > 1) {
+            result.put("success", false);
+            result.put("message", "Invalid benchmark parameters (operations 1-" + MAX_OPERATIONS
+                    + ", threads 1-" + MAX_THREADS + ", readRatio 0-1, keys > 0, valueSize >= 0)");
+            return result;
+        }
+
+        byte[] value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<Void>> loads = new ArrayList<>(keys);
+            for (int i = 0; i < keys; i++) {
+                loads.add(store.put(KEY_PREFIX + i, value));
+            }
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).join();
+
+            long commitsBefore = store.getCommits();
+            long writesBefore = store.getCommittedWrites();
+            List<Future<long[][]>> workers = new ArrayList<>(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int count = operations / threads + (t < operations % threads ? 1 : 0);
+                workers.add(pool.submit(() -> runWorker(count, readRatio, keys, value)));
+            }
+            List<long[]> reads = new ArrayList<>(threads);
+            List<long[]> writes = new ArrayList<>(threads);
+            for (Future<long[][]> worker : workers) {
+                long[][] latencies = worker.get();
+                reads.add(latencies[0]);
+                writes.add(latencies[1]);
+            }
+            long elapsed = System.nanoTime() - start;
+            long commits = store.getCommits() - commitsBefore;
+            long committedWrites = store.getCommittedWrites() - writesBefore;
+
+            List<CompletableFuture<Boolean>> cleanup = new ArrayList<>(keys);
+            for (int i = 0; i < keys; i++) {
+                cleanup.add(store.delete(KEY_PREFIX + i));
+            }
+            CompletableFuture.allOf(cleanup.toArray(new CompletableFuture<?>[0])).join();
+
+            result.put("success", true);
+            result.put("operations", operations);
+            result.put("threads", threads);
+            result.put("readRatio", readRatio);
+            result.put("keys", keys);
+            result.put("valueSize", valueSize);
+            result.put("elapsedMillis", elapsed / 1_000_000);
+            result.put("opsPerSecond", operations * 1_000_000_000.0 / elapsed);
+            result.put("read", latencyStats(reads));
+            result.put("write", latencyStats(writes));
+            result.put("commits", commits);
+            result.put("writesPerCommit", commits > 0 ? (double) committedWrites / commits : 0);
+            return result;
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", "Benchmark failed: " + e.getMessage());
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 执行count次操作，返回读、写各自的延迟（纳秒）
+     */
+    private long[][] runWorker(int count, double readRatio, int keys, byte[] value) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] reads = new long[count];
+        long[] writes = new long[count];
+        int readCount = 0;
+        int writeCount = 0;
+        for (int i = 0; i < count; i++) {
+            String key = KEY_PREFIX + random.nextInt(keys);
+            long start = System.nanoTime();
+            if (random.nextDouble() < readRatio) {
+                store.get(key);
+                reads[readCount++] = System.nanoTime() - start;
+            } else {
+                store.put(key, value).join();
+                writes[writeCount++] = System.nanoTime() - start;
+            }
+        }
+        return new long[][]{Arrays.copyOf(reads, readCount), Arrays.copyOf(writes, writeCount)};
+    }
+
+    private static Map<String, Object> latencyStats(List<long[]> samples) {
+        long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("count", all.length);
+        if (all.length == 0) {
+            return stats;
+        }
+        stats.put("p50Micros", all[(int) (all.length * 0.50)] / 1000.0);
+        stats.put("p99Micros", all[(int) (all.length * 0.99)] / 1000.0);
+        stats.put("p999Micros", all[(int) (all.length * 0.999)] / 1000.0);
+        stats.put("maxMicros", all[all.length - 1] / 1000.0);
+        stats.put("meanMicros", Arrays.stream(all).average().orElse(0) / 1000.0);
+        return stats;
+    }
+}
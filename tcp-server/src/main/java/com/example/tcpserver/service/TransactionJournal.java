@@ -0,0 +1,500 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 交易日志（可选）
+ * 每个请求处理完成后追加一条定长摘要记录：时间戳、header各字段、响应状态、处理耗时、请求/响应数据长度及CRC32C，
+ * 写入内存映射的段文件（见JournalSegment），追加只是内存复制，不阻塞IO线程。
+ * 组提交：提交线程每commit-interval毫秒把期间追加的所有记录一次性刷盘，刷盘开销由一批交易分摊；
+ * 段写满后滚动到新段，超过max-segments个或早于retention-hours的封存段被删除。
+ * 查询按时间和流水号范围扫描，利用各段的稀疏索引跳过不相交的记录块
+ */
+@Slf4j
+@Service
+public class TransactionJournal {
+
+    /**
+     * 记录标志：响应来自幂等缓存
+     */
+    public static final int FLAG_REPLAYED = 1;
+
+    /**
+     * 记录标志：网关转发到上游的请求，响应为上游返回的报文（或网关的转发失败响应）
+     */
+    public static final int FLAG_FORWARDED = 2;
+
+    // 记录字段偏移（时间戳、数字流水号、CRC见JournalSegment）
+    private static final int SENDER_OFFSET = 16;
+    private static final int RECEIVER_OFFSET = 22;
+    private static final int TYPE_OFFSET = 28;
+    private static final int STATUS_OFFSET = 29;
+    private static final int CODE_OFFSET = 30;
+    private static final int SERIAL_OFFSET = 37;
+    private static final int FLAGS_OFFSET = 57;
+    private static final int LATENCY_OFFSET = 60;
+    private static final int REQUEST_LENGTH_OFFSET = 64;
+    private static final int RESPONSE_LENGTH_OFFSET = 68;
+    private static final int REQUEST_CRC_OFFSET = 72;
+    private static final int RESPONSE_CRC_OFFSET = 76;
+
+    // 已编码响应报文中数据的起始位置
+    private static final int RESPONSE_DATA_OFFSET = TcpProtocol.RESPONSE_HEADER_LENGTH + TcpProtocol.LENGTH_FIELD_LENGTH;
+
+    @Value("${tcp.server.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tcp.server.journal.directory:journal}")
+    private String directory;
+
+    @Value("${tcp.server.journal.segment-size:67108864}")
+    private long segmentSize;
+
+    @Value("${tcp.server.journal.commit-interval:10}")
+    private long commitInterval;
+
+    @Value("${tcp.server.journal.max-segments:16}")
+    private int maxSegments;
+
+    @Value("${tcp.server.journal.retention-hours:168}")
+    private long retentionHours;
+
+    private Path journalDirectory;
+    private int segmentCapacity;
+    private ScheduledExecutorService committer;
+
+    // 以下字段由this加锁保护
+    private final List<JournalSegment> segments = new ArrayList<>();
+    private final List<JournalSegment> pendingSeal = new ArrayList<>();
+    private JournalSegment active;
+    private final byte[] record = new byte[JournalSegment.RECORD_SIZE];
+    private final ByteBuffer recordView = ByteBuffer.wrap(record);
+    private final CRC32C crc = new CRC32C();
+    private long appended;
+    private long failures;
+    private long rolled;
+
+    // 以下字段仅由提交线程更新
+    private volatile long commits;
+    private volatile long committedRecords;
+    private volatile long maxBatch;
+    private volatile long commitNanos;
+    private volatile long deletedSegments;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("Transaction journal disabled");
+            return;
+        }
+
+        journalDirectory = Paths.get(directory);
+        Files.createDirectories(journalDirectory);
+        segmentCapacity = (int) Math.min(Integer.MAX_VALUE / JournalSegment.RECORD_SIZE,
+                Math.max(JournalSegment.INDEX_INTERVAL, segmentSize / JournalSegment.RECORD_SIZE));
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(journalDirectory)) {
+            files = stream.filter(JournalSegment::isSegmentFile).sorted().toList();
+        }
+        for (Path file : files) {
+            segments.add(JournalSegment.open(file));
+        }
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (!segments.get(i).isSealed()) {
+                segments.get(i).seal();
+            }
+        }
+
+        JournalSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null) {
+            active = JournalSegment.create(journalDirectory, 0, segmentCapacity);
+            segments.add(active);
+        } else if (last.isSealed() || last.getCount() >= last.getCapacity()) {
+            if (!last.isSealed()) {
+                last.seal();
+            }
+            active = JournalSegment.create(journalDirectory, last.getBaseRecord() + last.getCount(), segmentCapacity);
+            segments.add(active);
+        } else {
+            active = last;
+        }
+
+        committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commit, commitInterval, Math.max(1, commitInterval), TimeUnit.MILLISECONDS);
+        committer.scheduleWithFixedDelay(this::applyRetention, 0, 1, TimeUnit.MINUTES);
+
+        log.info("Transaction journal initialized: directory={}, segments={}, records={}, segment capacity={} records",
+                journalDirectory.toAbsolutePath(), segments.size(), totalRecords(), segmentCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (committer != null) {
+            committer.shutdown();
+            try {
+                committer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            commit();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次请求及其响应
+     */
+    public void record(TcpProtocol.RequestHeader header, byte[] requestData, TcpProtocol.Message response, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        byte[] data = response.getData();
+        append(header, requestData, response.getResponseHeader().getStatus(), data, 0, data.length, startNanos, 0);
+    }
+
+    /**
+     * 记录一次由幂等缓存返回已编码响应的重复请求
+     */
+    public void recordReplay(TcpProtocol.RequestHeader header, byte[] requestData, byte[] encodedResponse, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        append(header, requestData, encodedResponse[0], encodedResponse, RESPONSE_DATA_OFFSET,
+                encodedResponse.length - RESPONSE_DATA_OFFSET, startNanos, FLAG_REPLAYED);
+    }
+
+    /**
+     * 记录一次网关转发的请求，encodedResponse为写回客户端的完整响应报文
+     */
+    public void recordForwarded(TcpProtocol.RequestHeader header, byte[] requestData, byte[] encodedResponse, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        append(header, requestData, encodedResponse[0], encodedResponse, RESPONSE_DATA_OFFSET,
+                encodedResponse.length - RESPONSE_DATA_OFFSET, startNanos, FLAG_FORWARDED);
+    }
+
+    private synchronized void append(TcpProtocol.RequestHeader header, byte[] requestData, byte status,
+                                     byte[] responseData, int responseOffset, int responseLength,
+                                     long startNanos, int flags) {
+        long timestamp = System.currentTimeMillis();
+        long serialNumber = serialNumber(header.getTransactionSerial());
+
+        Arrays.fill(record, (byte) 0);
+        recordView.putLong(JournalSegment.TIMESTAMP_OFFSET, timestamp);
+        recordView.putLong(JournalSegment.SERIAL_NUMBER_OFFSET, serialNumber);
+        putField(SENDER_OFFSET, header.getSenderNodeId(), 6);
+        putField(RECEIVER_OFFSET, header.getReceiverNodeId(), 6);
+        record[TYPE_OFFSET] = header.getTransactionType();
+        record[STATUS_OFFSET] = status;
+        putCode(CODE_OFFSET, header.getTransactionCodeKey());
+        putField(SERIAL_OFFSET, header.getTransactionSerial(), 20);
+        record[FLAGS_OFFSET] = (byte) flags;
+        recordView.putInt(LATENCY_OFFSET, (int) Math.min(Integer.MAX_VALUE, (System.nanoTime() - startNanos) / 1000));
+        recordView.putInt(REQUEST_LENGTH_OFFSET, requestData.length);
+        recordView.putInt(RESPONSE_LENGTH_OFFSET, responseLength);
+        recordView.putInt(REQUEST_CRC_OFFSET, crc32c(requestData, 0, requestData.length));
+        recordView.putInt(RESPONSE_CRC_OFFSET, crc32c(responseData, responseOffset, responseLength));
+        recordView.putInt(JournalSegment.CRC_OFFSET, crc32c(record, 0, JournalSegment.CRC_OFFSET));
+
+        try {
+            if (!active.append(record, timestamp, serialNumber)) {
+                roll();
+                active.append(record, timestamp, serialNumber);
+            }
+            appended++;
+        } catch (IOException e) {
+            failures++;
+            log.warn("Failed to append journal record: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 当前段已满：交给提交线程封存，创建下一个段
+     */
+    private void roll() throws IOException {
+        JournalSegment full = active;
+        active = JournalSegment.create(journalDirectory, full.getBaseRecord() + full.getCount(), segmentCapacity);
+        segments.add(active);
+        pendingSeal.add(full);
+        rolled++;
+    }
+
+    /**
+     * 打包的交易码按原始字节写入（不创建字符串）
+     */
+    private void putCode(int offset, long transactionCodeKey) {
+        int n = (int) (transactionCodeKey >>> 56);
+        for (int i = 0; i < n; i++) {
+            record[offset + i] = (byte) (transactionCodeKey >>> (8 * (6 - i)));
+        }
+    }
+
+    private void putField(int offset, String value, int length) {
+        if (value == null) {
+            return;
+        }
+        int n = Math.min(value.length(), length);
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            record[offset + i] = (byte) (c < 0x80 ? c : '?');
+        }
+    }
+
+    private int crc32c(byte[] data, int offset, int length) {
+        crc.reset();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 数字流水号（不超过Long.MAX_VALUE）解析为long，其他返回-1
+     */
+    private static long serialNumber(String transactionSerial) {
+        if (transactionSerial == null || transactionSerial.isEmpty()) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < transactionSerial.length(); i++) {
+            char c = transactionSerial.charAt(i);
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 组提交：封存已写满的段，并把当前段上次提交后追加的记录一次刷盘
+     */
+    private void commit() {
+        try {
+            List<JournalSegment> toSeal;
+            JournalSegment current;
+            int upTo;
+            synchronized (this) {
+                toSeal = new ArrayList<>(pendingSeal);
+                pendingSeal.clear();
+                current = active;
+                upTo = current.getCount();
+            }
+
+            long start = System.nanoTime();
+            long records = 0;
+            for (JournalSegment segment : toSeal) {
+                records += segment.seal();
+            }
+            records += current.force(upTo);
+            if (records > 0) {
+                commitNanos += System.nanoTime() - start;
+                commits++;
+                committedRecords += records;
+                maxBatch = Math.max(maxBatch, records);
+            }
+            if (!toSeal.isEmpty()) {
+                applyRetention();
+            }
+        } catch (Exception e) {
+            log.warn("Journal commit failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 删除超出数量或保留时间的最早封存段
+     */
+    private void applyRetention() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+        List<JournalSegment> expired = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1 && segments.get(0).isSealed()) {
+                JournalSegment oldest = segments.get(0);
+                boolean tooMany = segments.size() > maxSegments;
+                boolean tooOld = retentionHours > 0 && oldest.snapshot().maxTime() < cutoff;
+                if (!tooMany && !tooOld) {
+                    break;
+                }
+                segments.remove(0);
+                expired.add(oldest);
+            }
+        }
+        for (JournalSegment segment : expired) {
+            try {
+                segment.delete();
+                deletedSegments++;
+                log.info("Deleted journal segment {}", segment.getFile().getFileName());
+            } catch (IOException e) {
+                log.warn("Failed to delete journal segment {}: {}", segment.getFile().getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 按时间范围（毫秒）和数字流水号范围查询记录，最多返回limit条
+     */
+    public Map<String, Object> scan(long fromTime, long toTime, long fromSerial, long toSerial, int limit) {
+        Map<String, Object> result = new HashMap<>();
+        if (!enabled) {
+            result.put("success", false);
+            result.put("message", "Transaction journal is disabled");
+            return result;
+        }
+
+        List<JournalSegment> scanned = new ArrayList<>();
+        List<JournalSegment.Snapshot> snapshots = new ArrayList<>();
+        synchronized (this) {
+            for (JournalSegment segment : segments) {
+                scanned.add(segment);
+                snapshots.add(segment.snapshot());
+            }
+        }
+
+        List<Map<String, Object>> records = new ArrayList<>();
+        byte[] buffer = new byte[JournalSegment.RECORD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(buffer);
+        long scannedRecords = 0;
+        long skippedBlocks = 0;
+        boolean truncated = false;
+        long start = System.nanoTime();
+
+        try {
+            scan:
+            for (int s = 0; s < scanned.size(); s++) {
+                JournalSegment segment = scanned.get(s);
+                JournalSegment.Snapshot snapshot = snapshots.get(s);
+                for (int block = 0; block < snapshot.blockMinTime.length; block++) {
+                    if (snapshot.blockMaxTime[block] < fromTime || snapshot.blockMinTime[block] > toTime
+                            || snapshot.blockMaxSerial[block] < fromSerial || snapshot.blockMinSerial[block] > toSerial) {
+                        skippedBlocks++;
+                        continue;
+                    }
+                    int end = Math.min(snapshot.count, (block + 1) * JournalSegment.INDEX_INTERVAL);
+                    for (int i = block * JournalSegment.INDEX_INTERVAL; i < end; i++) {
+                        segment.read(i, buffer);
+                        scannedRecords++;
+                        long timestamp = view.getLong(JournalSegment.TIMESTAMP_OFFSET);
+                        long serialNumber = view.getLong(JournalSegment.SERIAL_NUMBER_OFFSET);
+                        if (timestamp < fromTime || timestamp > toTime || serialNumber < fromSerial || serialNumber > toSerial) {
+                            continue;
+                        }
+                        if (records.size() >= limit) {
+                            truncated = true;
+                            break scan;
+                        }
+                        records.add(decode(segment.getBaseRecord() + i, buffer, view));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            result.put("success", false);
+            result.put("message", "Failed to read journal: " + e.getMessage());
+            return result;
+        }
+
+        result.put("success", true);
+        result.put("records", records);
+        result.put("count", records.size());
+        result.put("truncated", truncated);
+        result.put("scannedRecords", scannedRecords);
+        result.put("skippedBlocks", skippedBlocks);
+        result.put("scanMicros", (System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    private Map<String, Object> decode(long recordNumber, byte[] buffer, ByteBuffer view) {
+        long timestamp = view.getLong(JournalSegment.TIMESTAMP_OFFSET);
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("record", recordNumber);
+        entry.put("timestamp", timestamp);
+        entry.put("time", LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
+                .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        entry.put("senderNodeId", field(buffer, SENDER_OFFSET, 6));
+        entry.put("receiverNodeId", field(buffer, RECEIVER_OFFSET, 6));
+        entry.put("transactionType", buffer[TYPE_OFFSET]);
+        entry.put("transactionCode", field(buffer, CODE_OFFSET, 7));
+        entry.put("transactionSerial", field(buffer, SERIAL_OFFSET, 20));
+        entry.put("status", buffer[STATUS_OFFSET]);
+        entry.put("replayed", (buffer[FLAGS_OFFSET] & FLAG_REPLAYED) != 0);
+        entry.put("forwarded", (buffer[FLAGS_OFFSET] & FLAG_FORWARDED) != 0);
+        entry.put("latencyMicros", view.getInt(LATENCY_OFFSET));
+        entry.put("requestLength", view.getInt(REQUEST_LENGTH_OFFSET));
+        entry.put("responseLength", view.getInt(RESPONSE_LENGTH_OFFSET));
+        entry.put("requestCrc32c", String.format("%08x", view.getInt(REQUEST_CRC_OFFSET)));
+        entry.put("responseCrc32c", String.format("%08x", view.getInt(RESPONSE_CRC_OFFSET)));
+        return entry;
+    }
+
+    private static String field(byte[] buffer, int offset, int length) {
+        return new String(buffer, offset, length, StandardCharsets.US_ASCII).trim();
+    }
+
+    private synchronized long totalRecords() {
+        long total = 0;
+        for (JournalSegment segment : segments) {
+            total += segment.getCount();
+        }
+        return total;
+    }
+
+    /**
+     * 交易日志统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        synchronized (this) {
+            stats.put("segments", segments.size());
+            stats.put("activeSegment", active.getFile().getFileName().toString());
+            stats.put("appended", appended);
+            stats.put("failures", failures);
+            stats.put("rolledSegments", rolled);
+        }
+        long commitCount = commits;
+        stats.put("directory", journalDirectory.toAbsolutePath().toString());
+        stats.put("records", totalRecords());
+        stats.put("commits", commitCount);
+        stats.put("committedRecords", committedRecords);
+        stats.put("recordsPerCommit", commitCount > 0 ? (double) committedRecords / commitCount : 0);
+        stats.put("maxRecordsPerCommit", maxBatch);
+        stats.put("avgCommitMicros", commitCount > 0 ? commitNanos / commitCount / 1000 : 0);
+        stats.put("deletedSegments", deletedSegments);
+        return stats;
+    }
+}
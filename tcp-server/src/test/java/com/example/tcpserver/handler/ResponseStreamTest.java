@@ -0,0 +1,111 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ResponseStream的排队、按序写出和连接关闭处理（DSYNC、FREAD、FARCH等流式交易的响应位置）
+ */
+class ResponseStreamTest {
+
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+    private ResponseStream stream;
+
+    // 模拟连接的响应队列：流位于队首之前帧只排队不写出
+    private boolean atHead;
+
+    @BeforeEach
+    void setUp() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ctx = channel.pipeline().firstContext();
+        stream = new ResponseStream(ctx, () -> {
+            if (atHead && stream.writeQueued()) {
+                ctx.flush();
+            }
+        });
+    }
+
+    private static TcpProtocol.Message frame(String data) {
+        return new TcpProtocol.Message(new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_SUCCESS), data.getBytes());
+    }
+
+    @Test
+    void framesWaitUntilStreamReachesHead() {
+        TcpProtocol.Message first = frame("first");
+        TcpProtocol.Message second = frame("second");
+        ChannelFuture firstWritten = stream.write(first, false);
+        ChannelFuture secondWritten = stream.write(second, false);
+        assertNull(channel.readOutbound());
+        assertFalse(firstWritten.isDone());
+        assertFalse(stream.isFinished());
+
+        // 之前的响应写出后流到达队首，排队的帧按写入顺序写出
+        atHead = true;
+        stream.writeQueued();
+        channel.flush();
+        assertSame(first, channel.readOutbound());
+        assertSame(second, channel.readOutbound());
+        assertTrue(firstWritten.isSuccess());
+        assertTrue(secondWritten.isSuccess());
+        assertFalse(stream.isFinished());
+
+        // 位于队首后直接写出，最后一帧写出后之后的响应才能写出
+        TcpProtocol.Message last = frame("last");
+        assertTrue(stream.write(last, true).isSuccess());
+        assertSame(last, channel.readOutbound());
+        assertTrue(stream.isFinished());
+    }
+
+    @Test
+    void lastQueuedFrameFinishesStreamOnlyAfterWrite() {
+        stream.write(frame("only"), true);
+        assertFalse(stream.isFinished());
+
+        atHead = true;
+        stream.writeQueued();
+        assertTrue(stream.isFinished());
+    }
+
+    @Test
+    void frameAfterLastFrameIsRejected() {
+        atHead = true;
+        stream.write(frame("last"), true);
+        ChannelFuture extra = stream.write(frame("extra"), false);
+        assertTrue(extra.cause() instanceof IllegalStateException);
+        channel.readOutbound();
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    void abortFailsQueuedAndLaterFrames() {
+        ChannelFuture queued = stream.write(frame("queued"), false);
+        stream.abort();
+        assertTrue(queued.cause() instanceof IOException);
+
+        ChannelFuture later = stream.write(frame("later"), true);
+        assertTrue(later.cause() instanceof IOException);
+        atHead = true;
+        assertFalse(stream.writeQueued());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    void frameOnClosedConnectionFails() {
+        channel.close();
+        ChannelFuture written = stream.write(frame("closed"), true);
+        assertTrue(written.cause() instanceof IOException);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.tcpserver.handler;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TransactionScheduler的组隔离、签到优先和准入
+ */
+class TransactionSchedulerTest {
+
+    private static final long QUERY = TcpProtocol.packTransactionCode("QUERY");
+    private static final long UPDATE = TcpProtocol.packTransactionCode("UPDATE");
+    private static final long LOGIN = TcpProtocol.packTransactionCode("LOGIN");
+
+    private TransactionScheduler scheduler;
+
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> rejected = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private TransactionScheduler start(String groups, int maxPendingPerConnection) {
+        scheduler = new TransactionScheduler();
+        ReflectionTestUtils.setField(scheduler, "groups", groups);
+        ReflectionTestUtils.setField(scheduler, "defaultThreads", 1);
+        ReflectionTestUtils.setField(scheduler, "defaultQueueCapacity", 4);
+        ReflectionTestUtils.setField(scheduler, "maxPendingPerConnection", maxPendingPerConnection);
+        scheduler.init();
+        return scheduler;
+    }
+
+    private void submit(Channel channel, long code, String name, CountDownLatch done) {
+        scheduler.submit(channel, code, () -> {
+            executed.add(name);
+            done.countDown();
+        }, reason -> {
+            rejected.add(name + ": " + reason);
+            done.countDown();
+        });
+    }
+
+    private static Runnable blockUntil(CountDownLatch started, CountDownLatch release) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> poolStats(String pool) {
+        return (Map<String, Object>) scheduler.getStats().get(pool);
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "timed out");
+    }
+
+    @Test
+    void tasksQueuedBehindSlowPoolDoNotUseOtherPoolSlots() throws InterruptedException {
+        // query组只能准入3个任务（1个线程加队列长度2）
+        start("query=QUERY:1:2;update=UPDATE:1:2", 256);
+        Channel pipelined = new EmbeddedChannel();
+        Channel other = new EmbeddedChannel();
+
+        CountDownLatch updateStarted = new CountDownLatch(1);
+        CountDownLatch releaseUpdate = new CountDownLatch(1);
+        scheduler.submit(pipelined, UPDATE, blockUntil(updateStarted, releaseUpdate), rejected::add);
+        await(updateStarted);
+
+        // 同一连接上排在慢UPDATE之后的QUERY数量超过query组的名额
+        CountDownLatch pipelinedDone = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            submit(pipelined, QUERY, "p" + i, pipelinedDone);
+        }
+        assertEquals(0L, poolStats("query").get("submitted"));
+
+        // 其他连接的QUERY不受影响
+        CountDownLatch otherDone = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            submit(other, QUERY, "o" + i, otherDone);
+        }
+        await(otherDone);
+        assertEquals(List.of("o0", "o1", "o2"), executed);
+        assertEquals(List.of(), rejected);
+
+        Thread.sleep(200);
+        releaseUpdate.countDown();
+        await(pipelinedDone);
+        assertEquals(List.of(), rejected);
+        List<String> expected = new ArrayList<>(List.of("o0", "o1", "o2"));
+        for (int i = 0; i < 10; i++) {
+            expected.add("p" + i);
+        }
+        assertEquals(expected, executed);
+
+        // query组的等待时间不包含在连接上排在UPDATE之后的时间
+        long maxWaitMicros = (Long) poolStats("query").get("maxWaitMicros");
+        assertTrue(maxWaitMicros < 150_000, "query pool wait " + maxWaitMicros + "us");
+        assertEquals(0L, poolStats("query").get("rejected"));
+    }
+
+    @Test
+    void signInRunsBeforeQueuedBusinessTasks() throws InterruptedException {
+        start("auth=SIGNIN,LOGIN:1:8", 256);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(new EmbeddedChannel(), LOGIN, blockUntil(started, release), rejected::add);
+        await(started);
+
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 3; i++) {
+            submit(new EmbeddedChannel(), LOGIN, "login" + i, done);
+        }
+        scheduler.submitSignIn(new EmbeddedChannel(), () -> {
+            executed.add("signin");
+            done.countDown();
+        }, reason -> rejected.add("signin: " + reason));
+
+        release.countDown();
+        await(done);
+        assertEquals(List.of("signin", "login0", "login1", "login2"), executed);
+        assertEquals(1L, poolStats("auth").get("prioritized"));
+    }
+
+    @Test
+    void connectionBacklogIsBounded() throws InterruptedException {
+        start("update=UPDATE:1:8", 3);
+        Channel channel = new EmbeddedChannel();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(channel, UPDATE, blockUntil(started, release), rejected::add);
+        await(started);
+
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            submit(channel, UPDATE, "u" + i, done);
+        }
+        // 连接上最多3个任务（执行中的1个加排队的2个），其余直接拒绝
+        assertEquals(3, rejected.size());
+        assertTrue(rejected.get(0).startsWith("u2: connection backlog full"), rejected.get(0));
+        assertEquals(3L, scheduler.getConnectionStats().get("rejected"));
+
+        release.countDown();
+        await(done);
+        assertEquals(List.of("u0", "u1"), executed);
+    }
+
+    @Test
+    void fullPoolRejectsTaskAndDispatchesNext() throws InterruptedException {
+        start("query=QUERY:1:4;update=UPDATE:1:0", 256);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(new EmbeddedChannel(), UPDATE, blockUntil(started, release), rejected::add);
+        await(started);
+
+        // update组已满：该任务被拒绝，同一连接的下一个任务继续派发
+        Channel channel = new EmbeddedChannel();
+        CountDownLatch done = new CountDownLatch(2);
+        submit(channel, UPDATE, "update", done);
+        submit(channel, QUERY, "query", done);
+        await(done);
+        assertEquals(List.of("update: queue full (pool update)"), rejected);
+        assertEquals(List.of("query"), executed);
+        assertEquals(1L, poolStats("update").get("rejected"));
+        release.countDown();
+    }
+}
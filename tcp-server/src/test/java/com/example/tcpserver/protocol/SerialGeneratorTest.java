@@ -0,0 +1,123 @@
+package com.example.tcpserver.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SerialGenerator的单调性和时钟回拨处理
+ */
+class SerialGeneratorTest {
+
+    private static final long NOW = SerialGenerator.EPOCH + 1_000_000L;
+    private static final int SEQUENCES_PER_MILLI = 1 << SerialGenerator.SEQUENCE_BITS;
+
+    @Test
+    void serialsIncreaseWithinOneMillisecond() {
+        SerialGenerator generator = new SerialGenerator(7, 10, () -> NOW);
+        long previous = -1;
+        for (int i = 0; i < 1000; i++) {
+            long serial = generator.nextId();
+            assertTrue(serial > previous);
+            assertEquals(NOW, SerialGenerator.timestampOf(serial));
+            assertEquals(7, SerialGenerator.nodeIdOf(serial));
+            assertEquals(i, SerialGenerator.sequenceOf(serial));
+            previous = serial;
+        }
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsNextMillisecond() {
+        SerialGenerator generator = new SerialGenerator(1, 10, () -> NOW);
+        long previous = -1;
+        for (int i = 0; i < SEQUENCES_PER_MILLI; i++) {
+            previous = generator.nextId();
+        }
+        long borrowed = generator.nextId();
+        assertTrue(borrowed > previous);
+        assertEquals(NOW + 1, SerialGenerator.timestampOf(borrowed));
+        assertEquals(0, SerialGenerator.sequenceOf(borrowed));
+        assertEquals(1L, generator.getStats().get("borrowedMillis"));
+    }
+
+    @Test
+    void clockRegressionKeepsLogicalClock() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SerialGenerator generator = new SerialGenerator(1, 10, clock::get);
+        long before = generator.nextId();
+
+        clock.set(NOW - 5_000);
+        long after = generator.nextId();
+        assertTrue(after > before);
+        assertEquals(NOW, SerialGenerator.timestampOf(after));
+
+        clock.set(NOW + 1);
+        long recovered = generator.nextId();
+        assertTrue(recovered > after);
+        assertEquals(NOW + 1, SerialGenerator.timestampOf(recovered));
+    }
+
+    @Test
+    void largeRegressionWithExhaustedSequenceIsRejected() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SerialGenerator generator = new SerialGenerator(1, 10, clock::get);
+        generator.nextId();
+
+        // 回拨100ms后继续在原时间戳上分配，序号用完时需要等待的时间超过maxBorrowMillis
+        clock.set(NOW - 100);
+        long last = -1;
+        for (int i = 1; i < SEQUENCES_PER_MILLI; i++) {
+            last = generator.nextId();
+        }
+        assertEquals(NOW, SerialGenerator.timestampOf(last));
+        assertThrows(IllegalStateException.class, generator::nextId);
+        assertEquals(1L, generator.getStats().get("rejected"));
+
+        clock.set(NOW + 5);
+        long serial = generator.nextId();
+        assertTrue(serial > last);
+        assertEquals(NOW + 5, SerialGenerator.timestampOf(serial));
+    }
+
+    @Test
+    void concurrentSerialsAreUnique() {
+        SerialGenerator generator = new SerialGenerator(3, 1000);
+        int threads = 4;
+        int perThread = 50_000;
+        List<CompletableFuture<long[]>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(CompletableFuture.supplyAsync(() -> {
+                long[] serials = new long[perThread];
+                for (int i = 0; i < perThread; i++) {
+                    serials[i] = generator.nextId();
+                    if (i > 0) {
+                        assertTrue(serials[i] > serials[i - 1]);
+                    }
+                }
+                return serials;
+            }));
+        }
+        Set<Long> unique = new HashSet<>();
+        for (CompletableFuture<long[]> worker : workers) {
+            for (long serial : worker.join()) {
+                unique.add(serial);
+            }
+        }
+        assertEquals(threads * perThread, unique.size());
+    }
+
+    @Test
+    void nodeIdOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SerialGenerator(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new SerialGenerator(SerialGenerator.MAX_NODE_ID + 1, 10));
+    }
+}
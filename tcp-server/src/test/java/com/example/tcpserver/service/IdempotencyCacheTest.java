@@ -0,0 +1,150 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IdempotencyCache的执行中标记、缓存写回和环形缓冲区淘汰
+ */
+class IdempotencyCacheTest {
+
+    /**
+     * 创建缓存：环形缓冲区1024字节（单个响应不超过256字节）
+     */
+    private static IdempotencyCache open(long ttl) {
+        IdempotencyCache cache = new IdempotencyCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "codes", Set.of("UPDATE", "DELETE"));
+        ReflectionTestUtils.setField(cache, "maxEntries", 64);
+        ReflectionTestUtils.setField(cache, "ttl", ttl);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1024);
+        cache.init();
+        return cache;
+    }
+
+    private static TcpProtocol.RequestHeader header(String code, long serial) {
+        return new TcpProtocol.RequestHeader("CLIENT", "SERVER", TcpProtocol.TRANSACTION_TYPE_BUSINESS, code,
+                String.format("%020d", serial));
+    }
+
+    private static byte[] response(long serial, int length) {
+        byte[] response = new byte[length];
+        Arrays.fill(response, (byte) ('a' + serial % 26));
+        return response;
+    }
+
+    @Test
+    void duplicateWaitsForFirstExecutionAndThenHitsCache() {
+        IdempotencyCache cache = open(300_000);
+        TcpProtocol.RequestHeader header = header("UPDATE", 1);
+        assertNull(cache.begin(header));
+
+        CompletableFuture<byte[]> waiting = cache.begin(header);
+        assertNotNull(waiting);
+        assertFalse(waiting.isDone());
+
+        byte[] response = response(1, 100);
+        cache.store(header, response);
+        assertArrayEquals(response, waiting.join());
+
+        CompletableFuture<byte[]> replayed = cache.begin(header);
+        assertTrue(replayed.isDone());
+        assertArrayEquals(response, replayed.join());
+        assertEquals(1L, cache.getStats().get("inFlightDuplicateHits"));
+        assertEquals(1L, cache.getStats().get("duplicateHits"));
+        assertEquals(0, cache.getStats().get("inFlight"));
+    }
+
+    @Test
+    void releasedRequestIsExecutedAgain() {
+        IdempotencyCache cache = open(300_000);
+        TcpProtocol.RequestHeader header = header("DELETE", 2);
+        assertNull(cache.begin(header));
+        CompletableFuture<byte[]> waiting = cache.begin(header);
+
+        // 执行失败：等待的重复请求得到失败响应，但不缓存
+        byte[] failure = response(2, 40);
+        cache.release(header, failure);
+        assertArrayEquals(failure, waiting.join());
+        assertEquals(0, cache.getStats().get("size"));
+
+        assertNull(cache.begin(header));
+        byte[] success = response(3, 40);
+        cache.store(header, success);
+        assertArrayEquals(success, cache.begin(header).join());
+    }
+
+    @Test
+    void uncachedCodesAreNotTracked() {
+        IdempotencyCache cache = open(300_000);
+        TcpProtocol.RequestHeader header = header("QUERY", 3);
+        assertNull(cache.begin(header));
+        assertNull(cache.begin(header));
+        cache.store(header, response(3, 10));
+        assertNull(cache.begin(header));
+        assertEquals(0, cache.getStats().get("size"));
+        assertEquals(0, cache.getStats().get("inFlight"));
+    }
+
+    @Test
+    void overwrittenResponsesAreEvictedWhenRingWraps() {
+        IdempotencyCache cache = open(300_000);
+        // 每个响应200字节：第6个响应放不下缓冲区尾部的24字节，从头写入并覆盖第1个响应
+        for (long serial = 1; serial <= 6; serial++) {
+            TcpProtocol.RequestHeader header = header("UPDATE", serial);
+            assertNull(cache.begin(header));
+            cache.store(header, response(serial, 200));
+        }
+
+        assertNull(cache.begin(header("UPDATE", 1)));
+        assertEquals(1L, cache.getStats().get("evicted"));
+        for (long serial = 2; serial <= 6; serial++) {
+            CompletableFuture<byte[]> replayed = cache.begin(header("UPDATE", serial));
+            assertNotNull(replayed, "serial " + serial);
+            assertArrayEquals(response(serial, 200), replayed.join(), "serial " + serial);
+        }
+
+        // 第7个响应接在第6个之后（200..400），覆盖第2个响应
+        cache.store(header("UPDATE", 7), response(7, 200));
+        assertNull(cache.begin(header("UPDATE", 2)));
+        assertArrayEquals(response(3, 200), cache.begin(header("UPDATE", 3)).join());
+        assertArrayEquals(response(7, 200), cache.begin(header("UPDATE", 7)).join());
+    }
+
+    @Test
+    void oversizedResponseIsHandedToWaitersButNotCached() {
+        IdempotencyCache cache = open(300_000);
+        TcpProtocol.RequestHeader header = header("UPDATE", 8);
+        assertNull(cache.begin(header));
+        CompletableFuture<byte[]> waiting = cache.begin(header);
+
+        byte[] response = response(8, 300);
+        cache.store(header, response);
+        assertArrayEquals(response, waiting.join());
+        assertEquals(1L, cache.getStats().get("tooLarge"));
+        assertNull(cache.begin(header));
+    }
+
+    @Test
+    void expiredEntryIsExecutedAgain() throws InterruptedException {
+        IdempotencyCache cache = open(1);
+        TcpProtocol.RequestHeader header = header("UPDATE", 9);
+        assertNull(cache.begin(header));
+        cache.store(header, response(9, 10));
+        Thread.sleep(10);
+        assertNull(cache.begin(header));
+        assertEquals(1L, cache.getStats().get("expired"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.tcpserver.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JournalSegment的启动恢复和索引加载
+ */
+class JournalSegmentTest {
+
+    private static final long BASE_TIME = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * 第n条测试记录：时间戳和流水号随n递增，末尾为CRC32C
+     */
+    private static byte[] record(int n) {
+        byte[] record = new byte[JournalSegment.RECORD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(record);
+        view.putLong(JournalSegment.TIMESTAMP_OFFSET, BASE_TIME + n);
+        view.putLong(JournalSegment.SERIAL_NUMBER_OFFSET, 1000 + n);
+        view.putInt(16, n);
+        CRC32C crc = new CRC32C();
+        crc.update(record, 0, JournalSegment.CRC_OFFSET);
+        view.putInt(JournalSegment.CRC_OFFSET, (int) crc.getValue());
+        return record;
+    }
+
+    private static JournalSegment write(Path directory, int capacity, int records) throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 0, capacity);
+        for (int n = 0; n < records; n++) {
+            assertTrue(segment.append(record(n), BASE_TIME + n, 1000 + n));
+        }
+        return segment;
+    }
+
+    private static void assertRecords(JournalSegment segment, int records) throws IOException {
+        assertEquals(records, segment.getCount());
+        byte[] buffer = new byte[JournalSegment.RECORD_SIZE];
+        for (int n = 0; n < records; n++) {
+            segment.read(n, buffer);
+            assertArrayEquals(record(n), buffer, "record " + n);
+        }
+    }
+
+    private static void assertIndex(JournalSegment segment, int records) {
+        JournalSegment.Snapshot snapshot = segment.snapshot();
+        int blocks = (records + JournalSegment.INDEX_INTERVAL - 1) / JournalSegment.INDEX_INTERVAL;
+        assertEquals(records, snapshot.count);
+        assertEquals(blocks, snapshot.blockMinTime.length);
+        for (int block = 0; block < blocks; block++) {
+            int first = block * JournalSegment.INDEX_INTERVAL;
+            int last = Math.min(records, first + JournalSegment.INDEX_INTERVAL) - 1;
+            assertEquals(BASE_TIME + first, snapshot.blockMinTime[block]);
+            assertEquals(BASE_TIME + last, snapshot.blockMaxTime[block]);
+            assertEquals(1000 + first, snapshot.blockMinSerial[block]);
+            assertEquals(1000 + last, snapshot.blockMaxSerial[block]);
+        }
+    }
+
+    @Test
+    void unsealedSegmentIsRecoveredByScanning() throws IOException {
+        JournalSegment written = write(directory, 1024, 300);
+        written.force(300);
+
+        JournalSegment segment = JournalSegment.open(written.getFile());
+        assertFalse(segment.isSealed());
+        assertRecords(segment, 300);
+        assertIndex(segment, 300);
+
+        // 恢复后从末尾继续追加
+        assertTrue(segment.append(record(300), BASE_TIME + 300, 1300));
+        assertRecords(segment, 301);
+    }
+
+    @Test
+    void recoveryStopsAtCorruptRecord() throws IOException {
+        JournalSegment written = write(directory, 1024, 10);
+        byte[] corrupt = record(10);
+        corrupt[20] ^= 1;
+        written.append(corrupt, BASE_TIME + 10, 1010);
+        written.append(record(11), BASE_TIME + 11, 1011);
+        written.force(12);
+
+        JournalSegment segment = JournalSegment.open(written.getFile());
+        assertRecords(segment, 10);
+        assertIndex(segment, 10);
+    }
+
+    @Test
+    void sealedSegmentLoadsIndexFile() throws IOException {
+        JournalSegment written = write(directory, 1024, 600);
+        written.seal();
+        Path indexFile = directory.resolve(written.getFile().getFileName().toString().replace(".journal", ".index"));
+        assertTrue(Files.exists(indexFile));
+
+        JournalSegment segment = JournalSegment.open(written.getFile());
+        assertTrue(segment.isSealed());
+        assertRecords(segment, 600);
+        assertIndex(segment, 600);
+    }
+
+    @Test
+    void damagedIndexFileIsRebuiltFromRecords() throws IOException {
+        JournalSegment written = write(directory, 1024, 600);
+        written.seal();
+        Path indexFile = directory.resolve(written.getFile().getFileName().toString().replace(".journal", ".index"));
+        byte[] index = Files.readAllBytes(indexFile);
+        Files.write(indexFile, Arrays.copyOf(index, index.length / 2));
+
+        JournalSegment segment = JournalSegment.open(written.getFile());
+        assertFalse(segment.isSealed());
+        assertRecords(segment, 600);
+        assertIndex(segment, 600);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.tcpserver.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * KeyValueStore的崩溃恢复和压缩
+ */
+class KeyValueStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<KeyValueStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (KeyValueStore store : opened) {
+            store.shutdown();
+        }
+    }
+
+    /**
+     * 打开存储（不启动定时压缩）
+     */
+    private KeyValueStore open(long segmentSize) throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(store, "maxValueBytes", 1024);
+        ReflectionTestUtils.setField(store, "compactionInterval", 0L);
+        ReflectionTestUtils.setField(store, "compactionMinGarbage", 0.5);
+        store.init();
+        opened.add(store);
+        return store;
+    }
+
+    private KeyValueStore reopen(KeyValueStore store, long segmentSize) throws IOException {
+        store.shutdown();
+        opened.remove(store);
+        return open(segmentSize);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<Path> dataFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.filter(path -> path.getFileName().toString().endsWith(".data")).sorted().toList();
+        }
+    }
+
+    @Test
+    void recoversCommittedRecordsAndTruncatesTornTail() throws IOException {
+        KeyValueStore store = open(1 << 20);
+        store.put("alpha", bytes("1")).join();
+        store.put("beta", bytes("2")).join();
+        store.put("alpha", bytes("3")).join();
+        assertTrue(store.delete("beta").join());
+        store.shutdown();
+        opened.remove(store);
+
+        // 模拟写入中途崩溃：末尾追加一条只写了一半的记录（header声明的长度超出文件）
+        Path file = dataFiles().get(dataFiles().size() - 1);
+        long committedSize = Files.size(file);
+        ByteBuffer torn = ByteBuffer.allocate(25);
+        torn.putInt(0x12345678).putLong(System.currentTimeMillis()).putInt(5).putInt(100).put(bytes("gamma"));
+        torn.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(torn);
+        }
+
+        store = open(1 << 20);
+        assertArrayEquals(bytes("3"), store.get("alpha"));
+        assertNull(store.get("beta"));
+        assertNull(store.get("gamma"));
+        Map<String, Object> stats = store.getStats();
+        assertEquals(4L, stats.get("recoveredRecords"));
+        assertEquals(25L, stats.get("truncatedBytes"));
+        assertEquals(1L, stats.get("keys"));
+        assertEquals(committedSize, Files.size(file));
+
+        // 截断后继续追加，再次重启仍能读出
+        store.put("delta", bytes("4")).join();
+        store = reopen(store, 1 << 20);
+        assertArrayEquals(bytes("3"), store.get("alpha"));
+        assertArrayEquals(bytes("4"), store.get("delta"));
+        assertEquals(0L, store.getStats().get("truncatedBytes"));
+    }
+
+    @Test
+    void truncatesRecordWithBadChecksum() throws IOException {
+        KeyValueStore store = open(1 << 20);
+        store.put("alpha", bytes("1")).join();
+        store.put("beta", bytes("2")).join();
+        store.shutdown();
+        opened.remove(store);
+
+        // 最后一条记录的值被破坏（长度完整但CRC不匹配）
+        Path file = dataFiles().get(0);
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")), size - 1);
+        }
+
+        store = open(1 << 20);
+        assertArrayEquals(bytes("1"), store.get("alpha"));
+        assertNull(store.get("beta"));
+        assertEquals(1L, store.getStats().get("keys"));
+        assertTrue(Files.size(file) < size);
+    }
+
+    @Test
+    void compactionKeepsLiveValuesAndDeletions() throws IOException {
+        long segmentSize = 256;
+        KeyValueStore store = open(segmentSize);
+        for (int i = 0; i < 20; i++) {
+            store.put("key" + i, bytes("v" + i)).join();
+        }
+        for (int i = 0; i < 20; i += 2) {
+            store.put("key" + i, bytes("w" + i)).join();
+        }
+        for (int i = 0; i < 20; i += 5) {
+            assertTrue(store.delete("key" + i).join());
+        }
+        int filesBefore = dataFiles().size();
+        assertTrue(filesBefore > 2);
+
+        Map<String, Object> result = store.compact();
+        assertEquals(true, result.get("success"));
+        assertTrue((Integer) result.get("compactedFiles") > 0);
+        assertTrue(dataFiles().size() < filesBefore);
+        assertValues(store);
+
+        // 压缩后重启：迁移的记录和删除标记都从新文件恢复，已删除的键不会复活
+        store = reopen(store, segmentSize);
+        assertValues(store);
+        assertEquals(16L, store.getStats().get("keys"));
+    }
+
+    private static void assertValues(KeyValueStore store) throws IOException {
+        for (int i = 0; i < 20; i++) {
+            byte[] value = store.get("key" + i);
+            if (i % 5 == 0) {
+                assertNull(value, "key" + i);
+            } else {
+                assertArrayEquals(bytes((i % 2 == 0 ? "w" : "v") + i), value, "key" + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.tcpserver.service;
+
+import com.example.tcpserver.protocol.TcpProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * TransactionJournal重启后恢复各段并继续编号
+ */
+class TransactionJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private TransactionJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.shutdown();
+        }
+    }
+
+    /**
+     * 打开日志：每段256条记录，只按数量保留
+     */
+    private TransactionJournal open() throws IOException {
+        TransactionJournal opened = new TransactionJournal();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "directory", directory.toString());
+        ReflectionTestUtils.setField(opened, "segmentSize", (long) JournalSegment.INDEX_INTERVAL * JournalSegment.RECORD_SIZE);
+        ReflectionTestUtils.setField(opened, "commitInterval", 10L);
+        ReflectionTestUtils.setField(opened, "maxSegments", 16);
+        ReflectionTestUtils.setField(opened, "retentionHours", 0L);
+        opened.init();
+        return opened;
+    }
+
+    private void record(int from, int to) {
+        TcpProtocol.Message response = new TcpProtocol.Message(new TcpProtocol.ResponseHeader(TcpProtocol.RESPONSE_SUCCESS), "ok".getBytes());
+        for (int n = from; n < to; n++) {
+            TcpProtocol.RequestHeader header = new TcpProtocol.RequestHeader("CLIENT", "SERVER",
+                    TcpProtocol.TRANSACTION_TYPE_BUSINESS, "QUERY", String.format("%020d", n));
+            journal.record(header, ("q" + n).getBytes(), response, System.nanoTime());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> scanAll() {
+        Map<String, Object> result = journal.scan(0, Long.MAX_VALUE, 0, Long.MAX_VALUE, 10_000);
+        assertEquals(true, result.get("success"));
+        return (List<Map<String, Object>>) result.get("records");
+    }
+
+    private long indexFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.filter(path -> path.getFileName().toString().endsWith(".index")).count();
+        }
+    }
+
+    @Test
+    void reopenedJournalKeepsAllSegments() throws IOException {
+        journal = open();
+        record(0, 600);
+        journal.shutdown();
+        // 写满的两段在关闭时封存并写出索引，第三段未封存
+        assertEquals(2, indexFiles());
+
+        journal = open();
+        assertEquals(3, journal.getStats().get("segments"));
+        assertEquals(600L, journal.getStats().get("records"));
+        record(600, 700);
+
+        List<Map<String, Object>> records = scanAll();
+        assertEquals(700, records.size());
+        for (int n = 0; n < records.size(); n++) {
+            assertEquals((long) n, records.get(n).get("record"));
+            assertEquals(String.format("%020d", n), records.get(n).get("transactionSerial"));
+        }
+
+        // 按流水号范围查询跳过不相交的索引块
+        Map<String, Object> range = journal.scan(0, Long.MAX_VALUE, 650, 659, 100);
+        assertEquals(10, range.get("count"));
+        assertEquals(188L, range.get("scannedRecords"));
+    }
+}